@@ -0,0 +1,28 @@
+@echo off
+setlocal
+
+call %~dp0\args.bat %*
+
+if "%exit%" == "true" (
+    exit /b 1
+)
+
+rem JAVA_CP are classes required by the compiler to run
+set "JAVA_CP=%MINIMAL_CP%;
+
+if "%CEYLONC_SERVER_PORT%" == "" (
+    set "CEYLONC_SERVER_PORT=8898"
+)
+
+rem Start a compiler server which ceylonc uses when CEYLONC_SERVER_PORT is set
+rem to the same port. The server writes the token clients must send to
+rem %USERPROFILE%\.ceylon\compiler-server-<port>.token, readable only by us.
+"%JAVA%" ^
+    -enableassertions ^
+    -classpath "%JAVA_CP%" ^
+    "-Dceylon.home=%CEYLON_HOME%" ^
+    com.redhat.ceylon.compiler.java.launcher.CompilerServer ^
+    -port %CEYLONC_SERVER_PORT% ^
+    %ARGS%
+
+endlocal
@@ -13,11 +13,20 @@ set "JAVA_CP=%MINIMAL_CP%;
 rem COMPILE_CP are classes required by the code being compiled
 set "COMPILE_CP=%CEYLON_REPO%\ceylon\language\%CEYLON_VERSION%\ceylon.language-%CEYLON_VERSION%.car;%USER_CP%"
 
+rem Hand the compilation over to a running compiler server if we have one
+set "MAIN_CLASS=com.redhat.ceylon.compiler.java.Main5"
+if not "%CEYLONC_SERVER_PORT%" == "" (
+    set "MAIN_CLASS=com.redhat.ceylon.compiler.java.launcher.CompilerClient"
+) else (
+    set "CEYLONC_SERVER_PORT=8898"
+)
+
 "%JAVA%" ^
     -enableassertions ^
     -classpath "%JAVA_CP%;%COMPILE_CP%" ^
     "-Dceylon.home=%CEYLON_HOME%" ^
-    com.redhat.ceylon.compiler.java.Main5 ^
+    "-Dceylon.compiler.server.port=%CEYLONC_SERVER_PORT%" ^
+    %MAIN_CLASS% ^
     %ARGS%
 
 endlocal
@@ -579,6 +579,22 @@ public class JavacFileManager extends BaseFileManager implements StandardJavaFil
         return archive;
     }
 
+    /**
+     * Closes the given archive if we opened it, so that we read it again
+     * the next time we need it.
+     */
+    public void closeArchive(File file) {
+        Archive a = archives.remove(file);
+        if (a != null) {
+            try {
+                a.close();
+            } catch (IOException e) {
+            }
+        }
+        if (zipFileIndexCache != null)
+            zipFileIndexCache.removeFromCache(file);
+    }
+
     /** Flush any output resources.
      */
     public void flush() throws IOException {
@@ -856,7 +856,10 @@ public class ClassWriter extends ClassFile {
             throw new AssertionError("Unexpected intersection type: " + c.type);
         }
         try {
-            c.complete();
+            // class writers may run in parallel, but completion is not thread-safe
+            synchronized (syms) {
+                c.complete();
+            }
         } catch (CompletionFailure ex) {
             System.err.println("error: " + c + ": " + ex.getMessage());
             throw ex;
@@ -1438,11 +1441,7 @@ public class ClassWriter extends ClassFile {
     public JavaFileObject writeClass(ClassSymbol c)
         throws IOException, PoolOverflow, StringOverflow
     {
-        JavaFileObject outFile
-            = fileManager.getJavaFileForOutput(CLASS_OUTPUT,
-                                               c.flatname.toString(),
-                                               JavaFileObject.Kind.CLASS,
-                                               c.sourcefile);
+        JavaFileObject outFile = getClassOutputFile(c);
         OutputStream out = outFile.openOutputStream();
         try {
             writeClassFile(out, c);
@@ -1461,6 +1460,42 @@ public class ClassWriter extends ClassFile {
         return outFile; // may be null if write failed
     }
 
+    /** Emit a class file for a given class, which has already been
+     *  serialised by writeClassFile, possibly by another class writer.
+     *  @param c          The class from which the class file was generated.
+     *  @param classFile  The contents of the class file.
+     */
+    public JavaFileObject writeClass(ClassSymbol c, byte[] classFile)
+        throws IOException
+    {
+        JavaFileObject outFile = getClassOutputFile(c);
+        OutputStream out = outFile.openOutputStream();
+        try {
+            out.write(classFile);
+            if (verbose)
+                log.printVerbose("wrote.file", outFile);
+            out.close();
+            out = null;
+        } finally {
+            if (out != null) {
+                // if we are propogating an exception, delete the file
+                out.close();
+                outFile.delete();
+                outFile = null;
+            }
+        }
+        return outFile; // may be null if write failed
+    }
+
+    /** The file the class file of class `c' is written to.
+     */
+    protected JavaFileObject getClassOutputFile(ClassSymbol c) throws IOException {
+        return fileManager.getJavaFileForOutput(CLASS_OUTPUT,
+                                                c.flatname.toString(),
+                                                JavaFileObject.Kind.CLASS,
+                                                c.sourcefile);
+    }
+
     /** Write class `c' to outstream `out'.
      */
     public void writeClassFile(OutputStream out, ClassSymbol c)
@@ -272,10 +272,15 @@ public class Gen extends JCTree.Visitor {
             (sym.flags() & (STATIC | SYNTHETIC)) == (STATIC | SYNTHETIC)) {
             return sym;
         }
-        if (!target.obeyBinaryCompatibility())
-            return rs.isAccessible(attrEnv, (TypeSymbol)sym.owner)
+        if (!target.obeyBinaryCompatibility()) {
+            boolean accessible;
+            synchronized (syms) {
+                accessible = rs.isAccessible(attrEnv, (TypeSymbol)sym.owner);
+            }
+            return accessible
                 ? sym
                 : sym.clone(site.tsym);
+        }
 
         if (!target.interfaceFieldsBinaryCompatibility()) {
             if ((sym.owner.flags() & INTERFACE) != 0 && sym.kind == VAR)
@@ -349,8 +354,12 @@ public class Gen extends JCTree.Visitor {
     void callMethod(DiagnosticPosition pos,
                     Type site, Name name, List<Type> argtypes,
                     boolean isStatic) {
-        Symbol msym = rs.
-            resolveInternalMethod(pos, attrEnv, site, name, argtypes, null);
+        Symbol msym;
+        // parallel code generators share the resolver and the symbol table
+        synchronized (syms) {
+            msym = rs.
+                resolveInternalMethod(pos, attrEnv, site, name, argtypes, null);
+        }
         if (isStatic) items.makeStaticItem(msym).invoke();
         else items.makeMemberItem(msym, name == names.init).invoke();
     }
@@ -653,7 +662,10 @@ public class Gen extends JCTree.Visitor {
                                       MethodSymbol im) {
         MethodType pmt = (MethodType)pm.type;
         Type imt = types.memberType(c.type, im);
-        pmt.thrown = chk.intersect(pmt.getThrownTypes(), imt.getThrownTypes());
+        // the checker and its types are shared by parallel code generators
+        synchronized (syms) {
+            pmt.thrown = chk.intersect(pmt.getThrownTypes(), imt.getThrownTypes());
+        }
     }
 
 /* ************************************************************************
@@ -1980,12 +1992,14 @@ public class Gen extends JCTree.Visitor {
             Assert.checkNull(t.constValue());
             Symbol method = stringBufferAppend.get(t);
             if (method == null) {
-                method = rs.resolveInternalMethod(tree.pos(),
-                                                  attrEnv,
-                                                  stringBufferType,
-                                                  names.append,
-                                                  List.of(t),
-                                                  null);
+                synchronized (syms) {
+                    method = rs.resolveInternalMethod(tree.pos(),
+                                                      attrEnv,
+                                                      stringBufferType,
+                                                      names.append,
+                                                      List.of(t),
+                                                      null);
+                }
                 stringBufferAppend.put(t, method);
             }
             return method;
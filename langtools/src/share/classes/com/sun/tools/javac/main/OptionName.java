@@ -65,6 +65,7 @@ public enum OptionName {
     PROCESSORPATH("-processorpath"),
     D("-d"),
     CEYLONOUT("-out"),
+    CEYLONINCREMENTAL("-incremental"),
     S("-s"),
     IMPLICIT("-implicit:"),
     ENCODING("-encoding"),
@@ -99,7 +100,15 @@ public enum OptionName {
     SOURCEFILE("sourcefile"),
     SRC("-src"),
     BOOTSTRAPCEYLON("-Xbootstrapceylon"),
-    CEYLONALLOWWARNINGS("-Xceylonallowwarnings");
+    CEYLONALLOWWARNINGS("-Xceylonallowwarnings"),
+    CEYLONTHREADS("-Xceylonthreads"),
+    CEYLONPARALLELTYPECHECK("-Xceylonparalleltypecheck"),
+    CEYLONPARALLELTRANSFORM("-Xceylonparalleltransform"),
+    CEYLONPARALLELGEN("-Xceylonparallelgen"),
+    CEYLONTIMINGREPORT("-Xceylontimingreport"),
+    CEYLONMODELINDEX("-Xceylonmodelindex"),
+    CEYLONLOADERMETRICS("-Xceylonloadermetrics"),
+    CEYLONLANGUAGESNAPSHOT("-Xceylonlanguagesnapshot");
 
     public final String optionName;
 
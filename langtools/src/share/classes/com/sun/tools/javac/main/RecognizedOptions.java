@@ -153,6 +153,7 @@ public class RecognizedOptions {
         PROCESSORPATH,
         D,
         CEYLONOUT,
+        CEYLONINCREMENTAL,
         S,
         IMPLICIT,
         ENCODING,
@@ -188,7 +189,15 @@ public class RecognizedOptions {
         SOURCEFILE,
         SRC,
         BOOTSTRAPCEYLON,
-        CEYLONALLOWWARNINGS);
+        CEYLONALLOWWARNINGS,
+        CEYLONTHREADS,
+        CEYLONPARALLELTYPECHECK,
+        CEYLONPARALLELTRANSFORM,
+        CEYLONPARALLELGEN,
+        CEYLONTIMINGREPORT,
+        CEYLONMODELINDEX,
+        CEYLONLOADERMETRICS,
+        CEYLONLANGUAGESNAPSHOT);
 
     static Set<OptionName> javacFileManagerOptions = EnumSet.of(
         CLASSPATH,
@@ -254,7 +263,16 @@ public class RecognizedOptions {
         XJCOV,
         XD,
         BOOTSTRAPCEYLON,
-        CEYLONALLOWWARNINGS);
+        CEYLONALLOWWARNINGS,
+        CEYLONINCREMENTAL,
+        CEYLONTHREADS,
+        CEYLONPARALLELTYPECHECK,
+        CEYLONPARALLELTRANSFORM,
+        CEYLONPARALLELGEN,
+        CEYLONTIMINGREPORT,
+        CEYLONMODELINDEX,
+        CEYLONLOADERMETRICS,
+        CEYLONLANGUAGESNAPSHOT);
 
     public static Option[] getJavaCompilerOptions(OptionHelper helper) {
         return getOptions(helper, javacOptions);
@@ -402,6 +420,7 @@ public class RecognizedOptions {
                 return super.process(options, "-d", arg);
             } 
         },
+        new COption(CEYLONINCREMENTAL,                          "opt.ceylonincremental"),
         new Option(S,                   "opt.arg.directory",    "opt.sourceDest"),
         new Option(IMPLICIT,                                    "opt.implicit",
                 Option.ChoiceKind.ONEOF, "none", "class"),
@@ -584,6 +603,30 @@ public class RecognizedOptions {
         // do not halt on typechecker warnings
         new HiddenOption(CEYLONALLOWWARNINGS),
 
+        // number of worker threads for the parallel compiler phases
+        new HiddenOption(CEYLONTHREADS, "opt.arg.number"),
+
+        // run the per-unit type checking phases in parallel
+        new HiddenOption(CEYLONPARALLELTYPECHECK),
+
+        // transform the Ceylon units to javac trees in parallel
+        new HiddenOption(CEYLONPARALLELTRANSFORM),
+
+        // generate and write the class files in parallel
+        new HiddenOption(CEYLONPARALLELGEN),
+
+        // write the compiler phase timings and counters to a JSON or CSV file
+        new HiddenOption(CEYLONTIMINGREPORT, "opt.arg.file"),
+
+        // cache the class mirrors of the module cars we load from in this directory
+        new HiddenOption(CEYLONMODELINDEX, "opt.arg.directory"),
+
+        // write the model loader statistics to a JSON file
+        new HiddenOption(CEYLONLOADERMETRICS, "opt.arg.file"),
+
+        // write a complete snapshot of the language module model to this file
+        new HiddenOption(CEYLONLANGUAGESNAPSHOT, "opt.arg.file"),
+
         // output shrouded class files
         // new Option("-scramble",                              "opt.scramble"),
         // new Option("-scrambleall",                           "opt.scrambleall"),
@@ -61,8 +61,10 @@ public class SharedNameTable extends Name.Table {
     private NameImpl[] hashes;
 
     /** The shared byte array holding all encountered names.
+     *  Names are entered under the table lock, and the array is volatile so
+     *  that threads reading names outside the lock see it once it grows.
      */
-    public byte[] bytes;
+    public volatile byte[] bytes;
 
     /** The mask to be used for hashing
      */
@@ -91,7 +93,7 @@ public class SharedNameTable extends Name.Table {
     }
 
     @Override
-    public Name fromChars(char[] cs, int start, int len) {
+    public synchronized Name fromChars(char[] cs, int start, int len) {
         int nc = this.nc;
         byte[] bytes = this.bytes;
         while (nc + len * 3 >= bytes.length) {
@@ -123,7 +125,7 @@ public class SharedNameTable extends Name.Table {
     }
 
     @Override
-    public Name fromUtf(byte[] cs, int start, int len) {
+    public synchronized Name fromUtf(byte[] cs, int start, int len) {
         int h = hashValue(cs, start, len) & hashMask;
         NameImpl n = hashes[h];
         byte[] names = this.bytes;
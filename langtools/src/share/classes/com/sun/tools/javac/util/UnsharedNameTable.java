@@ -78,14 +78,14 @@ public class UnsharedNameTable extends Name.Table {
 
 
     @Override
-    public Name fromChars(char[] cs, int start, int len) {
+    public synchronized Name fromChars(char[] cs, int start, int len) {
         byte[] name = new byte[len * 3];
         int nbytes = Convert.chars2utf(cs, start, name, 0, len);
         return fromUtf(name, 0, nbytes);
     }
 
     @Override
-    public Name fromUtf(byte[] cs, int start, int len) {
+    public synchronized Name fromUtf(byte[] cs, int start, int len) {
         int h = hashValue(cs, start, len) & hashMask;
 
         HashEntry element = hashes[h];
@@ -70,6 +70,7 @@ public class CompileTool implements Plugin{
     private String user;
     private String pass;
     private boolean verbose = false;
+    private boolean incremental = false;
 
     public CompileTool() {
     }
@@ -126,6 +127,13 @@ public class CompileTool implements Plugin{
         this.verbose = verbose;
     }
     
+    @Option
+    @Description("Only recompile the units which changed, or which depend " +
+            "on a declaration whose API changed, since the last compilation.")
+    public void setIncremental(boolean incremental) {
+        this.incremental = incremental;
+    }
+    
     /** 
      * We collect any other arguments.
      * Long options of the form {@code --javac:<option>}  
@@ -156,6 +164,10 @@ public class CompileTool implements Plugin{
             arguments.add("-verbose");
         }
         
+        if (incremental) {
+            arguments.add("-incremental");
+        }
+        
         arguments.add("-out");
         arguments.add(out.getPath());
         
@@ -1918,6 +1918,46 @@ public abstract class AbstractTransformer implements Transformation {
         }
     }
 
+    /**
+     * Returns true if {@link #makeJavaArray(List, ProducedType, BoxingStrategy)}
+     * can make the Java array for the given sequence type, that is if
+     * {@link #sequenceToJavaArray(JCExpression, ProducedType, BoxingStrategy, ProducedType)}
+     * would have converted it to an array of the element type
+     */
+    boolean canMakeJavaArray(ProducedType sequenceType, BoxingStrategy boxingStrategy) {
+        ProducedType type = typeFact().getIteratedType(sequenceType);
+        if (type == null) {
+            return false;
+        }
+        if (boxingStrategy == BoxingStrategy.UNBOXED) {
+            return isCeylonInteger(type)
+                    || isCeylonFloat(type)
+                    || (isCeylonCharacter(type) && "char".equals(type.getUnderlyingType()))
+                    || isCeylonBoolean(type)
+                    || isJavaString(type);
+        }
+        return true;
+    }
+
+    /**
+     * Makes the Java array for a variadic parameter straight from its elements,
+     * rather than making a sequence and turning it into an array with 
+     * {@link #sequenceToJavaArray(JCExpression, ProducedType, BoxingStrategy, ProducedType)}
+     * @param elems the elements, transformed with the given boxing strategy
+     * @param sequenceType the sequence type
+     * @param boxingStrategy the boxing strategy for the elements
+     */
+    JCExpression makeJavaArray(List<JCExpression> elems, ProducedType sequenceType, BoxingStrategy boxingStrategy) {
+        ProducedType type = typeFact().getIteratedType(sequenceType);
+        JCExpression elemTypeExpr;
+        if (boxingStrategy == BoxingStrategy.UNBOXED) {
+            elemTypeExpr = makeJavaType(type);
+        } else {
+            elemTypeExpr = makeJavaType(type, AbstractTransformer.JT_CLASS_NEW | AbstractTransformer.JT_NO_PRIMITIVES);
+        }
+        return make().NewArray(elemTypeExpr, List.<JCExpression>nil(), elems);
+    }
+
     private JCExpression objectVariadicToJavaArray(ProducedType type,
             ProducedType sequenceType, JCExpression expr, ProducedType exprType) {
         if(typeFact().getFixedSizedType(exprType) != null){
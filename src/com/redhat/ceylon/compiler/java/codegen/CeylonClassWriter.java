@@ -52,14 +52,12 @@ public class CeylonClassWriter extends ClassWriter {
     }
 
     @Override
-    public JavaFileObject writeClass(ClassSymbol c) throws IOException,
-            PoolOverflow, StringOverflow {
+    protected JavaFileObject getClassOutputFile(ClassSymbol c) throws IOException {
         String packageName = c.packge().getQualifiedName().toString();
         Package pkg = ceylonModelLoader.findPackage(packageName);
         if(pkg == null)
             throw new RuntimeException("Failed to find package: "+packageName);
         Module module = pkg.getModule();
-        fileManager.setModule(module);
-        return super.writeClass(c);
+        return fileManager.getClassFileForOutput(module, c.flatname.toString(), c.sourcefile);
     }
 }
@@ -111,6 +111,14 @@ public class CeylonTransformer extends AbstractTransformer {
         return topLev;
     }
 
+    /**
+     * Numbers temporary names and aliases from zero again, so that the code we
+     * generate for a unit does not depend on the units transformed before it.
+     */
+    public void resetUniqueIds() {
+        naming.resetUniqueIds();
+    }
+
     /**
      * This runs after _some_ typechecking has been done
      */
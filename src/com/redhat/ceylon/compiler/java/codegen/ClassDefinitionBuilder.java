@@ -25,6 +25,7 @@ import static com.sun.tools.javac.code.Flags.INTERFACE;
 import static com.sun.tools.javac.code.Flags.PRIVATE;
 import static com.sun.tools.javac.code.Flags.PROTECTED;
 import static com.sun.tools.javac.code.Flags.PUBLIC;
+import static com.sun.tools.javac.code.Flags.STATIC;
 
 import com.redhat.ceylon.compiler.typechecker.model.Annotation;
 import com.redhat.ceylon.compiler.typechecker.model.Declaration;
@@ -89,6 +90,8 @@ public class ClassDefinitionBuilder {
     private boolean built = false;
     
     private boolean isCompanion = false;
+    
+    private int callableHolders = 0;
 
     private ClassDefinitionBuilder containingClassBuilder;
 
@@ -204,6 +207,31 @@ public class ClassDefinitionBuilder {
     private void also(JCTree also) {
         this.also.append(also);
     }
+    
+    /**
+     * Declares a holder class next to the toplevel class being built, with a
+     * single static field initialized with the given callable, and returns an
+     * expression reading that field. The JVM only initializes the holder, and 
+     * so creates the callable, the first time the field is read:
+     * <pre>
+     * final class TOPLEVEL$callable$N {
+     *     static final TYPE $instance = CALLABLE;
+     * }
+     * </pre>
+     */
+    public JCExpression callableHolder(JCExpression type, JCExpression callable) {
+        ClassDefinitionBuilder topLevel = getTopLevelBuilder();
+        Name holderName = gen.names().fromString(topLevel.name + "$callable$" + topLevel.callableHolders++);
+        Name fieldName = gen.names().fromString("$instance");
+        JCTree field = gen.make().VarDef(gen.make().Modifiers(STATIC | FINAL), fieldName, type, callable);
+        topLevel.also(gen.make().ClassDef(gen.make().Modifiers(FINAL, gen.makeAtIgnore()), 
+                holderName, 
+                List.<JCTypeParameter>nil(), 
+                null, 
+                List.<JCExpression>nil(), 
+                List.<JCTree>of(field)));
+        return gen.make().Select(gen.make().Ident(holderName), fieldName);
+    }
 
     private void appendDefinitionsTo(ListBuffer<JCTree> defs) {
         if ((modifiers & INTERFACE) == 0) {
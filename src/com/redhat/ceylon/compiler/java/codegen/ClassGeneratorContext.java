@@ -0,0 +1,100 @@
+/*
+ * Copyright Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the authors tag. All rights reserved.
+ *
+ * This copyrighted material is made available to anyone wishing to use,
+ * modify, copy, or redistribute it subject to the terms and conditions
+ * of the GNU General Public License version 2.
+ * 
+ * This particular file is subject to the "Classpath" exception as provided in the 
+ * LICENSE file that accompanied this code.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT A
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE.  See the GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License,
+ * along with this distribution; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA  02110-1301, USA.
+ */
+package com.redhat.ceylon.compiler.java.codegen;
+
+import com.redhat.ceylon.compiler.java.tools.CeylonLog;
+import com.sun.tools.javac.code.Types;
+import com.sun.tools.javac.jvm.ClassWriter;
+import com.sun.tools.javac.jvm.Gen;
+import com.sun.tools.javac.tree.TreeMaker;
+import com.sun.tools.javac.util.Context;
+import com.sun.tools.javac.util.Log;
+
+/**
+ * A javac context for a bytecode generation worker thread. {@link Gen} and the
+ * {@link ClassWriter} hold the constant pool and the buffers of the class being
+ * generated, the {@link Log} holds the current source file and {@link Types} has
+ * unsynchronised caches, so each worker gets its own. Everything else is shared
+ * with the compiler's context.
+ * <p>
+ * The log of a worker defers its diagnostics: they must be taken from
+ * {@link Log#deferredDiagnostics} after each class and reported to the compiler's
+ * log in the order of the classes, see {@link #getLog()}.
+ */
+public class ClassGeneratorContext extends Context {
+
+    private final Context parent;
+    private final Log log;
+    private final Types types;
+    private final Gen gen;
+    private final ClassWriter writer;
+
+    public ClassGeneratorContext(Context parent) {
+        this.parent = parent;
+        // create them now, so that the workers only ever read the shared context
+        log = CeylonLog.instance(this);
+        log.deferDiagnostics = true;
+        types = Types.instance(this);
+        gen = Gen.instance(this);
+        writer = CeylonClassWriter.instance(this);
+    }
+
+    public Log getLog() {
+        return log;
+    }
+
+    public Types getTypes() {
+        return types;
+    }
+
+    public Gen getGen() {
+        return gen;
+    }
+
+    public ClassWriter getClassWriter() {
+        return writer;
+    }
+
+    @Override
+    public <T> T get(Class<T> clazz) {
+        return parent.get(clazz);
+    }
+
+    @Override
+    public <T> void put(Class<T> clazz, T data) {
+        parent.put(clazz, data);
+    }
+
+    @Override
+    public <T> T get(Key<T> key) {
+        T local = super.get(key);
+        if (local != null)
+            return local;
+        T shared = parent.get(key);
+        // make the X.instance() methods create our own
+        if (shared instanceof Log
+                || shared instanceof Types
+                || shared instanceof Gen
+                || shared instanceof ClassWriter
+                || shared instanceof TreeMaker)
+            return null;
+        return shared;
+    }
+}
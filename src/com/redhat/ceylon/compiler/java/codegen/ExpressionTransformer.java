@@ -32,12 +32,14 @@ import com.redhat.ceylon.compiler.typechecker.model.Functional;
 import com.redhat.ceylon.compiler.typechecker.model.FunctionalParameter;
 import com.redhat.ceylon.compiler.typechecker.model.Getter;
 import com.redhat.ceylon.compiler.typechecker.model.Interface;
+import com.redhat.ceylon.compiler.typechecker.model.IntersectionType;
 import com.redhat.ceylon.compiler.typechecker.model.Method;
 import com.redhat.ceylon.compiler.typechecker.model.ProducedType;
 import com.redhat.ceylon.compiler.typechecker.model.Scope;
 import com.redhat.ceylon.compiler.typechecker.model.TypeDeclaration;
 import com.redhat.ceylon.compiler.typechecker.model.TypeParameter;
 import com.redhat.ceylon.compiler.typechecker.model.TypedDeclaration;
+import com.redhat.ceylon.compiler.typechecker.model.UnionType;
 import com.redhat.ceylon.compiler.typechecker.model.Value;
 import com.redhat.ceylon.compiler.typechecker.tree.Node;
 import com.redhat.ceylon.compiler.typechecker.tree.Tree;
@@ -630,6 +632,9 @@ public class ExpressionTransformer extends AbstractTransformer {
     public JCExpression transform(Tree.SequenceEnumeration value) {
         at(value);
         if (value.getComprehension() != null) {
+            if (isFusableComprehension(value.getComprehension())) {
+                return transformComprehensionToSequence(value.getComprehension(), value.getTypeModel());
+            }
             return make().Apply(null, makeSelect(transformComprehension(value.getComprehension()), "getSequence"), 
                     List.<JCExpression>nil());
         } else if (value.getSequencedArgument() != null) {
@@ -1394,7 +1399,74 @@ public class ExpressionTransformer extends AbstractTransformer {
 
     public JCExpression transformFunctional(Tree.Term expr,
             Functional functional) {
-        return CallableBuilder.methodReference(gen(), expr, functional.getParameterLists().get(0)).build();
+        JCExpression callable = CallableBuilder.methodReference(gen(), expr, functional.getParameterLists().get(0)).build();
+        if (current() != null
+                && isNonCapturingReference(expr)) {
+            // it does not capture anything, so one instance will do for every evaluation
+            return current().callableHolder(makeJavaType(expr.getTypeModel()), callable);
+        }
+        return callable;
+    }
+    
+    /**
+     * Determines whether the given reference to a functional only refers to 
+     * toplevel declarations: a toplevel method, or a method of a toplevel 
+     * object, whose type does not involve type parameters.
+     */
+    private boolean isNonCapturingReference(Tree.Term expr) {
+        Declaration decl;
+        if (expr instanceof Tree.BaseMemberExpression) {
+            decl = ((Tree.BaseMemberExpression)expr).getDeclaration();
+        } else if (expr instanceof Tree.QualifiedMemberExpression
+                && ((Tree.QualifiedMemberExpression)expr).getMemberOperator() instanceof Tree.MemberOp
+                && ((Tree.QualifiedMemberExpression)expr).getPrimary() instanceof Tree.BaseMemberExpression) {
+            Declaration primaryDecl = ((Tree.BaseMemberExpression)((Tree.QualifiedMemberExpression)expr).getPrimary()).getDeclaration();
+            if (!(primaryDecl instanceof Value)
+                    || !primaryDecl.isToplevel()
+                    || !((Value)primaryDecl).getType().getDeclaration().isAnonymous()) {
+                return false;
+            }
+            decl = ((Tree.QualifiedMemberExpression)expr).getDeclaration();
+            // the holder class can only call members which are not private
+            if (!decl.isShared()) {
+                return false;
+            }
+        } else {
+            return false;
+        }
+        return decl instanceof Method
+                && (decl.isToplevel() || expr instanceof Tree.QualifiedMemberExpression)
+                && !involvesTypeParameters(expr.getTypeModel());
+    }
+    
+    private boolean involvesTypeParameters(ProducedType type) {
+        if (type == null) {
+            return true;
+        }
+        TypeDeclaration declaration = type.getDeclaration();
+        if (declaration instanceof TypeParameter) {
+            return true;
+        }
+        if (declaration instanceof UnionType) {
+            for (ProducedType caseType : declaration.getCaseTypes()) {
+                if (involvesTypeParameters(caseType)) {
+                    return true;
+                }
+            }
+        } else if (declaration instanceof IntersectionType) {
+            for (ProducedType satisfiedType : declaration.getSatisfiedTypes()) {
+                if (involvesTypeParameters(satisfiedType)) {
+                    return true;
+                }
+            }
+        }
+        for (ProducedType typeArgument : type.getTypeArgumentList()) {
+            if (involvesTypeParameters(typeArgument)) {
+                return true;
+            }
+        }
+        return type.getQualifyingType() != null 
+                && involvesTypeParameters(type.getQualifyingType());
     }
 
     //
@@ -1484,6 +1556,12 @@ public class ExpressionTransformer extends AbstractTransformer {
                 returnArrayTypeExpr, 
                 List.<JCExpression>of(newArrayName.makeIdent()), null);
 
+        // iterator
+        Naming.SyntheticName srcIteratorName = varBaseName.suffixedBy("$6");
+        JCExpression srcIteratorType = makeJavaType(typeFact().getIteratorType(srcElementType));
+        JCExpression srcIteratorExpr = make().Apply(null, makeSelect(srcSequenceName.makeIdent(), "getIterator"), 
+                List.<JCExpression>nil());
+
         // for loop
         Name indexVarName = naming.aliasName("index");
         // int index = 0
@@ -1497,12 +1575,14 @@ public class ExpressionTransformer extends AbstractTransformer {
 
         // newArray[index]
         JCExpression dstArrayExpr = make().Indexed(newArrayName.makeIdent(), make().Ident(indexVarName));
-        // srcSequence.item(box(index))
-        // index is always boxed
-        JCExpression boxedIndex = boxType(make().Ident(indexVarName), typeFact().getIntegerDeclaration().getType());
-        JCExpression sequenceItemExpr = make().Apply(null, 
-                makeSelect(srcSequenceName.makeIdent(), "item"),
-                List.<JCExpression>of(boxedIndex));
+        // (T)srcIterator.next()
+        // the size is known so we don't need to check for exhausted, and unlike
+        // srcSequence.item(box(index)) it needs neither a lookup nor a boxed index
+        JCExpression sequenceItemExpr = make().Apply(null, makeSelect(srcIteratorName.makeIdent(), "next"), 
+                List.<JCExpression>nil());
+        if (!willEraseToObject(srcElementType)) {
+            sequenceItemExpr = make().TypeCast(makeJavaType(srcElementType, JT_NO_PRIMITIVES), sequenceItemExpr);
+        }
         // item.member
         sequenceItemExpr = applyErasureAndBoxing(sequenceItemExpr, srcElementType, true, BoxingStrategy.BOXED, 
                 expr.getTarget().getQualifyingType());
@@ -1532,6 +1612,7 @@ public class ExpressionTransformer extends AbstractTransformer {
                 srcSequenceTypeExpr, srcSequenceExpr,
                 sizeType, sizeExpr,
                 newArrayType, newArrayExpr,
+                srcIteratorType, srcIteratorExpr,
                 returnArray);
         
         JCExpression resultExpr;
@@ -2209,6 +2290,159 @@ public class ExpressionTransformer extends AbstractTransformer {
         return iterable;
     }
 
+    /**
+     * Returns true if the given comprehension only has clauses which
+     * {@link #transformComprehensionToSequence(Comprehension, ProducedType)}
+     * can fuse into plain loops: iterators, and boolean conditions, which
+     * don't declare variables.
+     */
+    private boolean isFusableComprehension(Comprehension comp) {
+        Tree.ComprehensionClause clause = comp.getForComprehensionClause();
+        while (clause != null) {
+            if (clause instanceof ForComprehensionClause) {
+                Tree.ForIterator iterator = ((ForComprehensionClause)clause).getForIterator();
+                if (!(iterator instanceof ValueIterator)
+                        && !(iterator instanceof KeyValueIterator)) {
+                    return false;
+                }
+                clause = ((ForComprehensionClause)clause).getComprehensionClause();
+            } else if (clause instanceof IfComprehensionClause) {
+                if (!(((IfComprehensionClause)clause).getCondition() instanceof BooleanCondition)) {
+                    return false;
+                }
+                clause = ((IfComprehensionClause)clause).getComprehensionClause();
+            } else {
+                return clause instanceof ExpressionComprehensionClause;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Transforms a comprehension whose elements are all needed at once into
+     * the sequence of its elements. Rather than creating the Iterable and
+     * Iterator of {@link #transformComprehension(Comprehension)} we fuse its
+     * clauses into nested loops and ifs which add each element to a list:
+     * <pre>
+     * (let ArrayList&lt;Object> $elems$X = new ArrayList&lt;Object>();
+     *      Object $elem$X;
+     *      for (Iterator&lt;T> $x$iter$X = ITERABLE.getIterator(); !(($elem$X = $x$iter$X.next()) instanceof Finished); ) {
+     *          final T $x$X = (T)$elem$X;
+     *          if (COND) {
+     *              $elems$X.add(EXPR);
+     *          }
+     *      }
+     *  returning (T[])($elems$X.isEmpty() ? empty : new ArraySequence($elems$X.toArray()));)
+     * </pre>
+     */
+    private JCExpression transformComprehensionToSequence(Comprehension comp, ProducedType sequenceType) {
+        at(comp);
+        Naming.SyntheticName elemsName = naming.alias("elems");
+        ProducedType elemType = typeFact().getIteratedType(sequenceType);
+        List<JCStatement> loops = transformFusedClause(comp.getForComprehensionClause(), elemsName, elemType);
+        at(comp);
+        JCExpression toArray = make().Apply(null, makeSelect(elemsName.makeIdent(), "toArray"), List.<JCExpression>nil());
+        JCExpression sequence = make().NewClass(null, null, make().QualIdent(syms().ceylonArraySequenceType.tsym), 
+                List.<JCExpression>of(toArray), null);
+        JCExpression result = make().TypeCast(makeJavaType(sequenceType), 
+                make().Conditional(make().Apply(null, makeSelect(elemsName.makeIdent(), "isEmpty"), List.<JCExpression>nil()), 
+                        makeEmpty(), sequence));
+        return makeLetExpr(elemsName, loops, 
+                makeElementList(), make().NewClass(null, null, makeElementList(), List.<JCExpression>nil(), null), 
+                result);
+    }
+
+    private JCExpression makeElementList() {
+        return make().TypeApply(makeQuotedFQIdent("java.util.ArrayList"), 
+                List.<JCExpression>of(make().Type(syms().objectType)));
+    }
+
+    /**
+     * Transforms the given comprehension clause, and the clauses it contains,
+     * into the statements adding its elements to the given list.
+     */
+    private List<JCStatement> transformFusedClause(Tree.ComprehensionClause clause, 
+            Naming.SyntheticName elemsName, ProducedType elemType) {
+        if (clause instanceof ForComprehensionClause) {
+            ForComprehensionClause fcl = (ForComprehensionClause)clause;
+            Tree.ForIterator iterator = fcl.getForIterator();
+            at(fcl);
+            // java.lang.Object $elem$X;
+            Naming.SyntheticName elemName = naming.alias("elem");
+            JCVariableDecl elemDecl = make().VarDef(make().Modifiers(0), elemName.asName(), make().Type(syms().objectType), null);
+
+            java.util.List<Value> vars = new LinkedList<Value>();
+            if (iterator instanceof ValueIterator) {
+                vars.add(((ValueIterator)iterator).getVariable().getDeclarationModel());
+            } else {
+                vars.add(((KeyValueIterator)iterator).getKeyVariable().getDeclarationModel());
+                vars.add(((KeyValueIterator)iterator).getValueVariable().getDeclarationModel());
+            }
+
+            // .ceylon.language.Iterator<T> $V$iter$X = ITERABLE.getIterator();
+            SpecifierExpression specexpr = iterator.getSpecifierExpression();
+            ProducedType itemType = typeFact().getIteratedType(specexpr.getExpression().getTypeModel());
+            Name iterName = naming.aliasName(vars.get(0).getName() + "$iter");
+            JCVariableDecl iterDecl = make().VarDef(make().Modifiers(0), iterName, 
+                    makeJavaType(typeFact().getIteratorType(itemType)),
+                    make().Apply(null, makeSelect(transformExpression(specexpr.getExpression()), "getIterator"), 
+                            List.<JCExpression>nil()));
+
+            // final T $v$X = (T)$elem$X;
+            // or
+            // final K $k$X = (K)((Entry<K,V>)$elem$X).getKey();
+            // final V $v$X = (V)((Entry<K,V>)$elem$X).getItem();
+            // The loop variables get fresh names, so they can't clash with
+            // locals of the enclosing method
+            ListBuffer<JCStatement> loopBody = ListBuffer.lb();
+            String[] prevSubsts = new String[vars.size()];
+            for (int ii = 0; ii < vars.size(); ii++) {
+                Value var = vars.get(ii);
+                JCExpression init;
+                if (iterator instanceof ValueIterator) {
+                    init = elemName.makeIdent();
+                } else {
+                    JCExpression castEntryExpr = make().TypeCast(makeJavaType(itemType), elemName.makeIdent());
+                    init = make().Apply(null, makeSelect(castEntryExpr, ii == 0 ? "getKey" : "getItem"), 
+                            List.<JCExpression>nil());
+                }
+                Name substVarName = naming.aliasName(var.getName());
+                loopBody.append(make().VarDef(make().Modifiers(Flags.FINAL), substVarName, 
+                        makeJavaType(var.getType(), JT_NO_PRIMITIVES), 
+                        make().TypeCast(makeJavaType(var.getType(), JT_NO_PRIMITIVES), init)));
+                prevSubsts[ii] = naming.addVariableSubst(var.getName(), substVarName.toString());
+            }
+            loopBody.appendList(transformFusedClause(fcl.getComprehensionClause(), elemsName, elemType));
+            for (int ii = vars.size() - 1; ii >= 0; ii--) {
+                naming.removeVariableSubst(vars.get(ii).getName(), prevSubsts[ii]);
+            }
+
+            at(fcl);
+            // !(($elem$X = $V$iter$X.next()) instanceof Finished)
+            JCExpression next = make().Apply(null, makeSelect(make().Ident(iterName), "next"), List.<JCExpression>nil());
+            JCExpression cond = make().Unary(JCTree.NOT, 
+                    make().TypeTest(make().Assign(elemName.makeIdent(), next), make().Type(syms().ceylonFinishedType)));
+            return List.<JCStatement>of(elemDecl, 
+                    make().ForLoop(List.<JCStatement>of(iterDecl), cond, List.<JCExpressionStatement>nil(), 
+                            make().Block(0, loopBody.toList())));
+
+        } else if (clause instanceof IfComprehensionClause) {
+            IfComprehensionClause icl = (IfComprehensionClause)clause;
+            BooleanCondition cond = (BooleanCondition)icl.getCondition();
+            JCExpression test = transformExpression(cond.getExpression(), 
+                    BoxingStrategy.UNBOXED, typeFact().getBooleanDeclaration().getType());
+            List<JCStatement> body = transformFusedClause(icl.getComprehensionClause(), elemsName, elemType);
+            return List.<JCStatement>of(at(icl).If(test, make().Block(0, body), null));
+
+        } else {
+            // $elems$X.add(EXPR);
+            ExpressionComprehensionClause excc = (ExpressionComprehensionClause)clause;
+            JCExpression elem = transformExpression(excc.getExpression(), BoxingStrategy.BOXED, elemType);
+            return List.<JCStatement>of(at(excc).Exec(make().Apply(null, 
+                    makeSelect(elemsName.makeIdent(), "add"), List.<JCExpression>of(elem))));
+        }
+    }
+
     //
     // Type helper functions
 
@@ -523,7 +523,23 @@ abstract class SimpleInvocationBuilder extends InvocationBuilder {
             int flags = 0;
             if(!isParameterRaw(argIndex))
                 flags |= ExpressionTransformer.EXPR_EXPECTED_TYPE_NOT_RAW;
-            JCExpression ret = gen.expressionGen().transformExpression(expr, 
+            if(isParameterSequenced(argIndex)
+                    && isJavaMethod()
+                    && dontBoxSequence()){
+                java.util.List<Tree.Expression> elems = getEnumeratedElements(expr);
+                if(elems != null
+                        && gen.canMakeJavaArray(type, boxingStrategy)){
+                    // {a, b, c}... : no need to make a sequence only to turn it into an array
+                    ProducedType elemType = gen.typeFact().getIteratedType(type);
+                    ListBuffer<JCExpression> arrayElems = ListBuffer.lb();
+                    for(Tree.Expression elem : elems){
+                        arrayElems.append(gen.expressionGen().transformExpression(elem,
+                                boxingStrategy, elemType, flags));
+                    }
+                    return gen.makeJavaArray(arrayElems.toList(), type, boxingStrategy);
+                }
+            }
+            JCExpression ret = gen.expressionGen().transformExpression(expr,
                     boxingStrategy, 
                     type, flags);
             if(isParameterSequenced(argIndex)
@@ -543,6 +559,29 @@ abstract class SimpleInvocationBuilder extends InvocationBuilder {
                     type);
         }
     }
+
+    /**
+     * Returns the elements of the given argument if it is a sequence
+     * enumeration listing them, such as {@code {a, b, c}} or {@code {}},
+     * and null otherwise
+     */
+    private java.util.List<Tree.Expression> getEnumeratedElements(Tree.Term expr) {
+        Tree.Term term = expr instanceof Tree.Expression ? ((Tree.Expression)expr).getTerm() : expr;
+        if (!(term instanceof Tree.SequenceEnumeration)) {
+            return null;
+        }
+        Tree.SequenceEnumeration enumeration = (Tree.SequenceEnumeration)term;
+        if (enumeration.getComprehension() != null) {
+            return null;
+        }
+        if (enumeration.getSequencedArgument() == null) {
+            return java.util.Collections.<Tree.Expression>emptyList();
+        }
+        if (enumeration.getSequencedArgument().getEllipsis() != null) {
+            return null;
+        }
+        return enumeration.getSequencedArgument().getExpressionList().getExpressions();
+    }
     
 }
 
@@ -897,6 +897,16 @@ public class Naming implements LocalId {
         return id.nextId();
     }
     
+    /**
+     * Numbers temporary names from zero again.
+     */
+    void resetUniqueIds() {
+        UniqueId id = context.get(UniqueId.class);
+        if (id != null) {
+            id.id = 0;
+        }
+    }
+    
     private String newTemp() {
         String result = "$ceylontmp" + nextUniqueId();
         return result;
@@ -294,6 +294,12 @@ public class StatementTransformer extends AbstractTransformer {
             currentForFailVariable = null;
         }
 
+        Tree.RangeOp range = getIntegerRange(stmt);
+        if (range != null) {
+            outer = outer.appendList(transformCountedLoop(stmt, range));
+            return transformForElse(stmt, outer, tempForFailVariable);
+        }
+
         // java.lang.Object $elem$X;
         Naming.SyntheticName elem_name = naming.alias("elem");
         JCVariableDecl elem_decl = make().VarDef(make().Modifiers(0), elem_name.asName(), make().Type(syms().objectType), null);
@@ -327,13 +333,31 @@ public class StatementTransformer extends AbstractTransformer {
         JCExpression cast_elem = at(stmt).TypeCast(makeJavaType(sequence_element_type, CeylonTransformer.JT_NO_PRIMITIVES), elem_name.makeIdent());
         List<JCAnnotation> annots = makeJavaTypeAnnotations(variable.getDeclarationModel());
 
-        // ceylon.language.Iterator<T> $V$iter$X = ITERABLE.getIterator();
-        // We don't need to unerase here as anything remotely a sequence will be erased to Iterable, which has getIterator()
-        JCExpression containment = expressionGen().transformExpression(specifierExpression, BoxingStrategy.BOXED, null);
-        JCExpression getIter = at(stmt).Apply(null, makeSelect(containment, "getIterator"), List.<JCExpression> nil());
-        getIter = gen().expressionGen().applyErasureAndBoxing(getIter, specifierExpression.getTypeModel(), true, BoxingStrategy.BOXED, iter_type);
-        JCVariableDecl iter_decl = at(stmt).VarDef(make().Modifiers(0), naming.aliasName(loop_var_name + "$iter"), iter_type_expr, getIter);
-        String iter_id = iter_decl.getName().toString();
+        java.util.List<Tree.Expression> elements = getEnumeratedElements(specifierExpression);
+        JCVariableDecl iter_decl = null;
+        Naming.SyntheticName array_name = null;
+        Naming.SyntheticName index_name = null;
+        if (elements != null) {
+            // java.lang.Object[] $V$array$X = new java.lang.Object[]{ELEMENTS...};
+            // this is what the ArraySequence would have held, so we don't need it
+            array_name = naming.alias(loop_var_name + "$array");
+            index_name = naming.alias(loop_var_name + "$i");
+            ListBuffer<JCExpression> elems = new ListBuffer<JCExpression>();
+            for (Tree.Expression element : elements) {
+                // no need for erasure casts here
+                elems.append(expressionGen().transformExpression(element));
+            }
+            JCExpression array_type = make().TypeArray(make().Type(syms().objectType));
+            JCExpression array = make().NewArray(make().Type(syms().objectType), List.<JCExpression>nil(), elems.toList());
+            outer = outer.append(at(stmt).VarDef(make().Modifiers(0), array_name.asName(), array_type, array));
+        } else {
+            // ceylon.language.Iterator<T> $V$iter$X = ITERABLE.getIterator();
+            // We don't need to unerase here as anything remotely a sequence will be erased to Iterable, which has getIterator()
+            JCExpression containment = expressionGen().transformExpression(specifierExpression, BoxingStrategy.BOXED, null);
+            JCExpression getIter = at(stmt).Apply(null, makeSelect(containment, "getIterator"), List.<JCExpression> nil());
+            getIter = gen().expressionGen().applyErasureAndBoxing(getIter, specifierExpression.getTypeModel(), true, BoxingStrategy.BOXED, iter_type);
+            iter_decl = at(stmt).VarDef(make().Modifiers(0), naming.aliasName(loop_var_name + "$iter"), iter_type_expr, getIter);
+        }
         
         // final U n = $elem$X;
         // or
@@ -365,7 +389,27 @@ public class StatementTransformer extends AbstractTransformer {
         // The user-supplied contents of the loop
         for_loop = for_loop.appendList(transformStmts(stmt.getForClause().getBlock().getStatements()));
         
+        if (elements != null) {
+            // $elem$X = $V$array$X[$V$i$X];
+            for_loop = for_loop.prepend(make().Exec(make().Assign(elem_name.makeIdent(), 
+                    make().Indexed(array_name.makeIdent(), index_name.makeIdent()))));
+            // for (int $V$i$X = 0; $V$i$X < $V$array$X.length; $V$i$X++) {
+            JCVariableDecl index_decl = make().VarDef(make().Modifiers(0), index_name.asName(), make().TypeIdent(TypeTags.INT), 
+                    make().Literal(0));
+            JCExpression cond = make().Binary(JCTree.LT, index_name.makeIdent(), 
+                    make().Select(array_name.makeIdent(), names().length));
+            List<JCExpressionStatement> step = List.<JCExpressionStatement> of(make().Exec(
+                    make().Unary(JCTree.POSTINC, index_name.makeIdent())));
+            outer = outer.append(at(stmt).ForLoop(
+                    List.<JCStatement>of(index_decl), 
+                    cond, 
+                    step, 
+                    at(stmt).Block(0, for_loop)));
+            return transformForElse(stmt, outer, tempForFailVariable);
+        }
+        
         // $elem$X = $V$iter$X.next()
+        String iter_id = iter_decl.getName().toString();
         JCExpression iter_elem = make().Apply(null, makeSelect(iter_id, "next"), List.<JCExpression> nil());
         JCExpression elem_assign = make().Assign(elem_name.makeIdent(), iter_elem);
         // !(($elem$X = $V$iter$X.next()) instanceof Finished)
@@ -382,6 +426,14 @@ public class StatementTransformer extends AbstractTransformer {
 	        step, 
 	        at(stmt).Block(0, for_loop)));
 
+        return transformForElse(stmt, outer, tempForFailVariable);
+    }
+
+    /**
+     * Appends the else clause of the given for statement to the given statements, if it
+     * has one, and restores the fail variable of the enclosing for statement.
+     */
+    private List<JCStatement> transformForElse(Tree.ForStatement stmt, List<JCStatement> outer, Name tempForFailVariable) {
         if (stmt.getElseClause() != null) {
             // The user-supplied contents of fail block
             List<JCStatement> failblock = transformStmts(stmt.getElseClause().getBlock().getStatements());
@@ -399,6 +451,121 @@ public class StatementTransformer extends AbstractTransformer {
         return outer;
     }
 
+    /**
+     * Returns the range operator the given for statement iterates over, if it is a range of
+     * Integers we can iterate over without creating a Range, otherwise null.
+     */
+    private Tree.RangeOp getIntegerRange(Tree.ForStatement stmt) {
+        ForIterator iterDecl = stmt.getForClause().getForIterator();
+        if (!(iterDecl instanceof ValueIterator))
+            return null;
+        Tree.Term term = iterDecl.getSpecifierExpression().getExpression();
+        while (term instanceof Tree.Expression) {
+            term = ((Tree.Expression)term).getTerm();
+        }
+        if (!(term instanceof Tree.RangeOp))
+            return null;
+        Tree.RangeOp range = (Tree.RangeOp)term;
+        if (!isCeylonInteger(range.getLeftTerm().getTypeModel())
+                || !isCeylonInteger(range.getRightTerm().getTypeModel()))
+            return null;
+        return range;
+    }
+
+    /**
+     * Returns the elements of the given iterated expression if it is a sequence
+     * enumeration listing at least one of them, such as {@code {a, b, c}}, which we
+     * can iterate over as an array instead of creating an ArraySequence, and null
+     * otherwise.
+     */
+    private java.util.List<Tree.Expression> getEnumeratedElements(Tree.Term expr) {
+        Tree.Term term = expr;
+        while (term instanceof Tree.Expression) {
+            term = ((Tree.Expression)term).getTerm();
+        }
+        if (!(term instanceof Tree.SequenceEnumeration))
+            return null;
+        Tree.SequenceEnumeration enumeration = (Tree.SequenceEnumeration)term;
+        if (enumeration.getComprehension() != null
+                || enumeration.getSequencedArgument() == null
+                || enumeration.getSequencedArgument().getEllipsis() != null)
+            return null;
+        return enumeration.getSequencedArgument().getExpressionList().getExpressions();
+    }
+
+    /**
+     * Lowers a for statement over a range of Integers to a counted loop over a
+     * primitive long, so that we neither create the Range nor box its elements.
+     * Like a Range, it counts down if the first element is greater than the last:
+     * <pre>
+     * long $V$i$X = FIRST;
+     * long $V$last$X = LAST;
+     * long $V$step$X = $V$i$X <= $V$last$X ? 1L : -1L;
+     * boolean $V$done$X = false;
+     * for (; !$V$done$X; $V$i$X += $V$step$X) {
+     *     $V$done$X = $V$i$X == $V$last$X;
+     *     final long V = $V$i$X;
+     *     ...
+     * }
+     * </pre>
+     * We test for the last element before running the body so that a {@code continue}
+     * cannot skip the test. The step after the last element may overflow, but its
+     * value is never used.
+     */
+    private List<JCStatement> transformCountedLoop(Tree.ForStatement stmt, Tree.RangeOp range) {
+        Variable variable = ((ValueIterator) stmt.getForClause().getForIterator()).getVariable();
+        String loop_var_name = variable.getIdentifier().getText();
+        ProducedType integerType = range.getLeftTerm().getTypeModel();
+        
+        at(stmt);
+        Naming.SyntheticName index_name = naming.alias(loop_var_name + "$i");
+        Naming.SyntheticName last_name = naming.alias(loop_var_name + "$last");
+        Naming.SyntheticName step_name = naming.alias(loop_var_name + "$step");
+        Naming.SyntheticName done_name = naming.alias(loop_var_name + "$done");
+        
+        // long $V$i$X = FIRST;
+        // long $V$last$X = LAST;
+        JCExpression first = expressionGen().transformExpression(range.getLeftTerm(), BoxingStrategy.UNBOXED, integerType);
+        JCExpression last = expressionGen().transformExpression(range.getRightTerm(), BoxingStrategy.UNBOXED, integerType);
+        List<JCStatement> outer = List.<JCStatement> of(
+                make().VarDef(make().Modifiers(0), index_name.asName(), make().TypeIdent(TypeTags.LONG), first),
+                make().VarDef(make().Modifiers(0), last_name.asName(), make().TypeIdent(TypeTags.LONG), last));
+        
+        // long $V$step$X = $V$i$X <= $V$last$X ? 1L : -1L;
+        JCExpression increasing = make().Binary(JCTree.LE, index_name.makeIdent(), last_name.makeIdent());
+        outer = outer.append(make().VarDef(make().Modifiers(0), step_name.asName(), make().TypeIdent(TypeTags.LONG), 
+                make().Conditional(increasing, make().Literal(1L), make().Literal(-1L))));
+        
+        // boolean $V$done$X = false;
+        outer = outer.append(make().VarDef(make().Modifiers(0), done_name.asName(), make().TypeIdent(TypeTags.BOOLEAN), 
+                make().Literal(TypeTags.BOOLEAN, 0)));
+        
+        // $V$done$X = $V$i$X == $V$last$X;
+        List<JCStatement> for_loop = List.<JCStatement> of(make().Exec(make().Assign(done_name.makeIdent(), 
+                make().Binary(JCTree.EQ, index_name.makeIdent(), last_name.makeIdent()))));
+        
+        // final long V = $V$i$X;
+        List<JCAnnotation> annots = makeJavaTypeAnnotations(variable.getDeclarationModel());
+        ProducedType loop_var_type = variable.getType().getTypeModel();
+        JCVariableDecl item_decl = at(stmt).VarDef(make().Modifiers(FINAL, annots), names().fromString(loop_var_name), makeJavaType(loop_var_type), 
+                boxUnboxIfNecessary(index_name.makeIdent(), false, integerType, CodegenUtil.getBoxingStrategy(variable.getDeclarationModel())));
+        for_loop = for_loop.append(item_decl);
+        
+        // The user-supplied contents of the loop
+        for_loop = for_loop.appendList(transformStmts(stmt.getForClause().getBlock().getStatements()));
+        
+        // for (; !$V$done$X; $V$i$X += $V$step$X) {
+        JCExpression cond = make().Unary(JCTree.NOT, done_name.makeIdent());
+        List<JCExpressionStatement> step = List.<JCExpressionStatement> of(make().Exec(
+                make().Assignop(JCTree.PLUS_ASG, index_name.makeIdent(), step_name.makeIdent())));
+        outer = outer.append(at(stmt).ForLoop(
+                List.<JCStatement> nil(), 
+                cond, 
+                step, 
+                at(stmt).Block(0, for_loop)));
+        return outer;
+    }
+
     // FIXME There is a similar implementation in ClassGen!
     public List<JCStatement> transform(AttributeDeclaration decl) {
         // If the attribute is really from a parameter then don't generate a local variable
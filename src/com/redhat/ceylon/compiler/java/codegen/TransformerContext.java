@@ -0,0 +1,93 @@
+/*
+ * Copyright Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the authors tag. All rights reserved.
+ *
+ * This copyrighted material is made available to anyone wishing to use,
+ * modify, copy, or redistribute it subject to the terms and conditions
+ * of the GNU General Public License version 2.
+ * 
+ * This particular file is subject to the "Classpath" exception as provided in the 
+ * LICENSE file that accompanied this code.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT A
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE.  See the GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License,
+ * along with this distribution; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA  02110-1301, USA.
+ */
+
+package com.redhat.ceylon.compiler.java.codegen;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import com.sun.tools.javac.tree.TreeMaker;
+import com.sun.tools.javac.util.Context;
+
+/**
+ * A javac context for a code generation worker thread. The transformers,
+ * {@link Naming} and the {@link TreeMaker} hold the state of the unit being
+ * transformed, so each worker gets its own. Everything else (symbols, names,
+ * the model loader, the log...) is shared with the compiler's context.
+ */
+public class TransformerContext extends Context {
+
+    private static final Set<Class<?>> perWorker = new HashSet<Class<?>>(Arrays.<Class<?>>asList(
+            CeylonTransformer.class,
+            ExpressionTransformer.class,
+            StatementTransformer.class,
+            ClassTransformer.class,
+            Naming.class,
+            Naming.UniqueId.class,
+            Naming.VarMapper.class));
+
+    private final Context parent;
+    private final CeylonTransformer gen;
+
+    public TransformerContext(Context parent) {
+        this.parent = parent;
+        // create them now, so that the workers only ever read the shared context
+        gen = CeylonTransformer.getInstance(this);
+        ExpressionTransformer.getInstance(this);
+        StatementTransformer.getInstance(this);
+        ClassTransformer.getInstance(this);
+    }
+
+    /**
+     * The transformer of this worker.
+     */
+    public CeylonTransformer getTransformer() {
+        return gen;
+    }
+
+    @Override
+    public <T> T get(Class<T> clazz) {
+        if (perWorker.contains(clazz))
+            return super.get(clazz);
+        return parent.get(clazz);
+    }
+
+    @Override
+    public <T> void put(Class<T> clazz, T data) {
+        if (perWorker.contains(clazz))
+            super.put(clazz, data);
+        else
+            parent.put(clazz, data);
+    }
+
+    @Override
+    public <T> T get(Key<T> key) {
+        T local = super.get(key);
+        if (local != null)
+            return local;
+        T shared = parent.get(key);
+        // the tree maker holds the current position, so TreeMaker.instance()
+        // must make one for this worker
+        if (shared instanceof TreeMaker)
+            return null;
+        return shared;
+    }
+}
@@ -0,0 +1,195 @@
+/*
+ * Copyright Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the authors tag. All rights reserved.
+ *
+ * This copyrighted material is made available to anyone wishing to use,
+ * modify, copy, or redistribute it subject to the terms and conditions
+ * of the GNU General Public License version 2.
+ *
+ * This particular file is subject to the "Classpath" exception as provided in the
+ * LICENSE file that accompanied this code.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT A
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE.  See the GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License,
+ * along with this distribution; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA  02110-1301, USA.
+ */
+package com.redhat.ceylon.compiler.java.launcher;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.net.ConnectException;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import com.redhat.ceylon.common.config.Repositories;
+import com.redhat.ceylon.common.tool.Java7Checker;
+
+/**
+ * Submits a compilation to a running {@link CompilerServer}, and falls back to
+ * compiling in this process if there is no server listening.
+ * <p>
+ * Since the server does not share our working directory, we make every path
+ * argument we know about absolute before sending it, and we add absolute
+ * {@code -src} and {@code -out} options when they are missing, so that the
+ * defaults (the {@code source} directory, and the output repository from our
+ * {@code .ceylon/config} or {@code modules}) and module names are resolved
+ * against our working directory rather than the server's. Every request starts
+ * with the token the server wrote to its token file, see {@link CompilerServer}.
+ */
+public class CompilerClient {
+
+    private static final List<String> pathOptions = Arrays.asList("-src", "-sourcepath", "-out", "-d", "-rep");
+    private static final List<String> pathListOptions = Arrays.asList("-classpath", "-cp");
+
+    private final int port;
+    private final String token;
+    private final PrintWriter out;
+    private final File cwd;
+
+    public CompilerClient(int port, String token, PrintWriter out) {
+        this(port, token, out, new File(System.getProperty("user.dir")));
+    }
+
+    /**
+     * Creates a client which resolves relative paths against the given
+     * working directory.
+     */
+    public CompilerClient(int port, String token, PrintWriter out, File cwd) {
+        this.port = port;
+        this.token = token;
+        this.out = out;
+        this.cwd = cwd.getAbsoluteFile();
+    }
+
+    /**
+     * Compiles on the server, returns the compiler's exit code.
+     * @throws ConnectException if no server is listening
+     */
+    public int compile(String[] args) throws IOException {
+        return send(absolutePaths(args, cwd));
+    }
+
+    /**
+     * Asks the server to stop.
+     */
+    public void shutdown() throws IOException {
+        send(new String[]{ CompilerServer.SHUTDOWN });
+    }
+
+    private int send(String[] args) throws IOException {
+        Socket socket = new Socket(InetAddress.getByName(null), port);
+        try{
+            PrintWriter writer = new PrintWriter(new OutputStreamWriter(socket.getOutputStream(), CompilerServer.ENCODING), true);
+            writer.println(token);
+            for(String arg : args)
+                writer.println(arg);
+            writer.println();
+            BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), CompilerServer.ENCODING));
+            String line;
+            while((line = reader.readLine()) != null){
+                if(line.startsWith(CompilerServer.EXIT_MARKER)){
+                    out.flush();
+                    return Integer.parseInt(line.substring(CompilerServer.EXIT_MARKER.length()));
+                }
+                out.println(line);
+            }
+            // the server went away before telling us how it went
+            out.flush();
+            return Main.EXIT_ABNORMAL;
+        }finally{
+            socket.close();
+        }
+    }
+
+    static String[] absolutePaths(String[] args, File cwd) {
+        List<String> ret = new ArrayList<String>(args.length + 4);
+        boolean hasSourcePath = false;
+        boolean hasOut = false;
+        for(int i=0;i<args.length;i++){
+            String arg = args[i];
+            String previous = i > 0 ? args[i-1] : null;
+            if(previous != null && pathOptions.contains(previous)){
+                ret.add(isURL(arg) ? arg : resolve(cwd, arg));
+                if(previous.equals("-src") || previous.equals("-sourcepath"))
+                    hasSourcePath = true;
+                else if(previous.equals("-out") || previous.equals("-d"))
+                    hasOut = true;
+            }else if(previous != null && pathListOptions.contains(previous)){
+                StringBuilder path = new StringBuilder();
+                for(String part : arg.split(File.pathSeparator)){
+                    if(path.length() > 0)
+                        path.append(File.pathSeparatorChar);
+                    path.append(part.isEmpty() ? part : resolve(cwd, part));
+                }
+                ret.add(path.toString());
+            }else if((arg.endsWith(".ceylon") || arg.endsWith(".java"))
+                    // could also be a module name
+                    && new File(resolve(cwd, arg)).isFile()){
+                ret.add(resolve(cwd, arg));
+            }else{
+                ret.add(arg);
+            }
+        }
+        // the compiler would resolve these defaults against the server's working directory
+        if(!hasSourcePath){
+            ret.add(0, "-src");
+            ret.add(1, resolve(cwd, "source"));
+        }
+        if(!hasOut){
+            String outRepo = Repositories.get().getOutputRepository().getUrl();
+            ret.add(0, "-out");
+            ret.add(1, isURL(outRepo) ? outRepo : resolve(cwd, outRepo));
+        }
+        return ret.toArray(new String[ret.size()]);
+    }
+
+    private static String resolve(File cwd, String path) {
+        File file = new File(path);
+        if(!file.isAbsolute())
+            file = new File(cwd, path);
+        return file.getAbsolutePath();
+    }
+
+    private static boolean isURL(String arg) {
+        return arg.contains("://");
+    }
+
+    /**
+     * Compiles the given arguments on the server listening on the port given by
+     * the {@code ceylon.compiler.server.port} system property, or in process if
+     * there is no such server or we cannot read its token.
+     */
+    public static void main(String[] args) throws Exception {
+        Java7Checker.check();
+        int port = Integer.getInteger("ceylon.compiler.server.port", CompilerServer.DEFAULT_PORT);
+        PrintWriter out = new PrintWriter(System.err, true);
+        int code;
+        String token;
+        try{
+            token = CompilerServer.readToken(CompilerServer.getDefaultTokenDir(), port);
+        }catch(IOException x){
+            token = null;
+        }
+        if(token == null){
+            code = com.redhat.ceylon.compiler.java.Main.compile(args, out);
+        }else{
+            try{
+                code = new CompilerClient(port, token, out).compile(args);
+            }catch(ConnectException x){
+                code = com.redhat.ceylon.compiler.java.Main.compile(args, out);
+            }
+        }
+        System.exit(code);
+    }
+}
@@ -0,0 +1,317 @@
+/*
+ * Copyright Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the authors tag. All rights reserved.
+ *
+ * This copyrighted material is made available to anyone wishing to use,
+ * modify, copy, or redistribute it subject to the terms and conditions
+ * of the GNU General Public License version 2.
+ *
+ * This particular file is subject to the "Classpath" exception as provided in the
+ * LICENSE file that accompanied this code.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT A
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE.  See the GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License,
+ * along with this distribution; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA  02110-1301, USA.
+ */
+package com.redhat.ceylon.compiler.java.launcher;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.redhat.ceylon.common.tool.Java7Checker;
+import com.redhat.ceylon.compiler.java.util.Timer;
+
+/**
+ * A long-lived compiler process which accepts compilation requests on a local
+ * socket, so that a sequence of builds only pays for JVM startup, compiler
+ * class loading and JIT warm-up once.
+ * <p>
+ * Every request gets a fresh javac {@code Context}, and with it a fresh
+ * {@code LanguageCompiler}, model loader and {@code PhasedUnits}: nothing that
+ * belongs to a compilation survives it. Requests are served one at a time,
+ * since parts of the compiler (such as {@link Timer}) are still static.
+ * <p>
+ * The protocol is line-based and UTF-8 encoded: the client sends one compiler
+ * argument per line followed by an empty line, and the server answers with the
+ * compiler output followed by a line starting with {@link #EXIT_MARKER} and the
+ * exit code. A request consisting of the single argument {@link #SHUTDOWN}
+ * stops the server. See {@link CompilerClient} for the client side.
+ * <p>
+ * Binding to the loopback interface is not enough to keep other local users
+ * from compiling (and so reading and writing files) as us, so every request
+ * must start with a line holding a random token which the server writes to a
+ * file only its owner can read, see {@link #getTokenFile(File, int)}.
+ */
+public class CompilerServer {
+
+    public static final int DEFAULT_PORT = 8898;
+    public static final String EXIT_MARKER = "#ceylonc-exit:";
+    public static final String SHUTDOWN = "#ceylonc-shutdown";
+
+    static final String ENCODING = "UTF-8";
+
+    private final int port;
+    private final File tokenDir;
+    private ServerSocket serverSocket;
+    private File tokenFile;
+    private String token;
+    private int compilations;
+
+    public CompilerServer(int port) {
+        this(port, getDefaultTokenDir());
+    }
+
+    /**
+     * Creates a server which writes its token file to the given directory.
+     */
+    public CompilerServer(int port, File tokenDir) {
+        this.port = port;
+        this.tokenDir = tokenDir;
+    }
+
+    /**
+     * Binds the server socket to the loopback interface, and writes the token
+     * clients have to send us. Only local clients which can read the token file
+     * may submit compilations.
+     */
+    public void bind() throws IOException {
+        serverSocket = new ServerSocket(port, 50, InetAddress.getByName(null));
+        try{
+            token = makeToken();
+            tokenFile = getTokenFile(tokenDir, getPort());
+            writeToken(tokenFile, token);
+        }catch(IOException x){
+            serverSocket.close();
+            throw x;
+        }
+    }
+
+    /**
+     * The directory where servers write their token files by default:
+     * {@code ~/.ceylon}.
+     */
+    public static File getDefaultTokenDir() {
+        return new File(System.getProperty("user.home"), ".ceylon");
+    }
+
+    /**
+     * The file where the server listening on the given port writes its token.
+     */
+    public static File getTokenFile(File tokenDir, int port) {
+        return new File(tokenDir, "compiler-server-"+port+".token");
+    }
+
+    /**
+     * Reads the token written by the server listening on the given port.
+     * @throws IOException if there is no such token file
+     */
+    public static String readToken(File tokenDir, int port) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(getTokenFile(tokenDir, port)), ENCODING));
+        try{
+            String line = reader.readLine();
+            return line != null ? line : "";
+        }finally{
+            reader.close();
+        }
+    }
+
+    private static String makeToken() {
+        byte[] bytes = new byte[32];
+        new SecureRandom().nextBytes(bytes);
+        StringBuilder ret = new StringBuilder(bytes.length * 2);
+        for(byte b : bytes)
+            ret.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+        return ret.toString();
+    }
+
+    /**
+     * Writes the token to a file only readable by its owner. On POSIX file
+     * systems the file is created with 0600 permissions so that it is never
+     * readable by anyone else, even before we write to it.
+     */
+    private static void writeToken(File file, String token) throws IOException {
+        File dir = file.getParentFile();
+        if(dir != null && !dir.isDirectory() && !dir.mkdirs())
+            throw new IOException("Could not create directory "+dir);
+        // a stale file left by a server which did not shut down cleanly
+        if(file.exists() && !file.delete())
+            throw new IOException("Could not delete stale token file "+file);
+        if(FileSystems.getDefault().supportedFileAttributeViews().contains("posix")){
+            Files.createFile(file.toPath(), PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------")));
+        }else{
+            if(!file.createNewFile())
+                throw new IOException("Could not create token file "+file);
+            file.setReadable(false, false);
+            file.setWritable(false, false);
+            file.setReadable(true, true);
+            file.setWritable(true, true);
+        }
+        OutputStream os = new FileOutputStream(file);
+        try{
+            os.write(token.getBytes(ENCODING));
+        }finally{
+            os.close();
+        }
+    }
+
+    /**
+     * Returns the port we are listening on, which is only different from the
+     * requested one when we were asked to pick any free port (0).
+     */
+    public int getPort() {
+        return serverSocket != null ? serverSocket.getLocalPort() : port;
+    }
+
+    /**
+     * Serves requests until we get a shutdown request or the socket is closed.
+     */
+    public void serve() throws IOException {
+        if(serverSocket == null)
+            bind();
+        try{
+            while(!serverSocket.isClosed()){
+                Socket socket;
+                try{
+                    socket = serverSocket.accept();
+                }catch(IOException x){
+                    if(serverSocket.isClosed())
+                        return;
+                    throw x;
+                }
+                try{
+                    if(!handle(socket))
+                        return;
+                }finally{
+                    socket.close();
+                }
+            }
+        }finally{
+            close();
+        }
+    }
+
+    public void close() throws IOException {
+        if(serverSocket != null)
+            serverSocket.close();
+        if(tokenFile != null){
+            tokenFile.delete();
+            tokenFile = null;
+        }
+    }
+
+    /**
+     * The token clients have to send, only valid once we are bound.
+     */
+    public String getToken() {
+        return token;
+    }
+
+    /**
+     * Handles a single request, returns false if we were asked to shut down.
+     */
+    private boolean handle(Socket socket) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), ENCODING));
+        PrintWriter out = new PrintWriter(new OutputStreamWriter(socket.getOutputStream(), ENCODING), true);
+        if(!isValidToken(reader.readLine())){
+            out.println("ceylonc: invalid compiler server token");
+            out.println(EXIT_MARKER + Main.EXIT_CMDERR);
+            return true;
+        }
+        List<String> args = new ArrayList<String>();
+        String line;
+        while((line = reader.readLine()) != null && !line.isEmpty())
+            args.add(line);
+        if(args.size() == 1 && args.get(0).equals(SHUTDOWN)){
+            out.println(EXIT_MARKER + Main.EXIT_OK);
+            return false;
+        }
+        int result = compile(args.toArray(new String[args.size()]), out);
+        out.println(EXIT_MARKER + result);
+        out.flush();
+        return true;
+    }
+
+    private boolean isValidToken(String clientToken) throws IOException {
+        if(clientToken == null)
+            return false;
+        // compare in constant time so the token cannot be guessed byte by byte
+        return MessageDigest.isEqual(token.getBytes(ENCODING), clientToken.getBytes(ENCODING));
+    }
+
+    private int compile(String[] args, PrintWriter out) {
+        compilations++;
+        Timer.init();
+        Main compiler = new Main("ceylonc", out);
+        try{
+            return compiler.compile(args);
+        }catch(Throwable t){
+            // we must survive anything a compilation can throw at us
+            t.printStackTrace(out);
+            return Main.EXIT_ABNORMAL;
+        }finally{
+            Timer.end();
+            out.flush();
+        }
+    }
+
+    /**
+     * The number of compilations served so far.
+     */
+    public int getCompilations() {
+        return compilations;
+    }
+
+    /**
+     * Starts a compiler server. The only supported argument is
+     * {@code -port <port>}, which defaults to {@link #DEFAULT_PORT}. The token
+     * is written to {@link #getDefaultTokenDir()}.
+     */
+    public static void main(String[] args) throws Exception {
+        int port = DEFAULT_PORT;
+        for(int i=0;i<args.length;i++){
+            if(args[i].equals("-port") && i+1 < args.length)
+                port = Integer.parseInt(args[++i]);
+            else{
+                System.err.println("Usage: "+CompilerServer.class.getName()+" [-port <port>]");
+                System.exit(Main.EXIT_CMDERR);
+            }
+        }
+        Java7Checker.check();
+        final CompilerServer server = new CompilerServer(port);
+        server.bind();
+        // do not leave the token file behind when killed
+        Runtime.getRuntime().addShutdownHook(new Thread(){
+            @Override
+            public void run() {
+                try {
+                    server.close();
+                } catch (IOException e) {
+                    // we are going away anyway
+                }
+            }
+        });
+        System.err.println("Ceylon compiler server listening on port "+server.getPort());
+        server.serve();
+    }
+}
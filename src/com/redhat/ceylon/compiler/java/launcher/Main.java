@@ -35,6 +35,7 @@ import java.io.IOException;
 import java.io.PrintWriter;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.util.Arrays;
 import java.util.EnumSet;
 import java.util.MissingResourceException;
 
@@ -46,12 +47,14 @@ import javax.tools.StandardLocation;
 
 import com.redhat.ceylon.compiler.java.tools.CeylonLog;
 import com.redhat.ceylon.compiler.java.tools.CeyloncFileManager;
+import com.redhat.ceylon.compiler.java.tools.DependencyGraph;
 import com.redhat.ceylon.compiler.java.tools.LanguageCompiler;
 import com.sun.tools.javac.code.Source;
 import com.sun.tools.javac.jvm.Target;
 import com.sun.tools.javac.main.CommandLine;
 import com.sun.tools.javac.main.JavaCompiler;
 import com.sun.tools.javac.main.JavacOption.Option;
+import com.sun.tools.javac.main.OptionName;
 import com.sun.tools.javac.main.RecognizedOptions;
 import com.sun.tools.javac.main.RecognizedOptions.OptionHelper;
 import com.sun.tools.javac.processing.AnnotationProcessingError;
@@ -60,6 +63,7 @@ import com.sun.tools.javac.util.Context;
 import com.sun.tools.javac.util.FatalError;
 import com.sun.tools.javac.util.JavacMessages;
 import com.sun.tools.javac.file.JavacFileManager;
+import com.sun.tools.javac.file.ZipFileIndexCache;
 import com.sun.tools.javac.util.List;
 import com.sun.tools.javac.util.ListBuffer;
 import com.sun.tools.javac.util.Log;
@@ -366,16 +370,40 @@ public class Main extends com.sun.tools.javac.main.Main {
      * @param args The command line parameters.
      */
     public int compile(String[] args) {
-        Context context = new Context();
-        CeyloncFileManager.preRegister(context); // can't create it until Log
-                                                 // has been set up
-        CeylonLog.preRegister(context);
-        int result = compile(args, context);
-        if (fileManager instanceof JavacFileManager) {
-            // A fresh context was created above, so jfm must be a
-            // JavacFileManager
-            ((JavacFileManager) fileManager).close();
-        }
+        boolean incremental = Arrays.asList(args).contains(OptionName.CEYLONINCREMENTAL.optionName);
+        int result;
+        int rounds = 0;
+        boolean again;
+        do {
+            Context context = new Context();
+            CeyloncFileManager.preRegister(context); // can't create it until Log
+                                                     // has been set up
+            CeylonLog.preRegister(context);
+            result = compile(args, context);
+            rounds++;
+            again = false;
+            if (fileManager instanceof JavacFileManager) {
+                // A fresh context was created above, so jfm must be a
+                // JavacFileManager
+                ((JavacFileManager) fileManager).close();
+                // units depending on an API we changed were marked stale in their
+                // module car: compile again to pick them up, this stops when a
+                // round changes no more API
+                again = incremental
+                        && result == EXIT_OK
+                        && fileManager instanceof CeyloncFileManager
+                        && ((CeyloncFileManager) fileManager).hasStaleUnits();
+            }
+            if (again && rounds == DependencyGraph.MAX_INCREMENTAL_ROUNDS) {
+                // never leave stale classes in the car without telling
+                Log.printLines(out, ownName + ": " + getLocalizedString("err.incremental.stale.units", rounds));
+                return EXIT_ERROR;
+            }
+            if (again) {
+                // we just rewrote cars which may be indexed in the shared cache
+                ZipFileIndexCache.getSharedInstance().clearCache();
+            }
+        } while (again);
         return result;
     }
 
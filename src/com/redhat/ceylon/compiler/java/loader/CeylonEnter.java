@@ -21,7 +21,16 @@
 package com.redhat.ceylon.compiler.java.loader;
 
 import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.LinkedBlockingQueue;
 
 import javax.tools.JavaFileManager;
 import javax.tools.StandardLocation;
@@ -37,11 +46,13 @@ import com.redhat.ceylon.compiler.java.codegen.CeylonTransformer;
 import com.redhat.ceylon.compiler.java.codegen.CodeGenError;
 import com.redhat.ceylon.compiler.java.codegen.CompilerBoxingDeclarationVisitor;
 import com.redhat.ceylon.compiler.java.codegen.CompilerBoxingVisitor;
+import com.redhat.ceylon.compiler.java.codegen.TransformerContext;
 import com.redhat.ceylon.compiler.java.tools.CeylonLog;
 import com.redhat.ceylon.compiler.java.tools.CeylonPhasedUnit;
 import com.redhat.ceylon.compiler.java.tools.CeyloncFileManager;
 import com.redhat.ceylon.compiler.java.tools.LanguageCompiler;
 import com.redhat.ceylon.compiler.java.tools.LanguageCompiler.PhasedUnitsManager;
+import com.redhat.ceylon.compiler.java.util.Parallel;
 import com.redhat.ceylon.compiler.java.util.Timer;
 import com.redhat.ceylon.compiler.loader.AbstractModelLoader;
 import com.redhat.ceylon.compiler.typechecker.TypeChecker;
@@ -100,6 +111,12 @@ public class CeylonEnter extends Enter {
     private JavaCompiler compiler;
     private boolean allowWarnings;
     private boolean verbose;
+    // -Xceylonparalleltypecheck only covers flow analysis and the ValueVisitor pass:
+    // declaration scanning, refinement and type analysis mutate the shared model in
+    // the typechecker, so they always run on the calling thread
+    private int typeCheckThreads;
+    private int transformThreads;
+    private Context context;
     
     protected CeylonEnter(Context context) {
         super(context);
@@ -122,6 +139,9 @@ public class CeylonEnter extends Enter {
         compiler = LanguageCompiler.instance(context);
         allowWarnings = com.redhat.ceylon.compiler.Util.allowWarnings(context);
         verbose = options.get(OptionName.VERBOSE) != null;
+        typeCheckThreads = options.get(OptionName.CEYLONPARALLELTYPECHECK) != null ? Parallel.getThreads(options) : 1;
+        transformThreads = options.get(OptionName.CEYLONPARALLELTRANSFORM) != null ? Parallel.getThreads(options) : 1;
+        this.context = context;
         
         // now superclass init
         init(context);
@@ -210,18 +230,23 @@ public class CeylonEnter extends Enter {
         // run the type checker
         Timer.startTask("Ceylon type checking");
         typeCheck();
+        Timer.startTask("Ceylon dependency collection");
+        collectDependencies();
         // some debugging
         //printModules();
         Timer.startTask("Ceylon code generation");
         /*
          * Here we convert the ceylon tree to its javac AST, after the typechecker has run
          */
+        if (transformThreads > 1) {
+            transformInParallel(trees);
+        }
         for (JCCompilationUnit tree : trees) {
             if (tree instanceof CeylonCompilationUnit) {
                 CeylonCompilationUnit ceylonTree = (CeylonCompilationUnit) tree;
-                gen.setMap(ceylonTree.lineMap);
-                gen.setFileObject(((CeylonPhasedUnit)ceylonTree.phasedUnit).getFileObject());
-                ceylonTree.defs = gen.transformAfterTypeChecking(ceylonTree.ceylonTree).toList();
+                if (transformThreads <= 1) {
+                    transform(gen, ceylonTree);
+                }
                 if(isVerbose("ast")){
                     System.err.println("Model tree for "+tree.getSourceFile());
                     System.err.println(ceylonTree.ceylonTree);
@@ -234,10 +259,104 @@ public class CeylonEnter extends Enter {
         }
         Timer.startTask("Ceylon error generation");
         printGeneratorErrors();
+        if (modelLoader instanceof CeylonModelLoader) {
+            // we are done loading declarations from the module cars
+            Timer.startTask("Ceylon model index");
+            ((CeylonModelLoader) modelLoader).saveModelIndexes();
+        }
         Timer.endTask();
         // write some stats
         if(verbose)
             modelLoader.printStats();
+        String metricsFile = options.get(OptionName.CEYLONLOADERMETRICS);
+        if(metricsFile != null)
+            writeLoaderMetrics(new File(metricsFile));
+    }
+
+    private void writeLoaderMetrics(File file) {
+        try{
+            File parent = file.getAbsoluteFile().getParentFile();
+            if(parent != null)
+                parent.mkdirs();
+            Writer writer = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+            try{
+                modelLoader.getMetrics().writeJson(writer);
+            }finally{
+                writer.close();
+            }
+        }catch(IOException x){
+            log.warning("ceylon", "Failed to write the model loader statistics to "+file+": "+x.getMessage());
+        }
+    }
+
+    private static void transform(CeylonTransformer gen, CeylonCompilationUnit ceylonTree) {
+        Timer.startSpan(ceylonTree.phasedUnit.getPathRelativeToSrcDir());
+        try {
+            // whether we transform in parallel or not, and on whichever worker
+            gen.resetUniqueIds();
+            gen.setMap(ceylonTree.lineMap);
+            gen.setFileObject(((CeylonPhasedUnit)ceylonTree.phasedUnit).getFileObject());
+            ceylonTree.defs = gen.transformAfterTypeChecking(ceylonTree.ceylonTree).toList();
+        } finally {
+            Timer.endSpan();
+        }
+    }
+
+    /**
+     * Transforms the units on several threads, each with its own transformers, which
+     * we take from a queue for each unit since the pool does not tell us which worker
+     * runs what.
+     */
+    private void transformInParallel(List<JCCompilationUnit> trees) {
+        final BlockingQueue<TransformerContext> workers = new LinkedBlockingQueue<TransformerContext>();
+        for (int i = 0; i < transformThreads; i++) {
+            workers.add(new TransformerContext(context));
+        }
+        java.util.List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+        for (JCCompilationUnit tree : trees) {
+            if (tree instanceof CeylonCompilationUnit) {
+                final CeylonCompilationUnit ceylonTree = (CeylonCompilationUnit) tree;
+                tasks.add(new Callable<Void>(){
+                    @Override
+                    public Void call() throws InterruptedException {
+                        TransformerContext worker = workers.take();
+                        try {
+                            transform(worker.getTransformer(), ceylonTree);
+                        } finally {
+                            workers.add(worker);
+                        }
+                        return null;
+                    }
+                });
+            }
+        }
+        try {
+            Parallel.invokeAll(transformThreads, tasks);
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Records the dependencies of every unit we compile, to be stored in the module car
+     * for incremental compilation.
+     */
+    private void collectDependencies() {
+        Set<Module> compiledModules = new HashSet<Module>();
+        for (PhasedUnit pu : phasedUnits.getPhasedUnits()) {
+            if (pu.getPackage() != null)
+                compiledModules.add(pu.getPackage().getModule());
+        }
+        for (PhasedUnit pu : phasedUnits.getPhasedUnits()) {
+            if (pu instanceof CeylonPhasedUnit
+                    && ((CeylonPhasedUnit) pu).getSourceSha1() != null
+                    && pu.getPackage() != null) {
+                fileManager.addDependencies(pu.getPackage().getModule(), pu.getPathRelativeToSrcDir(),
+                        DependencyVisitor.collect((CeylonPhasedUnit) pu, compiledModules));
+            }
+        }
     }
 
     private boolean isVerbose(String key) {
@@ -299,7 +418,78 @@ public class CeylonEnter extends Enter {
             log.error("ceylon", "Failed to find module "+module.getNameAsString()+"/"+module.getVersion()+" in repositories");
     }
 
-    private void typeCheck() {
+    public void removeModuleFromClassPath(Module module, ArtifactResult result) {
+        File artifact;
+        try {
+            artifact = result.artifact();
+        } catch (Exception e) {
+            // we could not have added it
+            return;
+        }
+        if(artifact == null)
+            return;
+        if(verbose)
+            Log.printLines(log.noticeWriter, "[Removing module from classpath: "+module.getNameAsString()+"/"+module.getVersion()+"]");
+        paths.getPathForLocation(StandardLocation.CLASS_PATH).remove(artifact);
+        // so that a new artifact at the same place gets read
+        fileManager.closeArchive(artifact);
+    }
+
+    /**
+     * Work done on a single unit during a type checking phase.
+     */
+    private abstract static class UnitPhase {
+        private final String name;
+        UnitPhase(String name) {
+            this.name = name;
+        }
+        abstract void run(PhasedUnit pu);
+        void runTimed(PhasedUnit pu) {
+            Timer.startSpan(name + " " + pu.getPathRelativeToSrcDir());
+            try {
+                run(pu);
+            } finally {
+                Timer.endSpan();
+            }
+        }
+    }
+
+    /**
+     * Runs the given phase over every unit, on several threads if we were asked to type
+     * check in parallel. Returns once the phase is done for every unit.
+     */
+    private void runPhase(Iterable<PhasedUnit> units, final UnitPhase phase) {
+        if (typeCheckThreads <= 1) {
+            for (PhasedUnit pu : units) {
+                phase.runTimed(pu);
+            }
+            return;
+        }
+        java.util.List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+        for (final PhasedUnit pu : units) {
+            tasks.add(new Callable<Void>(){
+                @Override
+                public Void call() {
+                    phase.runTimed(pu);
+                    return null;
+                }
+            });
+        }
+        try {
+            Parallel.invokeAll(typeCheckThreads, tasks);
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Runs the type checker phases over every unit. This is normally done by
+     * {@link #completeCeylonTrees(List)}, and is only public so that it can be
+     * measured on its own, after {@link #prepareForTypeChecking(List)}.
+     */
+    public void typeCheck() {
         final java.util.List<PhasedUnit> listOfUnits = phasedUnits.getPhasedUnits();
         
         for (PhasedUnit pu : listOfUnits) {
@@ -313,24 +503,40 @@ public class CeylonEnter extends Enter {
             pu.validateRefinement();
         }
         
-        for (PhasedUnit pu : listOfUnits) { 
-            pu.analyseTypes(); 
+        // type analysis infers the types of value and function declarations, which
+        // the units that use them read, so it must stay sequential
+        UnitPhase analyseTypes = new UnitPhase("analyseTypes"){
+            @Override
+            void run(PhasedUnit pu) {
+                pu.analyseTypes();
+            }
+        };
+        for (PhasedUnit pu : listOfUnits) {
+            analyseTypes.runTimed(pu);
         }
         
-        for (PhasedUnit pu : listOfUnits) { 
-            pu.analyseFlow();
-        }
+        // from here on every declaration type is known and the phases only record
+        // errors in the tree of their own unit, so they can run in parallel
+        runPhase(listOfUnits, new UnitPhase("analyseFlow"){
+            @Override
+            void run(PhasedUnit pu) {
+                pu.analyseFlow();
+            }
+        });
         
         Iterable<PhasedUnit> phasedUnitsForExtraPhase = phasedUnitsManager.getPhasedUnitsForExtraPhase(listOfUnits);
-        for (PhasedUnit pu : phasedUnitsForExtraPhase) {
-            Unit unit = pu.getUnit();
-            final CompilationUnit compilationUnit = pu.getCompilationUnit();
-            for (Declaration d: unit.getDeclarations()) {
-                if (d instanceof TypedDeclaration && !(d instanceof Setter)) {
-                    compilationUnit.visit(new ValueVisitor((TypedDeclaration) d));
+        runPhase(phasedUnitsForExtraPhase, new UnitPhase("ValueVisitor"){
+            @Override
+            void run(PhasedUnit pu) {
+                Unit unit = pu.getUnit();
+                final CompilationUnit compilationUnit = pu.getCompilationUnit();
+                for (Declaration d: unit.getDeclarations()) {
+                    if (d instanceof TypedDeclaration && !(d instanceof Setter)) {
+                        compilationUnit.visit(new ValueVisitor((TypedDeclaration) d));
+                    }
                 }
             }
-        }
+        });
         
         BoxingDeclarationVisitor boxingDeclarationVisitor = new CompilerBoxingDeclarationVisitor(gen);
         BoxingVisitor boxingVisitor = new CompilerBoxingVisitor(gen);
@@ -20,6 +20,17 @@
 
 package com.redhat.ceylon.compiler.java.loader;
 
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
 import javax.tools.JavaFileObject.Kind;
 
 import com.redhat.ceylon.cmr.api.ArtifactResult;
@@ -29,11 +40,16 @@ import com.redhat.ceylon.compiler.java.loader.mirror.JavacMethod;
 import com.redhat.ceylon.compiler.java.loader.model.CompilerModuleManager;
 import com.redhat.ceylon.compiler.java.tools.CeylonLog;
 import com.redhat.ceylon.compiler.java.tools.LanguageCompiler;
+import com.redhat.ceylon.compiler.java.util.Timer;
 import com.redhat.ceylon.compiler.java.util.Util;
 import com.redhat.ceylon.compiler.loader.AbstractModelLoader;
+import com.redhat.ceylon.compiler.loader.ClassNameFilter;
+import com.redhat.ceylon.compiler.loader.JDKIndex;
 import com.redhat.ceylon.compiler.loader.SourceDeclarationVisitor;
 import com.redhat.ceylon.compiler.loader.ModelLoaderFactory;
 import com.redhat.ceylon.compiler.loader.TypeParser;
+import com.redhat.ceylon.compiler.loader.index.IndexMethod;
+import com.redhat.ceylon.compiler.loader.index.ModelIndex;
 import com.redhat.ceylon.compiler.loader.mirror.ClassMirror;
 import com.redhat.ceylon.compiler.loader.mirror.MethodMirror;
 import com.redhat.ceylon.compiler.typechecker.context.PhasedUnits;
@@ -60,7 +76,9 @@ import com.sun.tools.javac.util.Name;
 import com.sun.tools.javac.util.Names;
 import com.sun.tools.javac.util.Options;
 
-public class CeylonModelLoader extends AbstractModelLoader {
+public class CeylonModelLoader extends AbstractModelLoader implements ModelIndex.OverrideChecker {
+    
+    private static final String COUNTER_FILTERED_LOOKUPS = "model loader/class lookups skipped by package filters";
     
     private Symtab symtab;
     private Names names;
@@ -70,6 +88,19 @@ public class CeylonModelLoader extends AbstractModelLoader {
     private Log log;
     private Types types;
     private Options options;
+    private File modelIndexDir;
+    // where to write the snapshot of the language module, when building the distribution
+    private File languageSnapshotFile;
+    private ModelIndex languageIndex;
+    private final Set<ModelIndex> modelIndexes = new LinkedHashSet<ModelIndex>();
+    private final Map<String, ModelIndex> modelIndexesByPackage = new HashMap<String, ModelIndex>();
+    // the classes of the packages we only have class files for, by quoted package name
+    private final Map<String, ClassNameFilter> classNameFilters = new HashMap<String, ClassNameFilter>();
+    // the packages we compile, which can get classes their listing did not have
+    private final Set<String> sourcePackages = new HashSet<String>();
+    private final Map<Module, ArtifactResult> moduleArtifacts = new HashMap<Module, ArtifactResult>();
+    // the JDK index, if it describes the platform classes javac uses
+    private JDKIndex jdkIndex;
     
     public static AbstractModelLoader instance(Context context) {
         AbstractModelLoader instance = context.get(AbstractModelLoader.class);
@@ -98,18 +129,176 @@ public class CeylonModelLoader extends AbstractModelLoader {
         typeParser = new TypeParser(this, typeFactory);
         options = Options.instance(context);
         isBootstrap = options.get(OptionName.BOOTSTRAPCEYLON) != null;
+        String modelIndexPath = options.get(OptionName.CEYLONMODELINDEX);
+        if(modelIndexPath != null)
+            modelIndexDir = new File(modelIndexPath);
+        String languageSnapshotPath = options.get(OptionName.CEYLONLANGUAGESNAPSHOT);
+        if(languageSnapshotPath != null)
+            languageSnapshotFile = new File(languageSnapshotPath);
         moduleManager = phasedUnits.getModuleManager();
         modules = ceylonContext.getModules();
+        // the JDK index does not know about the classes we get from elsewhere
+        if(options.get(OptionName.BOOTCLASSPATH) == null
+                && options.get(OptionName.XBOOTCLASSPATH) == null
+                && options.get(OptionName.XBOOTCLASSPATH_PREPEND) == null
+                && options.get(OptionName.XBOOTCLASSPATH_APPEND) == null
+                && options.get(OptionName.ENDORSEDDIRS) == null
+                && options.get(OptionName.EXTDIRS) == null)
+            jdkIndex = JDKIndex.getInstance();
     }
 
     @Override
-    public void addModuleToClassPath(Module module, ArtifactResult artifact){
-        if(artifact != null)
+    public synchronized void addModuleToClassPath(Module module, ArtifactResult artifact){
+        if(artifact != null){
+            // the packages we listed may be split with this module
+            classNameFilters.clear();
+            moduleArtifacts.put(module, artifact);
             ((CompilerModuleManager)phasedUnits.getModuleManager()).getCeylonEnter().addModuleToClassPath(module, true, artifact);
+            if(modelIndexDir != null || module == modules.getLanguageModule())
+                loadModelIndex(module, artifact);
+        }
+    }
+
+    @Override
+    protected synchronized void removeModuleFromClassPath(Module module, Set<String> packageNames) {
+        ArtifactResult artifact = moduleArtifacts.remove(module);
+        if(artifact != null)
+            ((CompilerModuleManager)phasedUnits.getModuleManager()).getCeylonEnter().removeModuleFromClassPath(module, artifact);
+        // forget the javac symbols we read from it, so that we read the new ones next time
+        for(Iterator<ClassSymbol> iterator = symtab.classes.values().iterator(); iterator.hasNext(); ){
+            ClassSymbol classSymbol = iterator.next();
+            if(!Util.isLoadedFromSource(classSymbol)
+                    && packageNames.contains(classSymbol.packge().getQualifiedName().toString()))
+                iterator.remove();
+        }
+        for(String packageName : packageNames){
+            if(!sourcePackages.contains(packageName))
+                symtab.packages.remove(names.fromString(packageName));
+            classNameFilters.remove(packageName);
+            // its index describes the car we are getting rid of
+            ModelIndex index = modelIndexesByPackage.remove(packageName);
+            if(index != null)
+                modelIndexes.remove(index);
+            if(index == languageIndex)
+                languageIndex = null;
+        }
+    }
+
+    /**
+     * Loads the index of the given module car, so that we can load its declarations without
+     * reading its class files. For the language module we use the snapshot we ship with the
+     * compiler if it matches, even if we were not asked to use a model index.
+     */
+    private void loadModelIndex(Module module, ArtifactResult artifact) {
+        File car;
+        try{
+            car = artifact.artifact();
+        }catch(Exception x){
+            // CeylonEnter has already reported it
+            return;
+        }
+        if(car == null || !car.getName().endsWith(".car") || !car.isFile())
+            return;
+        try{
+            ModelIndex index = null;
+            if(module == modules.getLanguageModule() && !isBootstrap){
+                if(languageSnapshotFile != null){
+                    // we are making the snapshot, start from scratch
+                    index = ModelIndex.create(car);
+                }else{
+                    index = ModelIndex.getLanguageSnapshot(car);
+                }
+                languageIndex = index;
+            }
+            if(index == null){
+                if(modelIndexDir == null)
+                    return;
+                index = ModelIndex.load(modelIndexDir, car);
+            }
+            logVerbose("[Using model index "+index.getSha1()+" for module "+module.getNameAsString()+"]");
+            modelIndexes.add(index);
+            for(String pkg : index.getPackages()){
+                // if two cars have the same package we cannot know which one the class comes from
+                if(modelIndexesByPackage.containsKey(pkg))
+                    modelIndexesByPackage.put(pkg, null);
+                else
+                    modelIndexesByPackage.put(pkg, index);
+            }
+        }catch(IOException x){
+            logVerbose("[Failed to load model index for "+car+": "+x.getMessage()+"]");
+        }
+    }
+
+    private ModelIndex getModelIndex(String className) {
+        if(modelIndexesByPackage.isEmpty())
+            return null;
+        // it can be an inner class, so try every prefix until we find its package
+        String pkg = className;
+        int lastDot;
+        while((lastDot = pkg.lastIndexOf('.')) != -1){
+            pkg = pkg.substring(0, lastDot);
+            if(modelIndexesByPackage.containsKey(pkg))
+                return modelIndexesByPackage.get(pkg);
+        }
+        return null;
+    }
+
+    /**
+     * Adds every class we loaded from the cars we have an index for to their index, and saves
+     * the indexes which changed. This must be called once we are done loading declarations, but
+     * while javac can still complete symbols.
+     */
+    public synchronized void saveModelIndexes() {
+        if(modelIndexes.isEmpty())
+            return;
+        if(languageSnapshotFile != null && languageIndex != null){
+            // the snapshot must hold every declaration of the language module
+            for(String pkg : languageIndex.getPackages())
+                loadPackage(pkg, true);
+        }
+        // we only index the mirrors still in the cache, the others will be indexed next time
+        for(Map.Entry<String, ClassMirror> entry : classMirrorCache.getMirrors()){
+            if(!(entry.getValue() instanceof JavacClass))
+                continue;
+            JavacClass mirror = (JavacClass) entry.getValue();
+            ModelIndex index = getModelIndex(mirror.getQualifiedName());
+            if(index == null
+                    || index.isReadOnly()
+                    || index.hasClassMirror(entry.getKey())
+                    || mirror.isLoadedFromSource()
+                    || mirror.classSymbol.classfile == null)
+                continue;
+            try{
+                index.addClassMirror(entry.getKey(), mirror, this);
+            }catch(RuntimeException x){
+                // most likely a missing dependency: we will just have to read it from its class file
+                logVerbose("[Not indexing "+entry.getKey()+": "+x+"]");
+            }
+        }
+        for(ModelIndex index : modelIndexes){
+            try{
+                if(languageSnapshotFile != null && index == languageIndex)
+                    index.saveAs(languageSnapshotFile);
+                else if(modelIndexDir != null && !index.isReadOnly())
+                    index.save(modelIndexDir);
+            }catch(IOException x){
+                if(index == languageIndex)
+                    log.error("ceylon", "Failed to write the language module snapshot to "+languageSnapshotFile+": "+x.getMessage());
+                else
+                    logVerbose("[Failed to save model index "+index.getSha1()+": "+x.getMessage()+"]");
+            }
+        }
+    }
+
+    @Override
+    public boolean isOverriding(MethodMirror method) {
+        return isOverridingMethod(method);
     }
 
     public void setupSourceFileObjects(java.util.List<?> treeHolders) {
         for(Object treeHolder : treeHolders){
+            if(treeHolder instanceof JCCompilationUnit)
+                addSourcePackage((JCCompilationUnit) treeHolder);
             if (!(treeHolder instanceof CeylonCompilationUnit)) {
                 continue;
             }
@@ -130,7 +319,7 @@ public class CeylonModelLoader extends AbstractModelLoader {
                         ClassMirror previousClass = lookupClassMirror(fqn);
                         log.error("ceylon", "Duplicate declaration error: "+fqn+" is declared twice: once in "
                                 +tree.getSourceFile()+" and again in: "+
-                                (previousClass != null ? ((JavacClass)previousClass).classSymbol.classfile : "another file"));
+                                (previousClass instanceof JavacClass ? ((JavacClass)previousClass).classSymbol.classfile : "another file"));
                     }
                 }
             });
@@ -141,7 +330,7 @@ public class CeylonModelLoader extends AbstractModelLoader {
     }
     
     @Override
-    public void loadPackage(String packageName, boolean loadDeclarations) {
+    public synchronized void loadPackage(String packageName, boolean loadDeclarations) {
         // abort if we already loaded it, but only record that we loaded it if we want
         // to load the declarations, because merely calling complete() on the package
         // is OK
@@ -151,7 +340,33 @@ public class CeylonModelLoader extends AbstractModelLoader {
         }
         PackageSymbol ceylonPkg = packageName.equals("") ? syms().unnamedPackage : reader.enterPackage(names.fromString(packageName));
         ceylonPkg.complete();
+        addClassNameFilter(packageName, ceylonPkg);
         if(loadDeclarations){
+            List<String> jdkClasses = getJDKClassNames(packageName);
+            if(jdkClasses != null){
+                // we already know which classes the JDK has, no need to complete them all
+                for(String flatName : jdkClasses){
+                    if(isAnonymousOrLocal(flatName))
+                        continue;
+                    String name = (packageName.isEmpty() ? "" : packageName+".") + flatName.replace('$', '.');
+                    ClassMirror mirror = lookupClassMirror(name);
+                    if(mirror != null)
+                        convertToDeclaration(mirror, DeclarationType.VALUE);
+                }
+                return;
+            }
+            ModelIndex index = modelIndexesByPackage.get(packageName);
+            List<String> indexedMembers = index != null ? index.getPackageMembers(packageName) : null;
+            if(indexedMembers != null){
+                // we already know which classes to load, no need to complete them all
+                for(String member : indexedMembers){
+                    ClassMirror mirror = lookupClassMirror(member);
+                    if(mirror != null && !mirror.isLoadedFromSource())
+                        convertToDeclaration(mirror, DeclarationType.VALUE);
+                }
+                return;
+            }
+            List<String> members = new ArrayList<String>();
             /*
              * Eventually this will go away as we get a hook from the typechecker to load on demand, but
              * for now the typechecker requires at least ceylon.language to be loaded 
@@ -165,12 +380,87 @@ public class CeylonModelLoader extends AbstractModelLoader {
                     // avoid anonymous and local classes
                     if(isAnonymousOrLocal((ClassSymbol) m))
                         continue;
-                    convertToDeclaration(lookupClassMirror(m.getQualifiedName().toString()), DeclarationType.VALUE);
+                    String name = m.getQualifiedName().toString();
+                    members.add(name);
+                    convertToDeclaration(lookupClassMirror(name), DeclarationType.VALUE);
+                }else{
+                    // only packages we load entirely from their car can be indexed
+                    index = null;
                 }
             }
+            if(index != null && !index.isReadOnly())
+                index.setPackageMembers(packageName, members);
         }
     }
 
+    private synchronized void addSourcePackage(JCCompilationUnit unit) {
+        String pkgName = unit.getPackageName() != null ? Util.quoteJavaKeywords(unit.getPackageName().toString()) : "";
+        sourcePackages.add(pkgName);
+        classNameFilters.remove(pkgName);
+    }
+
+    /**
+     * Records the names of the classes of the given package, if they all come from class files,
+     * so that we do not have to ask javac about the names it does not have.
+     */
+    private void addClassNameFilter(String packageName, PackageSymbol pkg) {
+        if(classNameFilters.containsKey(packageName) 
+                || sourcePackages.contains(packageName)
+                || getJDKClassNames(packageName) != null)
+            return;
+        List<String> classNames = new ArrayList<String>();
+        for(Symbol m : pkg.members().getElements()){
+            if(!(m instanceof ClassSymbol))
+                continue;
+            ClassSymbol c = (ClassSymbol) m;
+            if(c.classfile == null || c.classfile.getKind() != Kind.CLASS)
+                return;
+            classNames.add(Convert.shortName(c.flatname).toString());
+        }
+        classNameFilters.put(packageName, new ClassNameFilter(classNames));
+    }
+
+    /**
+     * Returns true if the given quoted class name belongs to a package we listed, and is
+     * not one of its classes.
+     */
+    private boolean isFilteredOut(String quotedName) {
+        int lastDot = quotedName.lastIndexOf('.');
+        String pkg = lastDot == -1 ? "" : quotedName.substring(0, lastDot);
+        String simpleName = quotedName.substring(lastDot+1);
+        if(jdkIndex != null && jdkIndex.hasClasses(pkg) && !sourcePackages.contains(pkg)){
+            // the JDK index knows exactly which classes we have
+            return !jdkIndex.containsClass(pkg, simpleName) && !jdkIndex.containsClass(pkg, simpleName+"_");
+        }
+        ClassNameFilter filter = classNameFilters.get(pkg);
+        if(filter == null)
+            return false;
+        // we also look for the munged name of toplevel methods and attributes
+        return !filter.mightContain(simpleName) && !filter.mightContain(simpleName+"_");
+    }
+
+    /**
+     * Returns the flat names of the classes of the given JDK package if the JDK index knows them.
+     */
+    private List<String> getJDKClassNames(String packageName) {
+        if(jdkIndex == null || sourcePackages.contains(packageName))
+            return null;
+        return jdkIndex.getClassNames(packageName);
+    }
+
+    /**
+     * Returns true if the given flat class name is that of an anonymous or local class, or of one of
+     * their member classes: their compiler-generated names have a part which starts with a digit.
+     */
+    private static boolean isAnonymousOrLocal(String flatName) {
+        int dollar = -1;
+        while((dollar = flatName.indexOf('$', dollar+1)) != -1){
+            if(dollar+1 < flatName.length() && Character.isDigit(flatName.charAt(dollar+1)))
+                return true;
+        }
+        return false;
+    }
+
     private boolean isAnonymousOrLocal(ClassSymbol m) {
         switch(m.getNestingKind()){
         case ANONYMOUS: return true;
@@ -198,6 +488,13 @@ public class CeylonModelLoader extends AbstractModelLoader {
     
     @Override
     public ClassMirror lookupNewClassMirror(String name) {
+        ModelIndex index = getModelIndex(name);
+        if(index != null){
+            ClassMirror indexedMirror = index.getClassMirror(name);
+            // a class we are compiling takes precedence over the one in its car
+            if(indexedMirror != null && !isLoadedFromSource(name))
+                return indexedMirror;
+        }
         ClassSymbol classSymbol = null;
 
         String outerName = name;
@@ -207,8 +504,14 @@ public class CeylonModelLoader extends AbstractModelLoader {
          * of C) is not found in symtab.classes but in C's ClassSymbol.enclosedElements.
          */
         do{
-            classSymbol = symtab.classes.get(names.fromString(Util.quoteJavaKeywords(outerName)));
-            if (classSymbol == null && lastPartHasLowerInitial(outerName)) {
+            String quotedName = Util.quoteJavaKeywords(outerName);
+            // don't even make javac names out of the names its package does not have
+            boolean filteredOut = isFilteredOut(quotedName);
+            if(filteredOut)
+                Timer.count(COUNTER_FILTERED_LOOKUPS);
+            else
+                classSymbol = symtab.classes.get(names.fromString(quotedName));
+            if (classSymbol == null && !filteredOut && lastPartHasLowerInitial(outerName)) {
                 // We have to try the unmunged name first, so that we find the symbol
                 // from the source in preference to the symbol from any 
                 // pre-existing .class file
@@ -238,6 +541,13 @@ public class CeylonModelLoader extends AbstractModelLoader {
         return null;
     }
 
+    private boolean isLoadedFromSource(String name) {
+        ClassSymbol classSymbol = symtab.classes.get(names.fromString(Util.quoteJavaKeywords(name)));
+        if (classSymbol == null && lastPartHasLowerInitial(name))
+            classSymbol = symtab.classes.get(names.fromString(name+"_"));
+        return classSymbol != null && Util.isLoadedFromSource(classSymbol);
+    }
+
     private ClassSymbol lookupInnerClass(ClassSymbol classSymbol, String[] parts) {
         PART:
             for(String part : parts){
@@ -312,6 +622,8 @@ public class CeylonModelLoader extends AbstractModelLoader {
 
     @Override
     protected boolean isOverridingMethod(MethodMirror methodSymbol) {
+        if(methodSymbol instanceof IndexMethod)
+            return ((IndexMethod)methodSymbol).isOverriding();
         final MethodSymbol method = ((JavacMethod)methodSymbol).methodSymbol;
         if (method.owner.getQualifiedName().contentEquals("ceylon.language.Identifiable")) {
             if (method.name.contentEquals("equals") || method.name.contentEquals("hashCode")) {
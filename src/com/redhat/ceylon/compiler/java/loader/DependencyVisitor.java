@@ -0,0 +1,238 @@
+/*
+ * Copyright Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the authors tag. All rights reserved.
+ *
+ * This copyrighted material is made available to anyone wishing to use,
+ * modify, copy, or redistribute it subject to the terms and conditions
+ * of the GNU General Public License version 2.
+ *
+ * This particular file is subject to the "Classpath" exception as provided in the
+ * LICENSE file that accompanied this code.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT A
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE.  See the GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License,
+ * along with this distribution; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA  02110-1301, USA.
+ */
+package com.redhat.ceylon.compiler.java.loader;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import com.redhat.ceylon.compiler.java.tools.CeylonPhasedUnit;
+import com.redhat.ceylon.compiler.java.tools.DependencyGraph;
+import com.redhat.ceylon.compiler.java.tools.DependencyGraph.UnitDependencies;
+import com.redhat.ceylon.compiler.typechecker.model.Annotation;
+import com.redhat.ceylon.compiler.typechecker.model.Class;
+import com.redhat.ceylon.compiler.typechecker.model.ClassOrInterface;
+import com.redhat.ceylon.compiler.typechecker.model.Declaration;
+import com.redhat.ceylon.compiler.typechecker.model.Functional;
+import com.redhat.ceylon.compiler.typechecker.model.Method;
+import com.redhat.ceylon.compiler.typechecker.model.Module;
+import com.redhat.ceylon.compiler.typechecker.model.Package;
+import com.redhat.ceylon.compiler.typechecker.model.Parameter;
+import com.redhat.ceylon.compiler.typechecker.model.ParameterList;
+import com.redhat.ceylon.compiler.typechecker.model.ProducedType;
+import com.redhat.ceylon.compiler.typechecker.model.Scope;
+import com.redhat.ceylon.compiler.typechecker.model.TypeDeclaration;
+import com.redhat.ceylon.compiler.typechecker.model.TypeParameter;
+import com.redhat.ceylon.compiler.typechecker.model.TypedDeclaration;
+import com.redhat.ceylon.compiler.typechecker.tree.Tree;
+import com.redhat.ceylon.compiler.typechecker.tree.Visitor;
+
+/**
+ * Collects the dependencies of a type-checked compilation unit: the API
+ * signature of each of its toplevel declarations, and the toplevel declarations
+ * it refers to from the modules we are compiling. Declarations of other modules
+ * do not change during this compilation: their cars being newer than ours is
+ * checked for by the incremental build instead.
+ *
+ * The API signature of a declaration covers everything other compilation units
+ * can depend on: its kind, modifiers and annotations, type, type parameters,
+ * parameters, supertypes and the signatures of its shared members. It does not
+ * cover implementation details, so that changing a method body does not cause
+ * every unit calling it to be recompiled.
+ */
+public class DependencyVisitor extends Visitor {
+
+    /**
+     * Annotations which only matter to the documentation, changing them does not
+     * change the API.
+     */
+    private static final List<String> DOCUMENTATION_ANNOTATIONS = Arrays.asList("doc", "by", "see", "throws", "license");
+
+    private final UnitDependencies dependencies;
+    private final Set<Module> compiledModules;
+
+    private DependencyVisitor(UnitDependencies dependencies, Set<Module> compiledModules) {
+        this.dependencies = dependencies;
+        this.compiledModules = compiledModules;
+    }
+
+    /**
+     * Collects the dependencies of the given unit, recording the uses of toplevel
+     * declarations of the given modules, which are the modules we are compiling.
+     */
+    public static UnitDependencies collect(CeylonPhasedUnit phasedUnit, Set<Module> compiledModules) {
+        UnitDependencies dependencies = new UnitDependencies(phasedUnit.getSourceSha1(), phasedUnit.getFileObject());
+        for (Declaration decl : phasedUnit.getUnit().getDeclarations()) {
+            if (decl.isToplevel()) {
+                dependencies.addExport(decl.getQualifiedNameString(), DependencyGraph.sha1(apiSignature(decl)));
+            }
+        }
+        phasedUnit.getCompilationUnit().visit(new DependencyVisitor(dependencies, compiledModules));
+        return dependencies;
+    }
+
+    @Override
+    public void visit(Tree.MemberOrTypeExpression that) {
+        use(that.getDeclaration());
+        super.visit(that);
+    }
+
+    @Override
+    public void visit(Tree.SimpleType that) {
+        ProducedType type = that.getTypeModel();
+        if (type != null) {
+            use(type.getDeclaration());
+        }
+        super.visit(that);
+    }
+
+    private void use(Declaration decl) {
+        Declaration toplevel = getToplevel(decl);
+        if (toplevel != null
+                && toplevel.getUnit() != null
+                && toplevel.getUnit().getPackage() != null
+                && compiledModules.contains(toplevel.getUnit().getPackage().getModule())) {
+            dependencies.addUse(toplevel.getQualifiedNameString());
+        }
+    }
+
+    private static Declaration getToplevel(Declaration decl) {
+        Scope scope = decl;
+        while (scope != null && !(scope instanceof Package)) {
+            if (scope instanceof Declaration && ((Declaration) scope).isToplevel()) {
+                return (Declaration) scope;
+            }
+            scope = scope.getContainer();
+        }
+        return null;
+    }
+
+    static String apiSignature(Declaration decl) {
+        StringBuilder sb = new StringBuilder();
+        appendSignature(sb, decl);
+        return sb.toString();
+    }
+
+    private static void appendSignature(StringBuilder sb, Declaration decl) {
+        sb.append(decl.getClass().getSimpleName()).append(' ').append(decl.getQualifiedNameString());
+        if (decl.isShared()) sb.append(" shared");
+        if (decl.isFormal()) sb.append(" formal");
+        if (decl.isDefault()) sb.append(" default");
+        if (decl.isActual()) sb.append(" actual");
+        if (decl instanceof Class && ((Class) decl).isAbstract()) sb.append(" abstract");
+        // this covers final and the annotations we do not have a modifier for
+        appendAnnotations(sb, decl.getAnnotations());
+        if (decl instanceof TypedDeclaration) {
+            TypedDeclaration typedDecl = (TypedDeclaration) decl;
+            if (typedDecl.isVariable()) sb.append(" variable");
+            sb.append(" : ");
+            appendType(sb, typedDecl.getType());
+        }
+        if (decl instanceof Method) {
+            appendTypeParameters(sb, ((Method) decl).getTypeParameters());
+        }
+        if (decl instanceof ClassOrInterface) {
+            appendTypeParameters(sb, ((ClassOrInterface) decl).getTypeParameters());
+        }
+        if (decl instanceof Functional) {
+            List<ParameterList> parameterLists = ((Functional) decl).getParameterLists();
+            if (parameterLists != null) {
+                for (ParameterList parameterList : parameterLists) {
+                    sb.append(" (");
+                    for (Parameter param : parameterList.getParameters()) {
+                        appendType(sb, param.getType());
+                        sb.append(' ').append(param.getName());
+                        if (param.isDefaulted()) sb.append('=');
+                        if (param.isSequenced()) sb.append("...");
+                        sb.append(',');
+                    }
+                    sb.append(')');
+                }
+            }
+        }
+        if (decl instanceof TypeDeclaration) {
+            TypeDeclaration typeDecl = (TypeDeclaration) decl;
+            sb.append(" extends ");
+            appendType(sb, typeDecl.getExtendedType());
+            appendTypes(sb, " satisfies ", typeDecl.getSatisfiedTypes());
+            appendTypes(sb, " of ", typeDecl.getCaseTypes());
+        }
+        if (decl instanceof ClassOrInterface) {
+            sb.append(" {");
+            for (Declaration member : ((ClassOrInterface) decl).getMembers()) {
+                if (member.isShared()) {
+                    appendSignature(sb, member);
+                    sb.append(';');
+                }
+            }
+            sb.append('}');
+        }
+    }
+
+    private static void appendAnnotations(StringBuilder sb, List<Annotation> annotations) {
+        if (annotations == null)
+            return;
+        for (Annotation annotation : annotations) {
+            if (DOCUMENTATION_ANNOTATIONS.contains(annotation.getName()))
+                continue;
+            sb.append(" @").append(annotation.getName());
+            if (!annotation.getPositionalArguments().isEmpty()) {
+                sb.append(annotation.getPositionalArguments());
+            } else if (!annotation.getNamedArguments().isEmpty()) {
+                sb.append('{');
+                for (Map.Entry<String, String> entry : new TreeMap<String, String>(annotation.getNamedArguments()).entrySet()) {
+                    sb.append(entry.getKey()).append('=').append(entry.getValue()).append(';');
+                }
+                sb.append('}');
+            }
+        }
+    }
+
+    private static void appendTypeParameters(StringBuilder sb, List<TypeParameter> typeParameters) {
+        if (typeParameters == null || typeParameters.isEmpty())
+            return;
+        sb.append(" <");
+        for (TypeParameter typeParameter : typeParameters) {
+            // variance changes which types are assignable, so it is API too
+            if (typeParameter.isCovariant()) sb.append("out ");
+            if (typeParameter.isContravariant()) sb.append("in ");
+            sb.append(typeParameter.getName());
+            appendTypes(sb, " satisfies ", typeParameter.getSatisfiedTypes());
+            sb.append(',');
+        }
+        sb.append('>');
+    }
+
+    private static void appendTypes(StringBuilder sb, String prefix, List<ProducedType> types) {
+        if (types == null || types.isEmpty())
+            return;
+        sb.append(prefix);
+        for (ProducedType type : types) {
+            appendType(sb, type);
+            sb.append(',');
+        }
+    }
+
+    private static void appendType(StringBuilder sb, ProducedType type) {
+        sb.append(type != null ? type.getProducedTypeQualifiedName() : "?");
+    }
+}
@@ -57,9 +57,11 @@ public class CeylonLog extends Log {
     }
 
     @Override
-    public void report(JCDiagnostic diagnostic) {
+    public synchronized void report(JCDiagnostic diagnostic) {
+        // code generation workers may report errors concurrently
         DiagnosticSource source = diagnostic.getDiagnosticSource();
-        if(source != null){
+        // deferred diagnostics are counted once they are reported for real
+        if(source != null && !deferDiagnostics){
             JavaFileObject file = source.getFile();
             if(file instanceof CeylonFileObject && diagnostic.getType() == DiagnosticType.ERROR){
                 ((CeylonFileObject)file).errors++;
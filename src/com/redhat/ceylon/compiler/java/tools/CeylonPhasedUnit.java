@@ -34,6 +34,7 @@ public class CeylonPhasedUnit extends PhasedUnit {
 
     private JavaFileObject fileObject;
     private LineMap lineMap;
+    private String sourceSha1;
 
     public CeylonPhasedUnit(VirtualFile unitFile, VirtualFile srcDir,
             CompilationUnit cu, Package p, ModuleManager moduleManager,
@@ -56,4 +57,16 @@ public class CeylonPhasedUnit extends PhasedUnit {
     public LineMap getLineMap() {
         return lineMap;
     }
+
+    /**
+     * The SHA-1 of the source this unit was parsed from, used to skip up-to-date
+     * units in incremental builds.
+     */
+    public String getSourceSha1() {
+        return sourceSha1;
+    }
+
+    public void setSourceSha1(String sourceSha1) {
+        this.sourceSha1 = sourceSha1;
+    }
 }
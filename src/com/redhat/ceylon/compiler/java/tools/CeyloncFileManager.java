@@ -55,6 +55,7 @@ import com.redhat.ceylon.common.config.Repositories;
 import com.redhat.ceylon.compiler.java.codegen.CeylonFileObject;
 import com.redhat.ceylon.compiler.java.util.Util;
 import com.redhat.ceylon.compiler.typechecker.model.Module;
+import com.redhat.ceylon.compiler.typechecker.model.ModuleImport;
 import com.sun.tools.javac.main.OptionName;
 import com.sun.tools.javac.util.Context;
 import com.sun.tools.javac.file.JavacFileManager;
@@ -100,6 +101,22 @@ public class CeyloncFileManager extends JavacFileManager implements StandardJava
         super.setContext(context);
     }
 
+    /**
+     * Moves us to the context of another compilation of the same sources, such as
+     * the next round of an incremental build, forgetting the repositories and cars
+     * of the previous one. Unlike {@link #setContext(Context)}, which annotation
+     * processing rounds use, this does not keep any compilation state.
+     */
+    void setNextCompilationContext(Context context) {
+        setContext(context);
+        options = Options.instance(context);
+        cmrLogger = null;
+        jarRepository = null;
+        repoManager = null;
+        clearOutputRepositoryManager();
+        outputRepoManager = null;
+    }
+
     public JavaFileObject.Kind getKind(String name) {
         if (name.endsWith(JavaFileObject.Kind.CLASS.extension))
             return JavaFileObject.Kind.CLASS;
@@ -159,19 +176,33 @@ public class CeyloncFileManager extends JavacFileManager implements StandardJava
 
     @Override
     protected JavaFileObject getFileForOutput(Location location, RelativeFile fileName, FileObject sibling) throws IOException {
+        if(location == StandardLocation.CLASS_OUTPUT)
+            return getClassFileForOutput(currentModule, fileName, sibling);
+        if (sibling instanceof CeylonFileObject) {
+            sibling = ((CeylonFileObject) sibling).getFile();
+        }
+        return super.getFileForOutput(location, fileName, sibling);
+    }
+
+    /**
+     * Returns the output file for the given class of the given module. Unlike
+     * {@code getJavaFileForOutput()} this does not depend on the current module,
+     * so classes of different modules can be written in any order.
+     */
+    public JavaFileObject getClassFileForOutput(Module module, String className, FileObject sibling) throws IOException {
+        return getClassFileForOutput(module, forClass(className, Kind.CLASS), sibling);
+    }
+
+    private JavaFileObject getClassFileForOutput(Module module, RelativeFile fileName, FileObject sibling) throws IOException {
         if (sibling instanceof CeylonFileObject) {
             sibling = ((CeylonFileObject) sibling).getFile();
         }
         String quotedFileName = quoteKeywordsInFilename(fileName);
-        
-        if(location == StandardLocation.CLASS_OUTPUT){
-            File siblingFile = null;
-            if (sibling != null && sibling instanceof RegularFileObject) {
-                siblingFile = ((RegularFileObject)sibling).getUnderlyingFile();
-            }
-            return getJarRepository().getFileObject(getOutputRepositoryManager(), currentModule, quotedFileName, siblingFile);
-        }else
-            return super.getFileForOutput(location, fileName, sibling);
+        File siblingFile = null;
+        if (sibling != null && sibling instanceof RegularFileObject) {
+            siblingFile = ((RegularFileObject)sibling).getUnderlyingFile();
+        }
+        return getJarRepository().getFileObject(getOutputRepositoryManager(), module, quotedFileName, siblingFile);
     }
 
     private String quoteKeywordsInFilename(RelativeFile fileName) {
@@ -235,6 +266,46 @@ public class CeyloncFileManager extends JavacFileManager implements StandardJava
     public void setModule(Module module) {
         currentModule = module;
     }
+
+    /**
+     * Records the dependencies of a compiled unit in the car of its module.
+     */
+    public void addDependencies(Module module, String unitPath, DependencyGraph.UnitDependencies dependencies) {
+        getJarRepository().addDependencies(module, unitPath, dependencies);
+    }
+
+    /**
+     * Returns the dependency graph of the existing car of the given module, if any.
+     */
+    public DependencyGraph getDependencyGraph(Module module) throws IOException {
+        return JarOutputRepositoryManager.getDependencyGraph(getOutputRepositoryManager(), module);
+    }
+
+    /**
+     * Returns true if the car of a module imported by the given module is newer than
+     * the car of the given module: declarations we use from it may have changed since
+     * we compiled against it.
+     */
+    public boolean hasNewerImports(Module module) {
+        File car = JarOutputRepositoryManager.getCar(getOutputRepositoryManager(), module);
+        if(car == null)
+            return true;
+        RepositoryManager repositoryManager = getRepositoryManager();
+        for(ModuleImport moduleImport : module.getImports()){
+            File importedCar = JarOutputRepositoryManager.getCar(repositoryManager, moduleImport.getModule());
+            if(importedCar != null && importedCar.lastModified() > car.lastModified())
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Returns true if the last flush left units which must be recompiled because
+     * an API they depend on changed.
+     */
+    public boolean hasStaleUnits() {
+        return jarRepository != null && jarRepository.hasStaleUnits();
+    }
     
     public RepositoryManager getRepositoryManager() {
         // caching
@@ -30,16 +30,127 @@
 
 package com.redhat.ceylon.compiler.java.tools;
 
+import java.io.File;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.tools.DiagnosticListener;
+import javax.tools.JavaFileManager;
 import javax.tools.JavaFileObject;
 
+import com.redhat.ceylon.compiler.java.loader.CeylonModelLoader;
+import com.redhat.ceylon.compiler.loader.ModelLoaderMetrics;
 import com.sun.tools.javac.api.JavacTaskImpl;
+import com.sun.tools.javac.file.ZipFileIndexCache;
 import com.sun.tools.javac.main.Main;
+import com.sun.tools.javac.main.OptionName;
 import com.sun.tools.javac.util.Context;
+import com.sun.tools.javac.util.Log;
 
 public class CeyloncTaskImpl extends JavacTaskImpl {
 
-    // we're just making this constructor visible here
-    CeyloncTaskImpl(Main compilerMain, Iterable<String> flags, Context context, Iterable<String> classes, Iterable<? extends JavaFileObject> fileObjects) {
+    private final CeyloncTool tool;
+    private final Writer out;
+    private final DiagnosticListener<? super JavaFileObject> diagnosticListener;
+    private final Iterable<String> flags;
+    private final Iterable<String> classes;
+    private final Iterable<? extends JavaFileObject> fileObjects;
+    private int round = 1;
+
+    // only created by CeyloncTool, which hands us what we need to make follow-up rounds
+    CeyloncTaskImpl(CeyloncTool tool, Main compilerMain, Writer out, DiagnosticListener<? super JavaFileObject> diagnosticListener,
+            Iterable<String> flags, Context context, Iterable<String> classes, Iterable<? extends JavaFileObject> fileObjects) {
         super(compilerMain, flags, context, classes, fileObjects);
+        this.tool = tool;
+        this.out = out;
+        this.diagnosticListener = diagnosticListener;
+        this.flags = flags;
+        this.classes = classes;
+        this.fileObjects = fileObjects;
+    }
+
+    /**
+     * Compiles, and in incremental mode compiles again in a new task while the
+     * previous compilation marked units as stale because an API they depend on
+     * changed, just like the ceylonc launcher does. Follow-up rounds reuse our
+     * file manager in a new context.
+     */
+    @Override
+    public Boolean call() {
+        Context context = getContext();
+        JavaFileManager fileManager = context.get(JavaFileManager.class);
+        Log log = Log.instance(context);
+        Boolean ret = super.call();
+        if(!ret
+                || !isIncremental()
+                || !(fileManager instanceof CeyloncFileManager)
+                || !((CeyloncFileManager) fileManager).hasStaleUnits())
+            return ret;
+        if(round == DependencyGraph.MAX_INCREMENTAL_ROUNDS){
+            log.error("ceylon", com.redhat.ceylon.compiler.java.launcher.Main.getLocalizedString("err.incremental.stale.units", round));
+            return false;
+        }
+        CeyloncTaskImpl next = makeNextRound((CeyloncFileManager) fileManager);
+        if(next == null){
+            log.error("ceylon", com.redhat.ceylon.compiler.java.launcher.Main.getLocalizedString("err.incremental.sources.not.files"));
+            return false;
+        }
+        ret = next.call();
+        round = next.round;
+        return ret;
+    }
+
+    /**
+     * Returns how many compilations this task ran: more than one in incremental mode
+     * when API changes made other units stale.
+     */
+    public int getRounds() {
+        return round;
+    }
+
+    private boolean isIncremental() {
+        if(flags != null){
+            for(String flag : flags){
+                if(flag.equals(OptionName.CEYLONINCREMENTAL.optionName))
+                    return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns a task compiling the same sources with the same options and file
+     * manager in a new context, or null if we cannot read the sources again.
+     */
+    private CeyloncTaskImpl makeNextRound(CeyloncFileManager fileManager) {
+        List<File> files = new ArrayList<File>();
+        if(fileObjects != null){
+            for(JavaFileObject fileObject : fileObjects){
+                if(!"file".equals(fileObject.toUri().getScheme()))
+                    return null;
+                files.add(new File(fileObject.toUri()));
+            }
+        }
+        // we just rewrote cars which may be indexed in the shared cache
+        ZipFileIndexCache.getSharedInstance().clearCache();
+        // the same file manager, with the locations it was given, in a fresh context
+        Context context = new Context();
+        if(diagnosticListener != null)
+            context.put(DiagnosticListener.class, diagnosticListener);
+        CeylonLog.preRegister(context);
+        fileManager.setNextCompilationContext(context);
+        CeyloncTaskImpl next = (CeyloncTaskImpl) tool.getTask(out, fileManager, diagnosticListener, flags, classes,
+                fileManager.getJavaFileObjectsFromFiles(files));
+        next.round = round + 1;
+        return next;
+    }
+
+    /**
+     * Returns the statistics of the model loader of this task, which can be queried during or after
+     * the compilation. Use {@link ModelLoaderMetrics#writeJson(java.io.Writer)} to dump them.
+     */
+    public ModelLoaderMetrics getModelLoaderMetrics() {
+        return CeylonModelLoader.instance(getContext()).getMetrics();
     }
 }
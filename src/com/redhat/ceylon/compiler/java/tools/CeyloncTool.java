@@ -100,6 +100,6 @@ public class CeyloncTool extends JavacTool implements JavaCompiler {
         context.put(JavaFileManager.class, fileManager);
         processOptions(context, fileManager, options);
         Main compiler = new Main("ceyloncTask", context.get(Log.outKey));
-        return new CeyloncTaskImpl(compiler, options, context, classes, compilationUnits);
+        return new CeyloncTaskImpl(this, compiler, out, diagnosticListener, options, context, classes, compilationUnits);
     }
 }
@@ -0,0 +1,237 @@
+/*
+ * Copyright Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the authors tag. All rights reserved.
+ *
+ * This copyrighted material is made available to anyone wishing to use,
+ * modify, copy, or redistribute it subject to the terms and conditions
+ * of the GNU General Public License version 2.
+ *
+ * This particular file is subject to the "Classpath" exception as provided in the
+ * LICENSE file that accompanied this code.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT A
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE.  See the GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License,
+ * along with this distribution; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA  02110-1301, USA.
+ */
+package com.redhat.ceylon.compiler.java.tools;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.math.BigInteger;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import javax.tools.JavaFileObject;
+
+import com.redhat.ceylon.compiler.java.codegen.CeylonFileObject;
+
+/**
+ * Records, for every compilation unit of a module, the SHA-1 of its source, the
+ * API signature of each toplevel declaration it exports and the toplevel
+ * declarations of the same module it uses. It is stored in the module car next
+ * to the class-to-source mapping, and lets an incremental build skip the units
+ * which did not change and whose dependencies kept the same API.
+ * <p>
+ * Units are keyed by their platform-independent path relative to their source
+ * directory, declarations by their qualified name.
+ */
+public class DependencyGraph {
+
+    public static final String DEPENDENCIES_FILE = "META-INF/dependencies.txt";
+
+    /**
+     * How many times an incremental build compiles units made stale by API changes
+     * before giving up. Each round changes less API, so we only hit this on bugs.
+     */
+    public static final int MAX_INCREMENTAL_ROUNDS = 10;
+
+    /**
+     * The hash we record for units which must be recompiled on the next build.
+     */
+    private static final String STALE = "stale";
+    private static final String ENCODING = "UTF-8";
+
+    public static class UnitDependencies {
+        private String sha1;
+        private final Map<String,String> exports = new TreeMap<String,String>();
+        private final Set<String> uses = new TreeSet<String>();
+        // only set for units compiled in this run
+        private JavaFileObject fileObject;
+
+        public UnitDependencies(String sha1, JavaFileObject fileObject){
+            this.sha1 = sha1;
+            this.fileObject = fileObject;
+        }
+
+        public void addExport(String declaration, String apiHash){
+            exports.put(declaration, apiHash);
+        }
+
+        public void addUse(String declaration){
+            uses.add(declaration);
+        }
+
+        public Map<String,String> getExports(){
+            return exports;
+        }
+
+        public Set<String> getUses(){
+            return uses;
+        }
+
+        public String getSha1(){
+            // units we could not compile must be compiled again
+            if(fileObject instanceof CeylonFileObject
+                    && ((CeylonFileObject)fileObject).errors > 0)
+                return STALE;
+            return sha1;
+        }
+    }
+
+    private final Map<String,UnitDependencies> units = new TreeMap<String,UnitDependencies>();
+
+    public UnitDependencies getUnit(String path){
+        return units.get(path);
+    }
+
+    public Set<String> getUnitPaths(){
+        return units.keySet();
+    }
+
+    public void putUnit(String path, UnitDependencies unit){
+        units.put(path, unit);
+    }
+
+    public UnitDependencies removeUnit(String path){
+        return units.remove(path);
+    }
+
+    /**
+     * Returns true if the given unit was compiled from a source with the given
+     * SHA-1, and does not need to be recompiled because of its dependencies.
+     */
+    public boolean isUpToDate(String path, String sha1){
+        UnitDependencies unit = units.get(path);
+        return unit != null && !STALE.equals(unit.getSha1()) && unit.getSha1().equals(sha1);
+    }
+
+    /**
+     * Marks the given unit as needing recompilation.
+     */
+    public void markStale(String path){
+        UnitDependencies unit = units.get(path);
+        if(unit != null)
+            unit.sha1 = STALE;
+    }
+
+    /**
+     * Returns the paths of the units using any of the given declarations.
+     */
+    public Set<String> getDependents(Collection<String> declarations){
+        Set<String> ret = new HashSet<String>();
+        for(Map.Entry<String, UnitDependencies> entry : units.entrySet()){
+            for(String declaration : declarations){
+                if(entry.getValue().uses.contains(declaration)){
+                    ret.add(entry.getKey());
+                    break;
+                }
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * Returns the declarations whose API differs between the two given units,
+     * including declarations which only exist in one of them.
+     */
+    public static Set<String> getChangedApi(UnitDependencies previous, UnitDependencies current){
+        Set<String> ret = new HashSet<String>();
+        Map<String,String> previousExports = previous != null ? previous.exports : new HashMap<String,String>();
+        Map<String,String> currentExports = current != null ? current.exports : new HashMap<String,String>();
+        for(Map.Entry<String, String> entry : previousExports.entrySet()){
+            if(!entry.getValue().equals(currentExports.get(entry.getKey())))
+                ret.add(entry.getKey());
+        }
+        for(String declaration : currentExports.keySet()){
+            if(!previousExports.containsKey(declaration))
+                ret.add(declaration);
+        }
+        return ret;
+    }
+
+    public static DependencyGraph read(InputStream inputStream) throws IOException {
+        DependencyGraph graph = new DependencyGraph();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream, ENCODING));
+        String line;
+        while((line = reader.readLine()) != null){
+            if(line.isEmpty() || line.startsWith("#"))
+                continue;
+            String[] parts = line.split("\t");
+            if(parts.length < 3)
+                continue;
+            if(parts[0].equals("unit")){
+                graph.units.put(parts[1], new UnitDependencies(parts[2], null));
+                continue;
+            }
+            UnitDependencies unit = graph.units.get(parts[1]);
+            if(unit == null)
+                continue;
+            if(parts[0].equals("export") && parts.length == 4)
+                unit.addExport(parts[2], parts[3]);
+            else if(parts[0].equals("use"))
+                unit.addUse(parts[2]);
+        }
+        return graph;
+    }
+
+    public void write(OutputStream outputStream) throws IOException {
+        // do not close the underlying stream, it's most likely a jar stream
+        Writer writer = new OutputStreamWriter(outputStream, ENCODING);
+        writer.write("# Ceylon compilation unit dependencies\n");
+        for(Map.Entry<String, UnitDependencies> entry : units.entrySet()){
+            String path = entry.getKey();
+            UnitDependencies unit = entry.getValue();
+            writer.write("unit\t"+path+"\t"+unit.getSha1()+"\n");
+            for(Map.Entry<String, String> export : unit.exports.entrySet())
+                writer.write("export\t"+path+"\t"+export.getKey()+"\t"+export.getValue()+"\n");
+            for(String use : unit.uses)
+                writer.write("use\t"+path+"\t"+use+"\n");
+        }
+        writer.flush();
+    }
+
+    public static String sha1(byte[] bytes){
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            return new BigInteger(1, digest.digest(bytes)).toString(16);
+        } catch (NoSuchAlgorithmException e) {
+            // every JVM has SHA-1
+            throw new RuntimeException(e);
+        }
+    }
+
+    public static String sha1(String string){
+        try {
+            return sha1(string.getBytes(ENCODING));
+        } catch (IOException e) {
+            // every JVM has UTF-8
+            throw new RuntimeException(e);
+        }
+    }
+}
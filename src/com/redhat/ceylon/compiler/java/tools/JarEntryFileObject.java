@@ -34,8 +34,13 @@ import javax.lang.model.element.Modifier;
 import javax.lang.model.element.NestingKind;
 import javax.tools.JavaFileObject;
 
+import com.redhat.ceylon.compiler.java.util.Timer;
+
 public class JarEntryFileObject implements JavaFileObject {
 
+    private static final String COUNTER_FILES_WRITTEN = "output/files written";
+    private static final String COUNTER_BYTES_WRITTEN = "output/bytes written";
+
     private JarOutputStream jarFile;
     private String fileName;
     private String jarFileName;
@@ -55,7 +60,19 @@ public class JarEntryFileObject implements JavaFileObject {
     public OutputStream openOutputStream() throws IOException {
         // we start to write at a new entry
         jarFile.putNextEntry(new ZipEntry(fileName));
+        Timer.count(COUNTER_FILES_WRITTEN);
         return new FilterOutputStream(jarFile){
+            // FilterOutputStream would write arrays one byte at a time
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                out.write(b, off, len);
+                Timer.count(COUNTER_BYTES_WRITTEN, len);
+            }
+            @Override
+            public void write(int b) throws IOException {
+                out.write(b);
+                Timer.count(COUNTER_BYTES_WRITTEN);
+            }
             // we override the close() method to automagically close the current entry
             @Override
             public void close() throws IOException {
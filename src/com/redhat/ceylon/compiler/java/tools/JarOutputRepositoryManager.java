@@ -24,6 +24,7 @@ import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
@@ -43,6 +44,7 @@ import com.redhat.ceylon.cmr.api.RepositoryManager;
 import com.redhat.ceylon.cmr.api.SourceArchiveCreator;
 import com.redhat.ceylon.cmr.ceylon.CeylonUtils;
 import com.redhat.ceylon.cmr.util.JarUtils;
+import com.redhat.ceylon.compiler.java.tools.DependencyGraph.UnitDependencies;
 import com.redhat.ceylon.compiler.typechecker.model.Module;
 import com.sun.tools.javac.main.OptionName;
 import com.sun.tools.javac.util.Log;
@@ -51,9 +53,11 @@ import com.sun.tools.javac.util.Options;
 public class JarOutputRepositoryManager {
     
     private Map<Module,ProgressiveJar> openJars = new HashMap<Module, ProgressiveJar>();
+    private Map<Module,Map<String,UnitDependencies>> compiledUnits = new HashMap<Module,Map<String,UnitDependencies>>();
     private Log log;
     private Options options;
     private CeyloncFileManager ceyloncFileManager;
+    private boolean hasStaleUnits;
     
     JarOutputRepositoryManager(Log log, Options options, CeyloncFileManager ceyloncFileManager){
         this.log = log;
@@ -66,23 +70,94 @@ public class JarOutputRepositoryManager {
         return progressiveJar.getJavaFileObject(fileName, sourceFile);
     }
     
+    /**
+     * Records the dependencies of a unit we compiled, to be merged into the
+     * dependency graph of its module car if we end up writing to it.
+     */
+    public void addDependencies(Module module, String unitPath, UnitDependencies dependencies){
+        Map<String,UnitDependencies> units = compiledUnits.get(module);
+        if(units == null){
+            units = new HashMap<String,UnitDependencies>();
+            compiledUnits.put(module, units);
+        }
+        units.put(unitPath, dependencies);
+        ProgressiveJar jarFile = openJars.get(module);
+        if(jarFile != null)
+            jarFile.addDependencies(units);
+    }
+
+    /**
+     * Returns the dependency graph stored in the existing car for the given module,
+     * or null if there is no such car or it has no graph.
+     */
+    public static DependencyGraph getDependencyGraph(RepositoryManager repositoryManager, Module module) throws IOException{
+        return readDependencyGraph(getCar(repositoryManager, module));
+    }
+
+    /**
+     * Returns the car of the given module in the given repositories, or null if there
+     * is none.
+     */
+    public static File getCar(RepositoryManager repositoryManager, Module module){
+        ArtifactContext carContext = new ArtifactContext(module.getNameAsString(), module.getVersion(), ArtifactContext.CAR);
+        return repositoryManager.getArtifact(carContext);
+    }
+
+    private static DependencyGraph readDependencyGraph(File car) throws IOException {
+        if(car == null)
+            return null;
+        JarFile jarFile = new JarFile(car);
+        try {
+            JarEntry entry = jarFile.getJarEntry(DependencyGraph.DEPENDENCIES_FILE);
+            if (entry == null)
+                return null;
+            InputStream inputStream = jarFile.getInputStream(entry);
+            try {
+                return DependencyGraph.read(inputStream);
+            } finally {
+                inputStream.close();
+            }
+        } finally {
+            jarFile.close();
+        }
+    }
+
+    /**
+     * Returns true if the last flush marked units as needing recompilation because
+     * an API they depend on changed.
+     */
+    public boolean hasStaleUnits() {
+        return hasStaleUnits;
+    }
+
     private ProgressiveJar getProgressiveJar(RepositoryManager repositoryManager, Module module) throws IOException {
         ProgressiveJar jarFile = openJars.get(module);
         if(jarFile == null){
             jarFile = new ProgressiveJar(repositoryManager, module, log, options, ceyloncFileManager);
             openJars.put(module, jarFile);
+            Map<String,UnitDependencies> units = compiledUnits.get(module);
+            if(units != null)
+                jarFile.addDependencies(units);
         }
         return jarFile;
     }
 
     public void flush() throws IOException {
         try{
+            hasStaleUnits = false;
+            // units can use declarations of the other modules we compiled, so an API
+            // change in one car can make units of any of them stale
+            Set<String> changedApi = new HashSet<String>();
+            for(ProgressiveJar jarFile : openJars.values()){
+                changedApi.addAll(jarFile.mergeDependencyGraph());
+            }
             for(ProgressiveJar jarFile : openJars.values()){
-                jarFile.close();
+                hasStaleUnits |= jarFile.close(changedApi);
             }
         }finally{
             // make sure we clear on return and throw, so we don't try to flush again on throw
             openJars.clear();
+            compiledUnits.clear();
         }
     }
     
@@ -93,6 +168,11 @@ public class JarOutputRepositoryManager {
         private JarOutputStream jarOutputStream;
         final private Set<String> modifiedSourceFiles = new HashSet<String>();
         final private Properties writtenClassesMapping = new Properties(); 
+        final private Map<String,UnitDependencies> compiledUnits = new HashMap<String,UnitDependencies>();
+        final private Set<String> removedSourceFiles = new HashSet<String>();
+        private DependencyGraph dependencyGraph;
+        private Iterable<? extends File> sourcePath;
+        private boolean incremental;
         private Logger cmrLog;
         private Options options;
         private RepositoryManager repoManager;
@@ -104,6 +184,8 @@ public class JarOutputRepositoryManager {
             this.repoManager = repoManager;
             this.carContext = new ArtifactContext(module.getNameAsString(), module.getVersion(), ArtifactContext.CAR);
             this.cmrLog = new JavacLogger(options, Log.instance(ceyloncFileManager.getContext()));
+            this.sourcePath = ceyloncFileManager.getLocation(StandardLocation.SOURCE_PATH);
+            this.incremental = options.get(OptionName.CEYLONINCREMENTAL) != null;
             this.creator = CeylonUtils.makeSourceArchiveCreator(repoManager, ceyloncFileManager.getLocation(StandardLocation.SOURCE_PATH),
                     module.getNameAsString(), module.getVersion(), options.get(OptionName.VERBOSE) != null, cmrLog);
             setupJarOutput();
@@ -139,24 +221,108 @@ public class JarOutputRepositoryManager {
             return null;
         }
 
-        public void close() throws IOException {
+        /**
+         * Writes the updated car, marking the units depending on any of the given
+         * declarations as stale. Returns true if some units must be recompiled
+         * because an API they depend on changed.
+         */
+        public boolean close(Set<String> changedApi) throws IOException {
             final Set<String> copiedSourceFiles = creator.copySourceFiles(modifiedSourceFiles);
 
             final Properties previousMapping = getPreviousMapping();
+            if(dependencyGraph == null)
+                mergeDependencyGraph();
+            boolean hasStaleUnits = markStaleUnits(changedApi);
             JarUtils.JarEntryFilter filterForCars = new JarUtils.JarEntryFilter() {
                 @Override
                 public boolean avoid(String entryFullName) {
                     boolean classWasUpdated = writtenClassesMapping.containsKey(entryFullName);
                     if (previousMapping != null) {
                         String sourceFileForClass = previousMapping.getProperty(entryFullName);
-                        classWasUpdated = classWasUpdated || copiedSourceFiles.contains(sourceFileForClass);
+                        classWasUpdated = classWasUpdated || copiedSourceFiles.contains(sourceFileForClass)
+                                || removedSourceFiles.contains(sourceFileForClass);
                     }
-                    return classWasUpdated || entryFullName.equals(MAPPING_FILE);
+                    return classWasUpdated || entryFullName.equals(MAPPING_FILE)
+                            || entryFullName.equals(DependencyGraph.DEPENDENCIES_FILE);
                 }
             };
             writeMappingJarEntry(previousMapping, filterForCars);
+            writeDependenciesJarEntry(dependencyGraph);
             JarUtils.finishUpdatingJar(originalJarFile, outputJarFile, carContext, jarOutputStream, filterForCars,
                     repoManager, options.get(OptionName.VERBOSE) != null, cmrLog);
+            return hasStaleUnits;
+        }
+
+        /**
+         * Merges the units we compiled into the graph of the existing car, and returns
+         * the declarations whose API changed.
+         */
+        public Set<String> mergeDependencyGraph() throws IOException {
+            dependencyGraph = readDependencyGraph(originalJarFile);
+            if(dependencyGraph == null)
+                dependencyGraph = new DependencyGraph();
+            Set<String> changedApi = new HashSet<String>();
+            for (Map.Entry<String, UnitDependencies> entry : compiledUnits.entrySet()) {
+                UnitDependencies previous = dependencyGraph.getUnit(entry.getKey());
+                changedApi.addAll(DependencyGraph.getChangedApi(previous, entry.getValue()));
+                dependencyGraph.putUnit(entry.getKey(), entry.getValue());
+            }
+            if(incremental){
+                // units whose source is gone take their classes and API with them
+                for (String unitPath : new ArrayList<String>(dependencyGraph.getUnitPaths())) {
+                    if(!compiledUnits.containsKey(unitPath) && !sourceExists(unitPath)){
+                        changedApi.addAll(DependencyGraph.getChangedApi(dependencyGraph.removeUnit(unitPath), null));
+                        removedSourceFiles.add(unitPath);
+                    }
+                }
+            }
+            return changedApi;
+        }
+
+        /**
+         * Marks the units depending on an API which changed as stale, so they get
+         * recompiled.
+         */
+        private boolean markStaleUnits(Set<String> changedApi) {
+            boolean hasStaleUnits = false;
+            for (String dependent : dependencyGraph.getDependents(changedApi)) {
+                if(!compiledUnits.containsKey(dependent)){
+                    dependencyGraph.markStale(dependent);
+                    hasStaleUnits = true;
+                }
+            }
+            return hasStaleUnits;
+        }
+
+        private boolean sourceExists(String unitPath) {
+            if(sourcePath == null)
+                return true;
+            for (File sourceDir : sourcePath) {
+                if(new File(sourceDir, unitPath).exists())
+                    return true;
+            }
+            return false;
+        }
+
+        private void writeDependenciesJarEntry(DependencyGraph dependencyGraph) {
+            try {
+                jarOutputStream.putNextEntry(new ZipEntry(DependencyGraph.DEPENDENCIES_FILE));
+                dependencyGraph.write(jarOutputStream);
+            }
+            catch(IOException e) {
+                // without it the next incremental build would not know what to recompile
+                cmrLog.error("Failed to write the dependencies of module "+carContext.getName()+": "+e.getMessage());
+            }
+            finally {
+                try {
+                    jarOutputStream.closeEntry();
+                } catch (IOException e) {
+                }
+            }
+        }
+
+        public void addDependencies(Map<String,UnitDependencies> dependencies) {
+            compiledUnits.putAll(dependencies);
         }
 
         private void writeMappingJarEntry(Properties previousMapping, JarUtils.JarEntryFilter filter) {
@@ -30,11 +30,20 @@
 
 package com.redhat.ceylon.compiler.java.tools;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedList;
+import java.util.Map;
 import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.LinkedBlockingQueue;
 
 import javax.annotation.processing.Processor;
 import javax.tools.JavaFileManager;
@@ -44,14 +53,17 @@ import javax.tools.StandardLocation;
 
 import org.antlr.runtime.ANTLRStringStream;
 import org.antlr.runtime.CommonTokenStream;
+import org.antlr.runtime.RecognitionException;
 
 import com.redhat.ceylon.compiler.java.codegen.CeylonClassWriter;
+import com.redhat.ceylon.compiler.java.codegen.ClassGeneratorContext;
 import com.redhat.ceylon.compiler.java.codegen.CeylonCompilationUnit;
 import com.redhat.ceylon.compiler.java.codegen.CeylonFileObject;
 import com.redhat.ceylon.compiler.java.codegen.CeylonTransformer;
 import com.redhat.ceylon.compiler.java.loader.CeylonEnter;
 import com.redhat.ceylon.compiler.java.loader.CeylonModelLoader;
 import com.redhat.ceylon.compiler.java.loader.model.CompilerModuleManager;
+import com.redhat.ceylon.compiler.java.util.Parallel;
 import com.redhat.ceylon.compiler.java.util.Timer;
 import com.redhat.ceylon.compiler.java.util.Util;
 import com.redhat.ceylon.compiler.loader.AbstractModelLoader;
@@ -72,23 +84,38 @@ import com.redhat.ceylon.compiler.typechecker.parser.ParseError;
 import com.redhat.ceylon.compiler.typechecker.parser.RecognitionError;
 import com.redhat.ceylon.compiler.typechecker.tree.Tree.CompilationUnit;
 import com.redhat.ceylon.compiler.typechecker.util.ModuleManagerFactory;
+import com.sun.source.util.TaskEvent;
+import com.sun.tools.javac.code.Kinds;
+import com.sun.tools.javac.code.Symbol;
 import com.sun.tools.javac.code.Symbol.ClassSymbol;
 import com.sun.tools.javac.code.Symbol.CompletionFailure;
+import com.sun.tools.javac.code.Type;
+import com.sun.tools.javac.code.TypeTags;
+import com.sun.tools.javac.code.Types;
 import com.sun.tools.javac.comp.AttrContext;
 import com.sun.tools.javac.comp.Env;
 import com.sun.tools.javac.jvm.ClassWriter;
+import com.sun.tools.javac.jvm.Gen;
 import com.sun.tools.javac.main.JavaCompiler;
 import com.sun.tools.javac.main.OptionName;
 import com.sun.tools.javac.tree.JCTree;
 import com.sun.tools.javac.tree.JCTree.JCAnnotation;
+import com.sun.tools.javac.tree.JCTree.JCAssignOp;
+import com.sun.tools.javac.tree.JCTree.JCBinary;
 import com.sun.tools.javac.tree.JCTree.JCClassDecl;
 import com.sun.tools.javac.tree.JCTree.JCCompilationUnit;
+import com.sun.tools.javac.tree.JCTree.JCNewClass;
+import com.sun.tools.javac.tree.JCTree.JCUnary;
 import com.sun.tools.javac.tree.TreeInfo;
+import com.sun.tools.javac.tree.TreeScanner;
 import com.sun.tools.javac.util.Context;
 import com.sun.tools.javac.util.Context.SourceLanguage.Language;
+import com.sun.tools.javac.util.JCDiagnostic;
+import com.sun.tools.javac.util.JCDiagnostic.DiagnosticType;
 import com.sun.tools.javac.util.Convert;
 import com.sun.tools.javac.file.JavacFileManager;
 import com.sun.tools.javac.util.List;
+import com.sun.tools.javac.util.ListBuffer;
 import com.sun.tools.javac.util.Log;
 import com.sun.tools.javac.util.Options;
 import com.sun.tools.javac.util.Pair;
@@ -116,6 +143,10 @@ public class LanguageCompiler extends JavaCompiler {
 
     private Options options;
 
+    private final Map<JavaFileObject, ParsedSource> parsedSources = new HashMap<JavaFileObject, ParsedSource>();
+
+    private final int genThreads;
+
     /** Get the PhasedUnits instance for this context. */
     public static PhasedUnits getPhasedUnitsInstance(final Context context) {
         PhasedUnits phasedUnits = context.get(phasedUnitsKey);
@@ -213,6 +244,11 @@ public class LanguageCompiler extends JavaCompiler {
         ceylonEnter = CeylonEnter.instance(context);
         options = Options.instance(context);
         Timer.setup(options);
+        genThreads = options.get(OptionName.CEYLONPARALLELGEN) != null ? Parallel.getThreads(options) : 1;
+        if (genThreads > 1) {
+            // hand the whole queue over to generate() rather than one class at a time
+            compilePolicy = CompilePolicy.SIMPLE;
+        }
     }
 
     /**
@@ -221,6 +257,7 @@ public class LanguageCompiler extends JavaCompiler {
      */
     public JCTree.JCCompilationUnit parse(JavaFileObject filename) {
         JavaFileObject prev = log.useSource(filename);
+        Timer.startSpan(filename.getName());
         try {
             JCTree.JCCompilationUnit t;
             if (filename.getName().endsWith(".java")) {
@@ -233,6 +270,7 @@ public class LanguageCompiler extends JavaCompiler {
                 log.setEndPosTable(filename, t.endPositions);
             return t;
         } finally {
+            Timer.endSpan();
             log.useSource(prev);
         }
     }
@@ -285,34 +323,32 @@ public class LanguageCompiler extends JavaCompiler {
                 return gen.makeJCCompilationUnitPlaceholder(phasedUnit.getCompilationUnit(), filename, pkgName, phasedUnit);
             }
             if (phasedUnit == null) {
-                ANTLRStringStream input = new ANTLRStringStream(source);
-                CeylonLexer lexer = new CeylonLexer(input);
-
-                CommonTokenStream tokens = new CommonTokenStream(lexer);
-
-                CeylonParser parser = new CeylonParser(tokens);
-                CompilationUnit cu = parser.compilationUnit();
+                // we may have parsed it already in parallel
+                ParsedSource parsedSource = parsedSources.remove(filename);
+                if (parsedSource == null)
+                    parsedSource = new ParsedSource(source).parse();
+                CompilationUnit cu = parsedSource.compilationUnit;
 
-                java.util.List<LexError> lexerErrors = lexer.getErrors();
-                for (LexError le : lexerErrors) {
+                for (LexError le : parsedSource.lexerErrors) {
                     printError(le, le.getMessage(), "ceylon.lexer", map);
                 }
 
-                java.util.List<ParseError> parserErrors = parser.getErrors();
-                for (ParseError pe : parserErrors) {
+                for (ParseError pe : parsedSource.parserErrors) {
                     printError(pe, pe.getMessage(), "ceylon.parser", map);
                 }
 
-                if (lexer.getNumberOfSyntaxErrors() != 0) {
+                if (parsedSource.lexerSyntaxErrors != 0) {
                     log.error("ceylon.lexer.failed");
-                } else if (parser.getNumberOfSyntaxErrors() != 0) {
+                } else if (parsedSource.parserSyntaxErrors != 0) {
                     log.error("ceylon.parser.failed");
                 } else {
                     // FIXME: this is bad in many ways
                     String pkgName = getPackage(filename);
                     // make a Package with no module yet, we will resolve them later
                     com.redhat.ceylon.compiler.typechecker.model.Package p = modelLoader.findOrCreatePackage(null, pkgName == null ? "" : pkgName);
-                    phasedUnit = new CeylonPhasedUnit(file, srcDir, cu, p, moduleManager, ceylonContext, filename, map);
+                    CeylonPhasedUnit ceylonPhasedUnit = new CeylonPhasedUnit(file, srcDir, cu, p, moduleManager, ceylonContext, filename, map);
+                    ceylonPhasedUnit.setSourceSha1(DependencyGraph.sha1(source));
+                    phasedUnit = ceylonPhasedUnit;
                     phasedUnits.addPhasedUnit(file, phasedUnit);
                     gen.setMap(map);
 
@@ -328,20 +364,182 @@ public class LanguageCompiler extends JavaCompiler {
         return result;
     }
 
+    /**
+     * The result of lexing and parsing a Ceylon source file. This does not depend
+     * on any other file, so we can do it for many files at once, and then register
+     * the resulting units one by one in the order javac parses them.
+     */
+    private static class ParsedSource {
+        final String source;
+        CompilationUnit compilationUnit;
+        java.util.List<LexError> lexerErrors;
+        java.util.List<ParseError> parserErrors;
+        int lexerSyntaxErrors;
+        int parserSyntaxErrors;
+
+        ParsedSource(String source) {
+            this.source = source;
+        }
+
+        ParsedSource parse() throws RecognitionException {
+            ANTLRStringStream input = new ANTLRStringStream(source);
+            CeylonLexer lexer = new CeylonLexer(input);
+
+            CommonTokenStream tokens = new CommonTokenStream(lexer);
+
+            CeylonParser parser = new CeylonParser(tokens);
+            compilationUnit = parser.compilationUnit();
+
+            lexerErrors = lexer.getErrors();
+            parserErrors = parser.getErrors();
+            lexerSyntaxErrors = lexer.getNumberOfSyntaxErrors();
+            parserSyntaxErrors = parser.getNumberOfSyntaxErrors();
+            return this;
+        }
+    }
+
+    @Override
+    public CharSequence readSource(JavaFileObject filename) {
+        ParsedSource parsedSource = parsedSources.get(filename);
+        if (parsedSource != null) {
+            inputFiles.add(filename);
+            return parsedSource.source;
+        }
+        return super.readSource(filename);
+    }
+
+    /**
+     * Lexes and parses the given Ceylon files on a bounded pool of worker threads.
+     * The sources are read on this thread because the file manager is not thread-safe.
+     * Any file we fail to read or parse here is left to the sequential parse, which
+     * reports the errors.
+     */
+    private void parseCeylonSources(Iterable<JavaFileObject> fileObjects) {
+        int threads = Parallel.getThreads(options);
+        if (threads <= 1)
+            return;
+        java.util.List<JavaFileObject> files = new ArrayList<JavaFileObject>();
+        java.util.List<Callable<ParsedSource>> tasks = new ArrayList<Callable<ParsedSource>>();
+        Set<JavaFileObject> filesSoFar = new HashSet<JavaFileObject>();
+        for (JavaFileObject fileObject : fileObjects) {
+            if (!(fileObject instanceof CeylonFileObject) || !filesSoFar.add(fileObject))
+                continue;
+            final String source;
+            try {
+                CharSequence content = fileObject.getCharContent(false);
+                if (content == null)
+                    continue;
+                source = content.toString();
+            } catch (IOException e) {
+                continue;
+            }
+            files.add(fileObject);
+            final String fileName = fileObject.getName();
+            tasks.add(new Callable<ParsedSource>() {
+                @Override
+                public ParsedSource call() {
+                    Timer.startSpan(fileName);
+                    try {
+                        return new ParsedSource(source).parse();
+                    } catch (Exception e) {
+                        return null;
+                    } finally {
+                        Timer.endSpan();
+                    }
+                }
+            });
+        }
+        if (tasks.size() <= 1)
+            return;
+        java.util.List<ParsedSource> results;
+        try {
+            results = Parallel.invokeAll(threads, tasks);
+        } catch (Exception e) {
+            // parse them sequentially then
+            return;
+        }
+        for (int i = 0; i < results.size(); i++) {
+            if (results.get(i) != null)
+                parsedSources.put(files.get(i), results.get(i));
+        }
+    }
+
     @Override
     public List<JCCompilationUnit> parseFiles(Iterable<JavaFileObject> fileObjects) {
         Timer.startTask("parse");
-        List<JCCompilationUnit> trees = super.parseFiles(fileObjects);
+        List<JCCompilationUnit> trees;
+        try {
+            parseCeylonSources(fileObjects);
+            trees = super.parseFiles(fileObjects);
+        } finally {
+            parsedSources.clear();
+        }
         Timer.startTask("loadCompiledModules");
         LinkedList<JCCompilationUnit> moduleTrees = new LinkedList<JCCompilationUnit>();
         loadCompiledModules(trees, moduleTrees);
         for (JCCompilationUnit moduleTree : moduleTrees) {
             trees = trees.append(moduleTree);
         }
+        if(options.get(OptionName.CEYLONINCREMENTAL) != null){
+            Timer.startTask("skipUpToDateUnits");
+            trees = skipUpToDateUnits(trees);
+        }
         Timer.endTask();
         return trees;
     }
 
+    /**
+     * Drops the units whose source did not change since they were compiled into the
+     * existing module car, and which were not marked stale because an API they depend
+     * on changed. Their declarations will be loaded from the car.
+     */
+    private List<JCCompilationUnit> skipUpToDateUnits(List<JCCompilationUnit> trees) {
+        Map<Module,DependencyGraph> dependencyGraphs = new HashMap<Module,DependencyGraph>();
+        ListBuffer<JCCompilationUnit> ret = new ListBuffer<JCCompilationUnit>();
+        for(JCCompilationUnit tree : trees){
+            if(tree instanceof CeylonCompilationUnit
+                    && isUpToDate(((CeylonCompilationUnit)tree).phasedUnit, dependencyGraphs)){
+                PhasedUnit phasedUnit = ((CeylonCompilationUnit)tree).phasedUnit;
+                if(options.get(OptionName.VERBOSE) != null)
+                    Log.printLines(log.noticeWriter, "[Skipping up-to-date unit "+phasedUnit.getPathRelativeToSrcDir()+"]");
+                phasedUnits.removePhasedUnitForRelativePath(phasedUnit.getPathRelativeToSrcDir());
+                continue;
+            }
+            ret.append(tree);
+        }
+        return ret.toList();
+    }
+
+    private boolean isUpToDate(PhasedUnit phasedUnit, Map<Module,DependencyGraph> dependencyGraphs) {
+        if(!(phasedUnit instanceof CeylonPhasedUnit))
+            return false;
+        String sha1 = ((CeylonPhasedUnit)phasedUnit).getSourceSha1();
+        String fileName = phasedUnit.getUnitFile().getName();
+        // module and package descriptors are always compiled
+        if(sha1 == null
+                || fileName.equals("module.ceylon")
+                || fileName.equals("package.ceylon"))
+            return false;
+        Module module = phasedUnit.getPackage().getModule();
+        if(module == null)
+            return false;
+        if(!dependencyGraphs.containsKey(module)){
+            DependencyGraph dependencyGraph = null;
+            try {
+                CeyloncFileManager ceyloncFileManager = (CeyloncFileManager)fileManager;
+                // we only track the uses of declarations of the modules we compile, so if a
+                // module we import was rebuilt since we were we must compile all our units
+                if(!ceyloncFileManager.hasNewerImports(module))
+                    dependencyGraph = ceyloncFileManager.getDependencyGraph(module);
+            } catch (IOException e) {
+                // we will just compile everything
+            }
+            dependencyGraphs.put(module, dependencyGraph);
+        }
+        DependencyGraph dependencyGraph = dependencyGraphs.get(module);
+        return dependencyGraph != null && dependencyGraph.isUpToDate(phasedUnit.getPathRelativeToSrcDir(), sha1);
+    }
+
     private void loadCompiledModules(List<JCCompilationUnit> trees, LinkedList<JCCompilationUnit> moduleTrees) {
         phasedUnits.visitModules();
         Modules modules = ceylonContext.getModules();
@@ -599,6 +797,13 @@ public class LanguageCompiler extends JavaCompiler {
         super.flow(env, results);   
     }
 
+    @Override
+    public void close(boolean disposeNames) {
+        super.close(disposeNames);
+        Timer.endTask();
+        Timer.writeReport();
+    }
+
     @Override
     public void initProcessAnnotations(Iterable<? extends Processor> processors) {
         // don't do anything, which will leave the "processAnnotations" field to false
@@ -617,7 +822,257 @@ public class LanguageCompiler extends JavaCompiler {
     @Override
     public void generate(Queue<Pair<Env<AttrContext>, JCClassDecl>> queue, Queue<JavaFileObject> results) {
         Timer.startTask("Generate");
-        super.generate(queue, results);
+        if (genThreads > 1 && queue.size() > 1 && !shouldStop(CompileState.GENERATE)
+                && !(stubOutput || sourceOutput || printFlat || verboseCompilePolicy))
+            generateInParallel(queue, results);
+        else
+            super.generate(queue, results);
         Timer.endTask();
     }
+
+    @Override
+    protected JavaFileObject genCode(Env<AttrContext> env, JCClassDecl cdef) throws IOException {
+        Timer.startSpan(cdef.sym.flatname.toString());
+        try {
+            return super.genCode(env, cdef);
+        } finally {
+            Timer.endSpan();
+        }
+    }
+
+    /**
+     * A class generated by a worker: its serialised class file, unless it had errors,
+     * and the diagnostics reported while generating it.
+     */
+    private static class GeneratedClass {
+        byte[] classFile;
+        int errors;
+        java.util.List<JCDiagnostic> diagnostics = new ArrayList<JCDiagnostic>();
+    }
+
+    /**
+     * Completes every symbol a desugared class refers to, and computes the supertypes
+     * and erasures of their types, on the compiler thread. Completion and those lazily
+     * computed fields fill in symbols and types which all the code generation workers
+     * share, so they must never happen on a worker.
+     */
+    private static class SymbolCompleter extends TreeScanner {
+        private final Types types;
+        private final Set<Object> seen = new HashSet<Object>();
+
+        SymbolCompleter(Types types) {
+            this.types = types;
+        }
+
+        @Override
+        public void scan(JCTree tree) {
+            if (tree == null)
+                return;
+            complete(TreeInfo.symbol(tree));
+            complete(TreeInfo.symbolFor(tree));
+            complete(tree.type);
+            super.scan(tree);
+        }
+
+        @Override
+        public void visitNewClass(JCNewClass tree) {
+            complete(tree.constructor);
+            super.visitNewClass(tree);
+        }
+
+        @Override
+        public void visitUnary(JCUnary tree) {
+            complete(tree.operator);
+            super.visitUnary(tree);
+        }
+
+        @Override
+        public void visitBinary(JCBinary tree) {
+            complete(tree.operator);
+            super.visitBinary(tree);
+        }
+
+        @Override
+        public void visitAssignop(JCAssignOp tree) {
+            complete(tree.operator);
+            super.visitAssignop(tree);
+        }
+
+        private void complete(Symbol sym) {
+            if (sym == null || !seen.add(sym))
+                return;
+            sym.complete();
+            complete(sym.owner);
+            if (sym.kind != Kinds.PCK) {
+                sym.flags();
+                complete(sym.type);
+                sym.erasure(types);
+            }
+        }
+
+        private void complete(Type t) {
+            if (t == null || !seen.add(t))
+                return;
+            switch (t.tag) {
+            case TypeTags.CLASS:
+                complete(t.tsym);
+                t.allparams();
+                for (Type arg : t.getTypeArguments())
+                    complete(arg);
+                for (Type sup : types.closure(t))
+                    complete(sup);
+                break;
+            case TypeTags.ARRAY:
+                complete(types.elemtype(t));
+                break;
+            case TypeTags.METHOD:
+            case TypeTags.FORALL:
+                for (Type param : t.getParameterTypes())
+                    complete(param);
+                complete(t.getReturnType());
+                for (Type thrown : t.getThrownTypes())
+                    complete(thrown);
+                break;
+            }
+        }
+    }
+
+    /**
+     * Generates the bytecode of the given classes and serialises their class files on
+     * several threads, each with its own {@link Gen}, {@link ClassWriter}, {@link Types}
+     * and log, and so its own constant pool, buffers, caches and current source file.
+     * The symbols the classes refer to are completed beforehand on this thread, see
+     * {@link SymbolCompleter}. Reporting the diagnostics of the workers and appending
+     * the class files to the module cars is left to this thread, in queue order, which
+     * is also where we stop writing classes after the first one which had errors, just
+     * like the sequential generation does.
+     */
+    private void generateInParallel(Queue<Pair<Env<AttrContext>, JCClassDecl>> queue, Queue<JavaFileObject> results) {
+        final BlockingQueue<ClassGeneratorContext> workers = new LinkedBlockingQueue<ClassGeneratorContext>();
+        for (int i = 0; i < genThreads; i++) {
+            workers.add(new ClassGeneratorContext(context));
+        }
+        java.util.List<Pair<Env<AttrContext>, JCClassDecl>> classes = new ArrayList<Pair<Env<AttrContext>, JCClassDecl>>(queue);
+        java.util.List<Callable<GeneratedClass>> tasks = new ArrayList<Callable<GeneratedClass>>(classes.size());
+        SymbolCompleter completer = new SymbolCompleter(Types.instance(context));
+        for (final Pair<Env<AttrContext>, JCClassDecl> x : classes) {
+            if (taskListener != null) {
+                TaskEvent e = new TaskEvent(TaskEvent.Kind.GENERATE, x.fst.toplevel, x.snd.sym);
+                taskListener.started(e);
+            }
+            CompletionFailure completionFailure = null;
+            try {
+                completer.scan(x.snd);
+            } catch (CompletionFailure ex) {
+                // reported by the worker, as genCode() would have
+                completionFailure = ex;
+            }
+            final CompletionFailure failure = completionFailure;
+            tasks.add(new Callable<GeneratedClass>() {
+                @Override
+                public GeneratedClass call() throws InterruptedException {
+                    ClassGeneratorContext worker = workers.take();
+                    try {
+                        return generateClass(worker, x.fst, x.snd, failure);
+                    } finally {
+                        workers.add(worker);
+                    }
+                }
+            });
+        }
+        java.util.List<GeneratedClass> generated;
+        try {
+            generated = Parallel.invokeAll(genThreads, tasks);
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+        for (int i = 0; i < classes.size(); i++) {
+            Env<AttrContext> env = classes.get(i).fst;
+            JCClassDecl cdef = classes.get(i).snd;
+            GeneratedClass generatedClass = generated.get(i);
+            for (JCDiagnostic diagnostic : generatedClass.diagnostics)
+                log.report(diagnostic);
+            if (generatedClass.errors > 0)
+                return;
+            if (generatedClass.classFile != null) {
+                JavaFileObject prev = log.useSource(getSourceFile(env));
+                try {
+                    JavaFileObject file = writer.writeClass(cdef.sym, generatedClass.classFile);
+                    if (results != null && file != null)
+                        results.add(file);
+                } catch (IOException ex) {
+                    log.error(cdef.pos(), "class.cant.write",
+                              cdef.sym, ex.getMessage());
+                    return;
+                } finally {
+                    log.useSource(prev);
+                }
+            }
+            if (taskListener != null) {
+                TaskEvent e = new TaskEvent(TaskEvent.Kind.GENERATE, env.toplevel, cdef.sym);
+                taskListener.finished(e);
+            }
+        }
+    }
+
+    /**
+     * Generates the bytecode of a single class and serialises it, on a worker thread.
+     * This is the parallel counterpart of {@link #genCode(Env, JCClassDecl)}.
+     */
+    private GeneratedClass generateClass(ClassGeneratorContext worker, Env<AttrContext> env, JCClassDecl cdef,
+            CompletionFailure failure) {
+        GeneratedClass ret = new GeneratedClass();
+        Log workerLog = worker.getLog();
+        JavaFileObject prev = workerLog.useSource(getSourceFile(env));
+        Timer.startSpan(cdef.sym.flatname.toString());
+        try {
+            if (failure != null)
+                throw failure;
+            if (worker.getGen().genClass(env, cdef)
+                    && countErrors(workerLog.deferredDiagnostics) == 0
+                    // not errorCount(), which may report an error to the shared log
+                    && log.nerrors == 0) {
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                worker.getClassWriter().writeClassFile(out, cdef.sym);
+                ret.classFile = out.toByteArray();
+            }
+        } catch (ClassWriter.PoolOverflow ex) {
+            workerLog.error(cdef.pos(), "limit.pool");
+        } catch (ClassWriter.StringOverflow ex) {
+            workerLog.error(cdef.pos(), "limit.string.overflow",
+                            ex.value.substring(0, 20));
+        } catch (CompletionFailure ex) {
+            workerLog.error(cdef.pos(), "cant.access", ex.sym, ex.getDetailValue());
+        } catch (IOException ex) {
+            // we only write to memory
+            throw new RuntimeException(ex);
+        } finally {
+            Timer.endSpan();
+            workerLog.useSource(prev);
+        }
+        JCDiagnostic diagnostic;
+        while ((diagnostic = workerLog.deferredDiagnostics.poll()) != null)
+            ret.diagnostics.add(diagnostic);
+        ret.errors = countErrors(ret.diagnostics);
+        if (ret.errors > 0)
+            ret.classFile = null;
+        return ret;
+    }
+
+    private static int countErrors(Iterable<JCDiagnostic> diagnostics) {
+        int errors = 0;
+        for (JCDiagnostic diagnostic : diagnostics) {
+            if (diagnostic.getType() == DiagnosticType.ERROR)
+                errors++;
+        }
+        return errors;
+    }
+
+    private static JavaFileObject getSourceFile(Env<AttrContext> env) {
+        return env.enclClass.sym.sourcefile != null ?
+                env.enclClass.sym.sourcefile :
+                env.toplevel.sourcefile;
+    }
 }
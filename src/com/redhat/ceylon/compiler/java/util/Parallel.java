@@ -0,0 +1,128 @@
+/*
+ * Copyright Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the authors tag. All rights reserved.
+ *
+ * This copyrighted material is made available to anyone wishing to use,
+ * modify, copy, or redistribute it subject to the terms and conditions
+ * of the GNU General Public License version 2.
+ * 
+ * This particular file is subject to the "Classpath" exception as provided in the 
+ * LICENSE file that accompanied this code.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT A
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE.  See the GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License,
+ * along with this distribution; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA  02110-1301, USA.
+ */
+package com.redhat.ceylon.compiler.java.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.sun.tools.javac.main.OptionName;
+import com.sun.tools.javac.util.Options;
+
+/**
+ * Runs independent compiler tasks on a bounded pool of worker threads. The
+ * results are always returned in task order, so that callers can register them
+ * in the same order as a sequential compilation would.
+ * <p>
+ * The number of threads comes from the hidden {@code -Xceylonthreads} option
+ * and defaults to the number of available processors. A value of 1 runs every
+ * task on the calling thread.
+ */
+public class Parallel {
+
+    public static int getThreads(Options options) {
+        String threads = options.get(OptionName.CEYLONTHREADS);
+        if(threads != null){
+            try{
+                return Math.max(1, Integer.parseInt(threads));
+            }catch(NumberFormatException x){
+                // fall back to the default
+            }
+        }
+        return Runtime.getRuntime().availableProcessors();
+    }
+
+    /**
+     * Runs the given tasks on at most the given number of threads, waits for all
+     * of them and returns their results in task order. If a task throws anything,
+     * exceptions and errors alike, the tasks which have not started yet are
+     * cancelled, and once the running ones are done the first failure in task
+     * order is rethrown on the calling thread.
+     */
+    public static <T> List<T> invokeAll(int threads, List<? extends Callable<T>> tasks) throws Exception {
+        List<T> ret = new ArrayList<T>(tasks.size());
+        if(threads <= 1 || tasks.size() <= 1){
+            for(Callable<T> task : tasks)
+                ret.add(task.call());
+            return ret;
+        }
+        final AtomicBoolean failed = new AtomicBoolean();
+        List<Callable<T>> guardedTasks = new ArrayList<Callable<T>>(tasks.size());
+        for(final Callable<T> task : tasks){
+            guardedTasks.add(new Callable<T>(){
+                @Override
+                public T call() throws Exception {
+                    // no point in starting anything once a task failed
+                    if(failed.get())
+                        throw new CancellationException();
+                    try{
+                        return task.call();
+                    }catch(Exception x){
+                        failed.set(true);
+                        throw x;
+                    }catch(Error x){
+                        failed.set(true);
+                        throw x;
+                    }
+                }
+            });
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(threads, tasks.size()), threadFactory);
+        try{
+            List<Future<T>> futures = executor.invokeAll(guardedTasks);
+            for(Future<T> future : futures){
+                try{
+                    ret.add(future.get());
+                }catch(ExecutionException x){
+                    // tasks start in order, so we always find the failure before the
+                    // tasks it cancelled
+                    Throwable cause = x.getCause();
+                    if(cause instanceof Exception)
+                        throw (Exception)cause;
+                    if(cause instanceof Error)
+                        throw (Error)cause;
+                    throw x;
+                }
+            }
+            return ret;
+        }finally{
+            executor.shutdownNow();
+        }
+    }
+
+    private static final ThreadFactory threadFactory = new ThreadFactory(){
+        private final AtomicInteger count = new AtomicInteger();
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "ceylonc-worker-"+count.incrementAndGet());
+            // never keep the VM alive for a compilation which is over
+            thread.setDaemon(true);
+            return thread;
+        }
+    };
+}
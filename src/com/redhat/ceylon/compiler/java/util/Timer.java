@@ -19,22 +19,77 @@
  */
 package com.redhat.ceylon.compiler.java.util;
 
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
 import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 import com.sun.tools.javac.main.OptionName;
 import com.sun.tools.javac.util.Options;
 
+/**
+ * Times the compiler phases and counts what they do.
+ * <p>
+ * Phases are delimited by {@link #startTask(String)} and {@link #endTask()}, and
+ * are printed to stderr with {@code -verbose:benchmark}. Within a phase, any
+ * thread can open nested spans with {@link #startSpan(String)} and
+ * {@link #endSpan()}, for example for each compilation unit, and any code can
+ * increment named counters with {@link #count(String, long)}. Spans record the
+ * thread they ran on and, where the JVM supports it, how many bytes that thread
+ * allocated during the span.
+ * <p>
+ * Spans and counters are only recorded when {@code -verbose:benchmark} or
+ * {@code -Xceylontimingreport <file>} is set. The latter writes every phase, span
+ * and counter to the given file when the compilation ends, as CSV if the file
+ * name ends with {@code .csv} and as JSON otherwise.
+ */
 public class Timer {
     private static long programStart;
+    private static long programStartNanos;
     private static String currentTask;
-    private static long currentTaskStart;
+    private static Span currentTaskSpan;
     private static boolean verbose;
+    private static volatile boolean recording;
+    private static volatile boolean alwaysRecord;
+    private static String reportFile;
     private static final Map<String,IgnoredCategory> ignoredCategories = new HashMap<String,IgnoredCategory>();
 
+    private static final List<Span> spans = Collections.synchronizedList(new ArrayList<Span>());
+    private static final ConcurrentHashMap<String,AtomicLong> counters = new ConcurrentHashMap<String,AtomicLong>();
+    // not reset by setup(), so that they add up over several compilations
+    private static final ConcurrentHashMap<String,AtomicLong> phaseTimes = new ConcurrentHashMap<String,AtomicLong>();
+    private static final ThreadLocal<LinkedList<Span>> openSpans = new ThreadLocal<LinkedList<Span>>(){
+        @Override
+        protected LinkedList<Span> initialValue() {
+            return new LinkedList<Span>();
+        }
+    };
+
     public static void setup(Options options) {
         verbose = options.get(OptionName.VERBOSE) != null 
                 || options.get(OptionName.VERBOSE + ":benchmark" ) != null;
+        reportFile = options.get(OptionName.CEYLONTIMINGREPORT);
+        recording = verbose || reportFile != null || alwaysRecord;
+        // this is a new compilation
+        currentTask = null;
+        currentTaskSpan = null;
+        spans.clear();
+        counters.clear();
+        openSpans.get().clear();
+        if(programStart == 0)
+            init();
         // we delay printing the program start because we don't know if the verbose option is set yet at
         // that time, so we fake it later on with the correct time
         if(verbose)
@@ -43,22 +98,46 @@ public class Timer {
 
     public static void init(){
         programStart = System.currentTimeMillis();
+        programStartNanos = System.nanoTime();
     }
 
     public static void end() {
-        if(!verbose)
+        if(!recording)
             return;
-        log("Program end");
+        if(currentTask != null)
+            endTask();
+        if(verbose)
+            log("Program end");
+        writeReport();
+        recording = false;
+    }
+
+    /**
+     * Writes the report file, if we were asked for one and did not write it yet.
+     * {@link #end()} does it for the launcher, and the compiler does it when it is
+     * closed, for compilations which do not go through the launcher.
+     */
+    public static void writeReport() {
+        if(reportFile == null)
+            return;
+        String file = reportFile;
+        reportFile = null;
+        try{
+            writeReport(new File(file));
+        }catch(IOException x){
+            System.err.println("Failed to write the timing report to "+file+": "+x.getMessage());
+        }
     }
 
     public static void startTask(String name){
-        if(!verbose)
+        if(!recording)
             return;
         if(currentTask != null)
             endTask();
         currentTask = name;
-        currentTaskStart = System.currentTimeMillis();
-        log("Task "+currentTask+" start");
+        currentTaskSpan = new Span(name, name);
+        if(verbose)
+            log("Task "+currentTask+" start");
     }
 
     public static void log(String string) {
@@ -73,17 +152,106 @@ public class Timer {
     }
 
     public static void endTask() {
-        if(!verbose)
+        if(!recording || currentTask == null)
             return;
-        long time = System.currentTimeMillis();
-        long delta = time - currentTaskStart;
-        log("Task "+currentTask+" end: "+delta+"ms");
+        currentTaskSpan.end();
+        add(phaseTimes, currentTask, currentTaskSpan.duration);
+        if(verbose)
+            log("Task "+currentTask+" end: "+currentTaskSpan.getDurationMillis()+"ms");
         printIgnoredCategories();
         currentTask = null;
+        currentTaskSpan = null;
     }
 
-    public static void startIgnore(String category) {
-        if(!verbose)
+    /**
+     * Opens a span nested in the last span this thread opened, or in the current
+     * task if it has none. It must be closed by {@link #endSpan()} on the same thread.
+     */
+    public static void startSpan(String name){
+        if(!recording)
+            return;
+        LinkedList<Span> stack = openSpans.get();
+        String parent;
+        if(!stack.isEmpty())
+            parent = stack.getLast().path;
+        else
+            parent = currentTask;
+        stack.add(new Span(name, parent != null ? parent + "/" + name : name));
+    }
+
+    /**
+     * Closes the last span this thread opened.
+     */
+    public static void endSpan(){
+        if(!recording)
+            return;
+        LinkedList<Span> stack = openSpans.get();
+        if(stack.isEmpty())
+            return;
+        stack.removeLast().end();
+    }
+
+    /**
+     * Adds the given amount to the given counter.
+     */
+    public static void count(String counter, long delta){
+        if(!recording)
+            return;
+        add(counters, counter, delta);
+    }
+
+    private static void add(ConcurrentHashMap<String,AtomicLong> map, String key, long delta){
+        AtomicLong value = map.get(key);
+        if(value == null){
+            AtomicLong newValue = new AtomicLong();
+            value = map.putIfAbsent(key, newValue);
+            if(value == null)
+                value = newValue;
+        }
+        value.addAndGet(delta);
+    }
+
+    /**
+     * Increments the given counter.
+     */
+    public static void count(String counter){
+        count(counter, 1);
+    }
+
+    /**
+     * Returns the current value of the given counter, or 0 if it was never incremented.
+     */
+    public static long getCount(String counter){
+        AtomicLong value = counters.get(counter);
+        return value != null ? value.get() : 0;
+    }
+
+    /**
+     * Makes every following compilation record its phases, spans and counters, even
+     * without {@code -verbose:benchmark} or a report file. This is for tools which
+     * read them in-process, such as benchmarks.
+     */
+    public static void setAlwaysRecord(boolean alwaysRecord){
+        Timer.alwaysRecord = alwaysRecord;
+    }
+
+    /**
+     * Returns the total time in nanoseconds spent in each phase by every compilation
+     * since the last call to {@link #resetPhaseTimes()}.
+     */
+    public static Map<String,Long> getPhaseTimes(){
+        Map<String,Long> ret = new TreeMap<String,Long>();
+        for(Map.Entry<String,AtomicLong> entry : phaseTimes.entrySet())
+            ret.put(entry.getKey(), entry.getValue().get());
+        return ret;
+    }
+
+    public static void resetPhaseTimes(){
+        phaseTimes.clear();
+    }
+
+    public static synchronized void startIgnore(String category) {
+        if(!recording)
             return;
         IgnoredCategory ignoredCategory = ignoredCategories.get(category);
         if(ignoredCategory == null){
@@ -93,8 +261,8 @@ public class Timer {
         ignoredCategory.start();
     }
 
-    public static void stopIgnore(String category) {
-        if(!verbose)
+    public static synchronized void stopIgnore(String category) {
+        if(!recording)
             return;
         IgnoredCategory ignoredCategory = ignoredCategories.get(category);
         if (ignoredCategory != null) {
@@ -102,15 +270,165 @@ public class Timer {
         }
     }
     
-    private static void printIgnoredCategories(){
+    private static synchronized void printIgnoredCategories(){
         for(IgnoredCategory category : ignoredCategories.values()){
             if(category.total != 0){
-                System.err.println(" Including "+category.name+" for "+category.total+"ms");
+                if(verbose)
+                    System.err.println(" Including "+category.name+" for "+category.total+"ms");
+                count(currentTask+"/"+category.name+" ms", category.total);
             }
             category.reset();
         }
     }
 
+    private static void writeReport(File file) throws IOException {
+        List<Span> spans;
+        synchronized(Timer.spans){
+            spans = new ArrayList<Span>(Timer.spans);
+        }
+        Map<String,Long> counters = new TreeMap<String,Long>();
+        for(Map.Entry<String,AtomicLong> entry : Timer.counters.entrySet())
+            counters.put(entry.getKey(), entry.getValue().get());
+        File parent = file.getAbsoluteFile().getParentFile();
+        if(parent != null)
+            parent.mkdirs();
+        Writer writer = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+        try{
+            if(file.getName().endsWith(".csv"))
+                writeCsv(writer, spans, counters);
+            else
+                writeJson(writer, spans, counters);
+        }finally{
+            writer.close();
+        }
+    }
+
+    private static void writeJson(Writer writer, List<Span> spans, Map<String,Long> counters) throws IOException {
+        writer.write("{\n  \"spans\": [");
+        boolean first = true;
+        for(Span span : spans){
+            writer.write(first ? "\n" : ",\n");
+            first = false;
+            writer.write("    {\"path\": "+jsonString(span.path)
+                    +", \"name\": "+jsonString(span.name)
+                    +", \"thread\": "+jsonString(span.thread)
+                    +", \"start_ms\": "+span.getStartMillis()
+                    +", \"duration_ms\": "+span.getDurationMillis()
+                    +", \"allocated_bytes\": "+span.allocated+"}");
+        }
+        writer.write("\n  ],\n  \"counters\": {");
+        first = true;
+        for(Map.Entry<String,Long> entry : counters.entrySet()){
+            writer.write(first ? "\n" : ",\n");
+            first = false;
+            writer.write("    "+jsonString(entry.getKey())+": "+entry.getValue());
+        }
+        writer.write("\n  }\n}\n");
+    }
+
+    private static void writeCsv(Writer writer, List<Span> spans, Map<String,Long> counters) throws IOException {
+        writer.write("kind,path,thread,start_ms,duration_ms,allocated_bytes,value\n");
+        for(Span span : spans){
+            writer.write("span,"+csvString(span.path)+","+csvString(span.thread)
+                    +","+span.getStartMillis()+","+span.getDurationMillis()+","+span.allocated+",\n");
+        }
+        for(Map.Entry<String,Long> entry : counters.entrySet()){
+            writer.write("counter,"+csvString(entry.getKey())+",,,,,"+entry.getValue()+"\n");
+        }
+    }
+
+    public static String jsonString(String string){
+        StringBuilder sb = new StringBuilder(string.length()+2);
+        sb.append('"');
+        for(int i=0;i<string.length();i++){
+            char c = string.charAt(i);
+            switch(c){
+            case '"': sb.append("\\\""); break;
+            case '\\': sb.append("\\\\"); break;
+            case '\n': sb.append("\\n"); break;
+            case '\r': sb.append("\\r"); break;
+            case '\t': sb.append("\\t"); break;
+            default:
+                if(c < 0x20)
+                    sb.append(String.format("\\u%04x", (int)c));
+                else
+                    sb.append(c);
+            }
+        }
+        return sb.append('"').toString();
+    }
+
+    private static String csvString(String string){
+        if(string.indexOf(',') == -1 && string.indexOf('"') == -1 && string.indexOf('\n') == -1)
+            return string;
+        return '"' + string.replace("\"", "\"\"") + '"';
+    }
+
+    /**
+     * Returns the number of bytes allocated so far by the current thread, or -1
+     * if the JVM cannot tell us.
+     */
+    public static long getAllocatedBytes(){
+        if(allocatedBytesMethod == null)
+            return -1;
+        try{
+            return (Long)allocatedBytesMethod.invoke(threadBean, Thread.currentThread().getId());
+        }catch(Exception x){
+            return -1;
+        }
+    }
+
+    private static final Object threadBean = ManagementFactory.getThreadMXBean();
+    // this is only available on HotSpot-derived JVMs, so we do not link to it
+    private static final Method allocatedBytesMethod = getAllocatedBytesMethod();
+
+    private static Method getAllocatedBytesMethod(){
+        try{
+            Class<?> beanInterface = Class.forName("com.sun.management.ThreadMXBean");
+            if(!beanInterface.isInstance(threadBean))
+                return null;
+            Method isSupported = beanInterface.getMethod("isThreadAllocatedMemorySupported");
+            if(!(Boolean)isSupported.invoke(threadBean))
+                return null;
+            beanInterface.getMethod("setThreadAllocatedMemoryEnabled", boolean.class).invoke(threadBean, true);
+            return beanInterface.getMethod("getThreadAllocatedBytes", long.class);
+        }catch(Exception x){
+            return null;
+        }
+    }
+
+    private final static class Span {
+        final String name;
+        final String path;
+        final String thread;
+        final long start;
+        final long startAllocated;
+        long duration;
+        long allocated = -1;
+        public Span(String name, String path) {
+            this.name = name;
+            this.path = path;
+            this.thread = Thread.currentThread().getName();
+            this.startAllocated = getAllocatedBytes();
+            this.start = System.nanoTime();
+        }
+        public void end() {
+            duration = System.nanoTime() - start;
+            if(startAllocated != -1){
+                long endAllocated = getAllocatedBytes();
+                if(endAllocated != -1)
+                    allocated = endAllocated - startAllocated;
+            }
+            spans.add(this);
+        }
+        public long getStartMillis() {
+            return (start - programStartNanos) / 1000000;
+        }
+        public long getDurationMillis() {
+            return duration / 1000000;
+        }
+    }
+
     private final static class IgnoredCategory {
         String name;
         long start;
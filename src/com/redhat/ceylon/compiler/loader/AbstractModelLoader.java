@@ -21,9 +21,11 @@ package com.redhat.ceylon.compiler.loader;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.LinkedList;
@@ -31,6 +33,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import javax.lang.model.type.TypeKind;
 
@@ -91,12 +94,22 @@ import com.redhat.ceylon.compiler.typechecker.model.ValueParameter;
 /**
  * Abstract class of a model loader that can load a model from a compiled Java representation,
  * while being agnostic of the reflection API used to load the compiled Java representation.
+ * <p>
+ * Every entry point locks the model loader, and lazy declarations complete themselves while
+ * holding that same lock, so several typechecker threads can share one model loader.
  *
  * @author Stéphane Épardaud <stef@epardaud.fr>
  */
 public abstract class AbstractModelLoader implements ModelCompleter, ModelLoader {
 
     private static final String TIMER_MODEL_LOADER_CATEGORY = "model loader";
+    private static final String COUNTER_CLASS_MIRROR_HITS = "model loader/class mirror cache hits";
+    private static final String COUNTER_CLASS_MIRROR_MISSES = "model loader/class mirror cache misses";
+    private static final String COUNTER_DECLARATION_HITS = "model loader/declaration cache hits";
+    private static final String COUNTER_DECLARATION_MISSES = "model loader/declaration cache misses";
+    private static final String COUNTER_CLASSES_COMPLETED = "model loader/classes completed";
+    private static final String COUNTER_MEMBERS_COMPLETED = "model loader/members completed";
+    private static final String COUNTER_CLASS_MEMBERS_LOADED = "model loader/class members loaded";
     public static final String ORACLE_JDK_MODULE = "oracle";
     public static final String JDK_MODULE = "java";
     
@@ -162,17 +175,30 @@ public abstract class AbstractModelLoader implements ModelCompleter, ModelLoader
         return new SimpleReflType(name, TypeKind.DECLARED);
     }
 
-    protected Map<String, Declaration> declarationsByName = new HashMap<String, Declaration>();
-    protected Map<Package, Unit> unitsByPackage = new HashMap<Package, Unit>();
+    /*
+     * The model loader state is kept in concurrent collections so that lookups of things we already
+     * loaded can skip the model loader lock. Everything that creates or completes declarations still
+     * happens under that lock: completing a declaration requires loading and completing others, so
+     * per-declaration locks would deadlock as soon as two threads complete mutually dependent types.
+     * Lazy declarations make sure they are only completed once, and let other threads read them
+     * without locking once they are complete.
+     */
+    protected Map<String, Declaration> declarationsByName = new ConcurrentHashMap<String, Declaration>();
+    protected Map<Package, Unit> unitsByPackage = new ConcurrentHashMap<Package, Unit>();
     protected TypeParser typeParser;
     protected Unit typeFactory;
-    protected final Set<String> loadedPackages = new HashSet<String>();
-    protected final Map<String,LazyPackage> packagesByName = new HashMap<String,LazyPackage>();
+    protected final Set<String> loadedPackages = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+    protected final Map<String,LazyPackage> packagesByName = new ConcurrentHashMap<String,LazyPackage>();
     protected boolean packageDescriptorsNeedLoading = false;
     protected boolean isBootstrap;
     protected ModuleManager moduleManager;
     protected Modules modules;
-    protected Map<String, ClassMirror> classMirrorCache = new HashMap<String, ClassMirror>();
+    protected final ClassMirrorCache classMirrorCache = new ClassMirrorCache();
+    // declarations which are fully set up, by declaration type and name, only used for lookups without the lock
+    private final Map<String, Declaration> resolvedDeclarations = new ConcurrentHashMap<String, Declaration>();
+    protected final ModelLoaderMetrics metrics = new ModelLoaderMetrics();
+    // the members left to load for classes we loaded members of one by one, only used under the lock
+    private final Map<ClassOrInterface, MemberIndex> memberIndexes = new IdentityHashMap<ClassOrInterface, MemberIndex>();
     protected boolean binaryCompatibilityErrorRaised = false;
 
     /**
@@ -191,12 +217,31 @@ public abstract class AbstractModelLoader implements ModelCompleter, ModelLoader
      * @return a ClassMirror for the specified class, or null if not found.
      */
     public final ClassMirror lookupClassMirror(String name){
+        // try without the lock first
+        ClassMirror mirror = classMirrorCache.get(name);
+        if(mirror != null || classMirrorCache.isMissing(name)){
+            Timer.count(COUNTER_CLASS_MIRROR_HITS);
+            metrics.classMirrorLookup(true, mirror != null);
+            return mirror;
+        }
+        synchronized(this){
+            return lookupClassMirrorLocked(name);
+        }
+    }
+
+    private ClassMirror lookupClassMirrorLocked(String name){
         Timer.startIgnore(TIMER_MODEL_LOADER_CATEGORY);
         try{
-            // we use containsKey to be able to cache null results
-            if(classMirrorCache.containsKey(name))
-                return classMirrorCache.get(name);
-            ClassMirror mirror = lookupNewClassMirror(name);
+            // another thread may have looked it up while we were waiting for the lock
+            ClassMirror mirror = classMirrorCache.get(name);
+            if(mirror != null || classMirrorCache.isMissing(name)){
+                Timer.count(COUNTER_CLASS_MIRROR_HITS);
+                metrics.classMirrorLookup(true, mirror != null);
+                return mirror;
+            }
+            Timer.count(COUNTER_CLASS_MIRROR_MISSES);
+            mirror = lookupNewClassMirror(name);
+            metrics.classMirrorLookup(false, mirror != null);
             // we even cache null results
             classMirrorCache.put(name, mirror);
             return mirror;
@@ -229,6 +274,15 @@ public abstract class AbstractModelLoader implements ModelCompleter, ModelLoader
      */
     public abstract void addModuleToClassPath(Module module, ArtifactResult artifact);
 
+    /**
+     * Removes the given module from the set of modules from which we can load classes, and
+     * forgets whatever we loaded from the given packages of that module.
+     * 
+     * @param module the module
+     * @param packageNames the quoted names of the packages we loaded from that module
+     */
+    protected abstract void removeModuleFromClassPath(Module module, Set<String> packageNames);
+
     /**
      * Returns true if the given method is overriding an inherited method (from super class or interfaces).
      */
@@ -332,6 +386,7 @@ public abstract class AbstractModelLoader implements ModelCompleter, ModelLoader
 
         // find/make its Unit
         Unit unit = getCompiledUnit(pkg, classMirror);
+        metrics.declarationsCreated(pkg.getNameAsString(), module != null ? module.getNameAsString() : null, decls.size());
 
         for(Declaration d : decls){
             d.setShared(classMirror.isPublic());
@@ -382,7 +437,7 @@ public abstract class AbstractModelLoader implements ModelCompleter, ModelLoader
         alias.setExtendedType(extendedType);
     }
 
-    public Declaration getOrCreateDeclaration(ClassMirror classMirror,
+    public synchronized Declaration getOrCreateDeclaration(ClassMirror classMirror,
             DeclarationType declarationType, List<Declaration> decls, boolean[] alreadyExists) {
         alreadyExists[0] = false;
         Declaration decl = null;
@@ -409,9 +464,11 @@ public abstract class AbstractModelLoader implements ModelCompleter, ModelLoader
         String key = prefix + className;
         // see if we already have it
         if(declarationsByName.containsKey(key)){
+            Timer.count(COUNTER_DECLARATION_HITS);
             alreadyExists[0] = true;
             return declarationsByName.get(key);
         }
+        Timer.count(COUNTER_DECLARATION_MISSES);
         
         checkBinaryCompatibility(classMirror);
         
@@ -476,7 +533,7 @@ public abstract class AbstractModelLoader implements ModelCompleter, ModelLoader
 
 
         // objects have special handling above
-        if(type != ClassType.OBJECT){
+        if(type != ClassType.OBJECT && decl != null){
             declarationsByName.put(key, decl);
             decls.add(decl);
         }
@@ -570,6 +627,23 @@ public abstract class AbstractModelLoader implements ModelCompleter, ModelLoader
         //This should be done where the TypeInfo annotation is parsed
         //to avoid retarded errors because of a space after a comma
         typeName = typeName.trim();
+        // try without the lock first
+        String resolvedKey = declarationType + typeName;
+        Declaration decl = resolvedDeclarations.get(resolvedKey);
+        if(decl != null){
+            Timer.count(COUNTER_DECLARATION_HITS);
+            return decl;
+        }
+        synchronized(this){
+            decl = convertToDeclarationLocked(typeName, declarationType);
+            // only publish declarations which are set up, and which we'd return again
+            if(decl != null && !(decl instanceof BottomType))
+                resolvedDeclarations.put(resolvedKey, decl);
+            return decl;
+        }
+    }
+
+    private Declaration convertToDeclarationLocked(String typeName, DeclarationType declarationType) {
         Timer.startIgnore(TIMER_MODEL_LOADER_CATEGORY);
         try{
             if ("ceylon.language.Bottom".equals(typeName)) {
@@ -643,11 +717,20 @@ public abstract class AbstractModelLoader implements ModelCompleter, ModelLoader
 
     public LazyPackage findOrCreatePackage(Module module, final String pkgName) {
         String quotedPkgName = Util.quoteJavaKeywords(pkgName);
+        // try without the lock first
+        LazyPackage pkg = packagesByName.get(quotedPkgName);
+        if(pkg != null)
+            return pkg;
+        synchronized(this){
+            return findOrCreatePackageLocked(module, pkgName, quotedPkgName);
+        }
+    }
+
+    private LazyPackage findOrCreatePackageLocked(Module module, String pkgName, String quotedPkgName) {
         LazyPackage pkg = packagesByName.get(quotedPkgName);
         if(pkg != null)
             return pkg;
         pkg = new LazyPackage(this);
-        packagesByName.put(quotedPkgName, pkg);
         // FIXME: some refactoring needed
         pkg.setName(pkgName == null ? Collections.<String>emptyList() : Arrays.asList(pkgName.split("\\.")));
 
@@ -656,6 +739,8 @@ public abstract class AbstractModelLoader implements ModelCompleter, ModelLoader
             pkg.setModule(module);
             module.getPackages().add(pkg);
         }
+        // only publish it once it has a name, since other threads can find it without locking
+        packagesByName.put(quotedPkgName, pkg);
         
         // only load package descriptors for new packages after a certain phase
         if(packageDescriptorsNeedLoading)
@@ -664,7 +749,7 @@ public abstract class AbstractModelLoader implements ModelCompleter, ModelLoader
         return pkg;
     }
 
-    public void loadPackageDescriptors() {
+    public synchronized void loadPackageDescriptors() {
         for(Package pkg : packagesByName.values()){
             loadPackageDescriptor(pkg);
         }
@@ -712,7 +797,7 @@ public abstract class AbstractModelLoader implements ModelCompleter, ModelLoader
         pkg.setShared(shared);
     }
 
-    public Module lookupModuleInternal(String packageName) {
+    public synchronized Module lookupModuleInternal(String packageName) {
         for(Module module : modules.getListOfModules()){
             if(module instanceof LazyModule){
                 if(((LazyModule)module).containsPackage(packageName))
@@ -730,7 +815,7 @@ public abstract class AbstractModelLoader implements ModelCompleter, ModelLoader
 
     //
     // Modules
-    public Module findOrCreateModule(String pkgName) {
+    public synchronized Module findOrCreateModule(String pkgName) {
         boolean isJava = false;
         boolean defaultModule = false;
 
@@ -743,10 +828,10 @@ public abstract class AbstractModelLoader implements ModelCompleter, ModelLoader
         if(pkgName == null){
             pkgName = Module.DEFAULT_MODULE_NAME;
             defaultModule = true;
-        } else if(pkgName.equals(JDK_MODULE) || JDKPackageList.isJDKPackage(pkgName)){
+        } else if(pkgName.equals(JDK_MODULE) || JDKIndex.getInstance().isJDKPackage(pkgName)){
             pkgName = JDK_MODULE;
             isJava = true;
-        } else if(pkgName.equals(ORACLE_JDK_MODULE) || JDKPackageList.isOracleJDKPackage(pkgName)){
+        } else if(pkgName.equals(ORACLE_JDK_MODULE) || JDKIndex.getInstance().isOracleJDKPackage(pkgName)){
             pkgName = ORACLE_JDK_MODULE;
             isJava = true;
         } else if(pkgName.startsWith("ceylon.language.")){
@@ -776,7 +861,7 @@ public abstract class AbstractModelLoader implements ModelCompleter, ModelLoader
         return module;
     }
 
-    public Module loadCompiledModule(String pkgName) {
+    public synchronized Module loadCompiledModule(String pkgName) {
         if(pkgName.isEmpty())
             return null;
         String moduleClassName = pkgName + ".module";
@@ -891,104 +976,325 @@ public abstract class AbstractModelLoader implements ModelCompleter, ModelLoader
     // ModelCompleter
     
     @Override
-    public void complete(LazyInterface iface) {
+    public synchronized void complete(LazyInterface iface) {
         Timer.startIgnore(TIMER_MODEL_LOADER_CATEGORY);
-        complete(iface, iface.classMirror);
-        Timer.stopIgnore(TIMER_MODEL_LOADER_CATEGORY);
+        Timer.count(COUNTER_CLASSES_COMPLETED);
+        metrics.startCompletion();
+        try{
+            complete(iface, iface.classMirror);
+        }finally{
+            endCompletion(iface, true);
+            Timer.stopIgnore(TIMER_MODEL_LOADER_CATEGORY);
+        }
     }
 
     @Override
-    public void completeTypeParameters(LazyInterface iface) {
+    public synchronized void completeHeader(LazyInterface iface) {
         Timer.startIgnore(TIMER_MODEL_LOADER_CATEGORY);
-        completeTypeParameters(iface, iface.classMirror);
-        Timer.stopIgnore(TIMER_MODEL_LOADER_CATEGORY);
+        metrics.startCompletion();
+        try{
+            completeHeader(iface, iface.classMirror);
+        }finally{
+            endCompletion(iface, false);
+            Timer.stopIgnore(TIMER_MODEL_LOADER_CATEGORY);
+        }
     }
 
     @Override
-    public void complete(LazyClass klass) {
+    public synchronized void completeMember(LazyInterface iface, String name) {
         Timer.startIgnore(TIMER_MODEL_LOADER_CATEGORY);
-        complete(klass, klass.classMirror);
-        Timer.stopIgnore(TIMER_MODEL_LOADER_CATEGORY);
+        metrics.startCompletion();
+        try{
+            completeMember(iface, iface.classMirror, name);
+        }finally{
+            endCompletion(iface, false);
+            Timer.stopIgnore(TIMER_MODEL_LOADER_CATEGORY);
+        }
     }
 
     @Override
-    public void completeTypeParameters(LazyClass klass) {
+    public synchronized void completeTypeParameters(LazyInterface iface) {
         Timer.startIgnore(TIMER_MODEL_LOADER_CATEGORY);
-        completeTypeParameters(klass, klass.classMirror);
-        Timer.stopIgnore(TIMER_MODEL_LOADER_CATEGORY);
+        metrics.startCompletion();
+        try{
+            completeTypeParameters(iface, iface.classMirror);
+        }finally{
+            endCompletion(iface, false);
+            Timer.stopIgnore(TIMER_MODEL_LOADER_CATEGORY);
+        }
+    }
+
+    @Override
+    public synchronized void complete(LazyClass klass) {
+        Timer.startIgnore(TIMER_MODEL_LOADER_CATEGORY);
+        Timer.count(COUNTER_CLASSES_COMPLETED);
+        metrics.startCompletion();
+        try{
+            complete(klass, klass.classMirror);
+        }finally{
+            endCompletion(klass, true);
+            Timer.stopIgnore(TIMER_MODEL_LOADER_CATEGORY);
+        }
+    }
+
+    @Override
+    public synchronized void completeHeader(LazyClass klass) {
+        Timer.startIgnore(TIMER_MODEL_LOADER_CATEGORY);
+        metrics.startCompletion();
+        try{
+            completeHeader(klass, klass.classMirror);
+        }finally{
+            endCompletion(klass, false);
+            Timer.stopIgnore(TIMER_MODEL_LOADER_CATEGORY);
+        }
+    }
+
+    @Override
+    public synchronized void completeMember(LazyClass klass, String name) {
+        Timer.startIgnore(TIMER_MODEL_LOADER_CATEGORY);
+        metrics.startCompletion();
+        try{
+            completeMember(klass, klass.classMirror, name);
+        }finally{
+            endCompletion(klass, false);
+            Timer.stopIgnore(TIMER_MODEL_LOADER_CATEGORY);
+        }
+    }
+
+    @Override
+    public synchronized void completeTypeParameters(LazyClass klass) {
+        Timer.startIgnore(TIMER_MODEL_LOADER_CATEGORY);
+        metrics.startCompletion();
+        try{
+            completeTypeParameters(klass, klass.classMirror);
+        }finally{
+            endCompletion(klass, false);
+            Timer.stopIgnore(TIMER_MODEL_LOADER_CATEGORY);
+        }
     }
 
     private void completeTypeParameters(ClassOrInterface klass, ClassMirror classMirror) {
         setTypeParameters(klass, classMirror);
     }
 
+    private void endCompletion(Declaration decl, boolean completed) {
+        Package pkg = getPackage(decl);
+        Module module = pkg != null ? pkg.getModule() : null;
+        metrics.endCompletion(pkg != null ? pkg.getNameAsString() : null,
+                module != null ? module.getNameAsString() : null,
+                completed);
+    }
+
+    /**
+     * Loads every member we did not load yet. The lazy declaration loads its header first.
+     */
     private void complete(ClassOrInterface klass, ClassMirror classMirror) {
-        Map<MethodMirror, List<MethodMirror>> variables = new HashMap<MethodMirror, List<MethodMirror>>();
-        String qualifiedName = classMirror.getQualifiedName();
+        List<Declaration> added = new LinkedList<Declaration>();
+        completeMembers(klass, classMirror, null, added);
+        Timer.count(COUNTER_CLASS_MEMBERS_LOADED, added.size());
+        metrics.membersLoaded(added.size());
+        fillRefinedDeclarations(klass, klass.getMembers());
+    }
+
+    /**
+     * Loads the members with the given name, if we did not load them yet. The lazy declaration
+     * loads its header first.
+     */
+    private void completeMember(ClassOrInterface klass, ClassMirror classMirror, String name) {
+        List<Declaration> added = new LinkedList<Declaration>();
+        completeMembers(klass, classMirror, name, added);
+        if(!added.isEmpty()){
+            Timer.count(COUNTER_CLASS_MEMBERS_LOADED, added.size());
+            metrics.membersLoaded(added.size());
+            fillRefinedDeclarations(klass, added);
+        }
+    }
+
+    private void completeHeader(ClassOrInterface klass, ClassMirror classMirror) {
         String pkgName = classMirror.getPackage().getQualifiedName();
-        boolean isFromJDK = JDKPackageList.isJDKPackage(pkgName) || JDKPackageList.isOracleJDKPackage(pkgName);
+        boolean isFromJDK = isJDKPackage(pkgName);
         boolean isCeylon = (classMirror.getAnnotation(CEYLON_CEYLON_ANNOTATION) != null);
         
         // Java classes with multiple constructors get turned into multiple Ceylon classes
         // Here we get the specific constructor that was assigned to us (if any)
-        MethodMirror constructor = null;
         if (klass instanceof LazyClass) {
-            constructor = ((LazyClass)klass).getConstructor();
+            MethodMirror constructor = ((LazyClass)klass).getConstructor();
+            if(constructor != null
+                    && !skipMember(constructor, isCeylon, isFromJDK)
+                    && !((LazyClass)klass).isTopLevelObjectType())
+                setParameters((Class)klass, constructor, isCeylon, klass);
         }
-            
+
+        klass.setStaticallyImportable(!isCeylon && classMirror.isStatic());
+        
+        setExtendedType(klass, classMirror);
+        setSatisfiedTypes(klass, classMirror);
+        setCaseTypes(klass, classMirror);
+        setAnnotations(klass, classMirror);
+    }
+
+    /**
+     * The members of a class we did not load yet, so that we can load them one name at a time.
+     */
+    private static class MemberIndex {
+        // homonym methods by Java name, excluding constructors
+        final Map<String, List<MethodMirror>> methods;
+        final Map<String, List<String>> methodsByMemberName;
+        final Map<String, FieldMirror> fields;
+        // setters by Java name, which we handle last since they need their getter
+        final Map<String, List<MethodMirror>> setters = new LinkedHashMap<String, List<MethodMirror>>();
+        final Map<String, List<String>> settersByMemberName = new HashMap<String, List<String>>();
+        // what we already loaded, as "m", "f" or "s" followed by the Java name
+        final Set<String> loaded = new HashSet<String>();
+
+        /**
+         * @param memberCount the number of fields and methods of the class if we know it, or -1
+         */
+        MemberIndex(int memberCount){
+            // size for all the members, to avoid rehashing big JDK classes
+            int capacity = memberCount > 0 ? memberCount * 4 / 3 + 1 : 16;
+            methods = new LinkedHashMap<String, List<MethodMirror>>(capacity);
+            methodsByMemberName = new HashMap<String, List<String>>(capacity);
+            fields = new LinkedHashMap<String, FieldMirror>(capacity);
+        }
+        
+        static void put(Map<String, List<String>> map, String memberName, String javaName){
+            List<String> javaNames = map.get(memberName);
+            if(javaNames == null){
+                javaNames = new LinkedList<String>();
+                map.put(memberName, javaNames);
+            }
+            if(!javaNames.contains(javaName))
+                javaNames.add(javaName);
+        }
+
+        static List<String> get(Map<String, List<String>> map, String memberName){
+            List<String> javaNames = map.get(memberName);
+            return javaNames != null ? javaNames : Collections.<String>emptyList();
+        }
+    }
+
+    private static boolean isJDKPackage(String pkgName) {
+        JDKIndex jdkIndex = JDKIndex.getInstance();
+        return jdkIndex.isJDKPackage(pkgName) || jdkIndex.isOracleJDKPackage(pkgName);
+    }
+
+    private MemberIndex getMemberIndex(ClassOrInterface klass, ClassMirror classMirror, boolean isCeylon, boolean isFromJDK) {
+        MemberIndex index = memberIndexes.get(klass);
+        if(index != null)
+            return index;
+        int memberCount = -1;
+        if(isFromJDK){
+            String pkgName = classMirror.getPackage().getQualifiedName();
+            String flatName = classMirror.getQualifiedName().substring(pkgName.isEmpty() ? 0 : pkgName.length()+1).replace('.', '$');
+            memberCount = JDKIndex.getInstance().getMemberCount(pkgName, flatName);
+        }
+        index = new MemberIndex(memberCount);
         // Turn a list of possibly overloaded methods into a map
         // of lists that contain methods with the same name
-        Map<String, List<MethodMirror>> methods = new LinkedHashMap<String, List<MethodMirror>>();
         for(MethodMirror methodMirror : classMirror.getDirectMethods()){
-            // We skip members marked with @Ignore
-            if(methodMirror.getAnnotation(CEYLON_IGNORE_ANNOTATION) != null)
-                continue;
-            if(methodMirror.isStaticInit())
+            if(skipMember(methodMirror, isCeylon, isFromJDK))
                 continue;
-            if(isCeylon && methodMirror.isStatic())
-                continue;
-            // FIXME: temporary, because some private classes from the jdk are
-            // referenced in private methods but not available
-            if(isFromJDK && !methodMirror.isPublic())
+            // constructors are loaded with the class
+            if(methodMirror.isConstructor())
                 continue;
             String methodName = methodMirror.getName();
-            List<MethodMirror> homonyms = methods.get(methodName);
+            List<MethodMirror> homonyms = index.methods.get(methodName);
             if (homonyms == null) {
                 homonyms = new LinkedList<MethodMirror>();
-                methods.put(methodName, homonyms);
+                index.methods.put(methodName, homonyms);
             }
             homonyms.add(methodMirror);
+            // now find out which members it can turn into
+            if(isGetter(methodMirror)) {
+                MemberIndex.put(index.methodsByMemberName, getJavaAttributeName(methodName), methodName);
+            } else if(isSetter(methodMirror)) {
+                // either makes its getter variable or is a method
+                MemberIndex.put(index.settersByMemberName, getJavaAttributeName(methodName), methodName);
+                MemberIndex.put(index.settersByMemberName, Util.strip(methodName), methodName);
+                List<MethodMirror> setters = index.setters.get(methodName);
+                if(setters == null){
+                    setters = new LinkedList<MethodMirror>();
+                    index.setters.put(methodName, setters);
+                }
+                setters.add(methodMirror);
+            } else if(isHashAttribute(methodMirror)) {
+                MemberIndex.put(index.methodsByMemberName, "hash", methodName);
+            } else if(isStringAttribute(methodMirror)) {
+                MemberIndex.put(index.methodsByMemberName, "string", methodName);
+            } else {
+                MemberIndex.put(index.methodsByMemberName, Util.strip(methodName), methodName);
+            }
         }
+        for(FieldMirror fieldMirror : classMirror.getDirectFields()){
+            // We skip members marked with @Ignore
+            if(fieldMirror.getAnnotation(CEYLON_IGNORE_ANNOTATION) != null)
+                continue;
+            if(isCeylon && fieldMirror.isStatic())
+                continue;
+            // FIXME: temporary, because some private classes from the jdk are
+            // referenced in private methods but not available
+            if(isFromJDK && !fieldMirror.isPublic())
+                continue;
+            index.fields.put(fieldMirror.getName(), fieldMirror);
+        }
+        memberIndexes.put(klass, index);
+        return index;
+    }
+
+    private boolean skipMember(MethodMirror methodMirror, boolean isCeylon, boolean isFromJDK) {
+        // We skip members marked with @Ignore
+        if(methodMirror.getAnnotation(CEYLON_IGNORE_ANNOTATION) != null)
+            return true;
+        if(methodMirror.isStaticInit())
+            return true;
+        if(isCeylon && methodMirror.isStatic())
+            return true;
+        // FIXME: temporary, because some private classes from the jdk are
+        // referenced in private methods but not available
+        if(isFromJDK && !methodMirror.isPublic())
+            return true;
+        return false;
+    }
+
+    /**
+     * Loads the members of the given class with the given name, or all of them if the name is null.
+     * Members which were already loaded are skipped, and the ones we add are added to the given list.
+     */
+    private void completeMembers(ClassOrInterface klass, ClassMirror classMirror, String name, List<Declaration> added) {
+        String pkgName = classMirror.getPackage().getQualifiedName();
+        boolean isFromJDK = isJDKPackage(pkgName);
+        boolean isCeylon = (classMirror.getAnnotation(CEYLON_CEYLON_ANNOTATION) != null);
+        MemberIndex index = getMemberIndex(klass, classMirror, isCeylon, isFromJDK);
         
         // Add the methods
-        for(List<MethodMirror> methodMirrors : methods.values()){
+        Collection<String> methodNames = name == null ? index.methods.keySet() : MemberIndex.get(index.methodsByMemberName, name);
+        for(String methodName : methodNames){
+            if(!index.loaded.add("m"+methodName))
+                continue;
+            List<MethodMirror> methodMirrors = index.methods.get(methodName);
+            // setters count too, even though we handle them later
             boolean isOverloaded = methodMirrors.size() > 1;
             
             List<Declaration> overloads = (isOverloaded) ? new ArrayList<Declaration>(methodMirrors.size()) : null;
             for (MethodMirror methodMirror : methodMirrors) {
-                String methodName = methodMirror.getName();
-                if(methodMirror.isConstructor()) {
-                    if (methodMirror == constructor) {
-                        if(!(klass instanceof LazyClass) || !((LazyClass)klass).isTopLevelObjectType())
-                            setParameters((Class)klass, methodMirror, isCeylon, klass);
-                    }
-                } else if(isGetter(methodMirror)) {
+                if(isGetter(methodMirror)) {
                     // simple attribute
-                    addValue(klass, methodMirror, getJavaAttributeName(methodName), isCeylon);
+                    added.add(addValue(klass, methodMirror, getJavaAttributeName(methodName), isCeylon));
                 } else if(isSetter(methodMirror)) {
                     // We skip setters for now and handle them later
-                    variables.put(methodMirror, methodMirrors);
                 } else if(isHashAttribute(methodMirror)) {
                     // ERASURE
                     // Un-erasing 'hash' attribute from 'hashCode' method
-                    addValue(klass, methodMirror, "hash", isCeylon);
+                    added.add(addValue(klass, methodMirror, "hash", isCeylon));
                 } else if(isStringAttribute(methodMirror)) {
                     // ERASURE
                     // Un-erasing 'string' attribute from 'toString' method
-                    addValue(klass, methodMirror, "string", isCeylon);
+                    added.add(addValue(klass, methodMirror, "string", isCeylon));
                 } else {
                     // normal method
                     Method m = addMethod(klass, methodMirror, isCeylon, isOverloaded);
+                    added.add(m);
                     if (isOverloaded) {
                         overloads.add(m);
                     }
@@ -1001,64 +1307,68 @@ public abstract class AbstractModelLoader implements ModelCompleter, ModelLoader
                 abstractionMethod.setAbstraction(true);
                 abstractionMethod.setOverloads(overloads);
                 abstractionMethod.setType(new UnknownType(typeFactory).getType());
+                added.add(abstractionMethod);
             }
         }
 
-        for(FieldMirror fieldMirror : classMirror.getDirectFields()){
-            // We skip members marked with @Ignore
-            if(fieldMirror.getAnnotation(CEYLON_IGNORE_ANNOTATION) != null)
-                continue;
-            if(isCeylon && fieldMirror.isStatic())
-                continue;
-            // FIXME: temporary, because some private classes from the jdk are
-            // referenced in private methods but not available
-            if(isFromJDK && !fieldMirror.isPublic())
+        Collection<FieldMirror> fieldMirrors;
+        if(name == null)
+            fieldMirrors = index.fields.values();
+        else if(index.fields.containsKey(name))
+            fieldMirrors = Collections.singletonList(index.fields.get(name));
+        else
+            fieldMirrors = Collections.emptyList();
+        for(FieldMirror fieldMirror : fieldMirrors){
+            String fieldName = fieldMirror.getName();
+            if(!index.loaded.add("f"+fieldName))
                 continue;
-            String name = fieldMirror.getName();
             // skip the field if "we've already got one"
-            if(klass.getDirectMember(name, null) != null)
+            if(klass.getDirectMember(fieldName, null) != null)
                 continue;
-            addValue(klass, fieldMirror, isCeylon);
+            added.add(addValue(klass, fieldMirror, isCeylon));
         }
         
         // Now mark all Values for which Setters exist as variable
-        for(Entry<MethodMirror, List<MethodMirror>> setterEntry : variables.entrySet()){
-            MethodMirror setter = setterEntry.getKey();
-            String name = getJavaAttributeName(setter.getName());
-            Declaration decl = klass.getMember(name, null);
-            boolean foundGetter = false;
-            if (decl != null && decl instanceof Value) {
-                Value value = (Value)decl;
-                VariableMirror setterParam = setter.getParameters().get(0);
-                try{
-                    ProducedType paramType = obtainType(setterParam.getType(), setterParam, klass, VarianceLocation.INVARIANT);
-                    // only add the setter if it has exactly the same type as the getter
-                    if(paramType.isExactly(value.getType())){
-                        foundGetter = true;
-                        value.setVariable(true);
-                        if(decl instanceof JavaBeanValue)
-                            ((JavaBeanValue)decl).setSetterName(setter.getName());
-                    }else
-                        logWarning("Setter parameter type for "+name+" does not match corresponding getter type, adding setter as a method");
-                }catch(TypeParserException x){
-                    logError("Invalid type signature for setter of "+klass.getQualifiedNameString()+"."+setter.getName()+": "+x.getMessage());
-                    throw x;
+        Collection<String> setterNames = name == null ? index.setters.keySet() : MemberIndex.get(index.settersByMemberName, name);
+        for(String setterName : setterNames){
+            if(!index.loaded.add("s"+setterName))
+                continue;
+            String attributeName = getJavaAttributeName(setterName);
+            // make sure we have its getter
+            if(name != null && !name.equals(attributeName))
+                completeMembers(klass, classMirror, attributeName, added);
+            for(MethodMirror setter : index.setters.get(setterName)){
+                Declaration decl = klass.getMember(attributeName, null);
+                boolean foundGetter = false;
+                if (decl != null && decl instanceof Value) {
+                    Value value = (Value)decl;
+                    VariableMirror setterParam = setter.getParameters().get(0);
+                    try{
+                        ProducedType paramType = obtainType(setterParam.getType(), setterParam, klass, VarianceLocation.INVARIANT);
+                        // only add the setter if it has exactly the same type as the getter
+                        if(paramType.isExactly(value.getType())){
+                            foundGetter = true;
+                            value.setVariable(true);
+                            if(decl instanceof JavaBeanValue)
+                                ((JavaBeanValue)decl).setSetterName(setter.getName());
+                        }else
+                            logWarning("Setter parameter type for "+attributeName+" does not match corresponding getter type, adding setter as a method");
+                    }catch(TypeParserException x){
+                        logError("Invalid type signature for setter of "+klass.getQualifiedNameString()+"."+setter.getName()+": "+x.getMessage());
+                        throw x;
+                    }
+                } 
+                
+                if(!foundGetter){
+                    // it was not a setter, it was a method, let's add it as such
+                    added.add(addMethod(klass, setter, isCeylon, false));
                 }
-            } 
-            
-            if(!foundGetter){
-                // it was not a setter, it was a method, let's add it as such
-                addMethod(klass, setter, isCeylon, false);
             }
         }
-
-        klass.setStaticallyImportable(!isCeylon && classMirror.isStatic());
         
-        setExtendedType(klass, classMirror);
-        setSatisfiedTypes(klass, classMirror);
-        setCaseTypes(klass, classMirror);
-        fillRefinedDeclarations(klass);
-        setAnnotations(klass, classMirror);
+        // we won't need it anymore once everything is loaded
+        if(name == null)
+            memberIndexes.remove(klass);
     }
 
     private void setAnnotations(Declaration decl, AnnotatedMirror classMirror) {
@@ -1140,13 +1450,13 @@ public abstract class AbstractModelLoader implements ModelCompleter, ModelLoader
         markUnboxed(method, methodMirror.getReturnType());
         setAnnotations(method, methodMirror);
         
-        klass.getMembers().add(method);
+        addMember(klass, method);
         
         return method;
     }
 
-    private void fillRefinedDeclarations(ClassOrInterface klass) {
-        for(Declaration member : klass.getMembers()){
+    private void fillRefinedDeclarations(ClassOrInterface klass, List<Declaration> members) {
+        for(Declaration member : members){
             // do not trigger a type load (by calling isActual()) for Java inner classes since they
             // can never be actual
             if(member instanceof ClassOrInterface && !Decl.isCeylon((ClassOrInterface)member))
@@ -1264,7 +1574,7 @@ public abstract class AbstractModelLoader implements ModelCompleter, ModelLoader
         return new String(newName);
     }
 
-    private void addValue(ClassOrInterface klass, FieldMirror fieldMirror, boolean isCeylon) {
+    private Value addValue(ClassOrInterface klass, FieldMirror fieldMirror, boolean isCeylon) {
         // make sure it's a FieldValue so we can figure it out in the backend
         Value value = new FieldValue();
         value.setContainer(klass);
@@ -1288,10 +1598,11 @@ public abstract class AbstractModelLoader implements ModelCompleter, ModelLoader
             throw x;
         }
         markUnboxed(value, fieldMirror.getType());
-        klass.getMembers().add(value);
+        addMember(klass, value);
+        return value;
     }
     
-    private void addValue(ClassOrInterface klass, MethodMirror methodMirror, String methodName, boolean isCeylon) {
+    private Value addValue(ClassOrInterface klass, MethodMirror methodMirror, String methodName, boolean isCeylon) {
         JavaBeanValue value = new JavaBeanValue();
         value.setGetterName(methodMirror.getName());
         value.setContainer(klass);
@@ -1309,7 +1620,16 @@ public abstract class AbstractModelLoader implements ModelCompleter, ModelLoader
         }
         markUnboxed(value, methodMirror.getReturnType());
         setAnnotations(value, methodMirror);
-        klass.getMembers().add(value);
+        addMember(klass, value);
+        return value;
+    }
+
+    private void addMember(Scope container, Declaration member) {
+        // let's not trigger the lazy-loading if we're completing a LazyClass/LazyInterface
+        if(container instanceof LazyContainer)
+            ((LazyContainer)container).addMember(member);
+        else
+            container.getMembers().add(member);
     }
 
     private void setMethodOrValueFlags(ClassOrInterface klass, MethodMirror methodMirror, MethodOrValue decl) {
@@ -1424,7 +1744,7 @@ public abstract class AbstractModelLoader implements ModelCompleter, ModelLoader
             parameter.setContainer((Scope) decl);
             parameter.setUnit(((Element)decl).getUnit());
             if(decl instanceof Class){
-                ((Class)decl).getMembers().add(parameter);
+                addMember((Class)decl, parameter);
             }
             String paramName = getAnnotationStringValue(paramMirror, CEYLON_NAME_ANNOTATION);
             // use whatever param name we find as default
@@ -1497,8 +1817,10 @@ public abstract class AbstractModelLoader implements ModelCompleter, ModelLoader
     }
 
     @Override
-    public void complete(LazyValue value) {
+    public synchronized void complete(LazyValue value) {
         Timer.startIgnore(TIMER_MODEL_LOADER_CATEGORY);
+        Timer.count(COUNTER_MEMBERS_COMPLETED);
+        metrics.startCompletion();
         try{
             MethodMirror meth = null;
             for (MethodMirror m : value.classMirror.getDirectMethods()) {
@@ -1529,13 +1851,16 @@ public abstract class AbstractModelLoader implements ModelCompleter, ModelLoader
             setAnnotations(value, meth);
             markUnboxed(value, meth.getReturnType());
         }finally{
+            endCompletion(value, true);
             Timer.stopIgnore(TIMER_MODEL_LOADER_CATEGORY);
         }
     }
 
     @Override
-    public void complete(LazyMethod method) {
+    public synchronized void complete(LazyMethod method) {
         Timer.startIgnore(TIMER_MODEL_LOADER_CATEGORY);
+        Timer.count(COUNTER_MEMBERS_COMPLETED);
+        metrics.startCompletion();
         try{
             MethodMirror meth = null;
             String lookupName = method.getName();
@@ -1568,6 +1893,7 @@ public abstract class AbstractModelLoader implements ModelCompleter, ModelLoader
 
             setAnnotations(method, meth);
         }finally{
+            endCompletion(method, true);
             Timer.stopIgnore(TIMER_MODEL_LOADER_CATEGORY);
         }
      }
@@ -1757,14 +2083,20 @@ public abstract class AbstractModelLoader implements ModelCompleter, ModelLoader
     // TypeParsing and ModelLoader
 
     private ProducedType decodeType(String value, Scope scope) {
-        return typeParser.decodeType(value, scope);
+        long start = metrics.startTypeParsing();
+        try{
+            return typeParser.decodeType(value, scope);
+        }finally{
+            metrics.endTypeParsing(start);
+        }
     }
     
     /** Warning: only valid for toplevel types, not for type parameters */
     private ProducedType obtainType(TypeMirror type, AnnotatedMirror symbol, Scope scope, VarianceLocation variance) {
         String typeName = getAnnotationStringValue(symbol, CEYLON_TYPE_INFO_ANNOTATION);
         if (typeName != null) {
-            ProducedType ret = decodeType(typeName, scope);
+            // decoded types are shared, and we're about to modify it
+            ProducedType ret = TypeParser.copyType(decodeType(typeName, scope));
             // even decoded types need to fit with the reality of the underlying type
             ret.setUnderlyingType(getUnderlyingType(type, TypeLocation.TOPLEVEL));
             return ret;
@@ -1862,7 +2194,7 @@ public abstract class AbstractModelLoader implements ModelCompleter, ModelLoader
     }
     
     @Override
-    public Declaration getDeclaration(String typeName, DeclarationType declarationType) {
+    public synchronized Declaration getDeclaration(String typeName, DeclarationType declarationType) {
         return convertToDeclaration(typeName, declarationType);
     }
 
@@ -1919,7 +2251,7 @@ public abstract class AbstractModelLoader implements ModelCompleter, ModelLoader
     }
 
     @Override
-    public ProducedType getType(String pkgName, String name, Scope scope) {
+    public synchronized ProducedType getType(String pkgName, String name, Scope scope) {
         if(scope != null){
             TypeParameter typeParameter = lookupTypeParameter(scope, name);
             if(typeParameter != null)
@@ -1970,7 +2302,7 @@ public abstract class AbstractModelLoader implements ModelCompleter, ModelLoader
         throw new ModelResolutionException("Failed to look up given type in language module while bootstrapping: "+name);
     }
 
-    public void removeDeclarations(List<Declaration> declarations) {
+    public synchronized void removeDeclarations(List<Declaration> declarations) {
         List<String> keysToRemove = new ArrayList<String>();
         for (String name : declarationsByName.keySet()) {
             String nameWithoutPrefix = name.substring(1);
@@ -1983,14 +2315,75 @@ public abstract class AbstractModelLoader implements ModelCompleter, ModelLoader
         for (String keyToRemove : keysToRemove) {
             declarationsByName.remove(keyToRemove);
         }
+        resolvedDeclarations.values().removeAll(declarations);
         
         for (Declaration decl : declarations) {
             if (decl instanceof LazyClass || decl instanceof LazyInterface) {
                 classMirrorCache.remove(decl.getQualifiedNameString());
             }
         }
+        // parsed types may refer to the removed declarations
+        if(typeParser != null)
+            typeParser.clearCache();
     }
     
+    @Override
+    public synchronized void unloadModule(Module module) {
+        String moduleName = module.getNameAsString();
+        if(module == modules.getLanguageModule()
+                || moduleName.equals(JDK_MODULE)
+                || moduleName.equals(ORACLE_JDK_MODULE))
+            throw new IllegalArgumentException("Cannot unload module "+moduleName);
+        Set<String> packageNames = new HashSet<String>();
+        for(Iterator<Entry<String, LazyPackage>> iterator = packagesByName.entrySet().iterator(); iterator.hasNext(); ){
+            Entry<String, LazyPackage> entry = iterator.next();
+            if(entry.getValue().getModule() == module){
+                packageNames.add(entry.getKey());
+                unitsByPackage.remove(entry.getValue());
+                iterator.remove();
+            }
+        }
+        loadedPackages.removeAll(packageNames);
+        for(Iterator<Declaration> iterator = declarationsByName.values().iterator(); iterator.hasNext(); ){
+            if(isInModule(iterator.next(), module))
+                iterator.remove();
+        }
+        for(Iterator<Declaration> iterator = resolvedDeclarations.values().iterator(); iterator.hasNext(); ){
+            if(isInModule(iterator.next(), module))
+                iterator.remove();
+        }
+        for(Iterator<ClassOrInterface> iterator = memberIndexes.keySet().iterator(); iterator.hasNext(); ){
+            if(isInModule(iterator.next(), module))
+                iterator.remove();
+        }
+        classMirrorCache.removePackages(packageNames);
+        // the new version of the module may well have the classes we did not find
+        classMirrorCache.clearMissing();
+        if(typeParser != null)
+            typeParser.clearCache();
+        removeModuleFromClassPath(module, packageNames);
+
+        module.getPackages().clear();
+        module.setAvailable(false);
+        if(module instanceof LazyModule)
+            ((LazyModule)module).clearPackageList();
+        modules.getListOfModules().remove(module);
+        logVerbose("[Unloaded module "+moduleName+"/"+module.getVersion()+" and its "+packageNames.size()+" packages]");
+    }
+
+    private static boolean isInModule(Declaration decl, Module module) {
+        Package pkg = getPackage(decl);
+        return pkg != null && pkg.getModule() == module;
+    }
+
+    /**
+     * Returns the statistics of this model loader so far, which keep being updated as it loads more.
+     */
+    public ModelLoaderMetrics getMetrics(){
+        metrics.setTypeParser(typeParser);
+        return metrics;
+    }
+
     public void printStats(){
         int loaded = 0;
         class Stats {
@@ -2013,6 +2406,11 @@ public abstract class AbstractModelLoader implements ModelCompleter, ModelLoader
             }
         }
         logVerbose("[Model loader: "+loaded+"(loaded)/"+declarationsByName.size()+"(total) declarations]");
+        if(typeParser != null)
+            logVerbose("[Type parser cache: "+typeParser.getCacheHits()+"(hits)/"+typeParser.getCacheMisses()+"(misses), "
+                    +Math.round(typeParser.getCacheHitRate() * 100)+"% hit rate, "+typeParser.getCacheSize()+" entries]");
+        logVerbose("[Class mirror cache: "+classMirrorCache.getSize()+"(found)/"+classMirrorCache.getMissingSize()+"(missing) entries, "
+                +classMirrorCache.getEvictions()+" evictions]");
         for(Entry<Package, Stats> packageEntry : loadedByPackage.entrySet()){
             logVerbose("[ Package "+packageEntry.getKey().getNameAsString()+": "
                     +packageEntry.getValue().loaded+"(loaded)/"+packageEntry.getValue().total+"(total) declarations]");
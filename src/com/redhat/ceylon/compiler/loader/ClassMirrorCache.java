@@ -0,0 +1,163 @@
+/*
+ * Copyright Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the authors tag. All rights reserved.
+ *
+ * This copyrighted material is made available to anyone wishing to use,
+ * modify, copy, or redistribute it subject to the terms and conditions
+ * of the GNU General Public License version 2.
+ * 
+ * This particular file is subject to the "Classpath" exception as provided in the 
+ * LICENSE file that accompanied this code.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT A
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE.  See the GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License,
+ * along with this distribution; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA  02110-1301, USA.
+ */
+
+package com.redhat.ceylon.compiler.loader;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.redhat.ceylon.compiler.loader.mirror.ClassMirror;
+
+/**
+ * The class mirrors a model loader found, and the names it found no class mirror for.
+ * Both are bounded, and evict the least recently used entries, so that long-running
+ * model loaders (the IDE, the compiler server) do not keep every name they were ever
+ * asked about.
+ * <p>
+ * Evicting a mirror is always safe: the declarations we created from it keep their own
+ * reference, and looking it up again only costs us a new mirror. Access is synchronized
+ * on the cache itself, independently of the model loader lock.
+ */
+public class ClassMirrorCache {
+
+    public static final int DEFAULT_SIZE = 8192;
+    public static final int DEFAULT_MISSING_SIZE = 4096;
+
+    private final int size;
+    private final int missingSize;
+    private final Map<String, ClassMirror> mirrors;
+    // we only care about the keys
+    private final Map<String, Boolean> missing;
+    private long evictions;
+
+    public ClassMirrorCache(){
+        this(DEFAULT_SIZE, DEFAULT_MISSING_SIZE);
+    }
+
+    public ClassMirrorCache(int size, int missingSize){
+        this.size = size;
+        this.missingSize = missingSize;
+        this.mirrors = new LinkedHashMap<String, ClassMirror>(16, 0.75f, true){
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, ClassMirror> eldest) {
+                if(size() > ClassMirrorCache.this.size){
+                    evictions++;
+                    return true;
+                }
+                return false;
+            }
+        };
+        this.missing = new LinkedHashMap<String, Boolean>(16, 0.75f, true){
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+                if(size() > ClassMirrorCache.this.missingSize){
+                    evictions++;
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Returns the cached mirror for the given name, or null if we have none.
+     */
+    public synchronized ClassMirror get(String name){
+        return mirrors.get(name);
+    }
+
+    /**
+     * Returns true if we know there is no class mirror for the given name.
+     */
+    public synchronized boolean isMissing(String name){
+        return missing.get(name) != null;
+    }
+
+    /**
+     * Caches the result of a lookup, which can be null.
+     */
+    public synchronized void put(String name, ClassMirror mirror){
+        if(mirror != null){
+            missing.remove(name);
+            mirrors.put(name, mirror);
+        }else{
+            mirrors.remove(name);
+            missing.put(name, Boolean.TRUE);
+        }
+    }
+
+    public synchronized void remove(String name){
+        mirrors.remove(name);
+        missing.remove(name);
+    }
+
+    /**
+     * Forgets the mirrors of the classes of the given packages, given by quoted name.
+     */
+    public synchronized void removePackages(Set<String> packageNames){
+        for(Iterator<ClassMirror> iterator = mirrors.values().iterator(); iterator.hasNext(); ){
+            ClassMirror mirror = iterator.next();
+            if(packageNames.contains(mirror.getPackage().getQualifiedName()))
+                iterator.remove();
+        }
+    }
+
+    /**
+     * Forgets every name we found no class mirror for, for when new classes become visible.
+     */
+    public synchronized void clearMissing(){
+        missing.clear();
+    }
+
+    public synchronized void clear(){
+        mirrors.clear();
+        missing.clear();
+    }
+
+    /**
+     * Returns a copy of the cached mirrors, by name.
+     */
+    public synchronized List<Map.Entry<String, ClassMirror>> getMirrors(){
+        List<Map.Entry<String, ClassMirror>> ret = new ArrayList<Map.Entry<String, ClassMirror>>(mirrors.size());
+        for(Map.Entry<String, ClassMirror> entry : mirrors.entrySet())
+            ret.add(new AbstractMap.SimpleImmutableEntry<String, ClassMirror>(entry));
+        return ret;
+    }
+
+    public synchronized int getSize(){
+        return mirrors.size();
+    }
+
+    public synchronized int getMissingSize(){
+        return missing.size();
+    }
+
+    /**
+     * The number of entries we dropped to stay within our bounds so far.
+     */
+    public synchronized long getEvictions(){
+        return evictions;
+    }
+}
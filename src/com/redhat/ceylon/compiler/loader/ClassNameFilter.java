@@ -0,0 +1,81 @@
+/*
+ * Copyright Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the authors tag. All rights reserved.
+ *
+ * This copyrighted material is made available to anyone wishing to use,
+ * modify, copy, or redistribute it subject to the terms and conditions
+ * of the GNU General Public License version 2.
+ * 
+ * This particular file is subject to the "Classpath" exception as provided in the 
+ * LICENSE file that accompanied this code.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT A
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE.  See the GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License,
+ * along with this distribution; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA  02110-1301, USA.
+ */
+
+package com.redhat.ceylon.compiler.loader;
+
+import java.util.Collection;
+
+/**
+ * A bloom filter of the names of the classes of a package. It may say a name is there
+ * when it is not, but never the opposite, so a model loader can skip looking up names
+ * it does not contain.
+ */
+public class ClassNameFilter {
+
+    // about 1% of false positives
+    private static final int BITS_PER_NAME = 10;
+    private static final int HASHES = 7;
+
+    private final long[] bits;
+    private final int bitCount;
+
+    public ClassNameFilter(Collection<String> names){
+        // round up to whole longs, and keep at least one
+        bits = new long[Math.max(1, (names.size() * BITS_PER_NAME + 63) / 64)];
+        bitCount = bits.length * 64;
+        for(String name : names)
+            add(name);
+    }
+
+    private void add(String name){
+        int hash1 = name.hashCode();
+        int hash2 = secondHash(hash1);
+        for(int i=0;i<HASHES;i++){
+            int bit = index(hash1 + i * hash2);
+            bits[bit >>> 6] |= 1L << bit;
+        }
+    }
+
+    /**
+     * Returns false if the given name is certainly not one of our names.
+     */
+    public boolean mightContain(String name){
+        int hash1 = name.hashCode();
+        int hash2 = secondHash(hash1);
+        for(int i=0;i<HASHES;i++){
+            int bit = index(hash1 + i * hash2);
+            if((bits[bit >>> 6] & (1L << bit)) == 0)
+                return false;
+        }
+        return true;
+    }
+
+    private int index(int hash){
+        return (hash & Integer.MAX_VALUE) % bitCount;
+    }
+
+    private static int secondHash(int hash){
+        // spread the bits so that our hashes are independent enough, and never zero
+        hash ^= hash >>> 16;
+        hash *= 0x85ebca6b;
+        hash ^= hash >>> 13;
+        return hash | 1;
+    }
+}
@@ -0,0 +1,320 @@
+/*
+ * Copyright Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the authors tag. All rights reserved.
+ *
+ * This copyrighted material is made available to anyone wishing to use,
+ * modify, copy, or redistribute it subject to the terms and conditions
+ * of the GNU General Public License version 2.
+ * 
+ * This particular file is subject to the "Classpath" exception as provided in the 
+ * LICENSE file that accompanied this code.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT A
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE.  See the GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License,
+ * along with this distribution; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA  02110-1301, USA.
+ */
+package com.redhat.ceylon.compiler.loader;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * A compact index of the JDK packages, with the names and member counts of their classes, which
+ * {@link JDKIndexBuilder} builds at build time and which we map in memory rather than parse, so
+ * that we do not have to discover the JDK packages and classes at startup.
+ * <p>
+ * It starts with a header of five ints: magic, version, offset of the platform fingerprint string
+ * (-1 if we have no classes), package count and class count. Then comes the package table, sorted
+ * by name, with for each package the offset of its name, its flags, the index of its first class and
+ * its class count. Then the class table, sorted by package then flat name, with for each class the
+ * offset of its name and its member count. Strings are stored last, as a short length followed by
+ * ASCII bytes.
+ * <p>
+ * The classes only describe the platform we were built on, so we only use them if the platform we run
+ * on has the same fingerprint. Otherwise we only know the packages.
+ */
+public class JDKIndex {
+
+    static final int MAGIC = 0x434A444B;
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 5 * 4;
+    static final int PACKAGE_ENTRY_SIZE = 4 * 4;
+    static final int CLASS_ENTRY_SIZE = 2 * 4;
+    static final int FLAG_JDK = 1;
+    static final int FLAG_ORACLE_JDK = 2;
+
+    private static final String INDEX = "resources/jdk7.index";
+    private static final String PACKAGE_LIST_DIR = "resources/";
+
+    private static JDKIndex instance;
+
+    private final ByteBuffer buffer;
+    private final int packageCount;
+    private final int classTableStart;
+    private final boolean hasClasses;
+
+    JDKIndex(ByteBuffer buffer, boolean checkFingerprint){
+        this.buffer = buffer;
+        if(buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION)
+            throw new RuntimeException("Invalid JDK index: your compiler is broken.");
+        int fingerprintOffset = buffer.getInt(8);
+        packageCount = buffer.getInt(12);
+        classTableStart = HEADER_SIZE + packageCount * PACKAGE_ENTRY_SIZE;
+        hasClasses = fingerprintOffset != -1
+                && (!checkFingerprint || getPlatformFingerprint().equals(readString(fingerprintOffset)));
+    }
+
+    /**
+     * Returns the index shipped with the compiler. If we are run from classes which were
+     * not built with our build file, we make one from the package lists.
+     */
+    public static synchronized JDKIndex getInstance(){
+        if(instance == null)
+            instance = load();
+        return instance;
+    }
+
+    private static JDKIndex load() {
+        URL url = JDKIndex.class.getResource(INDEX);
+        try{
+            if(url == null){
+                Set<String> jdkPackages = readPackageList(JDKIndexBuilder.JDK7);
+                Set<String> oraclePackages = readPackageList(JDKIndexBuilder.JDK7_ORACLE);
+                return new JDKIndex(ByteBuffer.wrap(JDKIndexBuilder.build(jdkPackages, oraclePackages, null, null)), false);
+            }
+            if(url.getProtocol().equals("file"))
+                return new JDKIndex(map(new File(url.toURI())), true);
+            // we can't map what's in a jar
+            InputStream inputStream = url.openStream();
+            try{
+                return new JDKIndex(ByteBuffer.wrap(readFully(inputStream)), true);
+            }finally{
+                inputStream.close();
+            }
+        }catch(IOException x){
+            throw new RuntimeException("Failed to read JDK index from "+INDEX+": your compiler is broken.", x);
+        }catch(URISyntaxException x){
+            throw new RuntimeException("Failed to read JDK index from "+INDEX+": your compiler is broken.", x);
+        }
+    }
+
+    private static Set<String> readPackageList(String file) throws IOException {
+        InputStream inputStream = JDKIndex.class.getResourceAsStream(PACKAGE_LIST_DIR + file);
+        if(inputStream == null)
+            throw new RuntimeException("Failed to read JDK package list file from "+file+": your compiler is broken.");
+        try{
+            Set<String> packages = JDKIndexBuilder.readPackageList(inputStream);
+            // sanity check
+            if(packages.isEmpty())
+                throw new RuntimeException("Failed to read JDK package list file from "+file+"(empty package set): your compiler is broken.");
+            return packages;
+        }finally{
+            inputStream.close();
+        }
+    }
+
+    private static ByteBuffer map(File file) throws IOException {
+        FileInputStream inputStream = new FileInputStream(file);
+        try{
+            FileChannel channel = inputStream.getChannel();
+            // the mapping stays valid once the channel is closed
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }finally{
+            inputStream.close();
+        }
+    }
+
+    private static byte[] readFully(InputStream inputStream) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int read;
+        while((read = inputStream.read(buffer)) != -1)
+            bytes.write(buffer, 0, read);
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Returns the jars javac uses for the platform classes when it is not told otherwise.
+     */
+    static List<File> getPlatformJars(){
+        List<File> jars = new ArrayList<File>();
+        addJars(jars, System.getProperty("sun.boot.class.path"), false);
+        addJars(jars, System.getProperty("java.endorsed.dirs"), true);
+        addJars(jars, System.getProperty("java.ext.dirs"), true);
+        return jars;
+    }
+
+    private static void addJars(List<File> jars, String path, boolean directories){
+        if(path == null)
+            return;
+        for(String entry : path.split(File.pathSeparator)){
+            if(entry.isEmpty())
+                continue;
+            File file = new File(entry);
+            if(directories){
+                File[] files = file.listFiles();
+                if(files == null)
+                    continue;
+                // make it stable
+                List<File> sorted = new ArrayList<File>(files.length);
+                Collections.addAll(sorted, files);
+                Collections.sort(sorted);
+                for(File jar : sorted){
+                    if(isArchive(jar))
+                        jars.add(jar);
+                }
+            }else if(isArchive(file))
+                jars.add(file);
+        }
+    }
+
+    private static boolean isArchive(File file){
+        String name = file.getName().toLowerCase();
+        return file.isFile() && (name.endsWith(".jar") || name.endsWith(".zip"));
+    }
+
+    /**
+     * Identifies the platform classes of the JVM we run on: its version, and the names and sizes of
+     * its platform jars.
+     */
+    static String getPlatformFingerprint(){
+        StringBuilder sb = new StringBuilder();
+        sb.append(System.getProperty("java.vendor")).append(' ').append(System.getProperty("java.version"));
+        for(File jar : getPlatformJars())
+            sb.append(';').append(jar.getName()).append(':').append(jar.length());
+        return Integer.toHexString(sb.toString().hashCode())+"/"+sb.length();
+    }
+
+    public boolean isJDKPackage(String pkg){
+        int index = findPackage(pkg);
+        return index != -1 && (getPackageInt(index, 1) & FLAG_JDK) != 0;
+    }
+
+    public boolean isOracleJDKPackage(String pkg){
+        int index = findPackage(pkg);
+        return index != -1 && (getPackageInt(index, 1) & FLAG_ORACLE_JDK) != 0;
+    }
+
+    /**
+     * Returns true if we know every class of the given JDK package.
+     */
+    public boolean hasClasses(String pkg){
+        return hasClasses && findPackage(pkg) != -1;
+    }
+
+    /**
+     * Returns true if the given JDK package has a class file of the given flat name
+     * (Outer$Inner for member classes). Only meaningful if {@link #hasClasses(String)}.
+     */
+    public boolean containsClass(String pkg, String flatName){
+        return findClass(pkg, flatName) != -1;
+    }
+
+    /**
+     * Returns the flat names of the classes of the given JDK package, or null if we don't know them.
+     */
+    public List<String> getClassNames(String pkg){
+        if(!hasClasses)
+            return null;
+        int index = findPackage(pkg);
+        if(index == -1)
+            return null;
+        int first = getPackageInt(index, 2);
+        int count = getPackageInt(index, 3);
+        List<String> ret = new ArrayList<String>(count);
+        for(int i=first;i<first+count;i++)
+            ret.add(readString(getClassInt(i, 0)));
+        return ret;
+    }
+
+    /**
+     * Returns the number of fields and methods of the given JDK class, or -1 if we don't know it.
+     */
+    public int getMemberCount(String pkg, String flatName){
+        int index = findClass(pkg, flatName);
+        return index != -1 ? getClassInt(index, 1) : -1;
+    }
+
+    private int findClass(String pkg, String flatName){
+        if(!hasClasses)
+            return -1;
+        int index = findPackage(pkg);
+        if(index == -1)
+            return -1;
+        int low = getPackageInt(index, 2);
+        int high = low + getPackageInt(index, 3) - 1;
+        while(low <= high){
+            int mid = (low + high) >>> 1;
+            int cmp = compareString(getClassInt(mid, 0), flatName);
+            if(cmp < 0)
+                low = mid + 1;
+            else if(cmp > 0)
+                high = mid - 1;
+            else
+                return mid;
+        }
+        return -1;
+    }
+
+    private int findPackage(String pkg){
+        int low = 0;
+        int high = packageCount - 1;
+        while(low <= high){
+            int mid = (low + high) >>> 1;
+            int cmp = compareString(getPackageInt(mid, 0), pkg);
+            if(cmp < 0)
+                low = mid + 1;
+            else if(cmp > 0)
+                high = mid - 1;
+            else
+                return mid;
+        }
+        return -1;
+    }
+
+    private int getPackageInt(int index, int field){
+        return buffer.getInt(HEADER_SIZE + index * PACKAGE_ENTRY_SIZE + field * 4);
+    }
+
+    private int getClassInt(int index, int field){
+        return buffer.getInt(classTableStart + index * CLASS_ENTRY_SIZE + field * 4);
+    }
+
+    /**
+     * Compares the string at the given offset with the given one, like {@link String#compareTo(String)}
+     * does for ASCII strings.
+     */
+    private int compareString(int offset, String string){
+        int length = buffer.getShort(offset) & 0xFFFF;
+        int max = Math.min(length, string.length());
+        for(int i=0;i<max;i++){
+            int cmp = (buffer.get(offset + 2 + i) & 0xFF) - string.charAt(i);
+            if(cmp != 0)
+                return cmp;
+        }
+        return length - string.length();
+    }
+
+    private String readString(int offset){
+        int length = buffer.getShort(offset) & 0xFFFF;
+        char[] chars = new char[length];
+        for(int i=0;i<length;i++)
+            chars[i] = (char) (buffer.get(offset + 2 + i) & 0xFF);
+        return new String(chars);
+    }
+}
@@ -0,0 +1,271 @@
+/*
+ * Copyright Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the authors tag. All rights reserved.
+ *
+ * This copyrighted material is made available to anyone wishing to use,
+ * modify, copy, or redistribute it subject to the terms and conditions
+ * of the GNU General Public License version 2.
+ * 
+ * This particular file is subject to the "Classpath" exception as provided in the 
+ * LICENSE file that accompanied this code.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT A
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE.  See the GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License,
+ * along with this distribution; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA  02110-1301, USA.
+ */
+package com.redhat.ceylon.compiler.loader;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Builds the {@link JDKIndex} at build time, from the JDK package lists and the classes of the
+ * platform class path of the JDK we run on. Run it with the directory of the package lists and
+ * the index file to write.
+ */
+public class JDKIndexBuilder {
+
+    static final String JDK7 = "package-list.jdk7";
+    static final String JDK7_ORACLE = "package-list.oracle.jdk7";
+
+    public static void main(String[] args) throws IOException {
+        if(args.length != 2){
+            System.err.println("Usage: "+JDKIndexBuilder.class.getName()+" <package list dir> <index file>");
+            System.exit(1);
+        }
+        File packageListDir = new File(args[0]);
+        Set<String> jdkPackages = readPackageList(new File(packageListDir, JDK7));
+        Set<String> oraclePackages = readPackageList(new File(packageListDir, JDK7_ORACLE));
+        Map<String, Map<String, Integer>> classes = new HashMap<String, Map<String, Integer>>();
+        for(File jar : JDKIndex.getPlatformJars()){
+            addClasses(jar, jdkPackages, oraclePackages, classes);
+        }
+        // a JDK without platform jars keeps its classes elsewhere, let's not pretend it has none
+        byte[] index = build(jdkPackages, oraclePackages, classes.isEmpty() ? null : classes, JDKIndex.getPlatformFingerprint());
+        File file = new File(args[1]);
+        file.getParentFile().mkdirs();
+        OutputStream os = new FileOutputStream(file);
+        try{
+            os.write(index);
+        }finally{
+            os.close();
+        }
+        int classCount = 0;
+        for(Map<String, Integer> packageClasses : classes.values())
+            classCount += packageClasses.size();
+        System.err.println("Indexed "+(jdkPackages.size()+oraclePackages.size())+" JDK packages and "+classCount+" classes in "+file);
+    }
+
+    static Set<String> readPackageList(File file) throws IOException {
+        InputStream inputStream = new FileInputStream(file);
+        try{
+            return readPackageList(inputStream);
+        }finally{
+            inputStream.close();
+        }
+    }
+
+    static Set<String> readPackageList(InputStream inputStream) throws IOException {
+        Set<String> packages = new TreeSet<String>();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream, "ASCII"));
+        String pkg;
+        while((pkg = reader.readLine()) != null){
+            if(!pkg.isEmpty())
+                packages.add(pkg);
+        }
+        return packages;
+    }
+
+    private static void addClasses(File jar, Set<String> jdkPackages, Set<String> oraclePackages,
+            Map<String, Map<String, Integer>> classes) throws IOException {
+        ZipFile zipFile = new ZipFile(jar);
+        try{
+            Enumeration<? extends ZipEntry> entries = zipFile.entries();
+            while(entries.hasMoreElements()){
+                ZipEntry entry = entries.nextElement();
+                String path = entry.getName();
+                if(entry.isDirectory() || !path.endsWith(".class"))
+                    continue;
+                int sep = path.lastIndexOf('/');
+                if(sep == -1)
+                    continue;
+                String pkg = path.substring(0, sep).replace('/', '.');
+                if(!jdkPackages.contains(pkg) && !oraclePackages.contains(pkg))
+                    continue;
+                String name = path.substring(sep+1, path.length() - 6);
+                Map<String, Integer> packageClasses = classes.get(pkg);
+                if(packageClasses == null){
+                    packageClasses = new TreeMap<String, Integer>();
+                    classes.put(pkg, packageClasses);
+                }
+                // the first one on the platform class path wins, like for javac
+                if(packageClasses.containsKey(name))
+                    continue;
+                InputStream inputStream = zipFile.getInputStream(entry);
+                try{
+                    packageClasses.put(name, countMembers(inputStream));
+                }finally{
+                    inputStream.close();
+                }
+            }
+        }finally{
+            zipFile.close();
+        }
+    }
+
+    /**
+     * Returns the number of fields and methods of the given class file.
+     */
+    static int countMembers(InputStream inputStream) throws IOException {
+        DataInputStream in = new DataInputStream(inputStream);
+        if(in.readInt() != 0xCAFEBABE)
+            throw new IOException("Not a class file");
+        // minor and major versions
+        skip(in, 4);
+        int constantPoolCount = in.readUnsignedShort();
+        for(int i=1;i<constantPoolCount;i++){
+            int tag = in.readUnsignedByte();
+            switch(tag){
+            case 1: skip(in, in.readUnsignedShort()); break; // Utf8
+            case 3: case 4: skip(in, 4); break; // Integer, Float
+            case 5: case 6: skip(in, 8); i++; break; // Long and Double take two entries
+            case 7: case 8: case 16: skip(in, 2); break; // Class, String, MethodType
+            case 9: case 10: case 11: case 12: case 18: skip(in, 4); break; // refs, NameAndType, InvokeDynamic
+            case 15: skip(in, 3); break; // MethodHandle
+            default: throw new IOException("Unknown constant pool tag "+tag);
+            }
+        }
+        // access flags, this class, super class
+        skip(in, 6);
+        skip(in, 2 * in.readUnsignedShort());
+        int fieldCount = in.readUnsignedShort();
+        for(int i=0;i<fieldCount;i++){
+            // access flags, name, descriptor
+            skip(in, 6);
+            int attributeCount = in.readUnsignedShort();
+            for(int a=0;a<attributeCount;a++){
+                skip(in, 2);
+                skip(in, in.readInt());
+            }
+        }
+        return fieldCount + in.readUnsignedShort();
+    }
+
+    private static void skip(DataInputStream in, int count) throws IOException {
+        while(count > 0){
+            int skipped = in.skipBytes(count);
+            if(skipped <= 0){
+                // skipBytes does not tell us about the end of the stream
+                in.readByte();
+                skipped = 1;
+            }
+            count -= skipped;
+        }
+    }
+
+    /**
+     * Builds the index, see {@link JDKIndex} for its format.
+     * 
+     * @param classes the member counts of the classes of every package, by flat name, or null
+     * if we do not know the classes.
+     * @param fingerprint the fingerprint of the platform the classes come from, or null
+     */
+    static byte[] build(Set<String> jdkPackages, Set<String> oraclePackages, 
+            Map<String, Map<String, Integer>> classes, String fingerprint) throws IOException {
+        Map<String, Integer> flagsByPackage = new TreeMap<String, Integer>();
+        for(String pkg : jdkPackages)
+            flagsByPackage.put(pkg, JDKIndex.FLAG_JDK);
+        for(String pkg : oraclePackages){
+            Integer flags = flagsByPackage.get(pkg);
+            flagsByPackage.put(pkg, (flags != null ? flags : 0) | JDKIndex.FLAG_ORACLE_JDK);
+        }
+        // lay out the strings after the tables
+        List<String> strings = new ArrayList<String>();
+        int classCount = 0;
+        for(String pkg : flagsByPackage.keySet()){
+            strings.add(pkg);
+            Map<String, Integer> packageClasses = classes != null ? classes.get(pkg) : null;
+            if(packageClasses != null){
+                strings.addAll(packageClasses.keySet());
+                classCount += packageClasses.size();
+            }
+        }
+        int stringsStart = JDKIndex.HEADER_SIZE
+                + flagsByPackage.size() * JDKIndex.PACKAGE_ENTRY_SIZE
+                + classCount * JDKIndex.CLASS_ENTRY_SIZE;
+        ByteArrayOutputStream stringBytes = new ByteArrayOutputStream();
+        DataOutputStream stringsOut = new DataOutputStream(stringBytes);
+        int fingerprintOffset = -1;
+        if(fingerprint != null && classes != null){
+            fingerprintOffset = stringsStart;
+            writeString(stringsOut, fingerprint);
+        }
+        Map<String, Integer> offsets = new HashMap<String, Integer>();
+        for(String string : strings){
+            if(!offsets.containsKey(string)){
+                offsets.put(string, stringsStart + stringsOut.size());
+                writeString(stringsOut, string);
+            }
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(stringsStart + stringsOut.size());
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(JDKIndex.MAGIC);
+        out.writeInt(JDKIndex.VERSION);
+        out.writeInt(fingerprintOffset);
+        out.writeInt(flagsByPackage.size());
+        out.writeInt(classCount);
+        int firstClass = 0;
+        for(Map.Entry<String, Integer> entry : flagsByPackage.entrySet()){
+            Map<String, Integer> packageClasses = classes != null ? classes.get(entry.getKey()) : null;
+            int packageClassCount = packageClasses != null ? packageClasses.size() : 0;
+            out.writeInt(offsets.get(entry.getKey()));
+            out.writeInt(entry.getValue());
+            out.writeInt(firstClass);
+            out.writeInt(packageClassCount);
+            firstClass += packageClassCount;
+        }
+        for(String pkg : flagsByPackage.keySet()){
+            Map<String, Integer> packageClasses = classes != null ? classes.get(pkg) : null;
+            if(packageClasses == null)
+                continue;
+            for(Map.Entry<String, Integer> entry : packageClasses.entrySet()){
+                out.writeInt(offsets.get(entry.getKey()));
+                out.writeInt(entry.getValue());
+            }
+        }
+        stringsOut.flush();
+        stringBytes.writeTo(out);
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    private static void writeString(DataOutputStream out, String string) throws IOException {
+        byte[] bytes = string.getBytes("ASCII");
+        out.writeShort(bytes.length);
+        out.write(bytes);
+    }
+}
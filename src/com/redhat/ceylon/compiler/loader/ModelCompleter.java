@@ -34,7 +34,7 @@ import com.redhat.ceylon.compiler.loader.model.LazyValue;
 public interface ModelCompleter {
 
     /**
-     * Completes loading of a class
+     * Completes loading of a class's members we did not load yet. Requires its header.
      */
     void complete(LazyClass lazyClass);
 
@@ -44,7 +44,18 @@ public interface ModelCompleter {
     void completeTypeParameters(LazyClass lazyClass);
 
     /**
-     * Completes loading of an interface
+     * Completes loading of everything but a class's members: its parameters, super types and annotations.
+     * Requires its type parameters.
+     */
+    void completeHeader(LazyClass lazyClass);
+
+    /**
+     * Completes loading of a class's members of the given name only. Requires its header.
+     */
+    void completeMember(LazyClass lazyClass, String name);
+
+    /**
+     * Completes loading of an interface's members we did not load yet. Requires its header.
      */
     void complete(LazyInterface lazyInterface);
 
@@ -53,6 +64,17 @@ public interface ModelCompleter {
      */
     void completeTypeParameters(LazyInterface lazyInterface);
 
+    /**
+     * Completes loading of everything but an interface's members: its super types and annotations.
+     * Requires its type parameters.
+     */
+    void completeHeader(LazyInterface lazyInterface);
+
+    /**
+     * Completes loading of an interface's members of the given name only. Requires its header.
+     */
+    void completeMember(LazyInterface lazyInterface, String name);
+
     /**
      * Completes loading of a toplevel attribute
      */
@@ -21,6 +21,7 @@
 package com.redhat.ceylon.compiler.loader;
 
 import com.redhat.ceylon.compiler.typechecker.model.Declaration;
+import com.redhat.ceylon.compiler.typechecker.model.Module;
 import com.redhat.ceylon.compiler.typechecker.model.ProducedType;
 import com.redhat.ceylon.compiler.typechecker.model.Scope;
 
@@ -64,4 +65,13 @@ public interface ModelLoader {
      * @return the ProducedType found
      */
     public ProducedType getType(String pkg, String name, Scope scope);
+
+    /**
+     * Forgets everything we loaded from the given module: its packages, their units and declarations,
+     * and the classes we read, so that their memory can be reclaimed and another artifact of that
+     * module can be loaded in its place. The module is also removed from the list of modules.
+     * Modules which import it keep referring to its declarations, so they should be unloaded too.
+     * @param module the module to unload, which cannot be the language module or the JDK
+     */
+    public void unloadModule(Module module);
 }
@@ -0,0 +1,347 @@
+/*
+ * Copyright Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the authors tag. All rights reserved.
+ *
+ * This copyrighted material is made available to anyone wishing to use,
+ * modify, copy, or redistribute it subject to the terms and conditions
+ * of the GNU General Public License version 2.
+ * 
+ * This particular file is subject to the "Classpath" exception as provided in the 
+ * LICENSE file that accompanied this code.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT A
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE.  See the GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License,
+ * along with this distribution; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA  02110-1301, USA.
+ */
+package com.redhat.ceylon.compiler.loader;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.redhat.ceylon.compiler.java.util.Timer;
+
+/**
+ * Statistics about what a model loader did, which can be queried at any time during or after a
+ * compilation, to find out which dependencies make it slow. It is thread-safe.
+ * <p>
+ * Completion times are exclusive: the time spent completing a declaration does not include the
+ * time spent completing the declarations it required, which are accounted to their own package
+ * and module. The memory kept per module is estimated by the bytes allocated while creating and
+ * completing its declarations, which over-estimates it since it includes garbage, and is -1 if
+ * the JVM cannot tell us.
+ */
+public class ModelLoaderMetrics {
+
+    /**
+     * What we know about the declarations of a package or module.
+     */
+    public static class Stats {
+        private long created;
+        private long completed;
+        private long completionNanos;
+        private long allocatedBytes;
+
+        public synchronized long getDeclarationsCreated() {
+            return created;
+        }
+
+        public synchronized long getDeclarationsCompleted() {
+            return completed;
+        }
+
+        public synchronized long getCompletionNanos() {
+            return completionNanos;
+        }
+
+        public synchronized long getAllocatedBytes() {
+            return allocatedBytes;
+        }
+
+        private synchronized void add(long created, long completed, long nanos, long allocated) {
+            this.created += created;
+            this.completed += completed;
+            this.completionNanos += nanos;
+            // once we can't tell, we can't tell
+            if(allocated == -1 || this.allocatedBytes == -1)
+                this.allocatedBytes = -1;
+            else
+                this.allocatedBytes += allocated;
+        }
+    }
+
+    // a completion in progress, so we can subtract the completions it required
+    private static class Completion {
+        final long start = System.nanoTime();
+        final long startAllocated = Timer.getAllocatedBytes();
+        long nestedNanos;
+        long nestedAllocated;
+    }
+
+    private final AtomicLong classMirrorHits = new AtomicLong();
+    private final AtomicLong classMirrorNullHits = new AtomicLong();
+    private final AtomicLong classMirrorMisses = new AtomicLong();
+    private final AtomicLong classMirrorNullMisses = new AtomicLong();
+    private final AtomicLong typeParserCalls = new AtomicLong();
+    private final AtomicLong typeParserNanos = new AtomicLong();
+    private final AtomicLong membersLoaded = new AtomicLong();
+    private final Map<String, Stats> packages = new HashMap<String, Stats>();
+    private final Map<String, Stats> modules = new HashMap<String, Stats>();
+    private final ThreadLocal<LinkedList<Completion>> completions = new ThreadLocal<LinkedList<Completion>>(){
+        @Override
+        protected LinkedList<Completion> initialValue() {
+            return new LinkedList<Completion>();
+        }
+    };
+    private final ThreadLocal<int[]> typeParserDepth = new ThreadLocal<int[]>(){
+        @Override
+        protected int[] initialValue() {
+            return new int[1];
+        }
+    };
+    private volatile TypeParser typeParser;
+
+    void setTypeParser(TypeParser typeParser) {
+        this.typeParser = typeParser;
+    }
+
+    //
+    // Recording
+
+    /**
+     * Records a class mirror lookup, which was a cache hit or not, and found a mirror or not.
+     */
+    void classMirrorLookup(boolean hit, boolean found) {
+        if(hit)
+            (found ? classMirrorHits : classMirrorNullHits).incrementAndGet();
+        else
+            (found ? classMirrorMisses : classMirrorNullMisses).incrementAndGet();
+    }
+
+    void declarationsCreated(String pkg, String module, int count) {
+        record(pkg, module, count, 0, 0, 0);
+    }
+
+    void membersLoaded(int count) {
+        membersLoaded.addAndGet(count);
+    }
+
+    /**
+     * Starts timing a completion, which must be ended by {@link #endCompletion(String, String, boolean)}
+     * on the same thread.
+     */
+    void startCompletion() {
+        completions.get().addLast(new Completion());
+    }
+
+    /**
+     * Ends the current completion and accounts it to the given package and module.
+     * @param completed true if it completed a declaration, false if it only loaded part of one
+     */
+    void endCompletion(String pkg, String module, boolean completed) {
+        LinkedList<Completion> stack = completions.get();
+        Completion completion = stack.removeLast();
+        long nanos = System.nanoTime() - completion.start;
+        long allocated = -1;
+        if(completion.startAllocated != -1){
+            long endAllocated = Timer.getAllocatedBytes();
+            if(endAllocated != -1)
+                allocated = endAllocated - completion.startAllocated;
+        }
+        if(!stack.isEmpty()){
+            Completion parent = stack.getLast();
+            parent.nestedNanos += nanos;
+            if(allocated != -1)
+                parent.nestedAllocated += allocated;
+        }
+        record(pkg, module, 0, completed ? 1 : 0,
+                nanos - completion.nestedNanos,
+                allocated == -1 ? -1 : allocated - completion.nestedAllocated);
+    }
+
+    /**
+     * Starts timing a type signature decoding, which must be ended by {@link #endTypeParsing(long)}.
+     * Returns the value to pass to it.
+     */
+    long startTypeParsing() {
+        typeParserDepth.get()[0]++;
+        return System.nanoTime();
+    }
+
+    void endTypeParsing(long start) {
+        // type parsing is reentrant, only count the outermost one
+        if(--typeParserDepth.get()[0] == 0){
+            typeParserCalls.incrementAndGet();
+            typeParserNanos.addAndGet(System.nanoTime() - start);
+        }
+    }
+
+    private synchronized void record(String pkg, String module, long created, long completed, long nanos, long allocated) {
+        getStats(packages, pkg).add(created, completed, nanos, allocated);
+        getStats(modules, module).add(created, completed, nanos, allocated);
+    }
+
+    private static Stats getStats(Map<String, Stats> map, String name) {
+        if(name == null)
+            name = "";
+        Stats stats = map.get(name);
+        if(stats == null){
+            stats = new Stats();
+            map.put(name, stats);
+        }
+        return stats;
+    }
+
+    //
+    // Queries
+
+    public long getClassMirrorLookups() {
+        return classMirrorHits.get() + classMirrorNullHits.get() + classMirrorMisses.get() + classMirrorNullMisses.get();
+    }
+
+    /**
+     * The class mirror lookups served from the cache, including the ones which found nothing.
+     */
+    public long getClassMirrorHits() {
+        return classMirrorHits.get() + classMirrorNullHits.get();
+    }
+
+    /**
+     * The class mirror lookups served from the cache, which remembered there was no such class.
+     */
+    public long getClassMirrorNullHits() {
+        return classMirrorNullHits.get();
+    }
+
+    /**
+     * The class mirror lookups we had to do, including the ones which found nothing.
+     */
+    public long getClassMirrorMisses() {
+        return classMirrorMisses.get() + classMirrorNullMisses.get();
+    }
+
+    /**
+     * The class mirror lookups we had to do, and which found nothing.
+     */
+    public long getClassMirrorNullMisses() {
+        return classMirrorNullMisses.get();
+    }
+
+    public long getTypeParserCalls() {
+        return typeParserCalls.get();
+    }
+
+    /**
+     * The time spent decoding type signatures, including the time spent loading the types they refer to.
+     */
+    public long getTypeParserNanos() {
+        return typeParserNanos.get();
+    }
+
+    public long getTypeParserCacheHits() {
+        TypeParser typeParser = this.typeParser;
+        return typeParser != null ? typeParser.getCacheHits() : 0;
+    }
+
+    public long getTypeParserCacheMisses() {
+        TypeParser typeParser = this.typeParser;
+        return typeParser != null ? typeParser.getCacheMisses() : 0;
+    }
+
+    public synchronized long getDeclarationsCreated() {
+        long ret = 0;
+        for(Stats stats : modules.values())
+            ret += stats.getDeclarationsCreated();
+        return ret;
+    }
+
+    public synchronized long getDeclarationsCompleted() {
+        long ret = 0;
+        for(Stats stats : modules.values())
+            ret += stats.getDeclarationsCompleted();
+        return ret;
+    }
+
+    /**
+     * The class and interface members we loaded, whether with the whole class or one by one.
+     */
+    public long getMembersLoaded() {
+        return membersLoaded.get();
+    }
+
+    /**
+     * Returns the statistics of every package we loaded declarations from, by package name.
+     */
+    public synchronized Map<String, Stats> getPackageStats() {
+        return new TreeMap<String, Stats>(packages);
+    }
+
+    /**
+     * Returns the statistics of every module we loaded declarations from, by module name.
+     */
+    public synchronized Map<String, Stats> getModuleStats() {
+        return new TreeMap<String, Stats>(modules);
+    }
+
+    //
+    // JSON
+
+    public void writeJson(Writer writer) throws IOException {
+        writer.write("{\n  \"class_mirrors\": {"
+                +"\"lookups\": "+getClassMirrorLookups()
+                +", \"hits\": "+getClassMirrorHits()
+                +", \"null_hits\": "+getClassMirrorNullHits()
+                +", \"misses\": "+getClassMirrorMisses()
+                +", \"null_misses\": "+getClassMirrorNullMisses()+"},\n");
+        writer.write("  \"type_parser\": {"
+                +"\"calls\": "+getTypeParserCalls()
+                +", \"time_ms\": "+getTypeParserNanos() / 1000000
+                +", \"cache_hits\": "+getTypeParserCacheHits()
+                +", \"cache_misses\": "+getTypeParserCacheMisses()+"},\n");
+        writer.write("  \"declarations\": {"
+                +"\"created\": "+getDeclarationsCreated()
+                +", \"completed\": "+getDeclarationsCompleted()
+                +", \"members_loaded\": "+getMembersLoaded()+"},\n");
+        writer.write("  \"modules\": ");
+        writeJson(writer, getModuleStats());
+        writer.write(",\n  \"packages\": ");
+        writeJson(writer, getPackageStats());
+        writer.write("\n}\n");
+    }
+
+    private static void writeJson(Writer writer, Map<String, Stats> statsByName) throws IOException {
+        writer.write("{");
+        boolean first = true;
+        for(Map.Entry<String, Stats> entry : statsByName.entrySet()){
+            writer.write(first ? "\n" : ",\n");
+            first = false;
+            Stats stats = entry.getValue();
+            writer.write("    "+Timer.jsonString(entry.getKey())+": {"
+                    +"\"created\": "+stats.getDeclarationsCreated()
+                    +", \"completed\": "+stats.getDeclarationsCompleted()
+                    +", \"completion_ms\": "+stats.getCompletionNanos() / 1000000
+                    +", \"allocated_bytes\": "+stats.getAllocatedBytes()+"}");
+        }
+        writer.write(first ? "}" : "\n  }");
+    }
+
+    public String toJson() {
+        StringWriter writer = new StringWriter();
+        try{
+            writeJson(writer);
+        }catch(IOException x){
+            // can't happen with a StringWriter
+            throw new RuntimeException(x);
+        }
+        return writer.toString();
+    }
+}
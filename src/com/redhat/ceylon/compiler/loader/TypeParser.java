@@ -1,12 +1,18 @@
 package com.redhat.ceylon.compiler.loader;
 
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 
+import com.redhat.ceylon.compiler.java.codegen.Decl;
+import com.redhat.ceylon.compiler.java.util.Timer;
 import com.redhat.ceylon.compiler.java.util.Util;
 import com.redhat.ceylon.compiler.typechecker.model.ClassOrInterface;
 import com.redhat.ceylon.compiler.typechecker.model.Declaration;
 import com.redhat.ceylon.compiler.typechecker.model.IntersectionType;
+import com.redhat.ceylon.compiler.typechecker.model.Method;
+import com.redhat.ceylon.compiler.typechecker.model.Package;
 import com.redhat.ceylon.compiler.typechecker.model.ProducedType;
 import com.redhat.ceylon.compiler.typechecker.model.Scope;
 import com.redhat.ceylon.compiler.typechecker.model.TypeDeclaration;
@@ -14,26 +20,171 @@ import com.redhat.ceylon.compiler.typechecker.model.UnionType;
 import com.redhat.ceylon.compiler.typechecker.model.Unit;
 import com.redhat.ceylon.compiler.typechecker.model.Value;
 
+/**
+ * Parses the type signatures found in the Ceylon annotations of compiled classes.
+ * <p>
+ * Parsed types are memoized in a bounded LRU cache keyed on the signature and
+ * what it resolves against: when there are no type parameters in scope the
+ * signature can only resolve to toplevel types of the scope's module, so we key
+ * on that module and share the result across every declaration of the module.
+ * Otherwise we key on the scope itself. Cached types are shared, so callers must
+ * not modify them: use {@link #copyType(ProducedType)} first.
+ */
 public class TypeParser {
     public class Part {
         String name;
         List<ProducedType> parameters = new LinkedList<ProducedType>();
     }
 
+    public static final int DEFAULT_CACHE_SIZE = 2048;
+
+    private static final String COUNTER_CACHE_HITS = "type parser/cache hits";
+    private static final String COUNTER_CACHE_MISSES = "type parser/cache misses";
+
+    private static class CacheKey {
+        private final Object scope;
+        private final String type;
+
+        CacheKey(Object scope, String type){
+            this.scope = scope;
+            this.type = type;
+        }
+
+        @Override
+        public int hashCode() {
+            return (scope == null ? 0 : System.identityHashCode(scope)) * 31 + type.hashCode();
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if(obj instanceof CacheKey == false)
+                return false;
+            CacheKey other = (CacheKey) obj;
+            // scopes are model objects, they are only equal to themselves
+            return scope == other.scope && type.equals(other.type);
+        }
+    }
+
     private ModelLoader loader;
     private Unit unit;
     private TypeLexer lexer = new TypeLexer();
     private Scope scope;
+    private final int cacheSize;
+    private final Map<CacheKey, ProducedType> cache;
+    private long cacheHits;
+    private long cacheMisses;
 
     public TypeParser(ModelLoader loader, Unit unit){
+        this(loader, unit, DEFAULT_CACHE_SIZE);
+    }
+
+    /**
+     * @param cacheSize the maximum number of parsed types we keep, or 0 to disable the cache
+     */
+    @SuppressWarnings("serial")
+    public TypeParser(ModelLoader loader, Unit unit, int cacheSize){
         this.loader = loader;
         this.unit = unit;
+        this.cacheSize = cacheSize;
+        this.cache = new LinkedHashMap<CacheKey, ProducedType>(16, 0.75f, true){
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<CacheKey, ProducedType> eldest) {
+                return size() > TypeParser.this.cacheSize;
+            }
+        };
     }
-    
+
+    /**
+     * Decodes the given type signature, resolving type names from the given scope.
+     * The returned type may be shared with other callers, and must not be modified.
+     */
+    public ProducedType decodeType(String type, Scope scope){
+        if(cacheSize <= 0)
+            return parse(type, scope);
+        CacheKey key = new CacheKey(hasTypeParametersInScope(scope) ? scope : getModule(scope), type);
+        ProducedType ret = cache.get(key);
+        if(ret != null){
+            cacheHits++;
+            Timer.count(COUNTER_CACHE_HITS);
+            return ret;
+        }
+        cacheMisses++;
+        Timer.count(COUNTER_CACHE_MISSES);
+        ret = parse(type, scope);
+        cache.put(key, ret);
+        return ret;
+    }
+
+    /**
+     * Returns a new type equal to the given one, which the caller is free to modify.
+     */
+    public static ProducedType copyType(ProducedType type){
+        return type.getDeclaration().getProducedType(type.getQualifyingType(), type.getTypeArgumentList());
+    }
+
+    /**
+     * Forgets every parsed type, to be called when declarations they may refer to are removed.
+     */
+    public void clearCache(){
+        cache.clear();
+    }
+
+    public long getCacheHits(){
+        return cacheHits;
+    }
+
+    public long getCacheMisses(){
+        return cacheMisses;
+    }
+
+    /**
+     * Returns the ratio of lookups served from the cache, between 0 and 1.
+     */
+    public double getCacheHitRate(){
+        long lookups = cacheHits + cacheMisses;
+        return lookups == 0 ? 0 : (double)cacheHits / lookups;
+    }
+
+    public int getCacheSize(){
+        return cache.size();
+    }
+
+    /**
+     * Returns true unless we are sure there are no type parameters visible from the
+     * given scope, following the same rules as the model loader's type parameter lookup.
+     */
+    private static boolean hasTypeParametersInScope(Scope scope){
+        while(scope != null && !(scope instanceof Package)){
+            Declaration declaration;
+            List<? extends Declaration> typeParameters;
+            if(scope instanceof Method){
+                declaration = (Method) scope;
+                typeParameters = ((Method) scope).getTypeParameters();
+            }else if(scope instanceof ClassOrInterface){
+                declaration = (ClassOrInterface) scope;
+                typeParameters = ((ClassOrInterface) scope).getTypeParameters();
+            }else{
+                // don't know how to look into that one
+                return true;
+            }
+            if(typeParameters != null && !typeParameters.isEmpty())
+                return true;
+            if(declaration.isToplevel())
+                return false;
+            scope = declaration.getContainer();
+        }
+        return false;
+    }
+
+    private static Object getModule(Scope scope){
+        Package pkg = Decl.getPackageContainer(scope);
+        return pkg != null ? pkg.getModule() : null;
+    }
+
     /*
      * type: unionType EOT
      */
-    public ProducedType decodeType(String type, Scope scope){
+    private ProducedType parse(String type, Scope scope){
         // save the previous state (this method is reentrant)
         char[] oldType = lexer.type;
         int oldIndex = lexer.index;
@@ -24,16 +24,29 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.util.Enumeration;
 import java.util.HashSet;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
 
 /**
- * Class loader which looks into a list of jar files
+ * Class loader which looks into a list of jar files.
+ * <p>
+ * We keep every jar open until it is removed, and index all their files by path,
+ * so that loading a class is a single lookup and a single read.
+ * <p>
+ * This loader is parallel capable: classes are loaded under a lock per class name
+ * rather than under the loader lock, and the jar index can be read while jars are
+ * added or removed. Adding and removing jars is serialised.
  */
 class ModulesClassLoader extends ClassLoader {
+
+    static {
+        registerAsParallelCapable();
+    }
     
     /**
      * Jar file where we cache the TOC
@@ -41,21 +54,18 @@ class ModulesClassLoader extends ClassLoader {
     static class CachedTOCJar {
         File jar;
         Set<String> contents = new HashSet<String>();
+        private final ZipFile zipFile;
         
         CachedTOCJar(File jar){
             this.jar = jar;
             try {
-                ZipFile zf = new ZipFile(jar);
-                try{
-                    Enumeration<? extends ZipEntry> entries = zf.entries();
-                    while(entries.hasMoreElements()){
-                        ZipEntry entry = entries.nextElement();
-                        // only cache class files
-                        if(!entry.isDirectory())
-                            contents.add(entry.getName());
-                    }
-                }finally{
-                    zf.close();
+                zipFile = new ZipFile(jar);
+                Enumeration<? extends ZipEntry> entries = zipFile.entries();
+                while(entries.hasMoreElements()){
+                    ZipEntry entry = entries.nextElement();
+                    // only cache class files
+                    if(!entry.isDirectory())
+                        contents.add(entry.getName());
                 }
             } catch (IOException e) {
                 throw new RuntimeException(e);
@@ -68,14 +78,9 @@ class ModulesClassLoader extends ClassLoader {
         
         byte[] getContents(String path){
             try {
-                ZipFile zf = new ZipFile(jar);
-                try{
-                    ZipEntry entry = zf.getEntry(path);
-                    if(entry != null)
-                        return loadFile(zf.getInputStream(entry), (int)entry.getSize());
-                }finally{
-                    zf.close();
-                }
+                ZipEntry entry = zipFile.getEntry(path);
+                if(entry != null)
+                    return loadFile(zipFile.getInputStream(entry), (int)entry.getSize());
             } catch (IOException e) {
                 throw new RuntimeException(e);
             }
@@ -83,6 +88,7 @@ class ModulesClassLoader extends ClassLoader {
         }
 
         private byte[] loadFile(InputStream inputStream, int size) throws IOException {
+            // read it straight into an array of the right size, which we define the class from
             byte[] buf = new byte[size];
             try{
                 int read;
@@ -95,24 +101,68 @@ class ModulesClassLoader extends ClassLoader {
                 inputStream.close();
             }
         }
+
+        void close(){
+            try {
+                zipFile.close();
+            } catch (IOException e) {
+                // we're done with it anyway
+            }
+        }
     }
     
-    private List<CachedTOCJar> jars = new LinkedList<CachedTOCJar>();
+    private final List<CachedTOCJar> jars = new CopyOnWriteArrayList<CachedTOCJar>();
+    // the jar each path comes from: the first one that has it
+    private final ConcurrentMap<String, CachedTOCJar> jarsByPath = new ConcurrentHashMap<String, CachedTOCJar>();
+    private final Object jarsLock = new Object();
     
     @Override
     protected Class<?> findClass(String name) throws ClassNotFoundException {
         String path = name.replace('.', '/').concat(".class");
-        for(CachedTOCJar jar : jars){
-            if(jar.containsFile(path)){
-                byte[] contents = jar.getContents(path);
-                return defineClass(name, contents, 0, contents.length);
-            }
+        CachedTOCJar jar = jarsByPath.get(path);
+        if(jar != null){
+            byte[] contents = jar.getContents(path);
+            return defineClass(name, contents, 0, contents.length);
         }
         return super.findClass(name);
     }
 
     public void addJar(File file) {
-        jars.add(new CachedTOCJar(file));
+        // read its TOC outside of the lock, it's the slow part
+        CachedTOCJar jar = new CachedTOCJar(file);
+        synchronized(jarsLock){
+            jars.add(jar);
+            for(String path : jar.contents)
+                jarsByPath.putIfAbsent(path, jar);
+        }
+    }
+
+    public void removeJar(File file) {
+        synchronized(jarsLock){
+            for(CachedTOCJar jar : jars){
+                if(!jar.jar.equals(file))
+                    continue;
+                jars.remove(jar);
+                for(String path : jar.contents){
+                    if(jarsByPath.get(path) != jar)
+                        continue;
+                    CachedTOCJar other = findJar(path);
+                    if(other != null)
+                        jarsByPath.put(path, other);
+                    else
+                        jarsByPath.remove(path);
+                }
+                jar.close();
+            }
+        }
+    }
+
+    private CachedTOCJar findJar(String path) {
+        for(CachedTOCJar jar : jars){
+            if(jar.containsFile(path))
+                return jar;
+        }
+        return null;
     }
 
-}
\ No newline at end of file
+}
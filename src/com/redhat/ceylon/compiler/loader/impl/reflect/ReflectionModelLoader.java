@@ -21,12 +21,18 @@
 package com.redhat.ceylon.compiler.loader.impl.reflect;
 
 import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
 
 import com.redhat.ceylon.cmr.api.ArtifactResult;
 import com.redhat.ceylon.compiler.loader.AbstractModelLoader;
 import com.redhat.ceylon.compiler.loader.TypeParser;
 import com.redhat.ceylon.compiler.loader.impl.reflect.mirror.ReflectionClass;
 import com.redhat.ceylon.compiler.loader.impl.reflect.mirror.ReflectionMethod;
+import com.redhat.ceylon.compiler.loader.index.IndexMethod;
+import com.redhat.ceylon.compiler.loader.index.ModelIndex;
 import com.redhat.ceylon.compiler.loader.mirror.ClassMirror;
 import com.redhat.ceylon.compiler.loader.mirror.MethodMirror;
 import com.redhat.ceylon.compiler.typechecker.analyzer.ModuleManager;
@@ -42,6 +48,9 @@ import com.redhat.ceylon.compiler.typechecker.model.Unit;
 public class ReflectionModelLoader extends AbstractModelLoader {
 
     ModulesClassLoader classLoader = new ModulesClassLoader();
+    private final Map<Module, File> moduleJars = new HashMap<Module, File>();
+    // the snapshot of the language module shipped with the compiler, if it matches its car
+    private ModelIndex languageSnapshot;
 
     public ReflectionModelLoader(ModuleManager moduleManager, Modules modules){
         this.moduleManager = moduleManager;
@@ -66,6 +75,11 @@ public class ReflectionModelLoader extends AbstractModelLoader {
 
     @Override
     public ClassMirror lookupNewClassMirror(String name) {
+        if(languageSnapshot != null){
+            ClassMirror indexedMirror = languageSnapshot.getClassMirror(name);
+            if(indexedMirror != null)
+                return indexedMirror;
+        }
         Class<?> klass = null;
         if (lastPartHasLowerInitial(name)) {
             klass = loadClass(name+"_");
@@ -91,10 +105,30 @@ public class ReflectionModelLoader extends AbstractModelLoader {
             return;
         File file = artifact.artifact();
         classLoader.addJar(file);
+        moduleJars.put(module, file);
+        if(module == modules.getLanguageModule()){
+            try{
+                languageSnapshot = ModelIndex.getLanguageSnapshot(file);
+            }catch(IOException x){
+                logVerbose("[Failed to check the language module snapshot: "+x.getMessage()+"]");
+            }
+        }
+    }
+
+    @Override
+    protected void removeModuleFromClassPath(Module module, Set<String> packageNames) {
+        File file = moduleJars.remove(module);
+        // the classes we already defined stay with the class loader, but we won't define new ones
+        if(file != null)
+            classLoader.removeJar(file);
+        if(module == modules.getLanguageModule())
+            languageSnapshot = null;
     }
 
     @Override
     protected boolean isOverridingMethod(MethodMirror methodSymbol) {
+        if(methodSymbol instanceof IndexMethod)
+            return ((IndexMethod)methodSymbol).isOverriding();
         return ((ReflectionMethod)methodSymbol).isOverridingMethod();
     }
 
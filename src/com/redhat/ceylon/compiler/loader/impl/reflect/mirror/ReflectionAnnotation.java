@@ -24,12 +24,16 @@ import java.lang.annotation.Annotation;
 import java.lang.reflect.Method;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import com.redhat.ceylon.compiler.loader.mirror.AnnotationMirror;
 
 public class ReflectionAnnotation implements AnnotationMirror {
 
     private Annotation annotation;
+    // the converted values, since we get asked for the same ones over and over
+    private final ConcurrentMap<String, Object> values = new ConcurrentHashMap<String, Object>(4);
 
     public ReflectionAnnotation(Annotation annotation) {
         this.annotation = annotation;
@@ -37,13 +41,18 @@ public class ReflectionAnnotation implements AnnotationMirror {
 
     @Override
     public Object getValue(String fieldName) {
+        Object value = values.get(fieldName);
+        if(value != null)
+            return value;
         try {
             Method method = annotation.getClass().getMethod(fieldName);
-            return convertValue(method.invoke(annotation));
+            value = convertValue(method.invoke(annotation));
         } catch (Exception e) {
             e.printStackTrace();
             return null;
         }
+        values.putIfAbsent(fieldName, value);
+        return value;
     }
 
     private Object convertValue(Object value) {
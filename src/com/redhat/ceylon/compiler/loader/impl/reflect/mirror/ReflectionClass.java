@@ -28,6 +28,7 @@ import java.lang.reflect.Type;
 import java.util.ArrayList;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 
 import com.redhat.ceylon.compiler.loader.mirror.AnnotationMirror;
 import com.redhat.ceylon.compiler.loader.mirror.ClassMirror;
@@ -48,6 +49,7 @@ public class ReflectionClass implements ClassMirror {
     private boolean superClassSet;
     private ReflectionType superClass;
     private LinkedList<ClassMirror> innerClasses;
+    private volatile Map<String, AnnotationMirror> annotations;
 
     public ReflectionClass(Class<?> klass) {
         this.klass = klass;
@@ -55,7 +57,9 @@ public class ReflectionClass implements ClassMirror {
 
     @Override
     public AnnotationMirror getAnnotation(String type) {
-        return ReflectionUtils.getAnnotation(klass, type);
+        if(annotations == null)
+            annotations = ReflectionUtils.getAnnotations(klass);
+        return annotations.get(type);
     }
 
     @Override
@@ -30,6 +30,7 @@ import java.lang.reflect.Modifier;
 import java.lang.reflect.Type;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 
 import com.redhat.ceylon.compiler.loader.mirror.AnnotationMirror;
 import com.redhat.ceylon.compiler.loader.mirror.MethodMirror;
@@ -44,6 +45,7 @@ public class ReflectionMethod implements MethodMirror {
     private List<TypeParameterMirror> typeParameters;
     private Boolean overridingMethod;
     private ReflectionType returnType;
+    private volatile Map<String, AnnotationMirror> annotations;
 
     public ReflectionMethod(Member method) {
         this.method = method;
@@ -51,7 +53,9 @@ public class ReflectionMethod implements MethodMirror {
 
     @Override
     public AnnotationMirror getAnnotation(String type) {
-        return ReflectionUtils.getAnnotation((AnnotatedElement)method, type);
+        if(annotations == null)
+            annotations = ReflectionUtils.getAnnotations((AnnotatedElement)method);
+        return annotations.get(type);
     }
 
     @Override
@@ -26,7 +26,10 @@ import java.lang.reflect.GenericDeclaration;
 import java.lang.reflect.Type;
 import java.lang.reflect.TypeVariable;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import com.redhat.ceylon.compiler.loader.mirror.AnnotationMirror;
 import com.redhat.ceylon.compiler.loader.mirror.TypeParameterMirror;
@@ -37,6 +40,27 @@ public class ReflectionUtils {
         return getAnnotation(annotated.getDeclaredAnnotations(), type);
     }
 
+    /**
+     * Returns the mirrors of the given annotations by annotation type name, so that
+     * mirrors can look their annotations up without going through reflection again.
+     */
+    public static Map<String, AnnotationMirror> getAnnotations(AnnotatedElement annotated) {
+        return getAnnotations(annotated.getDeclaredAnnotations());
+    }
+
+    public static Map<String, AnnotationMirror> getAnnotations(Annotation[] annotations) {
+        if(annotations.length == 0)
+            return Collections.emptyMap();
+        Map<String, AnnotationMirror> ret = new HashMap<String, AnnotationMirror>(annotations.length * 2);
+        for(Annotation annotation : annotations){
+            String type = annotation.annotationType().getName();
+            // keep the first one, like getAnnotation does
+            if(!ret.containsKey(type))
+                ret.put(type, new ReflectionAnnotation(annotation));
+        }
+        return ret;
+    }
+
     public static AnnotationMirror getAnnotation(Annotation[] annotations, String type) {
         for(Annotation annotation : annotations){
             if(annotation.annotationType().getName().equals(type))
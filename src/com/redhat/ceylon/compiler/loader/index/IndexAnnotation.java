@@ -0,0 +1,207 @@
+/*
+ * Copyright Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the authors tag. All rights reserved.
+ *
+ * This copyrighted material is made available to anyone wishing to use,
+ * modify, copy, or redistribute it subject to the terms and conditions
+ * of the GNU General Public License version 2.
+ * 
+ * This particular file is subject to the "Classpath" exception as provided in the 
+ * LICENSE file that accompanied this code.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT A
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE.  See the GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License,
+ * along with this distribution; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA  02110-1301, USA.
+ */
+package com.redhat.ceylon.compiler.loader.index;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.redhat.ceylon.compiler.loader.mirror.AnnotatedMirror;
+import com.redhat.ceylon.compiler.loader.mirror.AnnotationMirror;
+
+/**
+ * An annotation read back from a {@link ModelIndex}. We only keep the Ceylon metadata
+ * annotations, and only the fields of them the model loader reads.
+ */
+public class IndexAnnotation implements AnnotationMirror {
+
+    private static final String METADATA = "com.redhat.ceylon.compiler.java.metadata.";
+
+    /**
+     * The annotation types the model loader looks up.
+     */
+    static final String[] ANNOTATIONS = {
+        "Ceylon", "Module", "Package", "Ignore", "Class", "Name", "Sequenced", "Defaulted",
+        "SatisfiedTypes", "CaseTypes", "TypeParameters", "TypeInfo", "Attribute", "Object",
+        "Method", "Annotations", "ValueType", "Alias"
+    };
+
+    /**
+     * Every field of the metadata annotations, and of the annotations they nest, that the
+     * model loader reads.
+     */
+    private static final String[] FIELDS = {
+        "value", "name", "version", "optional", "export", "dependencies", "shared",
+        "major", "minor", "extendsType", "of", "variance", "satisfies", "arguments", "namedArguments"
+    };
+
+    private static final byte NULL = 0;
+    private static final byte STRING = 1;
+    private static final byte BOOLEAN = 2;
+    private static final byte INTEGER = 3;
+    private static final byte LONG = 4;
+    private static final byte LIST = 5;
+    private static final byte ANNOTATION = 6;
+
+    private final Map<String, Object> values;
+
+    private IndexAnnotation(Map<String, Object> values) {
+        this.values = values;
+    }
+
+    @Override
+    public Object getValue(String fieldName) {
+        return values.get(fieldName);
+    }
+
+    @Override
+    public Object getValue() {
+        return getValue("value");
+    }
+
+    static IndexAnnotation copy(AnnotationMirror annotation) {
+        Map<String, Object> values = new HashMap<String, Object>();
+        for(String field : FIELDS){
+            Object value = annotation.getValue(field);
+            if(value != null)
+                values.put(field, copyValue(value));
+        }
+        return new IndexAnnotation(values);
+    }
+
+    private static Object copyValue(Object value) {
+        if(value instanceof List){
+            List<?> list = (List<?>) value;
+            List<Object> ret = new ArrayList<Object>(list.size());
+            for(Object elem : list)
+                ret.add(copyValue(elem));
+            return Collections.unmodifiableList(ret);
+        }
+        if(value instanceof AnnotationMirror)
+            return copy((AnnotationMirror) value);
+        if(value instanceof String
+                || value instanceof Boolean
+                || value instanceof Integer
+                || value instanceof Long)
+            return value;
+        throw new IllegalArgumentException("Unsupported annotation value: "+value);
+    }
+
+    /**
+     * Copies the metadata annotations of the given element.
+     */
+    static Map<String, IndexAnnotation> copyAll(AnnotatedMirror mirror) {
+        Map<String, IndexAnnotation> ret = new HashMap<String, IndexAnnotation>();
+        for(String name : ANNOTATIONS){
+            AnnotationMirror annotation = mirror.getAnnotation(METADATA + name);
+            if(annotation != null)
+                ret.put(METADATA + name, copy(annotation));
+        }
+        return ret;
+    }
+
+    static void writeAll(ModelIndex.Output out, Map<String, IndexAnnotation> annotations) throws IOException {
+        out.writeInt(annotations.size());
+        for(Map.Entry<String, IndexAnnotation> entry : annotations.entrySet()){
+            out.writeString(entry.getKey());
+            entry.getValue().write(out);
+        }
+    }
+
+    static Map<String, IndexAnnotation> readAll(ModelIndex.Input in) throws IOException {
+        int count = in.readInt();
+        if(count == 0)
+            return Collections.emptyMap();
+        Map<String, IndexAnnotation> ret = new HashMap<String, IndexAnnotation>();
+        for(int i=0;i<count;i++){
+            String name = in.readString();
+            ret.put(name, read(in));
+        }
+        return ret;
+    }
+
+    private void write(ModelIndex.Output out) throws IOException {
+        out.writeInt(values.size());
+        for(Map.Entry<String, Object> entry : values.entrySet()){
+            out.writeString(entry.getKey());
+            writeValue(out, entry.getValue());
+        }
+    }
+
+    private static IndexAnnotation read(ModelIndex.Input in) throws IOException {
+        int count = in.readInt();
+        Map<String, Object> values = new HashMap<String, Object>();
+        for(int i=0;i<count;i++){
+            String name = in.readString();
+            values.put(name, readValue(in));
+        }
+        return new IndexAnnotation(values);
+    }
+
+    private static void writeValue(ModelIndex.Output out, Object value) throws IOException {
+        if(value == null){
+            out.writeByte(NULL);
+        }else if(value instanceof String){
+            out.writeByte(STRING);
+            out.writeString((String) value);
+        }else if(value instanceof Boolean){
+            out.writeByte(BOOLEAN);
+            out.writeBoolean((Boolean) value);
+        }else if(value instanceof Integer){
+            out.writeByte(INTEGER);
+            out.writeInt((Integer) value);
+        }else if(value instanceof Long){
+            out.writeByte(LONG);
+            out.writeLong((Long) value);
+        }else if(value instanceof List){
+            List<?> list = (List<?>) value;
+            out.writeByte(LIST);
+            out.writeInt(list.size());
+            for(Object elem : list)
+                writeValue(out, elem);
+        }else{
+            out.writeByte(ANNOTATION);
+            ((IndexAnnotation) value).write(out);
+        }
+    }
+
+    private static Object readValue(ModelIndex.Input in) throws IOException {
+        byte tag = in.readByte();
+        switch(tag){
+        case NULL: return null;
+        case STRING: return in.readString();
+        case BOOLEAN: return in.readBoolean();
+        case INTEGER: return in.readInt();
+        case LONG: return in.readLong();
+        case LIST:
+            int size = in.readInt();
+            List<Object> list = new ArrayList<Object>(size);
+            for(int i=0;i<size;i++)
+                list.add(readValue(in));
+            return Collections.unmodifiableList(list);
+        case ANNOTATION: return read(in);
+        default:
+            throw new IOException("Invalid annotation value tag: "+tag);
+        }
+    }
+}
@@ -0,0 +1,261 @@
+/*
+ * Copyright Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the authors tag. All rights reserved.
+ *
+ * This copyrighted material is made available to anyone wishing to use,
+ * modify, copy, or redistribute it subject to the terms and conditions
+ * of the GNU General Public License version 2.
+ * 
+ * This particular file is subject to the "Classpath" exception as provided in the 
+ * LICENSE file that accompanied this code.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT A
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE.  See the GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License,
+ * along with this distribution; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA  02110-1301, USA.
+ */
+package com.redhat.ceylon.compiler.loader.index;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import com.redhat.ceylon.compiler.loader.mirror.AnnotationMirror;
+import com.redhat.ceylon.compiler.loader.mirror.ClassMirror;
+import com.redhat.ceylon.compiler.loader.mirror.FieldMirror;
+import com.redhat.ceylon.compiler.loader.mirror.MethodMirror;
+import com.redhat.ceylon.compiler.loader.mirror.PackageMirror;
+import com.redhat.ceylon.compiler.loader.mirror.TypeMirror;
+import com.redhat.ceylon.compiler.loader.mirror.TypeParameterMirror;
+
+/**
+ * A class read back from a {@link ModelIndex}, with everything the model loader
+ * needs to know about it, so that we do not need to read its class file.
+ */
+public class IndexClass implements ClassMirror {
+
+    private static final int PUBLIC = 1;
+    private static final int INTERFACE = 1 << 1;
+    private static final int ABSTRACT = 1 << 2;
+    private static final int STATIC = 1 << 3;
+    private static final int INNER = 1 << 4;
+    private static final int ANONYMOUS = 1 << 5;
+    private static final int TOPLEVEL_ATTRIBUTE = 1 << 6;
+    private static final int TOPLEVEL_OBJECT = 1 << 7;
+    private static final int TOPLEVEL_METHOD = 1 << 8;
+
+    private final String name;
+    private final String qualifiedName;
+    private final PackageMirror pkg;
+    private final int flags;
+    private final List<MethodMirror> methods;
+    private final List<FieldMirror> fields;
+    private final List<TypeParameterMirror> typeParameters;
+    private final List<ClassMirror> innerClasses;
+    private final TypeMirror superclass;
+    private final List<TypeMirror> interfaces;
+    private final Map<String, IndexAnnotation> annotations;
+
+    private IndexClass(String name, String qualifiedName, String pkgName, int flags,
+            List<MethodMirror> methods, List<FieldMirror> fields,
+            List<TypeParameterMirror> typeParameters, List<ClassMirror> innerClasses,
+            TypeMirror superclass, List<TypeMirror> interfaces, Map<String, IndexAnnotation> annotations) {
+        this.name = name;
+        this.qualifiedName = qualifiedName;
+        this.pkg = new IndexPackage(pkgName);
+        this.flags = flags;
+        this.methods = methods;
+        this.fields = fields;
+        this.typeParameters = typeParameters;
+        this.innerClasses = innerClasses;
+        this.superclass = superclass;
+        this.interfaces = interfaces;
+        this.annotations = annotations;
+    }
+
+    /**
+     * Copies everything we need from the given class, and from its inner classes.
+     */
+    static IndexClass copy(ClassMirror klass, ModelIndex.OverrideChecker overrideChecker) {
+        int flags = (klass.isPublic() ? PUBLIC : 0)
+                | (klass.isInterface() ? INTERFACE : 0)
+                | (klass.isAbstract() ? ABSTRACT : 0)
+                | (klass.isStatic() ? STATIC : 0)
+                | (klass.isInnerClass() ? INNER : 0)
+                | (klass.isAnonymous() ? ANONYMOUS : 0)
+                | (klass.isCeylonToplevelAttribute() ? TOPLEVEL_ATTRIBUTE : 0)
+                | (klass.isCeylonToplevelObject() ? TOPLEVEL_OBJECT : 0)
+                | (klass.isCeylonToplevelMethod() ? TOPLEVEL_METHOD : 0);
+        List<MethodMirror> methods = new ArrayList<MethodMirror>(klass.getDirectMethods().size());
+        for(MethodMirror method : klass.getDirectMethods())
+            methods.add(new IndexMethod(method, overrideChecker.isOverriding(method)));
+        List<FieldMirror> fields = new ArrayList<FieldMirror>(klass.getDirectFields().size());
+        for(FieldMirror field : klass.getDirectFields())
+            fields.add(new IndexField(field));
+        List<ClassMirror> innerClasses = new ArrayList<ClassMirror>(klass.getDirectInnerClasses().size());
+        for(ClassMirror innerClass : klass.getDirectInnerClasses())
+            innerClasses.add(copy(innerClass, overrideChecker));
+        return new IndexClass(klass.getName(), klass.getQualifiedName(), klass.getPackage().getQualifiedName(), flags,
+                Collections.unmodifiableList(methods), Collections.unmodifiableList(fields),
+                IndexTypeParameter.copyAll(klass.getTypeParameters()), Collections.unmodifiableList(innerClasses),
+                IndexType.copy(klass.getSuperclass()), IndexType.copyAll(klass.getInterfaces()),
+                IndexAnnotation.copyAll(klass));
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public AnnotationMirror getAnnotation(String type) {
+        return annotations.get(type);
+    }
+
+    @Override
+    public boolean isPublic() {
+        return (flags & PUBLIC) != 0;
+    }
+
+    @Override
+    public boolean isInterface() {
+        return (flags & INTERFACE) != 0;
+    }
+
+    @Override
+    public boolean isAbstract() {
+        return (flags & ABSTRACT) != 0;
+    }
+
+    @Override
+    public boolean isStatic() {
+        return (flags & STATIC) != 0;
+    }
+
+    @Override
+    public boolean isInnerClass() {
+        return (flags & INNER) != 0;
+    }
+
+    @Override
+    public boolean isAnonymous() {
+        return (flags & ANONYMOUS) != 0;
+    }
+
+    @Override
+    public String getQualifiedName() {
+        return qualifiedName;
+    }
+
+    @Override
+    public PackageMirror getPackage() {
+        return pkg;
+    }
+
+    @Override
+    public List<MethodMirror> getDirectMethods() {
+        return methods;
+    }
+
+    @Override
+    public List<FieldMirror> getDirectFields() {
+        return fields;
+    }
+
+    @Override
+    public List<TypeParameterMirror> getTypeParameters() {
+        return typeParameters;
+    }
+
+    @Override
+    public List<ClassMirror> getDirectInnerClasses() {
+        return innerClasses;
+    }
+
+    @Override
+    public TypeMirror getSuperclass() {
+        return superclass;
+    }
+
+    @Override
+    public List<TypeMirror> getInterfaces() {
+        return interfaces;
+    }
+
+    @Override
+    public boolean isCeylonToplevelAttribute() {
+        return (flags & TOPLEVEL_ATTRIBUTE) != 0;
+    }
+
+    @Override
+    public boolean isCeylonToplevelObject() {
+        return (flags & TOPLEVEL_OBJECT) != 0;
+    }
+
+    @Override
+    public boolean isCeylonToplevelMethod() {
+        return (flags & TOPLEVEL_METHOD) != 0;
+    }
+
+    @Override
+    public boolean isLoadedFromSource() {
+        // we only index compiled modules
+        return false;
+    }
+
+    @Override
+    public boolean isJavaSource() {
+        return false;
+    }
+
+    void write(ModelIndex.Output out) throws IOException {
+        out.writeString(name);
+        out.writeString(qualifiedName);
+        out.writeString(pkg.getQualifiedName());
+        out.writeInt(flags);
+        out.writeInt(methods.size());
+        for(MethodMirror method : methods)
+            ((IndexMethod) method).write(out);
+        out.writeInt(fields.size());
+        for(FieldMirror field : fields)
+            ((IndexField) field).write(out);
+        IndexTypeParameter.writeAll(out, typeParameters);
+        out.writeInt(innerClasses.size());
+        for(ClassMirror innerClass : innerClasses)
+            ((IndexClass) innerClass).write(out);
+        IndexType.write(out, superclass);
+        IndexType.writeAll(out, interfaces);
+        IndexAnnotation.writeAll(out, annotations);
+    }
+
+    static IndexClass read(ModelIndex.Input in) throws IOException {
+        String name = in.readString();
+        String qualifiedName = in.readString();
+        String pkgName = in.readString();
+        int flags = in.readInt();
+        int methodCount = in.readInt();
+        List<MethodMirror> methods = new ArrayList<MethodMirror>(methodCount);
+        for(int i=0;i<methodCount;i++)
+            methods.add(IndexMethod.read(in));
+        int fieldCount = in.readInt();
+        List<FieldMirror> fields = new ArrayList<FieldMirror>(fieldCount);
+        for(int i=0;i<fieldCount;i++)
+            fields.add(IndexField.read(in));
+        List<TypeParameterMirror> typeParameters = IndexTypeParameter.readAll(in);
+        int innerClassCount = in.readInt();
+        List<ClassMirror> innerClasses = new ArrayList<ClassMirror>(innerClassCount);
+        for(int i=0;i<innerClassCount;i++)
+            innerClasses.add(read(in));
+        IndexType superclass = IndexType.read(in);
+        List<TypeMirror> interfaces = IndexType.readAll(in);
+        return new IndexClass(name, qualifiedName, pkgName, flags,
+                Collections.unmodifiableList(methods), Collections.unmodifiableList(fields),
+                typeParameters, Collections.unmodifiableList(innerClasses),
+                superclass, interfaces, IndexAnnotation.readAll(in));
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the authors tag. All rights reserved.
+ *
+ * This copyrighted material is made available to anyone wishing to use,
+ * modify, copy, or redistribute it subject to the terms and conditions
+ * of the GNU General Public License version 2.
+ * 
+ * This particular file is subject to the "Classpath" exception as provided in the 
+ * LICENSE file that accompanied this code.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT A
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE.  See the GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License,
+ * along with this distribution; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA  02110-1301, USA.
+ */
+package com.redhat.ceylon.compiler.loader.index;
+
+import java.io.IOException;
+import java.util.Map;
+
+import com.redhat.ceylon.compiler.loader.mirror.AnnotationMirror;
+import com.redhat.ceylon.compiler.loader.mirror.FieldMirror;
+import com.redhat.ceylon.compiler.loader.mirror.TypeMirror;
+
+/**
+ * A field read back from a {@link ModelIndex}.
+ */
+public class IndexField implements FieldMirror {
+
+    private static final int STATIC = 1;
+    private static final int PUBLIC = 1 << 1;
+    private static final int PROTECTED = 1 << 2;
+    private static final int DEFAULT_ACCESS = 1 << 3;
+    private static final int FINAL = 1 << 4;
+
+    private final String name;
+    private final int flags;
+    private final TypeMirror type;
+    private final Map<String, IndexAnnotation> annotations;
+
+    private IndexField(String name, int flags, TypeMirror type, Map<String, IndexAnnotation> annotations) {
+        this.name = name;
+        this.flags = flags;
+        this.type = type;
+        this.annotations = annotations;
+    }
+
+    IndexField(FieldMirror field) {
+        this(field.getName(), 
+                (field.isStatic() ? STATIC : 0)
+                | (field.isPublic() ? PUBLIC : 0)
+                | (field.isProtected() ? PROTECTED : 0)
+                | (field.isDefaultAccess() ? DEFAULT_ACCESS : 0)
+                | (field.isFinal() ? FINAL : 0),
+                IndexType.copy(field.getType()),
+                IndexAnnotation.copyAll(field));
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public AnnotationMirror getAnnotation(String type) {
+        return annotations.get(type);
+    }
+
+    @Override
+    public boolean isStatic() {
+        return (flags & STATIC) != 0;
+    }
+
+    @Override
+    public boolean isPublic() {
+        return (flags & PUBLIC) != 0;
+    }
+
+    @Override
+    public boolean isProtected() {
+        return (flags & PROTECTED) != 0;
+    }
+
+    @Override
+    public boolean isDefaultAccess() {
+        return (flags & DEFAULT_ACCESS) != 0;
+    }
+
+    @Override
+    public boolean isFinal() {
+        return (flags & FINAL) != 0;
+    }
+
+    @Override
+    public TypeMirror getType() {
+        return type;
+    }
+
+    void write(ModelIndex.Output out) throws IOException {
+        out.writeString(name);
+        out.writeInt(flags);
+        IndexType.write(out, type);
+        IndexAnnotation.writeAll(out, annotations);
+    }
+
+    static IndexField read(ModelIndex.Input in) throws IOException {
+        String name = in.readString();
+        int flags = in.readInt();
+        IndexType type = IndexType.read(in);
+        return new IndexField(name, flags, type, IndexAnnotation.readAll(in));
+    }
+}
@@ -0,0 +1,186 @@
+/*
+ * Copyright Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the authors tag. All rights reserved.
+ *
+ * This copyrighted material is made available to anyone wishing to use,
+ * modify, copy, or redistribute it subject to the terms and conditions
+ * of the GNU General Public License version 2.
+ * 
+ * This particular file is subject to the "Classpath" exception as provided in the 
+ * LICENSE file that accompanied this code.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT A
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE.  See the GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License,
+ * along with this distribution; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA  02110-1301, USA.
+ */
+package com.redhat.ceylon.compiler.loader.index;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+import com.redhat.ceylon.compiler.loader.mirror.AnnotationMirror;
+import com.redhat.ceylon.compiler.loader.mirror.MethodMirror;
+import com.redhat.ceylon.compiler.loader.mirror.TypeMirror;
+import com.redhat.ceylon.compiler.loader.mirror.TypeParameterMirror;
+import com.redhat.ceylon.compiler.loader.mirror.VariableMirror;
+
+/**
+ * A method read back from a {@link ModelIndex}. Since we cannot look at its
+ * supertypes without loading them, we also remember whether it overrides an
+ * inherited method.
+ */
+public class IndexMethod implements MethodMirror {
+
+    private static final int STATIC = 1;
+    private static final int PUBLIC = 1 << 1;
+    private static final int PROTECTED = 1 << 2;
+    private static final int DEFAULT_ACCESS = 1 << 3;
+    private static final int CONSTRUCTOR = 1 << 4;
+    private static final int ABSTRACT = 1 << 5;
+    private static final int FINAL = 1 << 6;
+    private static final int STATIC_INIT = 1 << 7;
+    private static final int VARIADIC = 1 << 8;
+    private static final int DECLARED_VOID = 1 << 9;
+    private static final int OVERRIDING = 1 << 10;
+
+    private final String name;
+    private final int flags;
+    private final List<VariableMirror> parameters;
+    private final TypeMirror returnType;
+    private final List<TypeParameterMirror> typeParameters;
+    private final Map<String, IndexAnnotation> annotations;
+
+    private IndexMethod(String name, int flags, List<VariableMirror> parameters, TypeMirror returnType,
+            List<TypeParameterMirror> typeParameters, Map<String, IndexAnnotation> annotations) {
+        this.name = name;
+        this.flags = flags;
+        this.parameters = parameters;
+        this.returnType = returnType;
+        this.typeParameters = typeParameters;
+        this.annotations = annotations;
+    }
+
+    IndexMethod(MethodMirror method, boolean overriding) {
+        this(method.getName(),
+                (method.isStatic() ? STATIC : 0)
+                | (method.isPublic() ? PUBLIC : 0)
+                | (method.isProtected() ? PROTECTED : 0)
+                | (method.isDefaultAccess() ? DEFAULT_ACCESS : 0)
+                | (method.isConstructor() ? CONSTRUCTOR : 0)
+                | (method.isAbstract() ? ABSTRACT : 0)
+                | (method.isFinal() ? FINAL : 0)
+                | (method.isStaticInit() ? STATIC_INIT : 0)
+                | (method.isVariadic() ? VARIADIC : 0)
+                | (method.isDeclaredVoid() ? DECLARED_VOID : 0)
+                | (overriding ? OVERRIDING : 0),
+                IndexVariable.copyAll(method.getParameters()),
+                IndexType.copy(method.getReturnType()),
+                IndexTypeParameter.copyAll(method.getTypeParameters()),
+                IndexAnnotation.copyAll(method));
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public AnnotationMirror getAnnotation(String type) {
+        return annotations.get(type);
+    }
+
+    @Override
+    public boolean isStatic() {
+        return (flags & STATIC) != 0;
+    }
+
+    @Override
+    public boolean isPublic() {
+        return (flags & PUBLIC) != 0;
+    }
+
+    @Override
+    public boolean isProtected() {
+        return (flags & PROTECTED) != 0;
+    }
+
+    @Override
+    public boolean isDefaultAccess() {
+        return (flags & DEFAULT_ACCESS) != 0;
+    }
+
+    @Override
+    public boolean isConstructor() {
+        return (flags & CONSTRUCTOR) != 0;
+    }
+
+    @Override
+    public boolean isAbstract() {
+        return (flags & ABSTRACT) != 0;
+    }
+
+    @Override
+    public boolean isFinal() {
+        return (flags & FINAL) != 0;
+    }
+
+    @Override
+    public boolean isStaticInit() {
+        return (flags & STATIC_INIT) != 0;
+    }
+
+    @Override
+    public boolean isVariadic() {
+        return (flags & VARIADIC) != 0;
+    }
+
+    @Override
+    public List<VariableMirror> getParameters() {
+        return parameters;
+    }
+
+    @Override
+    public TypeMirror getReturnType() {
+        return returnType;
+    }
+
+    @Override
+    public boolean isDeclaredVoid() {
+        return (flags & DECLARED_VOID) != 0;
+    }
+
+    @Override
+    public List<TypeParameterMirror> getTypeParameters() {
+        return typeParameters;
+    }
+
+    /**
+     * Returns true if this method overrides a method of a supertype.
+     */
+    public boolean isOverriding() {
+        return (flags & OVERRIDING) != 0;
+    }
+
+    void write(ModelIndex.Output out) throws IOException {
+        out.writeString(name);
+        out.writeInt(flags);
+        IndexVariable.writeAll(out, parameters);
+        IndexType.write(out, returnType);
+        IndexTypeParameter.writeAll(out, typeParameters);
+        IndexAnnotation.writeAll(out, annotations);
+    }
+
+    static IndexMethod read(ModelIndex.Input in) throws IOException {
+        String name = in.readString();
+        int flags = in.readInt();
+        List<VariableMirror> parameters = IndexVariable.readAll(in);
+        IndexType returnType = IndexType.read(in);
+        List<TypeParameterMirror> typeParameters = IndexTypeParameter.readAll(in);
+        return new IndexMethod(name, flags, parameters, returnType, typeParameters, IndexAnnotation.readAll(in));
+    }
+}
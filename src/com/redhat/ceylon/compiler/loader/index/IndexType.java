@@ -0,0 +1,159 @@
+/*
+ * Copyright Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the authors tag. All rights reserved.
+ *
+ * This copyrighted material is made available to anyone wishing to use,
+ * modify, copy, or redistribute it subject to the terms and conditions
+ * of the GNU General Public License version 2.
+ * 
+ * This particular file is subject to the "Classpath" exception as provided in the 
+ * LICENSE file that accompanied this code.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT A
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE.  See the GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License,
+ * along with this distribution; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA  02110-1301, USA.
+ */
+package com.redhat.ceylon.compiler.loader.index;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import javax.lang.model.type.TypeKind;
+
+import com.redhat.ceylon.compiler.loader.mirror.TypeMirror;
+
+/**
+ * A type read back from a {@link ModelIndex}.
+ */
+public class IndexType implements TypeMirror {
+
+    private final String qualifiedName;
+    private final TypeKind kind;
+    private final List<TypeMirror> typeArguments;
+    private final TypeMirror componentType;
+    private final boolean primitive;
+    private final boolean raw;
+    private final TypeMirror upperBound;
+    private final TypeMirror lowerBound;
+
+    private IndexType(String qualifiedName, TypeKind kind, List<TypeMirror> typeArguments, TypeMirror componentType,
+            boolean primitive, boolean raw, TypeMirror upperBound, TypeMirror lowerBound) {
+        this.qualifiedName = qualifiedName;
+        this.kind = kind;
+        this.typeArguments = typeArguments;
+        this.componentType = componentType;
+        this.primitive = primitive;
+        this.raw = raw;
+        this.upperBound = upperBound;
+        this.lowerBound = lowerBound;
+    }
+
+    @Override
+    public String getQualifiedName() {
+        return qualifiedName;
+    }
+
+    @Override
+    public List<TypeMirror> getTypeArguments() {
+        return typeArguments;
+    }
+
+    @Override
+    public TypeKind getKind() {
+        return kind;
+    }
+
+    @Override
+    public TypeMirror getComponentType() {
+        return componentType;
+    }
+
+    @Override
+    public boolean isPrimitive() {
+        return primitive;
+    }
+
+    @Override
+    public boolean isRaw() {
+        return raw;
+    }
+
+    @Override
+    public TypeMirror getUpperBound() {
+        return upperBound;
+    }
+
+    @Override
+    public TypeMirror getLowerBound() {
+        return lowerBound;
+    }
+
+    static IndexType copy(TypeMirror type) {
+        if(type == null)
+            return null;
+        return new IndexType(type.getQualifiedName(), type.getKind(), copyAll(type.getTypeArguments()),
+                copy(type.getComponentType()), type.isPrimitive(), type.isRaw(),
+                copy(type.getUpperBound()), copy(type.getLowerBound()));
+    }
+
+    static List<TypeMirror> copyAll(List<TypeMirror> types) {
+        if(types.isEmpty())
+            return Collections.emptyList();
+        List<TypeMirror> ret = new ArrayList<TypeMirror>(types.size());
+        for(TypeMirror type : types)
+            ret.add(copy(type));
+        return Collections.unmodifiableList(ret);
+    }
+
+    static void write(ModelIndex.Output out, TypeMirror type) throws IOException {
+        if(type == null){
+            out.writeBoolean(false);
+            return;
+        }
+        out.writeBoolean(true);
+        out.writeString(type.getQualifiedName());
+        out.writeString(type.getKind().name());
+        writeAll(out, type.getTypeArguments());
+        write(out, type.getComponentType());
+        out.writeBoolean(type.isPrimitive());
+        out.writeBoolean(type.isRaw());
+        write(out, type.getUpperBound());
+        write(out, type.getLowerBound());
+    }
+
+    static IndexType read(ModelIndex.Input in) throws IOException {
+        if(!in.readBoolean())
+            return null;
+        String qualifiedName = in.readString();
+        TypeKind kind = TypeKind.valueOf(in.readString());
+        List<TypeMirror> typeArguments = readAll(in);
+        IndexType componentType = read(in);
+        boolean primitive = in.readBoolean();
+        boolean raw = in.readBoolean();
+        IndexType upperBound = read(in);
+        IndexType lowerBound = read(in);
+        return new IndexType(qualifiedName, kind, typeArguments, componentType, primitive, raw, upperBound, lowerBound);
+    }
+
+    static void writeAll(ModelIndex.Output out, List<TypeMirror> types) throws IOException {
+        out.writeInt(types.size());
+        for(TypeMirror type : types)
+            write(out, type);
+    }
+
+    static List<TypeMirror> readAll(ModelIndex.Input in) throws IOException {
+        int size = in.readInt();
+        if(size == 0)
+            return Collections.emptyList();
+        List<TypeMirror> ret = new ArrayList<TypeMirror>(size);
+        for(int i=0;i<size;i++)
+            ret.add(read(in));
+        return Collections.unmodifiableList(ret);
+    }
+}
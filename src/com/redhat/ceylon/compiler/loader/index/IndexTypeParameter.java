@@ -0,0 +1,81 @@
+/*
+ * Copyright Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the authors tag. All rights reserved.
+ *
+ * This copyrighted material is made available to anyone wishing to use,
+ * modify, copy, or redistribute it subject to the terms and conditions
+ * of the GNU General Public License version 2.
+ * 
+ * This particular file is subject to the "Classpath" exception as provided in the 
+ * LICENSE file that accompanied this code.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT A
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE.  See the GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License,
+ * along with this distribution; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA  02110-1301, USA.
+ */
+package com.redhat.ceylon.compiler.loader.index;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import com.redhat.ceylon.compiler.loader.mirror.TypeMirror;
+import com.redhat.ceylon.compiler.loader.mirror.TypeParameterMirror;
+
+/**
+ * A type parameter read back from a {@link ModelIndex}.
+ */
+public class IndexTypeParameter implements TypeParameterMirror {
+
+    private final String name;
+    private final List<TypeMirror> bounds;
+
+    private IndexTypeParameter(String name, List<TypeMirror> bounds) {
+        this.name = name;
+        this.bounds = bounds;
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public List<TypeMirror> getBounds() {
+        return bounds;
+    }
+
+    static List<TypeParameterMirror> copyAll(List<TypeParameterMirror> typeParameters) {
+        if(typeParameters.isEmpty())
+            return Collections.emptyList();
+        List<TypeParameterMirror> ret = new ArrayList<TypeParameterMirror>(typeParameters.size());
+        for(TypeParameterMirror typeParameter : typeParameters)
+            ret.add(new IndexTypeParameter(typeParameter.getName(), IndexType.copyAll(typeParameter.getBounds())));
+        return Collections.unmodifiableList(ret);
+    }
+
+    static void writeAll(ModelIndex.Output out, List<TypeParameterMirror> typeParameters) throws IOException {
+        out.writeInt(typeParameters.size());
+        for(TypeParameterMirror typeParameter : typeParameters){
+            out.writeString(typeParameter.getName());
+            IndexType.writeAll(out, typeParameter.getBounds());
+        }
+    }
+
+    static List<TypeParameterMirror> readAll(ModelIndex.Input in) throws IOException {
+        int size = in.readInt();
+        if(size == 0)
+            return Collections.emptyList();
+        List<TypeParameterMirror> ret = new ArrayList<TypeParameterMirror>(size);
+        for(int i=0;i<size;i++){
+            String name = in.readString();
+            ret.add(new IndexTypeParameter(name, IndexType.readAll(in)));
+        }
+        return Collections.unmodifiableList(ret);
+    }
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the authors tag. All rights reserved.
+ *
+ * This copyrighted material is made available to anyone wishing to use,
+ * modify, copy, or redistribute it subject to the terms and conditions
+ * of the GNU General Public License version 2.
+ * 
+ * This particular file is subject to the "Classpath" exception as provided in the 
+ * LICENSE file that accompanied this code.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT A
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE.  See the GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License,
+ * along with this distribution; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA  02110-1301, USA.
+ */
+package com.redhat.ceylon.compiler.loader.index;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import com.redhat.ceylon.compiler.loader.mirror.AnnotationMirror;
+import com.redhat.ceylon.compiler.loader.mirror.TypeMirror;
+import com.redhat.ceylon.compiler.loader.mirror.VariableMirror;
+
+/**
+ * A method parameter read back from a {@link ModelIndex}.
+ */
+public class IndexVariable implements VariableMirror {
+
+    private final String name;
+    private final TypeMirror type;
+    private final Map<String, IndexAnnotation> annotations;
+
+    private IndexVariable(String name, TypeMirror type, Map<String, IndexAnnotation> annotations) {
+        this.name = name;
+        this.type = type;
+        this.annotations = annotations;
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public AnnotationMirror getAnnotation(String type) {
+        return annotations.get(type);
+    }
+
+    @Override
+    public TypeMirror getType() {
+        return type;
+    }
+
+    static List<VariableMirror> copyAll(List<VariableMirror> variables) {
+        if(variables.isEmpty())
+            return Collections.emptyList();
+        List<VariableMirror> ret = new ArrayList<VariableMirror>(variables.size());
+        for(VariableMirror variable : variables)
+            ret.add(new IndexVariable(variable.getName(), IndexType.copy(variable.getType()), IndexAnnotation.copyAll(variable)));
+        return Collections.unmodifiableList(ret);
+    }
+
+    static void writeAll(ModelIndex.Output out, List<VariableMirror> variables) throws IOException {
+        out.writeInt(variables.size());
+        for(VariableMirror variable : variables){
+            IndexVariable indexVariable = (IndexVariable) variable;
+            out.writeString(indexVariable.name);
+            IndexType.write(out, indexVariable.type);
+            IndexAnnotation.writeAll(out, indexVariable.annotations);
+        }
+    }
+
+    static List<VariableMirror> readAll(ModelIndex.Input in) throws IOException {
+        int size = in.readInt();
+        if(size == 0)
+            return Collections.emptyList();
+        List<VariableMirror> ret = new ArrayList<VariableMirror>(size);
+        for(int i=0;i<size;i++){
+            String name = in.readString();
+            IndexType type = IndexType.read(in);
+            ret.add(new IndexVariable(name, type, IndexAnnotation.readAll(in)));
+        }
+        return Collections.unmodifiableList(ret);
+    }
+}
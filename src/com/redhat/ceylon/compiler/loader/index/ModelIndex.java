@@ -0,0 +1,459 @@
+/*
+ * Copyright Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the authors tag. All rights reserved.
+ *
+ * This copyrighted material is made available to anyone wishing to use,
+ * modify, copy, or redistribute it subject to the terms and conditions
+ * of the GNU General Public License version 2.
+ * 
+ * This particular file is subject to the "Classpath" exception as provided in the 
+ * LICENSE file that accompanied this code.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT A
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE.  See the GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License,
+ * along with this distribution; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA  02110-1301, USA.
+ */
+package com.redhat.ceylon.compiler.loader.index;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigInteger;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import com.redhat.ceylon.compiler.loader.mirror.ClassMirror;
+import com.redhat.ceylon.compiler.loader.mirror.MethodMirror;
+
+/**
+ * A compact copy of the class mirrors the model loader looked up in a module car,
+ * which lets later compilations load that module's declarations without reading
+ * its class files again.
+ * <p>
+ * Since cars in a repository are versioned and never change, we can key the index
+ * by the SHA-1 of the car and keep it in a cache directory. An index only holds the
+ * classes that some compilation needed: it grows as more of the module gets used, and
+ * the model loader falls back to the class files for anything it does not hold.
+ * <p>
+ * We only store mirrors, not declarations, because declarations and their types are
+ * bound to the model of a single compilation.
+ * <p>
+ * The distribution ships a complete, read-only index of the {@code ceylon.language}
+ * car it was built with, see {@link #getLanguageSnapshot(File)}. Since it never changes
+ * and mirrors are immutable, every model loader of the JVM shares the same copy.
+ */
+public class ModelIndex {
+
+    private static final int MAGIC = 0xCE1A0DE1;
+    /**
+     * Bump this whenever the format changes, older indexes are then ignored and rebuilt.
+     */
+    private static final int VERSION = 1;
+    private static final String EXTENSION = ".idx";
+    private static final String LANGUAGE_SNAPSHOT = "/com/redhat/ceylon/compiler/loader/resources/ceylon.language.idx";
+
+    // the snapshot of the language module we ship, read at most once per JVM
+    private static ModelIndex languageSnapshot;
+    private static boolean languageSnapshotRead;
+    // the last car we checked against it, so we don't hash it for every compilation
+    private static String languageSnapshotCar;
+
+    /**
+     * Tells whether a method overrides an inherited one, which only the model loader
+     * that produced its mirror knows how to figure out.
+     */
+    public interface OverrideChecker {
+        boolean isOverriding(MethodMirror method);
+    }
+
+    private final String sha1;
+    private final Set<String> packages;
+    private final Map<String, IndexClass> classes = new HashMap<String, IndexClass>();
+    private final Map<String, List<String>> packageMembers = new HashMap<String, List<String>>();
+    private boolean modified;
+    private boolean readOnly;
+
+    private ModelIndex(String sha1, Set<String> packages) {
+        this.sha1 = sha1;
+        this.packages = packages;
+    }
+
+    /**
+     * Returns a new empty index of the given car, which is not backed by any cache directory.
+     */
+    public static ModelIndex create(File car) throws IOException {
+        ModelIndex index = new ModelIndex(sha1(car), listPackages(car));
+        index.modified = true;
+        return index;
+    }
+
+    /**
+     * Returns the read-only snapshot of the language module shipped with the compiler, if
+     * it was made from the given car, or null otherwise. The snapshot is shared by every
+     * caller, so it must never be modified.
+     */
+    public static synchronized ModelIndex getLanguageSnapshot(File car) throws IOException {
+        if(!languageSnapshotRead){
+            languageSnapshotRead = true;
+            InputStream is = ModelIndex.class.getResourceAsStream(LANGUAGE_SNAPSHOT);
+            if(is != null){
+                try{
+                    languageSnapshot = read(is, null);
+                }catch(IOException x){
+                    // corrupt, we will do without
+                }
+                if(languageSnapshot != null)
+                    languageSnapshot.readOnly = true;
+            }
+        }
+        if(languageSnapshot == null)
+            return null;
+        // a car of the same name and size and date is the one we already checked
+        String carKey = car.getAbsolutePath()+":"+car.length()+":"+car.lastModified();
+        if(carKey.equals(languageSnapshotCar))
+            return languageSnapshot;
+        if(!languageSnapshot.sha1.equals(sha1(car)))
+            return null;
+        languageSnapshotCar = carKey;
+        return languageSnapshot;
+    }
+
+    /**
+     * Returns the index of the given car from the given cache directory, or a new empty index
+     * if we have none yet, or if it is out of date or unreadable.
+     */
+    public static ModelIndex load(File cacheDir, File car) throws IOException {
+        String sha1 = sha1(car);
+        File file = new File(cacheDir, sha1 + EXTENSION);
+        if(file.exists()){
+            try{
+                ModelIndex index = read(new FileInputStream(file), sha1);
+                if(index != null)
+                    return index;
+            }catch(IOException x){
+                // corrupt, we will overwrite it
+            }
+        }
+        ModelIndex index = new ModelIndex(sha1, listPackages(car));
+        // make sure we write it even if we do not need anything from it
+        index.modified = true;
+        return index;
+    }
+
+    public String getSha1() {
+        return sha1;
+    }
+
+    /**
+     * The packages of the car this is an index of.
+     */
+    public Set<String> getPackages() {
+        return packages;
+    }
+
+    public ClassMirror getClassMirror(String name) {
+        return classes.get(name);
+    }
+
+    public boolean hasClassMirror(String name) {
+        return classes.containsKey(name);
+    }
+
+    /**
+     * Adds a copy of the given class mirror, which was looked up with the given name.
+     */
+    public void addClassMirror(String name, ClassMirror mirror, OverrideChecker overrideChecker) {
+        checkWritable();
+        classes.put(name, IndexClass.copy(mirror, overrideChecker));
+        modified = true;
+    }
+
+    /**
+     * Returns the names of the classes to load to load every declaration of the given package,
+     * or null if we do not know them.
+     */
+    public List<String> getPackageMembers(String pkg) {
+        return packageMembers.get(pkg);
+    }
+
+    public void setPackageMembers(String pkg, List<String> names) {
+        checkWritable();
+        packageMembers.put(pkg, Collections.unmodifiableList(new ArrayList<String>(names)));
+        modified = true;
+    }
+
+    public boolean isModified() {
+        return modified;
+    }
+
+    /**
+     * Read-only indexes are shared, and cannot be added to or saved.
+     */
+    public boolean isReadOnly() {
+        return readOnly;
+    }
+
+    private void checkWritable() {
+        if(readOnly)
+            throw new UnsupportedOperationException("Model index "+sha1+" is read-only");
+    }
+
+    /**
+     * Writes this index in the given cache directory, if anything was added to it.
+     */
+    public void save(File cacheDir) throws IOException {
+        if(!modified)
+            return;
+        saveAs(new File(cacheDir, sha1 + EXTENSION));
+    }
+
+    /**
+     * Writes this index to the given file, whether anything was added to it or not.
+     */
+    public void saveAs(File file) throws IOException {
+        checkWritable();
+        File dir = file.getAbsoluteFile().getParentFile();
+        dir.mkdirs();
+        // write it to the side first, so concurrent compilers never read half an index
+        File tmpFile = File.createTempFile(sha1, ".tmp", dir);
+        try{
+            Output out = new Output(new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile))));
+            try{
+                write(out);
+            }finally{
+                out.close();
+            }
+            file.delete();
+            if(!tmpFile.renameTo(file))
+                throw new IOException("Failed to move "+tmpFile+" to "+file);
+        }finally{
+            tmpFile.delete();
+        }
+        modified = false;
+    }
+
+    private void write(Output out) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeString(sha1);
+        out.writeInt(packages.size());
+        for(String pkg : packages)
+            out.writeString(pkg);
+        out.writeInt(classes.size());
+        for(Map.Entry<String, IndexClass> entry : classes.entrySet()){
+            out.writeString(entry.getKey());
+            entry.getValue().write(out);
+        }
+        out.writeInt(packageMembers.size());
+        for(Map.Entry<String, List<String>> entry : packageMembers.entrySet()){
+            out.writeString(entry.getKey());
+            out.writeInt(entry.getValue().size());
+            for(String name : entry.getValue())
+                out.writeString(name);
+        }
+    }
+
+    /**
+     * Reads an index from the given stream, which we close. Returns null if it is not
+     * an index of the current version or, unless the given SHA-1 is null, of that car.
+     */
+    private static ModelIndex read(InputStream is, String expectedSha1) throws IOException {
+        Input in = new Input(new DataInputStream(new BufferedInputStream(is)));
+        try{
+            if(in.readInt() != MAGIC
+                    || in.readInt() != VERSION)
+                return null;
+            String sha1 = in.readString();
+            if(sha1 == null
+                    || (expectedSha1 != null && !expectedSha1.equals(sha1)))
+                return null;
+            int packageCount = in.readInt();
+            Set<String> packages = new TreeSet<String>();
+            for(int i=0;i<packageCount;i++)
+                packages.add(in.readString());
+            ModelIndex index = new ModelIndex(sha1, packages);
+            int classCount = in.readInt();
+            for(int i=0;i<classCount;i++){
+                String name = in.readString();
+                index.classes.put(name, IndexClass.read(in));
+            }
+            int memberListCount = in.readInt();
+            for(int i=0;i<memberListCount;i++){
+                String pkg = in.readString();
+                int size = in.readInt();
+                List<String> names = new ArrayList<String>(size);
+                for(int j=0;j<size;j++)
+                    names.add(in.readString());
+                index.packageMembers.put(pkg, Collections.unmodifiableList(names));
+            }
+            return index;
+        }finally{
+            in.close();
+        }
+    }
+
+    /**
+     * Returns the SHA-1 of the given car, from the checksum file the repository keeps
+     * next to it if there is one.
+     */
+    static String sha1(File car) throws IOException {
+        File sha1File = new File(car.getPath() + ".sha1");
+        if(sha1File.exists()){
+            BufferedReader reader = new BufferedReader(new FileReader(sha1File));
+            try{
+                String line = reader.readLine();
+                if(line != null && !line.trim().isEmpty())
+                    return line.trim().split("\\s+")[0].toLowerCase();
+            }finally{
+                reader.close();
+            }
+        }
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            InputStream is = new FileInputStream(car);
+            try{
+                byte[] buffer = new byte[8192];
+                int read;
+                while((read = is.read(buffer)) != -1)
+                    digest.update(buffer, 0, read);
+            }finally{
+                is.close();
+            }
+            return String.format("%040x", new BigInteger(1, digest.digest()));
+        } catch (NoSuchAlgorithmException e) {
+            // every JVM has SHA-1
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static Set<String> listPackages(File car) throws IOException {
+        Set<String> packages = new TreeSet<String>();
+        ZipFile zipFile = new ZipFile(car);
+        try{
+            Enumeration<? extends ZipEntry> entries = zipFile.entries();
+            while(entries.hasMoreElements()){
+                String name = entries.nextElement().getName();
+                if(!name.endsWith(".class"))
+                    continue;
+                int lastSlash = name.lastIndexOf('/');
+                packages.add(lastSlash == -1 ? "" : name.substring(0, lastSlash).replace('/', '.'));
+            }
+        }finally{
+            zipFile.close();
+        }
+        return packages;
+    }
+
+    /**
+     * Writes every string once, and refers to it by number afterwards: the same
+     * type names and signatures come up over and over.
+     */
+    static class Output {
+        private final DataOutputStream out;
+        private final Map<String, Integer> strings = new HashMap<String, Integer>();
+
+        Output(DataOutputStream out) {
+            this.out = out;
+        }
+
+        void writeString(String string) throws IOException {
+            if(string == null){
+                out.writeInt(-1);
+                return;
+            }
+            Integer id = strings.get(string);
+            if(id != null){
+                out.writeInt(id);
+                return;
+            }
+            strings.put(string, strings.size());
+            out.writeInt(-2);
+            out.writeUTF(string);
+        }
+
+        void writeInt(int value) throws IOException {
+            out.writeInt(value);
+        }
+
+        void writeLong(long value) throws IOException {
+            out.writeLong(value);
+        }
+
+        void writeByte(byte value) throws IOException {
+            out.writeByte(value);
+        }
+
+        void writeBoolean(boolean value) throws IOException {
+            out.writeBoolean(value);
+        }
+
+        void close() throws IOException {
+            out.close();
+        }
+    }
+
+    static class Input {
+        private final DataInputStream in;
+        private final List<String> strings = new ArrayList<String>();
+
+        Input(DataInputStream in) {
+            this.in = in;
+        }
+
+        String readString() throws IOException {
+            int id = in.readInt();
+            if(id == -1)
+                return null;
+            if(id == -2){
+                String string = in.readUTF();
+                strings.add(string);
+                return string;
+            }
+            if(id < 0 || id >= strings.size())
+                throw new IOException("Invalid string reference: "+id);
+            return strings.get(id);
+        }
+
+        int readInt() throws IOException {
+            return in.readInt();
+        }
+
+        long readLong() throws IOException {
+            return in.readLong();
+        }
+
+        byte readByte() throws IOException {
+            return in.readByte();
+        }
+
+        boolean readBoolean() throws IOException {
+            return in.readBoolean();
+        }
+
+        void close() throws IOException {
+            in.close();
+        }
+    }
+}
@@ -20,6 +20,8 @@
 
 package com.redhat.ceylon.compiler.loader.model;
 
+import static com.redhat.ceylon.compiler.typechecker.model.Util.lookupMember;
+
 import java.util.List;
 
 import com.redhat.ceylon.compiler.java.util.Util;
@@ -58,6 +60,9 @@ public class LazyClass extends Class implements LazyContainer {
     
     private boolean isLoaded = false;
     private boolean isTypeParamsLoaded = false;
+    private boolean isHeaderLoaded = false;
+    // only set once completion is over, lets other threads skip the model loader lock
+    private volatile boolean isComplete = false;
 
     public LazyClass(ClassMirror classMirror, ModelCompleter completer, Class superClass, MethodMirror constructor, boolean forTopLevelObject) {
         this.classMirror = classMirror;
@@ -98,17 +103,54 @@ public class LazyClass extends Class implements LazyContainer {
     }
     
     private void load() {
-        loadTypeParams();
-        if(!isLoaded){
-            isLoaded = true;
-            completer.complete(this);
+        if(isComplete)
+            return;
+        synchronized(completer){
+            loadHeader();
+            if(!isLoaded){
+                isLoaded = true;
+                completer.complete(this);
+                isComplete = true;
+            }
+        }
+    }
+
+    private void loadHeader() {
+        if(isComplete)
+            return;
+        synchronized(completer){
+            loadTypeParams();
+            if(!isHeaderLoaded){
+                isHeaderLoaded = true;
+                completer.completeHeader(this);
+            }
+        }
+    }
+
+    /**
+     * Only loads the members of the given name, which is much cheaper than loading every member of
+     * large Java classes when we only use a few of them.
+     */
+    private void loadMember(String name) {
+        if(isComplete)
+            return;
+        synchronized(completer){
+            // if we're loading every member already we have nothing to do
+            if(isLoaded)
+                return;
+            loadHeader();
+            completer.completeMember(this, name);
         }
     }
 
     private void loadTypeParams() {
-        if(!isTypeParamsLoaded){
-            isTypeParamsLoaded = true;
-            completer.completeTypeParameters(this);
+        if(isComplete)
+            return;
+        synchronized(completer){
+            if(!isTypeParamsLoaded){
+                isTypeParamsLoaded = true;
+                completer.completeTypeParameters(this);
+            }
         }
     }
     
@@ -122,19 +164,19 @@ public class LazyClass extends Class implements LazyContainer {
 
     @Override
     public ParameterList getParameterList() {
-        load();
+        loadHeader();
         return super.getParameterList();
     }
 
     @Override
     public boolean isStaticallyImportable() {
-        load();
+        loadHeader();
         return super.isStaticallyImportable();
     }
 
     @Override
     public Parameter getParameter(String name) {
-        load();
+        loadHeader();
         return super.getParameter(name);
     }
 
@@ -153,7 +195,7 @@ public class LazyClass extends Class implements LazyContainer {
     @Override
     public ProducedType getExtendedType() {
         if (superClass == null) {
-            load();
+            loadHeader();
             return super.getExtendedType();
         } else {
             return superClass.getExtendedType();
@@ -168,7 +210,7 @@ public class LazyClass extends Class implements LazyContainer {
     
     @Override
     public List<ParameterList> getParameterLists() {
-        load();
+        loadHeader();
         return super.getParameterLists();
     }
 
@@ -185,37 +227,37 @@ public class LazyClass extends Class implements LazyContainer {
 
     @Override
     public boolean isParameterized() {
-        load();
+        loadHeader();
         return super.isParameterized();
     }
 
     @Override
     public Class getExtendedTypeDeclaration() {
-        load();
+        loadHeader();
         return super.getExtendedTypeDeclaration();
     }
 
     @Override
     public List<TypeDeclaration> getSatisfiedTypeDeclarations() {
-        load();
+        loadHeader();
         return super.getSatisfiedTypeDeclarations();
     }
 
     @Override
     public List<ProducedType> getSatisfiedTypes() {
-        load();
+        loadHeader();
         return super.getSatisfiedTypes();
     }
 
     @Override
     public List<TypeDeclaration> getCaseTypeDeclarations() {
-        load();
+        loadHeader();
         return super.getCaseTypeDeclarations();
     }
 
     @Override
     public List<ProducedType> getCaseTypes() {
-        load();
+        loadHeader();
         return super.getCaseTypes();
     }
 
@@ -235,115 +277,115 @@ public class LazyClass extends Class implements LazyContainer {
 
     @Override
     public List<Declaration> getInheritedMembers(String name) {
-        load();
+        loadMember(name);
         return super.getInheritedMembers(name);
     }
 
     @Override
     public Declaration getRefinedMember(String name, List<ProducedType> signature) {
-        load();
+        loadMember(name);
         return super.getRefinedMember(name, signature);
     }
     
     @Override
     public Declaration getMember(String name, List<ProducedType> signature) {
-        load();
+        loadMember(name);
         return super.getMember(name, signature);
     }
 
     @Override
     public Declaration getMemberOrParameter(String name, List<ProducedType> signature) {
-        load();
+        loadMember(name);
         return super.getMemberOrParameter(name, signature);
     }
 
     @Override
     public boolean isAlias() {
-        load();
+        loadHeader();
         return super.isAlias();
     }
 
     @Override
     public ProducedType getSelfType() {
-        load();
+        loadHeader();
         return super.getSelfType();
     }
 
     @Override
     public Scope getVisibleScope() {
-        load();
+        loadHeader();
         return super.getVisibleScope();
     }
 
     @Override
     public List<Annotation> getAnnotations() {
-        load();
+        loadHeader();
         return super.getAnnotations();
     }
 
     @Override
     public String getQualifiedNameString() {
-        load();
+        loadHeader();
         return super.getQualifiedNameString();
     }
 
     @Override
     public boolean isActual() {
-        load();
+        loadHeader();
         return super.isActual();
     }
 
     @Override
     public boolean isFormal() {
-        load();
+        loadHeader();
         return super.isFormal();
     }
 
     @Override
     public boolean isDefault() {
-        load();
+        loadHeader();
         return super.isDefault();
     }
 
     @Override
     public boolean isVisible(Scope scope) {
-        load();
+        loadHeader();
         return super.isVisible(scope);
     }
 
     @Override
     public boolean isDefinedInScope(Scope scope) {
-        load();
+        loadHeader();
         return super.isDefinedInScope(scope);
     }
 
     @Override
     public boolean isCaptured() {
-        load();
+        loadHeader();
         return super.isCaptured();
     }
 
     @Override
     public boolean isToplevel() {
-        load();
+        loadHeader();
         return super.isToplevel();
     }
 
     @Override
     public boolean isClassMember() {
-        load();
+        loadHeader();
         return super.isClassMember();
     }
 
     @Override
     public boolean isInterfaceMember() {
-        load();
+        loadHeader();
         return super.isInterfaceMember();
     }
 
     @Override
     public boolean isClassOrInterfaceMember() {
-        load();
+        loadHeader();
         return super.isClassOrInterfaceMember();
     }
 
@@ -360,19 +402,25 @@ public class LazyClass extends Class implements LazyContainer {
 
     @Override
     public Declaration getDirectMemberOrParameter(String name, List<ProducedType> signature) {
-        load();
+        loadMember(name);
         return super.getDirectMemberOrParameter(name, signature);
     }
 
     @Override
     public Declaration getDirectMember(String name, List<ProducedType> signature) {
-        load();
-        return super.getDirectMember(name, signature);
+        // don't call super, it would load every member
+        if(isComplete)
+            return lookupMember(super.getMembers(), name, signature, false);
+        // other threads may be adding members to the list until we're complete
+        synchronized(completer){
+            loadMember(name);
+            return lookupMember(super.getMembers(), name, signature, false);
+        }
     }
 
     @Override
     public Declaration getMemberOrParameter(Unit unit, String name, List<ProducedType> signature) {
-        load();
+        loadMember(name);
         return super.getMemberOrParameter(unit, name, signature);
     }
 
@@ -52,6 +52,8 @@ public class LazyMethod extends Method implements LazyElement {
     private ModelCompleter completer;
     private String realName;
     private boolean isLoaded = false;
+    // only set once completion is over, lets other threads skip the model loader lock
+    private volatile boolean isComplete = false;
     
     public LazyMethod(ClassMirror classMirror, ModelCompleter completer) {
         this.classMirror = classMirror;
@@ -65,9 +67,14 @@ public class LazyMethod extends Method implements LazyElement {
     }
     
     private void load() {
-        if(!isLoaded){
-            isLoaded = true;
-            completer.complete(this);
+        if(isComplete)
+            return;
+        synchronized(completer){
+            if(!isLoaded){
+                isLoaded = true;
+                completer.complete(this);
+                isComplete = true;
+            }
         }
     }
     
@@ -30,7 +30,7 @@ import java.util.zip.ZipFile;
 import com.redhat.ceylon.cmr.api.ArtifactResult;
 import com.redhat.ceylon.compiler.java.util.Util;
 import com.redhat.ceylon.compiler.loader.AbstractModelLoader;
-import com.redhat.ceylon.compiler.loader.JDKPackageList;
+import com.redhat.ceylon.compiler.loader.JDKIndex;
 import com.redhat.ceylon.compiler.typechecker.model.Module;
 import com.redhat.ceylon.compiler.typechecker.model.ModuleImport;
 import com.redhat.ceylon.compiler.typechecker.model.Package;
@@ -142,6 +142,13 @@ public abstract class LazyModule extends Module {
         }
     }
 
+    /**
+     * Forgets the packages we found in our jar, for when we get unloaded.
+     */
+    public void clearPackageList() {
+        jarPackages.clear();
+    }
+
     public boolean containsPackage(String pkgName){
         String moduleName = getNameAsString();
         if(!isJava){
@@ -151,9 +158,9 @@ public abstract class LazyModule extends Module {
         }else{
             // special rules for the JDK which we don't load from the repo
             if(moduleName.equals(AbstractModelLoader.JDK_MODULE))
-                return JDKPackageList.isJDKPackage(pkgName);
+                return JDKIndex.getInstance().isJDKPackage(pkgName);
             if(moduleName.equals(AbstractModelLoader.ORACLE_JDK_MODULE))
-                return JDKPackageList.isOracleJDKPackage(pkgName);
+                return JDKIndex.getInstance().isOracleJDKPackage(pkgName);
             // otherwise we have the list of packages contained in that module jar
             return jarPackages.contains(pkgName);
         }
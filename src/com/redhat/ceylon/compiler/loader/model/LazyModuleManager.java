@@ -26,6 +26,7 @@ import java.util.List;
 
 import com.redhat.ceylon.cmr.api.ArtifactResult;
 import com.redhat.ceylon.compiler.loader.AbstractModelLoader;
+import com.redhat.ceylon.compiler.loader.ModelLoader;
 import com.redhat.ceylon.compiler.typechecker.analyzer.ModuleManager;
 import com.redhat.ceylon.compiler.typechecker.context.Context;
 import com.redhat.ceylon.compiler.typechecker.context.PhasedUnits;
@@ -69,6 +70,30 @@ public abstract class LazyModuleManager extends ModuleManager {
         }
     }
 
+    /**
+     * Unloads the given module and releases everything we loaded from it.
+     * See {@link ModelLoader#unloadModule(Module)}.
+     */
+    public void unloadModule(Module module){
+        getModelLoader().unloadModule(module);
+    }
+
+    /**
+     * Unloads the given module and loads it again from the given artifact, which is typically
+     * a new build of the same module version. The module keeps its identity so that the modules
+     * which import it keep working, but everything else, including its own imports, comes from
+     * the new artifact.
+     */
+    public void reloadModule(Module module, ArtifactResult artifact){
+        getModelLoader().unloadModule(module);
+        module.getImports().clear();
+        ((LazyModule)module).setJava(false);
+        getContext().getModules().getListOfModules().add(module);
+        resolveModule(artifact, module, null, new LinkedList<Module>(), new LinkedList<PhasedUnits>());
+        module.setAvailable(true);
+        addImplicitImports();
+    }
+
     @Override
     protected abstract Module createModule(List<String> moduleName);
     
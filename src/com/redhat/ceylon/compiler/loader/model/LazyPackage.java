@@ -68,6 +68,13 @@ public class LazyPackage extends Package {
     // FIXME: redo this method better: https://github.com/ceylon/ceylon-spec/issues/90
     @Override
     public Declaration getDirectMember(String name, List<ProducedType> signature) {
+        // lazy loading adds to compiledDeclarations under the model loader lock
+        synchronized(modelLoader){
+            return getDirectMemberLocked(name, signature);
+        }
+    }
+
+    private Declaration getDirectMemberLocked(String name, List<ProducedType> signature) {
         String pkgName = getQualifiedNameString();
 
         // we need its package ready first
@@ -126,13 +133,15 @@ public class LazyPackage extends Package {
     // FIXME: redo this method better: https://github.com/ceylon/ceylon-spec/issues/90
     @Override
     public List<Declaration> getMembers() {
-        // make sure the package is loaded
-        modelLoader.loadPackage(getQualifiedNameString(), true);
-        List<Declaration> sourceDeclarations = super.getMembers();
-        LinkedList<Declaration> ret = new LinkedList<Declaration>();
-        ret.addAll(sourceDeclarations);
-        ret.addAll(compiledDeclarations);
-        return ret;
+        synchronized(modelLoader){
+            // make sure the package is loaded
+            modelLoader.loadPackage(getQualifiedNameString(), true);
+            List<Declaration> sourceDeclarations = super.getMembers();
+            LinkedList<Declaration> ret = new LinkedList<Declaration>();
+            ret.addAll(sourceDeclarations);
+            ret.addAll(compiledDeclarations);
+            return ret;
+        }
     }
 
     public void addMember(Declaration d) {
@@ -150,7 +159,9 @@ public class LazyPackage extends Package {
         for (Unit unit : sourceUnits) {
             ret.add(unit);
         }
-        ret.addAll(lazyUnits);
+        synchronized(modelLoader){
+            ret.addAll(lazyUnits);
+        }
         return ret;
     }
 
@@ -50,6 +50,8 @@ public class LazyValue extends Value implements LazyElement {
     private ModelCompleter completer;
     private String realName;
     private boolean isLoaded = false;
+    // only set once completion is over, lets other threads skip the model loader lock
+    private volatile boolean isComplete = false;
 
     public LazyValue(ClassMirror classMirror, ModelCompleter completer) {
         this.classMirror = classMirror;
@@ -63,9 +65,14 @@ public class LazyValue extends Value implements LazyElement {
     }
 
     private void load() {
-        if(!isLoaded){
-            isLoaded = true;
-            completer.complete(this);
+        if(isComplete)
+            return;
+        synchronized(completer){
+            if(!isLoaded){
+                isLoaded = true;
+                completer.complete(this);
+                isComplete = true;
+            }
         }
     }
     
@@ -0,0 +1,69 @@
+/*
+ * Copyright Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the authors tag. All rights reserved.
+ *
+ * This copyrighted material is made available to anyone wishing to use,
+ * modify, copy, or redistribute it subject to the terms and conditions
+ * of the GNU General Public License version 2.
+ * 
+ * This particular file is subject to the "Classpath" exception as provided in the 
+ * LICENSE file that accompanied this code.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT A
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE.  See the GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License,
+ * along with this distribution; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA  02110-1301, USA.
+ */
+package com.redhat.ceylon.compiler.java.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import com.redhat.ceylon.compiler.java.tools.CeyloncTaskImpl;
+
+/**
+ * Measures a whole compilation of a corpus, from parsing to writing its module
+ * car. Run it with {@code -prof com.redhat.ceylon.compiler.java.benchmark.PhaseProfiler}
+ * to see how much of it each phase takes.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class CompileBenchmark {
+
+    @Param({Corpus.RUNTIME, Corpus.SAMPLES})
+    public String corpusName;
+
+    private Corpus corpus;
+    private CeyloncTaskImpl task;
+
+    @Setup(Level.Trial)
+    public void setupCorpus() {
+        corpus = new Corpus(corpusName);
+    }
+
+    @Setup(Level.Invocation)
+    public void setupTask() {
+        task = corpus.newTask();
+    }
+
+    @Benchmark
+    public Boolean compile() {
+        Boolean success = task.call();
+        if(!success)
+            throw new IllegalStateException("Compilation of "+corpusName+" failed");
+        return success;
+    }
+}
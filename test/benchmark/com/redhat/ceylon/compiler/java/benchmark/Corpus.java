@@ -0,0 +1,98 @@
+/*
+ * Copyright Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the authors tag. All rights reserved.
+ *
+ * This copyrighted material is made available to anyone wishing to use,
+ * modify, copy, or redistribute it subject to the terms and conditions
+ * of the GNU General Public License version 2.
+ * 
+ * This particular file is subject to the "Classpath" exception as provided in the 
+ * LICENSE file that accompanied this code.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT A
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE.  See the GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License,
+ * along with this distribution; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA  02110-1301, USA.
+ */
+package com.redhat.ceylon.compiler.java.benchmark;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import javax.tools.JavaFileObject;
+
+import com.redhat.ceylon.compiler.java.tools.CeyloncFileManager;
+import com.redhat.ceylon.compiler.java.tools.CeyloncTaskImpl;
+import com.redhat.ceylon.compiler.java.tools.CeyloncTool;
+import com.sun.tools.javac.file.ZipFileIndexCache;
+
+/**
+ * The fixed sets of Ceylon sources the benchmarks compile, and how to get a fresh
+ * compiler task for them. Paths are relative to the root of the compiler project,
+ * which is where the {@code benchmark} Ant target runs them from.
+ */
+public class Corpus {
+
+    /** The runtime tests, a single module of 16 units. */
+    public static final String RUNTIME = "runtime";
+    /** The hello world sample module. */
+    public static final String SAMPLES = "samples";
+
+    static final String OUTPUT = "build/benchmark-cars";
+
+    private final File sourceDir;
+    private final List<File> sourceFiles;
+
+    public Corpus(String name) {
+        if(RUNTIME.equals(name))
+            sourceDir = new File("test/runtime");
+        else if(SAMPLES.equals(name))
+            sourceDir = new File("samples/helloworld/source");
+        else
+            sourceDir = new File(name);
+        sourceFiles = new ArrayList<File>();
+        collectSourceFiles(sourceDir, sourceFiles);
+        if(sourceFiles.isEmpty())
+            throw new IllegalArgumentException("No Ceylon source in "+sourceDir.getAbsolutePath());
+        // always compile them in the same order
+        Collections.sort(sourceFiles);
+    }
+
+    private static void collectSourceFiles(File dir, List<File> files) {
+        File[] children = dir.listFiles();
+        if(children == null)
+            return;
+        for(File child : children){
+            if(child.isDirectory())
+                collectSourceFiles(child, files);
+            else if(child.getName().endsWith(".ceylon"))
+                files.add(child);
+        }
+    }
+
+    public List<File> getSourceFiles() {
+        return sourceFiles;
+    }
+
+    /**
+     * Returns a new compiler task for the whole corpus, since tasks can only run once.
+     */
+    public CeyloncTaskImpl newTask(String... extraOptions) {
+        // do not let the jars of the previous run leak into this one
+        ZipFileIndexCache.getSharedInstance().clearCache();
+        CeyloncTool compiler = new CeyloncTool();
+        CeyloncFileManager fileManager = (CeyloncFileManager)compiler.getStandardFileManager(null, null, null);
+        new File(OUTPUT).mkdirs();
+        List<String> options = new ArrayList<String>();
+        options.addAll(Arrays.asList("-src", sourceDir.getPath(), "-out", OUTPUT, "-rep", OUTPUT));
+        options.addAll(Arrays.asList(extraOptions));
+        Iterable<? extends JavaFileObject> fileObjects = fileManager.getJavaFileObjectsFromFiles(sourceFiles);
+        return (CeyloncTaskImpl) compiler.getTask(null, fileManager, null, options, null, fileObjects);
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the authors tag. All rights reserved.
+ *
+ * This copyrighted material is made available to anyone wishing to use,
+ * modify, copy, or redistribute it subject to the terms and conditions
+ * of the GNU General Public License version 2.
+ * 
+ * This particular file is subject to the "Classpath" exception as provided in the 
+ * LICENSE file that accompanied this code.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT A
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE.  See the GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License,
+ * along with this distribution; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA  02110-1301, USA.
+ */
+package com.redhat.ceylon.compiler.java.benchmark;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import com.redhat.ceylon.compiler.java.codegen.CeylonCompilationUnit;
+import com.redhat.ceylon.compiler.java.codegen.CeylonTransformer;
+import com.redhat.ceylon.compiler.java.loader.CeylonEnter;
+import com.redhat.ceylon.compiler.java.tools.CeylonPhasedUnit;
+import com.redhat.ceylon.compiler.java.tools.CeyloncTaskImpl;
+import com.sun.tools.javac.tree.JCTree.JCCompilationUnit;
+import com.sun.tools.javac.util.List;
+
+/**
+ * Measures lowering every type-checked unit of a corpus to javac trees, which is
+ * where the {@code ExpressionTransformer} and its friends spend their time.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class LoweringBenchmark {
+
+    @Param({Corpus.RUNTIME, Corpus.SAMPLES})
+    public String corpusName;
+
+    private Corpus corpus;
+    private CeylonTransformer gen;
+    private List<JCCompilationUnit> trees;
+
+    @Setup(Level.Trial)
+    public void setupCorpus() {
+        corpus = new Corpus(corpusName);
+    }
+
+    @Setup(Level.Invocation)
+    public void setupTask() throws IOException {
+        CeyloncTaskImpl task = corpus.newTask();
+        trees = TypeCheckBenchmark.parse(task);
+        CeylonEnter enter = CeylonEnter.instance(task.getContext());
+        enter.prepareForTypeChecking(trees);
+        enter.typeCheck();
+        gen = CeylonTransformer.getInstance(task.getContext());
+    }
+
+    @Benchmark
+    public Object transform() {
+        for(JCCompilationUnit tree : trees){
+            if(tree instanceof CeylonCompilationUnit){
+                CeylonCompilationUnit ceylonTree = (CeylonCompilationUnit) tree;
+                gen.setMap(ceylonTree.lineMap);
+                gen.setFileObject(((CeylonPhasedUnit)ceylonTree.phasedUnit).getFileObject());
+                ceylonTree.defs = gen.transformAfterTypeChecking(ceylonTree.ceylonTree).toList();
+            }
+        }
+        return trees;
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the authors tag. All rights reserved.
+ *
+ * This copyrighted material is made available to anyone wishing to use,
+ * modify, copy, or redistribute it subject to the terms and conditions
+ * of the GNU General Public License version 2.
+ * 
+ * This particular file is subject to the "Classpath" exception as provided in the 
+ * LICENSE file that accompanied this code.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT A
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE.  See the GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License,
+ * along with this distribution; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA  02110-1301, USA.
+ */
+package com.redhat.ceylon.compiler.java.benchmark;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import com.redhat.ceylon.compiler.java.loader.CeylonEnter;
+import com.redhat.ceylon.compiler.java.tools.CeyloncTaskImpl;
+import com.redhat.ceylon.compiler.java.tools.LanguageCompiler;
+import com.redhat.ceylon.compiler.typechecker.model.Declaration;
+import com.redhat.ceylon.compiler.typechecker.model.Functional;
+import com.redhat.ceylon.compiler.typechecker.model.Module;
+import com.redhat.ceylon.compiler.typechecker.model.Package;
+import com.redhat.ceylon.compiler.typechecker.model.Parameter;
+import com.redhat.ceylon.compiler.typechecker.model.ParameterList;
+import com.redhat.ceylon.compiler.typechecker.model.TypeDeclaration;
+import com.redhat.ceylon.compiler.typechecker.model.TypedDeclaration;
+import com.sun.tools.javac.tree.JCTree.JCCompilationUnit;
+import com.sun.tools.javac.util.Context;
+import com.sun.tools.javac.util.List;
+
+/**
+ * Measures the model loader loading {@code ceylon.language} from its car and
+ * completing every one of its declarations, which is what a compilation that
+ * touches most of the language module pays for.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class ModelLoaderBenchmark {
+
+    private Context context;
+    private List<JCCompilationUnit> trees;
+
+    @Setup(Level.Invocation)
+    public void setupTask() throws IOException {
+        // the smallest corpus, we only need a compiler set up to load modules
+        CeyloncTaskImpl task = new Corpus(Corpus.SAMPLES).newTask();
+        trees = TypeCheckBenchmark.parse(task);
+        context = task.getContext();
+    }
+
+    @Benchmark
+    public int completeLanguageModule() {
+        CeylonEnter.instance(context).prepareForTypeChecking(trees);
+        Module languageModule = LanguageCompiler.getCeylonContextInstance(context).getModules().getLanguageModule();
+        int completed = 0;
+        for(Package pkg : languageModule.getPackages()){
+            for(Declaration decl : pkg.getMembers())
+                completed += complete(decl);
+        }
+        return completed;
+    }
+
+    private int complete(Declaration decl) {
+        int completed = 1;
+        if(decl instanceof TypedDeclaration)
+            ((TypedDeclaration) decl).getType();
+        if(decl instanceof Functional){
+            for(ParameterList parameterList : ((Functional) decl).getParameterLists()){
+                for(Parameter param : parameterList.getParameters())
+                    param.getType();
+            }
+        }
+        if(decl instanceof TypeDeclaration){
+            TypeDeclaration typeDecl = (TypeDeclaration) decl;
+            typeDecl.getExtendedType();
+            typeDecl.getSatisfiedTypes();
+            for(Declaration member : typeDecl.getMembers())
+                completed += complete(member);
+        }
+        return completed;
+    }
+}
@@ -0,0 +1,67 @@
+/*
+ * Copyright Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the authors tag. All rights reserved.
+ *
+ * This copyrighted material is made available to anyone wishing to use,
+ * modify, copy, or redistribute it subject to the terms and conditions
+ * of the GNU General Public License version 2.
+ * 
+ * This particular file is subject to the "Classpath" exception as provided in the 
+ * LICENSE file that accompanied this code.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT A
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE.  See the GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License,
+ * along with this distribution; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA  02110-1301, USA.
+ */
+package com.redhat.ceylon.compiler.java.benchmark;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+import org.openjdk.jmh.infra.BenchmarkParams;
+import org.openjdk.jmh.infra.IterationParams;
+import org.openjdk.jmh.profile.InternalProfiler;
+import org.openjdk.jmh.results.AggregationPolicy;
+import org.openjdk.jmh.results.IterationResult;
+import org.openjdk.jmh.results.Result;
+import org.openjdk.jmh.results.ScalarResult;
+
+import com.redhat.ceylon.compiler.java.util.Timer;
+
+/**
+ * Reports the time every compiler phase took per benchmark operation, as
+ * recorded by {@link Timer}. Use it with
+ * {@code -prof com.redhat.ceylon.compiler.java.benchmark.PhaseProfiler}.
+ */
+public class PhaseProfiler implements InternalProfiler {
+
+    @Override
+    public String getDescription() {
+        return "Time spent in each Ceylon compiler phase";
+    }
+
+    @Override
+    public void beforeIteration(BenchmarkParams benchmarkParams, IterationParams iterationParams) {
+        Timer.setAlwaysRecord(true);
+        Timer.resetPhaseTimes();
+    }
+
+    @Override
+    public Collection<? extends Result> afterIteration(BenchmarkParams benchmarkParams, IterationParams iterationParams,
+            IterationResult result) {
+        Timer.setAlwaysRecord(false);
+        long ops = Math.max(1, result.getMetadata().getAllOps());
+        List<Result> ret = new ArrayList<Result>();
+        for(Map.Entry<String, Long> entry : Timer.getPhaseTimes().entrySet()){
+            double millis = entry.getValue() / 1000000.0 / ops;
+            ret.add(new ScalarResult("phase:"+entry.getKey(), millis, "ms/op", AggregationPolicy.AVG));
+        }
+        return ret;
+    }
+}
@@ -305,7 +305,7 @@ public abstract class CompilerTest {
         Assert.assertEquals("Source code differs", expectedSrc, compiledSrc);
     }
 
-    private String readFile(File file) {
+    protected String readFile(File file) {
         try{
             Reader reader = new FileReader(file);
             StringBuilder strbuf = new StringBuilder();
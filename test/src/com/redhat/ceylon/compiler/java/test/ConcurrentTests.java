@@ -47,6 +47,7 @@ import com.redhat.ceylon.compiler.java.test.statement.StatementTest;
 import com.redhat.ceylon.compiler.java.test.structure.StructureTest;
 import com.redhat.ceylon.compiler.java.test.structure.StructureTest2;
 import com.redhat.ceylon.compiler.java.test.structure.StructureTest3;
+import com.redhat.ceylon.compiler.loader.impl.reflect.ModulesClassLoaderTest;
 import com.redhat.ceylon.tools.test.CompilerToolsTests;
 
 @RunWith(ConcurrentSuite.class) 
@@ -66,6 +67,7 @@ import com.redhat.ceylon.tools.test.CompilerToolsTests;
     IssuesTest.class,
     MiscTest.class,
     ModelLoaderTest.class,
+    ModulesClassLoaderTest.class,
     PackageIssuesTest.class,
     RecoveryTest.class,
     StatementTest.class,
@@ -61,6 +61,8 @@ import com.redhat.ceylon.compiler.java.test.CompilerError;
 import com.redhat.ceylon.compiler.java.test.CompilerTest;
 import com.redhat.ceylon.compiler.java.test.ErrorCollector;
 import com.redhat.ceylon.compiler.java.tools.CeyloncTaskImpl;
+import com.redhat.ceylon.compiler.java.tools.DependencyGraph;
+import com.redhat.ceylon.compiler.java.tools.DependencyGraph.UnitDependencies;
 import com.redhat.ceylon.compiler.java.util.Util;
 
 public class CMRTest extends CompilerTest {
@@ -327,6 +329,48 @@ public class CMRTest extends CompilerTest {
         assertTrue(carFile.exists());
     }
 
+    @Test
+    public void testMdlModelIndex(){
+        File indexDir = new File("build/model-index");
+        cleanCars(indexDir.getPath());
+        compile("modules/depend/a/module.ceylon", "modules/depend/a/package.ceylon", "modules/depend/a/A.ceylon");
+        
+        List<String> options = new LinkedList<String>();
+        options.addAll(defaultOptions);
+        options.add("-Xceylonmodelindex");
+        options.add(indexDir.getPath());
+        // the first compilation indexes the classes it loads from the car of the first module
+        Boolean success = getCompilerTask(options, 
+                "modules/depend/b/module.ceylon", "modules/depend/b/a.ceylon", "modules/depend/b/aWildcard.ceylon").call();
+        assertTrue(success);
+        File[] indexes = indexDir.listFiles();
+        assertNotNull(indexes);
+        assertTrue(indexes.length > 0);
+
+        // and the second one loads them from the index
+        success = getCompilerTask(options, 
+                "modules/depend/b/module.ceylon", "modules/depend/b/a.ceylon", "modules/depend/b/aWildcard.ceylon").call();
+        assertTrue(success);
+        File carFile = getModuleArchive("com.redhat.ceylon.compiler.java.test.cmr.modules.depend.b", "6.6.6");
+        assertTrue(carFile.exists());
+    }
+
+    @Test
+    public void testMdlLanguageSnapshot(){
+        File snapshot = new File("build/language-snapshot/ceylon.language.idx");
+        snapshot.delete();
+
+        List<String> options = new LinkedList<String>();
+        options.addAll(defaultOptions);
+        options.add("-Xceylonlanguagesnapshot");
+        options.add(snapshot.getPath());
+        Boolean success = getCompilerTask(options,
+                "modules/depend/a/module.ceylon", "modules/depend/a/package.ceylon", "modules/depend/a/A.ceylon").call();
+        assertTrue(success);
+        assertTrue(snapshot.exists());
+        assertTrue(snapshot.length() > 0);
+    }
+
     @Test
     public void testMdlImplicitDependentModule(){
         // Compile only the first module 
@@ -403,6 +447,181 @@ public class CMRTest extends CompilerTest {
         sourceFile.delete();
     }
 
+    @Test
+    public void testMdlDependencyGraph() throws IOException{
+        File sourceFile = new File(path, "modules/single/SuppressClass.ceylon");
+        String unitPath = "com/redhat/ceylon/compiler/java/test/cmr/modules/single/SuppressClass.ceylon";
+
+        copy(new File(path, "modules/single/SuppressClass_1.ceylon"), sourceFile);
+        CeyloncTaskImpl compilerTask = getCompilerTask("modules/single/module.ceylon", "modules/single/SuppressClass.ceylon");
+        Boolean success = compilerTask.call();
+        assertTrue(success);
+
+        File carFile = getModuleArchive("com.redhat.ceylon.compiler.java.test.cmr.modules.single", "6.6.6");
+        assertTrue(carFile.exists());
+        ZipFile car = new ZipFile(carFile);
+        ZipEntry dependencies = car.getEntry(DependencyGraph.DEPENDENCIES_FILE);
+        assertNotNull(dependencies);
+        DependencyGraph graph = DependencyGraph.read(car.getInputStream(dependencies));
+        car.close();
+        UnitDependencies unit = graph.getUnit(unitPath);
+        assertNotNull(unit);
+        assertTrue(unit.getExports().containsKey("com.redhat.ceylon.compiler.java.test.cmr.modules.single.One"));
+        assertTrue(unit.getExports().containsKey("com.redhat.ceylon.compiler.java.test.cmr.modules.single.Two"));
+
+        // the unit did not change, so it must be skipped and its classes kept
+        List<String> options = new LinkedList<String>();
+        options.addAll(defaultOptions);
+        options.add("-incremental");
+        compilerTask = getCompilerTask(options,
+                "modules/single/module.ceylon", "modules/single/SuppressClass.ceylon");
+        success = compilerTask.call();
+        assertTrue(success);
+
+        car = new ZipFile(carFile);
+        assertNotNull(car.getEntry("com/redhat/ceylon/compiler/java/test/cmr/modules/single/One.class"));
+        assertNotNull(car.getEntry("com/redhat/ceylon/compiler/java/test/cmr/modules/single/Two.class"));
+        graph = DependencyGraph.read(car.getInputStream(car.getEntry(DependencyGraph.DEPENDENCIES_FILE)));
+        car.close();
+        assertTrue(graph.isUpToDate(unitPath, unit.getSha1()));
+
+        sourceFile.delete();
+    }
+
+    private List<String> incrementalOptions(){
+        List<String> options = new LinkedList<String>();
+        options.addAll(defaultOptions);
+        options.add("-incremental");
+        return options;
+    }
+
+    private DependencyGraph getIncrementalDependencyGraph() throws IOException{
+        File carFile = getModuleArchive("com.redhat.ceylon.compiler.java.test.cmr.modules.incremental", "6.6.6");
+        assertTrue(carFile.exists());
+        ZipFile car = new ZipFile(carFile);
+        try{
+            return DependencyGraph.read(car.getInputStream(car.getEntry(DependencyGraph.DEPENDENCIES_FILE)));
+        }finally{
+            car.close();
+        }
+    }
+
+    @Test
+    public void testMdlIncrementalApiChange() throws IOException{
+        File sourceFile = new File(path, "modules/incremental/Api.ceylon");
+        String userPath = "com/redhat/ceylon/compiler/java/test/cmr/modules/incremental/User.ceylon";
+        String[] sources = {"modules/incremental/module.ceylon", "modules/incremental/Api.ceylon", "modules/incremental/User.ceylon"};
+        try{
+            copy(new File(path, "modules/incremental/Api_1.ceylon"), sourceFile);
+            assertTrue(getCompilerTask(incrementalOptions(), sources).call());
+            assertTrue(getIncrementalDependencyGraph().getUnit(userPath).getUses()
+                    .contains("com.redhat.ceylon.compiler.java.test.cmr.modules.incremental.api"));
+
+            // api now returns a String: User is skipped at first, then recompiled in a second round
+            copy(new File(path, "modules/incremental/Api_3.ceylon"), sourceFile);
+            CeyloncTaskImpl compilerTask = getCompilerTask(incrementalOptions(), sources);
+            assertTrue(compilerTask.call());
+            assertEquals(2, compilerTask.getRounds());
+            DependencyGraph graph = getIncrementalDependencyGraph();
+            UnitDependencies user = graph.getUnit(userPath);
+            assertTrue(graph.isUpToDate(userPath, user.getSha1()));
+            // a stale User would still call the Integer version of api
+            run("com.redhat.ceylon.compiler.java.test.cmr.modules.incremental.user",
+                    getModuleArchive("com.redhat.ceylon.compiler.java.test.cmr.modules.incremental", "6.6.6"));
+        }finally{
+            sourceFile.delete();
+        }
+    }
+
+    @Test
+    public void testMdlIncrementalNonApiChange() throws IOException{
+        File sourceFile = new File(path, "modules/incremental/Api.ceylon");
+        String userPath = "com/redhat/ceylon/compiler/java/test/cmr/modules/incremental/User.ceylon";
+        String[] sources = {"modules/incremental/module.ceylon", "modules/incremental/Api.ceylon", "modules/incremental/User.ceylon"};
+        try{
+            copy(new File(path, "modules/incremental/Api_1.ceylon"), sourceFile);
+            assertTrue(getCompilerTask(incrementalOptions(), sources).call());
+            String apiHash = getIncrementalDependencyGraph().getUnit(userPath.replace("User", "Api")).getExports()
+                    .get("com.redhat.ceylon.compiler.java.test.cmr.modules.incremental.api");
+            assertNotNull(apiHash);
+
+            // only the body of api changed: nothing depending on it gets recompiled
+            copy(new File(path, "modules/incremental/Api_2.ceylon"), sourceFile);
+            CeyloncTaskImpl compilerTask = getCompilerTask(incrementalOptions(), sources);
+            assertTrue(compilerTask.call());
+            assertEquals(1, compilerTask.getRounds());
+            DependencyGraph graph = getIncrementalDependencyGraph();
+            assertEquals(apiHash, graph.getUnit(userPath.replace("User", "Api")).getExports()
+                    .get("com.redhat.ceylon.compiler.java.test.cmr.modules.incremental.api"));
+            UnitDependencies user = graph.getUnit(userPath);
+            assertTrue(graph.isUpToDate(userPath, user.getSha1()));
+
+            File carFile = getModuleArchive("com.redhat.ceylon.compiler.java.test.cmr.modules.incremental", "6.6.6");
+            ZipFile car = new ZipFile(carFile);
+            assertNotNull(car.getEntry("com/redhat/ceylon/compiler/java/test/cmr/modules/incremental/user_.class"));
+            car.close();
+        }finally{
+            sourceFile.delete();
+        }
+    }
+
+    @Test
+    public void testMdlIncrementalMixedSourceAndCar() throws IOException{
+        File apiFile = new File(path, "modules/incremental/Api.ceylon");
+        File callerFile = new File(path, "modules/incremental/Caller.ceylon");
+        String apiPath = "com/redhat/ceylon/compiler/java/test/cmr/modules/incremental/Api.ceylon";
+        String callerPath = "com/redhat/ceylon/compiler/java/test/cmr/modules/incremental/Caller.ceylon";
+        String[] sources = {"modules/incremental/module.ceylon", "modules/incremental/Api.ceylon", "modules/incremental/Caller.ceylon"};
+        try{
+            copy(new File(path, "modules/incremental/Api_1.ceylon"), apiFile);
+            copy(new File(path, "modules/incremental/Caller_1.ceylon"), callerFile);
+            assertTrue(getCompilerTask(incrementalOptions(), sources).call());
+            String apiSha1 = getIncrementalDependencyGraph().getUnit(apiPath).getSha1();
+
+            // Api is skipped, so the recompiled Caller must find api in the car
+            copy(new File(path, "modules/incremental/Caller_2.ceylon"), callerFile);
+            CeyloncTaskImpl compilerTask = getCompilerTask(incrementalOptions(), sources);
+            assertTrue(compilerTask.call());
+            assertEquals(1, compilerTask.getRounds());
+            DependencyGraph graph = getIncrementalDependencyGraph();
+            assertEquals(apiSha1, graph.getUnit(apiPath).getSha1());
+            assertTrue(graph.isUpToDate(apiPath, apiSha1));
+            UnitDependencies caller = graph.getUnit(callerPath);
+            assertTrue(graph.isUpToDate(callerPath, caller.getSha1()));
+            assertTrue(caller.getUses().contains("com.redhat.ceylon.compiler.java.test.cmr.modules.incremental.api"));
+
+            File carFile = getModuleArchive("com.redhat.ceylon.compiler.java.test.cmr.modules.incremental", "6.6.6");
+            ZipFile car = new ZipFile(carFile);
+            assertNotNull(car.getEntry("com/redhat/ceylon/compiler/java/test/cmr/modules/incremental/api_.class"));
+            car.close();
+            run("com.redhat.ceylon.compiler.java.test.cmr.modules.incremental.caller", carFile);
+        }finally{
+            apiFile.delete();
+            callerFile.delete();
+        }
+    }
+
+    @Test
+    public void testMdlIncrementalDeletedSource() throws IOException{
+        File sourceFile = new File(path, "modules/incremental/Gone.ceylon");
+        String gonePath = "com/redhat/ceylon/compiler/java/test/cmr/modules/incremental/Gone.ceylon";
+        try{
+            copy(new File(path, "modules/incremental/Gone_1.ceylon"), sourceFile);
+            assertTrue(getCompilerTask(incrementalOptions(), 
+                    "modules/incremental/module.ceylon", "modules/incremental/Gone.ceylon").call());
+            assertNotNull(getIncrementalDependencyGraph().getUnit(gonePath));
+        }finally{
+            sourceFile.delete();
+        }
+
+        // the classes and graph entry of a unit whose source is gone are dropped
+        assertTrue(getCompilerTask(incrementalOptions(), "modules/incremental/module.ceylon").call());
+        assertNull(getIncrementalDependencyGraph().getUnit(gonePath));
+        File carFile = getModuleArchive("com.redhat.ceylon.compiler.java.test.cmr.modules.incremental", "6.6.6");
+        ZipFile car = new ZipFile(carFile);
+        assertNull(car.getEntry("com/redhat/ceylon/compiler/java/test/cmr/modules/incremental/Gone.class"));
+        car.close();
+    }
     
     @Test
     public void testMdlMultipleRepos(){
@@ -225,6 +225,12 @@ public class ExpressionTest2 extends CompilerTest {
                 "invoke/CallableArgumentWithDefaulted");
     }
     
+    @Test
+    public void testCallableToplevelReference(){
+        compileAndRun("com.redhat.ceylon.compiler.java.test.expression.invoke.callableToplevelReference_main", 
+                "invoke/CallableToplevelReference.ceylon");
+    }
+    
     @Test
     public void testCallableArgumentNullary(){
         compareWithJavaSource("invoke/CallableArgumentNullary");
@@ -26,4 +26,9 @@ public class ExpressionTest3 extends CompilerTest {
         compareWithJavaSource("comprehensions/for_if_if");
     }
 
+    @Test
+    public void testComprehensionFused() {
+        compileAndRun("com.redhat.ceylon.compiler.java.test.expression.comprehensions.fused", "comprehensions/fused.ceylon");
+    }
+
 }
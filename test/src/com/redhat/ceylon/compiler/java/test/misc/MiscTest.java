@@ -19,22 +19,38 @@
  */
 package com.redhat.ceylon.compiler.java.test.misc;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.InputStream;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.nio.file.Files;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Enumeration;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
 
 import javax.tools.JavaFileObject;
 
 import junit.framework.Assert;
 
+import org.junit.Assume;
 import org.junit.Ignore;
 import org.junit.Test;
 
+import com.redhat.ceylon.compiler.java.launcher.CompilerClient;
+import com.redhat.ceylon.compiler.java.launcher.CompilerServer;
 import com.redhat.ceylon.compiler.java.test.CompilerTest;
 import com.redhat.ceylon.compiler.java.tools.CeyloncFileManager;
 import com.redhat.ceylon.compiler.java.tools.CeyloncTaskImpl;
 import com.redhat.ceylon.compiler.java.tools.CeyloncTool;
-import com.redhat.ceylon.compiler.loader.JDKPackageList;
+import com.redhat.ceylon.compiler.loader.JDKIndex;
+import com.redhat.ceylon.compiler.loader.ModelLoaderMetrics;
+import com.sun.source.util.TaskEvent;
+import com.sun.source.util.TaskListener;
 
 public class MiscTest extends CompilerTest {
 
@@ -65,11 +81,263 @@ public class MiscTest extends CompilerTest {
         compileAndRun("com.redhat.ceylon.compiler.java.test.misc.twoclasses.main", "twoclasses/One.ceylon", "twoclasses/Two.ceylon", "twoclasses/main.ceylon");
     }
 
+    @Test
+    public void testCompileTwoClassesSequentialParse() throws Exception{
+        compileTwoClassesSequentially();
+    }
+
+    @Test
+    public void testCompileTwoClassesParallelParse() throws Exception{
+        assertSameAsSequentialCompile("-Xceylonthreads", "4");
+    }
+
+    @Test
+    public void testCompileTwoClassesParallelTypeCheck() throws Exception{
+        assertSameAsSequentialCompile("-Xceylonparalleltypecheck", "-Xceylonthreads", "4");
+    }
+
+    @Test
+    public void testCompileTwoClassesParallelTransform() throws Exception{
+        assertSameAsSequentialCompile("-Xceylonparalleltransform", "-Xceylonthreads", "4");
+    }
+
+    @Test
+    public void testCompileTwoClassesParallelGen() throws Exception{
+        assertSameAsSequentialCompile("-Xceylonparallelgen", "-Xceylonthreads", "4");
+    }
+
+    /**
+     * The Java trees and class files we got from compiling the twoclasses units.
+     */
+    private static class CompilationOutput {
+        final Map<String,String> trees = new TreeMap<String,String>();
+        final Map<String,byte[]> classes = new TreeMap<String,byte[]>();
+    }
+
+    private CompilationOutput compileTwoClassesSequentially() throws Exception{
+        return compileTwoClasses("sequential", "-Xceylonthreads", "1");
+    }
+
+    /**
+     * Compiles the twoclasses units with the given options and checks that we get
+     * the very same Java trees and class files as a sequential compilation: the
+     * names we generate and the order of members must not depend on scheduling.
+     */
+    private void assertSameAsSequentialCompile(String... options) throws Exception{
+        CompilationOutput expected = compileTwoClassesSequentially();
+        CompilationOutput actual = compileTwoClasses("parallel", options);
+        Assert.assertEquals(expected.trees, actual.trees);
+        Assert.assertEquals(expected.classes.keySet(), actual.classes.keySet());
+        for(Map.Entry<String,byte[]> entry : expected.classes.entrySet()){
+            Assert.assertTrue("Class file differs: "+entry.getKey(), 
+                    Arrays.equals(entry.getValue(), actual.classes.get(entry.getKey())));
+        }
+    }
+
+    private CompilationOutput compileTwoClasses(String outDir, String... extraOptions) throws Exception{
+        String out = destDir + File.separator + outDir;
+        cleanCars(out);
+        java.util.List<String> options = new ArrayList<String>(Arrays.asList("-out", out, "-rep", destDir));
+        options.addAll(Arrays.asList(extraOptions));
+        // Temps makes the transformer allocate temporary names and aliases
+        CeyloncTaskImpl task = getCompilerTask(options, "twoclasses/One.ceylon", "twoclasses/Two.ceylon", "twoclasses/main.ceylon",
+                "twoclasses/Temps.ceylon");
+        final CompilationOutput output = new CompilationOutput();
+        task.setTaskListener(new TaskListener(){
+            @Override
+            public void started(TaskEvent e) {
+            }
+            @Override
+            public void finished(TaskEvent e) {
+                // the trees are emptied once the compilation is over, so print them now
+                if(e.getKind() == TaskEvent.Kind.ENTER){
+                    output.trees.put(e.getSourceFile().getName(), e.getCompilationUnit().toString());
+                }
+            }
+        });
+        Assert.assertTrue(task.call());
+        ZipFile car = new ZipFile(getModuleArchive("default", null, out));
+        try{
+            Enumeration<? extends ZipEntry> entries = car.entries();
+            while(entries.hasMoreElements()){
+                ZipEntry entry = entries.nextElement();
+                if(!entry.getName().endsWith(".class"))
+                    continue;
+                InputStream is = car.getInputStream(entry);
+                try{
+                    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                    byte[] buffer = new byte[4096];
+                    int read;
+                    while((read = is.read(buffer)) != -1)
+                        bytes.write(buffer, 0, read);
+                    output.classes.put(entry.getName(), bytes.toByteArray());
+                }finally{
+                    is.close();
+                }
+            }
+        }finally{
+            car.close();
+        }
+        Assert.assertFalse(output.trees.isEmpty());
+        Assert.assertFalse(output.classes.isEmpty());
+        return output;
+    }
+
+    @Test
+    public void testTimingReport() throws Exception{
+        File json = new File(destDir, "timing.json");
+        File csv = new File(destDir, "timing.csv");
+        json.delete();
+        csv.delete();
+        java.util.List<String> options = new ArrayList<String>(defaultOptions);
+        options.addAll(Arrays.asList("-Xceylontimingreport", json.getPath()));
+        Boolean success = getCompilerTask(options, "twoclasses/One.ceylon", "twoclasses/Two.ceylon", "twoclasses/main.ceylon").call();
+        Assert.assertTrue(success);
+        String report = readFile(json);
+        Assert.assertTrue(report.contains("\"spans\""));
+        Assert.assertTrue(report.contains("\"Ceylon type checking\""));
+        Assert.assertTrue(report.contains("twoclasses/One.ceylon"));
+        Assert.assertTrue(report.contains("\"output/bytes written\""));
+
+        options = new ArrayList<String>(defaultOptions);
+        options.addAll(Arrays.asList("-Xceylontimingreport", csv.getPath()));
+        success = getCompilerTask(options, "twoclasses/One.ceylon", "twoclasses/Two.ceylon", "twoclasses/main.ceylon").call();
+        Assert.assertTrue(success);
+        report = readFile(csv);
+        Assert.assertTrue(report.startsWith("kind,path,thread,start_ms,duration_ms,allocated_bytes,value\n"));
+        Assert.assertTrue(report.contains("\ncounter,output/files written,"));
+    }
+
+    @Test
+    public void testModelLoaderMetrics() throws Exception{
+        File json = new File(destDir, "loader-metrics.json");
+        json.delete();
+        java.util.List<String> options = new ArrayList<String>(defaultOptions);
+        options.addAll(Arrays.asList("-Xceylonloadermetrics", json.getPath()));
+        CeyloncTaskImpl task = getCompilerTask(options, "twoclasses/One.ceylon", "twoclasses/Two.ceylon", "twoclasses/main.ceylon");
+        Boolean success = task.call();
+        Assert.assertTrue(success);
+        ModelLoaderMetrics metrics = task.getModelLoaderMetrics();
+        Assert.assertTrue(metrics.getClassMirrorLookups() > 0);
+        Assert.assertEquals(metrics.getClassMirrorLookups(), metrics.getClassMirrorHits() + metrics.getClassMirrorMisses());
+        Assert.assertTrue(metrics.getDeclarationsCreated() >= metrics.getDeclarationsCompleted());
+        Assert.assertTrue(metrics.getModuleStats().containsKey("ceylon.language"));
+        String report = readFile(json);
+        Assert.assertTrue(report.contains("\"class_mirrors\""));
+        Assert.assertTrue(report.contains("\"ceylon.language\""));
+    }
+
     @Test
     public void testEqualsHashOverriding(){
         compareWithJavaSource("equalshashoverriding/EqualsHashOverriding");
     }
 
+    @Test
+    public void testCompilerServer() throws Exception{
+        final CompilerServer server = new CompilerServer(0, new File(destDir));
+        server.bind();
+        Thread thread = new Thread(){
+            public void run() {
+                try {
+                    server.serve();
+                } catch (Exception e) {
+                    e.printStackTrace();
+                }
+            }
+        };
+        thread.start();
+        try{
+            String[] args = {"-out", destDir, "-rep", destDir, "-src", getSourcePath(), 
+                    path + "helloworld/helloworld.ceylon"};
+            StringWriter output = new StringWriter();
+            String token = CompilerServer.readToken(new File(destDir), server.getPort());
+            Assert.assertEquals(server.getToken(), token);
+            CompilerClient client = new CompilerClient(server.getPort(), token, new PrintWriter(output));
+            // the second compilation must not see any state left over from the first one
+            Assert.assertEquals(output.toString(), 0, client.compile(args));
+            Assert.assertEquals(output.toString(), 0, client.compile(args));
+            Assert.assertEquals(2, server.getCompilations());
+            run("com.redhat.ceylon.compiler.java.test.misc.helloworld.helloworld");
+            client.shutdown();
+        }finally{
+            thread.join(10000);
+            server.close();
+        }
+        Assert.assertFalse(CompilerServer.getTokenFile(new File(destDir), server.getPort()).exists());
+    }
+
+    @Test
+    public void testCompilerServerDefaultsToClientDirectory() throws Exception{
+        // a project laid out with the default source and output directories
+        File cwd = new File(destDir, "client-cwd");
+        File pkgDir = new File(cwd, "source/com/redhat/ceylon/compiler/java/test/misc/helloworld");
+        pkgDir.mkdirs();
+        File source = new File(pkgDir, "helloworld.ceylon");
+        source.delete();
+        Files.copy(new File(path, "helloworld/helloworld.ceylon").toPath(), source.toPath());
+        File car = getModuleArchive("default", null, new File(cwd, "modules").getPath());
+        car.delete();
+
+        final CompilerServer server = new CompilerServer(0, new File(destDir));
+        server.bind();
+        Thread thread = new Thread(){
+            public void run() {
+                try {
+                    server.serve();
+                } catch (Exception e) {
+                    e.printStackTrace();
+                }
+            }
+        };
+        thread.start();
+        try{
+            // no -src nor -out: both must be resolved against the client's directory
+            String[] args = {"com.redhat.ceylon.compiler.java.test.misc.helloworld"};
+            StringWriter output = new StringWriter();
+            CompilerClient client = new CompilerClient(server.getPort(), server.getToken(), new PrintWriter(output), cwd);
+            Assert.assertEquals(output.toString(), 0, client.compile(args));
+            Assert.assertEquals(1, server.getCompilations());
+            Assert.assertTrue(car.getPath(), car.isFile());
+            client.shutdown();
+        }finally{
+            thread.join(10000);
+            server.close();
+        }
+    }
+
+    @Test
+    public void testCompilerServerRejectsInvalidToken() throws Exception{
+        final CompilerServer server = new CompilerServer(0, new File(destDir));
+        server.bind();
+        Thread thread = new Thread(){
+            public void run() {
+                try {
+                    server.serve();
+                } catch (Exception e) {
+                    e.printStackTrace();
+                }
+            }
+        };
+        thread.start();
+        try{
+            String[] args = {"-out", destDir, "-rep", destDir, "-src", getSourcePath(), 
+                    path + "helloworld/helloworld.ceylon"};
+            StringWriter output = new StringWriter();
+            CompilerClient intruder = new CompilerClient(server.getPort(), "not the token", new PrintWriter(output));
+            // EXIT_CMDERR
+            Assert.assertEquals(2, intruder.compile(args));
+            Assert.assertTrue(output.toString(), output.toString().contains("invalid compiler server token"));
+            // not even shutdown requests get through
+            intruder.shutdown();
+            Assert.assertEquals(0, server.getCompilations());
+            Assert.assertTrue(thread.isAlive());
+            new CompilerClient(server.getPort(), server.getToken(), new PrintWriter(output)).shutdown();
+        }finally{
+            thread.join(10000);
+            server.close();
+        }
+    }
+
     @Ignore("M2")
     @Test
     public void compileRuntime(){
@@ -128,24 +396,38 @@ public class MiscTest extends CompilerTest {
     
     @Test
     public void testJDKPackages(){
-        Assert.assertTrue(JDKPackageList.isJDKPackage("java.awt"));
-        Assert.assertTrue(JDKPackageList.isJDKPackage("java.lang"));
-        Assert.assertTrue(JDKPackageList.isJDKPackage("java.util"));
-        Assert.assertTrue(JDKPackageList.isJDKPackage("javax.swing"));
-        Assert.assertTrue(JDKPackageList.isJDKPackage("org.w3c.dom"));
-        Assert.assertTrue(JDKPackageList.isJDKPackage("org.xml.sax.helpers"));// last one
-        Assert.assertFalse(JDKPackageList.isJDKPackage("fr.epardaud"));
+        Assert.assertTrue(JDKIndex.getInstance().isJDKPackage("java.awt"));
+        Assert.assertTrue(JDKIndex.getInstance().isJDKPackage("java.lang"));
+        Assert.assertTrue(JDKIndex.getInstance().isJDKPackage("java.util"));
+        Assert.assertTrue(JDKIndex.getInstance().isJDKPackage("javax.swing"));
+        Assert.assertTrue(JDKIndex.getInstance().isJDKPackage("org.w3c.dom"));
+        Assert.assertTrue(JDKIndex.getInstance().isJDKPackage("org.xml.sax.helpers"));// last one
+        Assert.assertFalse(JDKIndex.getInstance().isJDKPackage("fr.epardaud"));
+    }
+
+    @Test
+    public void testJDKClasses(){
+        JDKIndex index = JDKIndex.getInstance();
+        Assert.assertTrue(index.isJDKPackage("java.util"));
+        // we only know the classes if we run on the JDK we were built with,
+        // report the test as skipped rather than passed otherwise
+        Assume.assumeTrue(index.hasClasses("java.util"));
+        Assert.assertTrue(index.containsClass("java.util", "Map"));
+        Assert.assertTrue(index.containsClass("java.util", "Map$Entry"));
+        Assert.assertFalse(index.containsClass("java.util", "NoSuchClass"));
+        Assert.assertTrue(index.getMemberCount("java.lang", "String") > 0);
+        Assert.assertTrue(index.getClassNames("java.util").contains("ArrayList"));
     }
 
     @Test
     public void testOracleJDKPackages(){
-        Assert.assertTrue(JDKPackageList.isOracleJDKPackage("com.oracle.net"));
-        Assert.assertTrue(JDKPackageList.isOracleJDKPackage("com.sun.awt"));
-        Assert.assertTrue(JDKPackageList.isOracleJDKPackage("com.sun.imageio.plugins.bmp"));
-        Assert.assertTrue(JDKPackageList.isOracleJDKPackage("com.sun.java.swing.plaf.gtk"));
-        Assert.assertTrue(JDKPackageList.isOracleJDKPackage("com.sun.nio.sctp"));
-        Assert.assertTrue(JDKPackageList.isOracleJDKPackage("sun.nio"));
-        Assert.assertTrue(JDKPackageList.isOracleJDKPackage("sunw.util"));// last one
-        Assert.assertFalse(JDKPackageList.isOracleJDKPackage("fr.epardaud"));
+        Assert.assertTrue(JDKIndex.getInstance().isOracleJDKPackage("com.oracle.net"));
+        Assert.assertTrue(JDKIndex.getInstance().isOracleJDKPackage("com.sun.awt"));
+        Assert.assertTrue(JDKIndex.getInstance().isOracleJDKPackage("com.sun.imageio.plugins.bmp"));
+        Assert.assertTrue(JDKIndex.getInstance().isOracleJDKPackage("com.sun.java.swing.plaf.gtk"));
+        Assert.assertTrue(JDKIndex.getInstance().isOracleJDKPackage("com.sun.nio.sctp"));
+        Assert.assertTrue(JDKIndex.getInstance().isOracleJDKPackage("sun.nio"));
+        Assert.assertTrue(JDKIndex.getInstance().isOracleJDKPackage("sunw.util"));// last one
+        Assert.assertFalse(JDKIndex.getInstance().isOracleJDKPackage("fr.epardaud"));
     }
 }
@@ -0,0 +1,45 @@
+/*
+ * Copyright Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the authors tag. All rights reserved.
+ *
+ * This copyrighted material is made available to anyone wishing to use,
+ * modify, copy, or redistribute it subject to the terms and conditions
+ * of the GNU General Public License version 2.
+ * 
+ * This particular file is subject to the "Classpath" exception as provided in the 
+ * LICENSE file that accompanied this code.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT A
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE.  See the GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License,
+ * along with this distribution; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA  02110-1301, USA.
+ */
+package com.redhat.ceylon.compiler.java.test.model;
+
+public class JavaMemberLoading {
+    public String hidden;
+    public String getHidden(){ return hidden; }
+
+    private long count;
+    public long getCount(){ return count; }
+    public void setCount(long count){ this.count = count; }
+
+    private String name;
+    public String getName(){ return name; }
+    public void setName(String name){ this.name = name; }
+
+    public void setOnly(String only){}
+
+    public void overloaded(long l){}
+    public void overloaded(String s){}
+
+    public long plain;
+
+    @Override
+    public int hashCode(){ return 1; }
+    @Override
+    public String toString(){ return "JavaMemberLoading"; }
+}
@@ -19,6 +19,10 @@
  */
 package com.redhat.ceylon.compiler.java.test.model;
 
+import java.beans.ConstructorProperties;
+import java.lang.annotation.Retention;
+import java.lang.reflect.Constructor;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -26,6 +30,11 @@ import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import junit.framework.Assert;
 
@@ -38,8 +47,19 @@ import com.redhat.ceylon.compiler.java.tools.CeyloncTaskImpl;
 import com.redhat.ceylon.compiler.java.tools.LanguageCompiler;
 import com.redhat.ceylon.compiler.java.util.Util;
 import com.redhat.ceylon.compiler.loader.AbstractModelLoader;
+import com.redhat.ceylon.compiler.loader.ClassMirrorCache;
+import com.redhat.ceylon.compiler.loader.ClassNameFilter;
 import com.redhat.ceylon.compiler.loader.ModelLoader;
 import com.redhat.ceylon.compiler.loader.ModelLoader.DeclarationType;
+import com.redhat.ceylon.compiler.loader.impl.reflect.mirror.ReflectionClass;
+import com.redhat.ceylon.compiler.loader.impl.reflect.mirror.ReflectionField;
+import com.redhat.ceylon.compiler.loader.impl.reflect.mirror.ReflectionMethod;
+import com.redhat.ceylon.compiler.loader.impl.reflect.mirror.ReflectionUtils;
+import com.redhat.ceylon.compiler.loader.mirror.AnnotationMirror;
+import com.redhat.ceylon.compiler.loader.mirror.ClassMirror;
+import com.redhat.ceylon.compiler.loader.mirror.FieldMirror;
+import com.redhat.ceylon.compiler.loader.mirror.MethodMirror;
+import com.redhat.ceylon.compiler.loader.model.JavaBeanValue;
 import com.redhat.ceylon.compiler.typechecker.context.PhasedUnit;
 import com.redhat.ceylon.compiler.typechecker.context.PhasedUnits;
 import com.redhat.ceylon.compiler.typechecker.model.Annotation;
@@ -50,6 +70,7 @@ import com.redhat.ceylon.compiler.typechecker.model.Getter;
 import com.redhat.ceylon.compiler.typechecker.model.Interface;
 import com.redhat.ceylon.compiler.typechecker.model.Method;
 import com.redhat.ceylon.compiler.typechecker.model.MethodOrValue;
+import com.redhat.ceylon.compiler.typechecker.model.Module;
 import com.redhat.ceylon.compiler.typechecker.model.Parameter;
 import com.redhat.ceylon.compiler.typechecker.model.ParameterList;
 import com.redhat.ceylon.compiler.typechecker.model.ProducedType;
@@ -535,9 +556,227 @@ public class ModelLoaderTest extends CompilerTest {
         });
     }
     
+    @Test
+    public void testMemberLoadingByName(){
+        compile("JavaMemberLoading.java");
+        verifyClassLoading("MemberLoading.ceylon", new RunnableTest(){
+            @Override
+            public void test(ModelLoader loader) {
+                Declaration klass = loader.getDeclaration("com.redhat.ceylon.compiler.java.test.model.JavaMemberLoading", DeclarationType.TYPE);
+                Assert.assertNotNull("Missing decl for JavaMemberLoading", klass);
+
+                // a getter/setter pair looked up by its setter name first
+                Assert.assertNull(klass.getDirectMember("setCount", null));
+                Value count = (Value) klass.getDirectMember("count", null);
+                Assert.assertNotNull("Missing decl for count", count);
+                Assert.assertTrue(count.isVariable());
+
+                // and one looked up by its attribute name first
+                Value name = (Value) klass.getDirectMember("name", null);
+                Assert.assertNotNull("Missing decl for name", name);
+                Assert.assertTrue(name.isVariable());
+                Assert.assertNull(klass.getDirectMember("setName", null));
+
+                // a setter without getter is a method under either name
+                Assert.assertNull(klass.getDirectMember("only", null));
+                Assert.assertTrue(klass.getDirectMember("setOnly", null) instanceof Method);
+
+                // overloads come with their abstraction
+                Method overloaded = (Method) klass.getDirectMember("overloaded", null);
+                Assert.assertNotNull("Missing decl for overloaded", overloaded);
+                Assert.assertTrue(overloaded.isAbstraction());
+                Assert.assertEquals(2, overloaded.getOverloads().size());
+
+                // the getter wins over the field
+                Value hidden = (Value) klass.getDirectMember("hidden", null);
+                Assert.assertNotNull("Missing decl for hidden", hidden);
+                Assert.assertTrue(hidden instanceof JavaBeanValue);
+
+                Assert.assertTrue(klass.getDirectMember("hash", null) instanceof Value);
+                Assert.assertTrue(klass.getDirectMember("string", null) instanceof Value);
+                Assert.assertNull(klass.getDirectMember("hashCode", null));
+                Assert.assertNull(klass.getDirectMember("toString", null));
+
+                // now load the rest, without loading the same members again
+                Map<String, Integer> counts = new HashMap<String, Integer>();
+                for(Declaration member : klass.getMembers()){
+                    Integer n = counts.get(member.getName());
+                    counts.put(member.getName(), n == null ? 1 : n + 1);
+                }
+                Assert.assertEquals(Integer.valueOf(1), counts.get("count"));
+                Assert.assertEquals(Integer.valueOf(1), counts.get("name"));
+                Assert.assertEquals(Integer.valueOf(1), counts.get("setOnly"));
+                Assert.assertEquals(Integer.valueOf(3), counts.get("overloaded"));
+                Assert.assertEquals(Integer.valueOf(1), counts.get("hidden"));
+                Assert.assertEquals(Integer.valueOf(1), counts.get("hash"));
+                Assert.assertEquals(Integer.valueOf(1), counts.get("string"));
+                Assert.assertEquals(Integer.valueOf(1), counts.get("plain"));
+                Assert.assertNull(counts.get("setCount"));
+                Assert.assertNull(counts.get("setName"));
+                Assert.assertSame(count, klass.getDirectMember("count", null));
+                Assert.assertSame(overloaded, klass.getDirectMember("overloaded", null));
+                // and members we did not look up before are there too
+                Assert.assertTrue(klass.getDirectMember("plain", null) instanceof Value);
+            }
+        });
+    }
+
     @Test
     public void testTypeParserUsingSourceModel(){
         compile("A.ceylon", "B.ceylon");
         compile("A.ceylon");
     }
+
+    @Test
+    public void testUnloadModuleRefusesLanguageModule(){
+        verifyClassLoading("A.ceylon", new RunnableTest(){
+            @Override
+            public void test(ModelLoader loader) {
+                Declaration string = loader.getDeclaration("ceylon.language.String", DeclarationType.TYPE);
+                Assert.assertNotNull(string);
+                Module languageModule = string.getUnit().getPackage().getModule();
+                try{
+                    loader.unloadModule(languageModule);
+                    Assert.fail("We should not be able to unload the language module");
+                }catch(IllegalArgumentException x){
+                    // expected
+                }
+                Assert.assertSame(string, loader.getDeclaration("ceylon.language.String", DeclarationType.TYPE));
+            }
+        });
+    }
+
+    @Test
+    public void testConcurrentLookups(){
+        verifyClassLoading("A.ceylon", new RunnableTest(){
+            @Override
+            public void test(ModelLoader loader) {
+                final AbstractModelLoader modelLoader = (AbstractModelLoader) loader;
+                final String[] names = {"ceylon.language.String", "ceylon.language.Integer", 
+                        "ceylon.language.Sequence", "ceylon.language.Iterable", "ceylon.language.Entry"};
+                final int threads = 8;
+                final CyclicBarrier barrier = new CyclicBarrier(threads);
+                ExecutorService executor = Executors.newFixedThreadPool(threads);
+                try{
+                    List<Future<Object[]>> results = new ArrayList<Future<Object[]>>(threads);
+                    for(int i=0;i<threads;i++){
+                        final int offset = i;
+                        results.add(executor.submit(new Callable<Object[]>(){
+                            @Override
+                            public Object[] call() throws Exception {
+                                Object[] found = new Object[names.length * 2 + 2];
+                                barrier.await();
+                                // each thread looks them up in another order, twice, to hit both
+                                // the locked path and the lock-free one
+                                for(int pass=0;pass<2;pass++){
+                                    for(int j=0;j<names.length;j++){
+                                        int index = (j + offset) % names.length;
+                                        found[index] = modelLoader.convertToDeclaration(names[index], DeclarationType.TYPE);
+                                        found[names.length + index] = modelLoader.lookupClassMirror(names[index]);
+                                    }
+                                    found[names.length * 2] = modelLoader.lookupClassMirror("ceylon.language.DoesNotExist");
+                                    found[names.length * 2 + 1] = modelLoader.findOrCreatePackage(null, "ceylon.language");
+                                }
+                                return found;
+                            }
+                        }));
+                    }
+                    Object[] first = results.get(0).get();
+                    for(Future<Object[]> result : results){
+                        Object[] found = result.get();
+                        for(int j=0;j<found.length;j++)
+                            Assert.assertSame(first[j], found[j]);
+                    }
+                    for(int j=0;j<names.length;j++){
+                        Assert.assertNotNull(names[j], first[j]);
+                        Assert.assertEquals(names[j], ((Declaration)first[j]).getQualifiedNameString());
+                        Assert.assertSame(first[j], modelLoader.convertToDeclaration(names[j], DeclarationType.TYPE));
+                        Assert.assertSame(first[names.length + j], modelLoader.lookupClassMirror(names[j]));
+                    }
+                    Assert.assertNull(first[names.length * 2]);
+                    Assert.assertNotNull(first[names.length * 2 + 1]);
+                }catch(Exception x){
+                    throw new RuntimeException(x);
+                }finally{
+                    executor.shutdown();
+                }
+            }
+        });
+    }
+
+    @Test
+    public void testClassMirrorCacheEviction(){
+        ClassMirrorCache cache = new ClassMirrorCache(2, 1);
+        ClassMirror a = new ReflectionClass(Object.class);
+        cache.put("a", a);
+        cache.put("b", a);
+        // a is now the most recently used
+        Assert.assertSame(a, cache.get("a"));
+        cache.put("c", a);
+        Assert.assertNull(cache.get("b"));
+        Assert.assertSame(a, cache.get("a"));
+        Assert.assertEquals(2, cache.getSize());
+
+        cache.put("x", null);
+        cache.put("y", null);
+        Assert.assertFalse(cache.isMissing("x"));
+        Assert.assertTrue(cache.isMissing("y"));
+        Assert.assertEquals(2, cache.getEvictions());
+
+        cache.put("y", a);
+        Assert.assertFalse(cache.isMissing("y"));
+    }
+
+    @Test
+    public void testReflectionAnnotationsMemoization() throws Exception{
+        String deprecated = Deprecated.class.getName();
+        String constructorProperties = ConstructorProperties.class.getName();
+
+        ClassMirror klass = new ReflectionClass(JavaAnnotations.class);
+        AnnotationMirror classAnnotation = klass.getAnnotation(deprecated);
+        Assert.assertNotNull(classAnnotation);
+        Assert.assertSame(classAnnotation, klass.getAnnotation(deprecated));
+        Assert.assertNull(klass.getAnnotation(constructorProperties));
+
+        Constructor<?> constructor = JavaAnnotations.class.getConstructor(String.class, String.class);
+        MethodMirror constructorMirror = new ReflectionMethod(constructor);
+        AnnotationMirror properties = constructorMirror.getAnnotation(constructorProperties);
+        Assert.assertNotNull(properties);
+        Assert.assertSame(properties, constructorMirror.getAnnotation(constructorProperties));
+        // same values as without memoization
+        Object value = properties.getValue();
+        Assert.assertEquals(Arrays.asList("a", "b"), value);
+        Assert.assertEquals(ReflectionUtils.getAnnotation(constructor, constructorProperties).getValue(), value);
+        Assert.assertSame(value, properties.getValue());
+
+        java.lang.reflect.Method method = JavaAnnotations.class.getMethod("m", String.class);
+        MethodMirror methodMirror = new ReflectionMethod(method);
+        Assert.assertNotNull(methodMirror.getAnnotation(deprecated));
+        Assert.assertNotNull(methodMirror.getParameters().get(0).getAnnotation(deprecated));
+        Assert.assertNull(methodMirror.getParameters().get(0).getAnnotation(constructorProperties));
+
+        FieldMirror field = new ReflectionField(JavaAnnotations.class.getField("field"));
+        Assert.assertNotNull(field.getAnnotation(deprecated));
+        Assert.assertSame(field.getAnnotation(deprecated), field.getAnnotation(deprecated));
+
+        // enums are converted to their names
+        AnnotationMirror retention = new ReflectionClass(Deprecated.class).getAnnotation(Retention.class.getName());
+        Assert.assertEquals("RUNTIME", retention.getValue());
+        Assert.assertEquals(ReflectionUtils.getAnnotation(Deprecated.class, Retention.class.getName()).getValue(), retention.getValue());
+    }
+
+    @Test
+    public void testClassNameFilter(){
+        List<String> names = Arrays.asList("String", "StringBuilder", "Object", "print_", "Outer$Inner");
+        ClassNameFilter filter = new ClassNameFilter(names);
+        for(String name : names)
+            Assert.assertTrue(filter.mightContain(name));
+        int falsePositives = 0;
+        for(int i=0;i<1000;i++){
+            if(filter.mightContain("Missing"+i))
+                falsePositives++;
+        }
+        Assert.assertTrue("Too many false positives: "+falsePositives, falsePositives < 50);
+        Assert.assertFalse(new ClassNameFilter(Arrays.<String>asList()).mightContain("String"));
+    }
 }
@@ -37,6 +37,7 @@ import com.redhat.ceylon.compiler.typechecker.model.Declaration;
 import com.redhat.ceylon.compiler.typechecker.model.IntersectionType;
 import com.redhat.ceylon.compiler.typechecker.model.ProducedType;
 import com.redhat.ceylon.compiler.typechecker.model.Class;
+import com.redhat.ceylon.compiler.typechecker.model.Module;
 import com.redhat.ceylon.compiler.typechecker.model.Package;
 import com.redhat.ceylon.compiler.typechecker.model.Scope;
 import com.redhat.ceylon.compiler.typechecker.model.TypeDeclaration;
@@ -116,6 +117,11 @@ public class TypeParserTest {
         public Declaration getDeclaration(String typeName, DeclarationType declarationType) {
             throw new RuntimeException("Not yet implemented");
         }
+
+        @Override
+        public void unloadModule(Module module) {
+            throw new RuntimeException("Not yet implemented");
+        }
         
     }
     
@@ -159,6 +159,16 @@ public class StatementTest extends CompilerTest {
         compareWithJavaSource("loop/MethodForRange");
     }
     
+    @Test
+    public void testLopForRangeRun(){
+        compileAndRun("com.redhat.ceylon.compiler.java.test.statement.loop.forRangeRun", "loop/ForRangeRun.ceylon");
+    }
+    
+    @Test
+    public void testLopForEnumerationRun(){
+        compileAndRun("com.redhat.ceylon.compiler.java.test.statement.loop.forEnumerationRun", "loop/ForEnumerationRun.ceylon");
+    }
+    
     @Test
     public void testLopMethodForIterator(){
         compareWithJavaSource("loop/MethodForIterator");
@@ -0,0 +1,138 @@
+/*
+ * Copyright Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the authors tag. All rights reserved.
+ *
+ * This copyrighted material is made available to anyone wishing to use,
+ * modify, copy, or redistribute it subject to the terms and conditions
+ * of the GNU General Public License version 2.
+ * 
+ * This particular file is subject to the "Classpath" exception as provided in the 
+ * LICENSE file that accompanied this code.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT A
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE.  See the GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License,
+ * along with this distribution; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA  02110-1301, USA.
+ */
+package com.redhat.ceylon.compiler.loader.impl.reflect;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.redhat.ceylon.compiler.java.test.CompilerTest;
+
+public class ModulesClassLoaderTest extends CompilerTest {
+
+    private static final String PKG = ModulesClassLoaderTest.class.getPackage().getName();
+
+    private File compileCar() {
+        compile("Loaded.ceylon");
+        File car = getModuleArchive("default", null);
+        Assert.assertTrue(car.exists());
+        return car;
+    }
+
+    private void copy(File source, File dest) throws IOException {
+        InputStream inputStream = new FileInputStream(source);
+        OutputStream outputStream = new FileOutputStream(dest); 
+        byte[] buffer = new byte[4096];
+        int read;
+        while((read = inputStream.read(buffer)) != -1){
+            outputStream.write(buffer, 0, read);
+        }
+        inputStream.close();
+        outputStream.close();
+    }
+
+    @Test
+    public void testLoadClassesFromJars() throws Exception {
+        File car = compileCar();
+        File copy = new File(destDir, "copy.car");
+        copy(car, copy);
+        ModulesClassLoader loader = new ModulesClassLoader();
+        try{
+            loader.addJar(car);
+            loader.addJar(copy);
+            Class<?> one = loader.loadClass(PKG+".one_");
+            Assert.assertSame(loader, one.getClassLoader());
+            Assert.assertSame(one, loader.loadClass(PKG+".one_"));
+
+            // the paths of a removed jar go to the next jar that has them
+            loader.removeJar(car);
+            Assert.assertSame(loader, loader.loadClass(PKG+".two_").getClassLoader());
+
+            // and once no jar has them we can't define them anymore
+            loader.removeJar(copy);
+            try{
+                loader.loadClass(PKG+".three_");
+                Assert.fail("Class loaded from a removed jar");
+            }catch(ClassNotFoundException x){
+                // expected
+            }
+            // but the ones we defined stay
+            Assert.assertSame(one, loader.loadClass(PKG+".one_"));
+        }finally{
+            loader.removeJar(car);
+            loader.removeJar(copy);
+        }
+    }
+
+    @Test
+    public void testLoadClassesConcurrently() throws Exception {
+        File car = compileCar();
+        final ModulesClassLoader loader = new ModulesClassLoader();
+        loader.addJar(car);
+        final String[] names = {"one_", "two_", "three_", "four_"};
+        final int threads = 8;
+        final CyclicBarrier barrier = new CyclicBarrier(threads);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try{
+            List<Future<Class<?>[]>> results = new ArrayList<Future<Class<?>[]>>(threads);
+            for(int i=0;i<threads;i++){
+                final int offset = i;
+                results.add(executor.submit(new Callable<Class<?>[]>(){
+                    @Override
+                    public Class<?>[] call() throws Exception {
+                        Class<?>[] classes = new Class<?>[names.length];
+                        // start together, with each thread asking for the classes in another order
+                        barrier.await();
+                        for(int j=0;j<names.length;j++){
+                            int index = (j + offset) % names.length;
+                            classes[index] = loader.loadClass(PKG+"."+names[index]);
+                        }
+                        return classes;
+                    }
+                }));
+            }
+            // a class defined twice would have thrown a LinkageError in one of the threads
+            Class<?>[] first = results.get(0).get();
+            for(Future<Class<?>[]> result : results){
+                Class<?>[] classes = result.get();
+                for(int j=0;j<names.length;j++){
+                    Assert.assertSame(loader, classes[j].getClassLoader());
+                    Assert.assertSame(first[j], classes[j]);
+                }
+            }
+        }finally{
+            executor.shutdown();
+            loader.removeJar(car);
+        }
+    }
+}